@@ -40,6 +40,14 @@ public abstract class AbstractLogConsumer {
      */
     public abstract Future<Void> writeResult(SegmentedScanResult result);
 
+    /**
+     * Returns why a write failed, if this consumer keeps track of its writes
+     * and one has failed; null otherwise.
+     */
+    public Throwable getFailure() {
+        return null;
+    }
+
     /**
      * Shuts the thread pool down.
      * 
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.amazonaws.dynamodb.bootstrap;
+
+import com.amazonaws.dynamodb.bootstrap.constants.BootstrapConstants;
+
+/**
+ * Tunes the scan Limit of one segment from the pages it has scanned. It keeps
+ * smoothed averages of the bytes and the call time per scanned item and picks
+ * the largest Limit that keeps a page under both the target page size and
+ * the target latency. The Limit at most doubles from one page to the next, so
+ * that one page of unusually small items does not cause a burst.
+ */
+public class AdaptiveScanLimit {
+
+    /**
+     * Weight of the newest page in the smoothed averages.
+     */
+    private static final double SMOOTHING = 0.3;
+
+    /**
+     * Largest factor the Limit grows by from one page to the next.
+     */
+    private static final int MAX_GROWTH = 2;
+
+    private final double targetPageBytes;
+    private final double targetLatencyMillis;
+    private double bytesPerItem = -1;
+    private double millisPerItem = -1;
+    private int limit;
+
+    /**
+     * @param initialLimit
+     *            Limit of the first page.
+     * @param targetPageBytes
+     *            page size to aim for.
+     * @param targetLatencyMillis
+     *            scan call time to aim for.
+     */
+    public AdaptiveScanLimit(int initialLimit, double targetPageBytes,
+            double targetLatencyMillis) {
+        this.limit = initialLimit;
+        this.targetPageBytes = targetPageBytes;
+        this.targetLatencyMillis = targetLatencyMillis;
+    }
+
+    /**
+     * Records a scanned page and returns the Limit for the next one.
+     *
+     * @param scannedItems
+     *            items the page scanned.
+     * @param pageBytes
+     *            size of the items the page returned.
+     * @param latencyMillis
+     *            time the scan call took.
+     */
+    public int update(int scannedItems, long pageBytes, double latencyMillis) {
+        if (scannedItems <= 0) {
+            return limit;
+        }
+        bytesPerItem = smooth(bytesPerItem, pageBytes / (double) scannedItems);
+        millisPerItem = smooth(millisPerItem, latencyMillis / scannedItems);
+
+        double target = BootstrapConstants.MAX_SCAN_LIMIT;
+        if (bytesPerItem > 0) {
+            target = Math.min(target, targetPageBytes / bytesPerItem);
+        }
+        if (millisPerItem > 0) {
+            target = Math.min(target, targetLatencyMillis / millisPerItem);
+        }
+        limit = (int) Math.max(1, Math.min(target, (long) limit * MAX_GROWTH));
+        return limit;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    private static double smooth(double average, double sample) {
+        return average < 0 ? sample : average + SMOOTHING * (sample - average);
+    }
+}
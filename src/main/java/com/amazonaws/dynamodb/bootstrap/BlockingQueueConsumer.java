@@ -5,6 +5,8 @@
  */
 package com.amazonaws.dynamodb.bootstrap;
 
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ExecutorCompletionService;
@@ -12,16 +14,25 @@ import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 
 import com.amazonaws.dynamodb.bootstrap.DynamoDBEntryWithSize;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
 
 /**
  * This class implements ILogConsumer, and when called to writeResult, it will
  * submit a new job to it's ExecutorCompletionService with a new
  * LogStashQueueWorker. It will then shutdown by adding a 'poison pill' to the
  * end of the blocking queue to notify that it has reached the end of the scan.
+ * 
+ * In ring buffer mode the thread calling writeResult instead hands whole
+ * pages, or slices of them, straight to a preallocated RingBuffer bounded in
+ * bytes, without a worker per page or an entry per item; the end of the scan
+ * is marked by a slice with null entries and a size of -1.
  */
 public class BlockingQueueConsumer extends AbstractLogConsumer {
 
     private BlockingQueue<DynamoDBEntryWithSize> queue;
+    private RingBuffer<DynamoDBItemSlice> ring;
+    private long maxSliceBytes;
+    private final Object ringProducerLock = new Object();
 
     public BlockingQueueConsumer(int numThreads) {
         this.queue = new ArrayBlockingQueue<DynamoDBEntryWithSize>(20);
@@ -33,8 +44,22 @@ public class BlockingQueueConsumer extends AbstractLogConsumer {
         this.exec = new ExecutorCompletionService<Void>(threadPool);
     }
 
+    /**
+     * Creates a consumer in ring buffer mode, holding at most capacityBytes of
+     * items in ringSlots slices. Pages bigger than a quarter of the capacity
+     * are split into slices so that several consumers can share them.
+     */
+    public BlockingQueueConsumer(long capacityBytes, int ringSlots) {
+        this.ring = new RingBuffer<DynamoDBItemSlice>(ringSlots, capacityBytes);
+        this.maxSliceBytes = Math.max(1, capacityBytes / 4);
+    }
+
     @Override
     public Future<Void> writeResult(SegmentedScanResult result) {
+        if (ring != null) {
+            publishSlices(result);
+            return null;
+        }
         Future<Void> jobSubmission = null;
         try {
             jobSubmission = exec.submit(new BlockingQueueWorker(queue, result));
@@ -46,18 +71,90 @@ public class BlockingQueueConsumer extends AbstractLogConsumer {
     }
 
     /**
-     * Returns the blocking queue to which the LogStashQueueWorkers add results
+     * Splits the page into slices of up to maxSliceBytes and puts them on the
+     * ring, waiting for room. Puts are serialized since the ring takes a
+     * single producer, but pages may come from several reader threads.
+     */
+    private void publishSlices(SegmentedScanResult result) {
+        final List<Map<String, AttributeValue>> items;
+        final CompactItemPage page = result.getCompactPage();
+        if (page != null) {
+            try {
+                items = page.getItems(0, page.getItemCount());
+            } finally {
+                page.release();
+            }
+        } else {
+            items = result.getScanResult().getItems();
+        }
+        int start = 0;
+        long sliceBytes = 0;
+        for (int i = 0; i < items.size(); i++) {
+            final int size = ItemSizeCalculator.calculateItemSizeInBytes(items
+                    .get(i));
+            if (i > start && sliceBytes + size > maxSliceBytes) {
+                putOnRing(new DynamoDBItemSlice(items.subList(start, i),
+                        sliceBytes));
+                start = i;
+                sliceBytes = 0;
+            }
+            sliceBytes += size;
+        }
+        if (start < items.size()) {
+            putOnRing(new DynamoDBItemSlice(
+                    items.subList(start, items.size()), sliceBytes));
+        }
+    }
+
+    private void putOnRing(DynamoDBItemSlice slice) {
+        boolean added = false;
+        boolean interrupted = false;
+        try {
+            do {
+                try {
+                    synchronized (ringProducerLock) {
+                        ring.put(slice, Math.max(0, slice.getSize()));
+                    }
+                    added = true;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            } while (!added);
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Returns the blocking queue to which the LogStashQueueWorkers add results,
+     * or null in ring buffer mode.
      */
     public BlockingQueue<DynamoDBEntryWithSize> getQueue() {
         return queue;
     }
 
+    /**
+     * Returns the ring buffer slices of items are put on, or null if this
+     * consumer is not in ring buffer mode. Readers can take one slice at a
+     * time or drain several at once.
+     */
+    public RingBuffer<DynamoDBItemSlice> getRingBuffer() {
+        return ring;
+    }
+
     /**
      * Shuts down the threadpool then adds a termination result to the end of
      * the queue.
      */
     @Override
     public void shutdown(boolean awaitTermination) {
+        if (ring != null) {
+            // pages were put on the ring by the threads calling writeResult
+            putOnRing(new DynamoDBItemSlice(null, -1));
+            return;
+        }
         super.shutdown(awaitTermination);
         boolean added = false;
         boolean interrupted = false;
@@ -42,7 +42,17 @@ public class BlockingQueueWorker implements Callable<Void> {
     @Override
     public Void call() {
         final ScanResult scanResult = result.getScanResult();
-        final List<Map<String, AttributeValue>> items = scanResult.getItems();
+        final CompactItemPage page = result.getCompactPage();
+        final List<Map<String, AttributeValue>> items;
+        if (page != null) {
+            try {
+                items = page.getItems(0, page.getItemCount());
+            } finally {
+                page.release();
+            }
+        } else {
+            items = scanResult.getItems();
+        }
         final Iterator<Map<String, AttributeValue>> it = items.iterator();
         boolean interrupted = false;
         try {
@@ -0,0 +1,215 @@
+/*
+ * Copyright 2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.amazonaws.dynamodb.bootstrap;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+
+import com.amazonaws.dynamodb.bootstrap.constants.BootstrapConstants;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.ScanResult;
+import com.fasterxml.jackson.core.JsonParser;
+
+/**
+ * Reads some or all buckets of a partitioned export (see
+ * PartitionedExportConsumer) and hands their items to a consumer in pages, one
+ * reader thread per bucket. Since every partition key is in exactly one
+ * bucket, several processes that each import their own buckets never write to
+ * the same partition key, and a bucket that failed can be imported again on
+ * its own. Compressed buckets are read as one gzip stream per bucket.
+ */
+public class BucketImportProvider extends AbstractLogProvider {
+
+    /**
+     * Logger for the BucketImportProvider.
+     */
+    private static final Logger LOGGER = LogManager
+            .getLogger(BucketImportProvider.class);
+
+    private static final int GZIP_BUFFER_SIZE = 64 * 1024;
+
+    private final File directory;
+    private final ExportManifest manifest;
+    private final List<Integer> buckets;
+    private int pageSize = BootstrapConstants.SCAN_LIMIT;
+
+    /**
+     * @param directory
+     *            the export directory, holding a manifest.
+     * @param buckets
+     *            the buckets to import, or null for all of them.
+     * @param exec
+     *            the pool the buckets are read on.
+     */
+    public BucketImportProvider(File directory, List<Integer> buckets,
+            ExecutorService exec) throws IOException {
+        this.directory = directory;
+        this.manifest = ExportManifest.read(directory);
+        final int count = manifest.getBuckets().size();
+        if (buckets == null) {
+            this.buckets = new ArrayList<Integer>();
+            for (int i = 0; i < count; i++) {
+                this.buckets.add(i);
+            }
+        } else {
+            for (int bucket : buckets) {
+                if (bucket < 0 || bucket >= count) {
+                    throw new IllegalArgumentException("Bucket " + bucket
+                            + " is not in the export, which has " + count
+                            + " buckets");
+                }
+            }
+            this.buckets = new ArrayList<Integer>(buckets);
+        }
+        super.threadPool = exec;
+    }
+
+    public ExportManifest getManifest() {
+        return manifest;
+    }
+
+    /**
+     * Sets the number of items handed to the consumer at a time.
+     */
+    public void setPageSize(int pageSize) {
+        this.pageSize = Math.max(1, pageSize);
+    }
+
+    /**
+     * Parses a list of bucket numbers and ranges such as "0-7,12".
+     */
+    public static List<Integer> parseBuckets(String spec) {
+        List<Integer> buckets = new ArrayList<Integer>();
+        for (String part : spec.split(",")) {
+            final String range = part.trim();
+            if (range.isEmpty()) {
+                continue;
+            }
+            final int dash = range.indexOf('-', 1);
+            try {
+                if (dash < 0) {
+                    buckets.add(Integer.parseInt(range));
+                } else {
+                    final int from = Integer.parseInt(range.substring(0, dash)
+                            .trim());
+                    final int to = Integer.parseInt(range.substring(dash + 1)
+                            .trim());
+                    for (int bucket = from; bucket <= to; bucket++) {
+                        buckets.add(bucket);
+                    }
+                }
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid bucket range "
+                        + range, e);
+            }
+        }
+        return buckets;
+    }
+
+    /**
+     * Reads the buckets and writes their items with the consumer, then shuts
+     * both down. Throws if a bucket cannot be read, holds a different number
+     * of items than the manifest lists, or the consumer reports a failed
+     * write.
+     */
+    @Override
+    public void pipe(final AbstractLogConsumer consumer)
+            throws ExecutionException, InterruptedException {
+        LOGGER.info("Importing " + buckets.size() + " of "
+                + manifest.getBuckets().size() + " buckets of "
+                + manifest.getTableName() + " from " + directory);
+        List<Future<Long>> readers = new ArrayList<Future<Long>>();
+        for (final int bucket : buckets) {
+            readers.add(threadPool.submit(new Callable<Long>() {
+                @Override
+                public Long call() throws IOException {
+                    return importBucket(bucket, consumer);
+                }
+            }));
+        }
+        ExecutionException readFailure = null;
+        long items = 0;
+        for (Future<Long> reader : readers) {
+            try {
+                items += reader.get();
+            } catch (ExecutionException e) {
+                if (readFailure == null) {
+                    readFailure = e;
+                }
+            }
+        }
+
+        final boolean failed = readFailure != null
+                || consumer.getFailure() != null;
+        shutdown(!failed);
+        consumer.shutdown(!failed);
+        if (consumer.getFailure() != null) {
+            throw new ExecutionException("Could not write to the destination",
+                    consumer.getFailure());
+        }
+        if (readFailure != null) {
+            throw readFailure;
+        }
+        LOGGER.info("Imported " + items + " items");
+    }
+
+    /**
+     * Hands the items of one bucket to the consumer and returns their number.
+     */
+    private long importBucket(int bucket, AbstractLogConsumer consumer)
+            throws IOException {
+        final ExportManifest.Bucket entry = manifest.getBuckets().get(bucket);
+        long items = 0;
+        final File file = new File(directory, entry.getFileName());
+        InputStream in = manifest.isCompressed() ? new GZIPInputStream(
+                new FileInputStream(file), GZIP_BUFFER_SIZE)
+                : new BufferedInputStream(new FileInputStream(file));
+        try {
+            JsonParser parser = DynamoDBJsonCodec.createParser(in);
+            List<Map<String, AttributeValue>> page = new ArrayList<Map<String, AttributeValue>>(
+                    pageSize);
+            Map<String, AttributeValue> item;
+            while ((item = DynamoDBJsonCodec.readItem(parser)) != null) {
+                page.add(item);
+                if (page.size() == pageSize) {
+                    items += writePage(page, bucket, consumer);
+                    page = new ArrayList<Map<String, AttributeValue>>(pageSize);
+                }
+            }
+            if (!page.isEmpty()) {
+                items += writePage(page, bucket, consumer);
+            }
+        } finally {
+            in.close();
+        }
+        if (items != entry.getItems()) {
+            throw new IOException("Bucket " + bucket + " holds " + items
+                    + " items but the manifest lists " + entry.getItems());
+        }
+        return items;
+    }
+
+    private static int writePage(List<Map<String, AttributeValue>> page,
+            int bucket, AbstractLogConsumer consumer) {
+        consumer.writeResult(new SegmentedScanResult(new ScanResult()
+                .withItems(page).withCount(page.size()), bucket));
+        return page.size();
+    }
+}
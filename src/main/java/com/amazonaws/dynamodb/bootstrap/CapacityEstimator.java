@@ -0,0 +1,172 @@
+/*
+ * Copyright 2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.amazonaws.dynamodb.bootstrap;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.amazonaws.dynamodb.bootstrap.constants.BootstrapConstants;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.GlobalSecondaryIndexDescription;
+import com.amazonaws.services.dynamodbv2.model.KeySchemaElement;
+import com.amazonaws.services.dynamodbv2.model.LocalSecondaryIndexDescription;
+import com.amazonaws.services.dynamodbv2.model.Projection;
+import com.amazonaws.services.dynamodbv2.model.ProjectionType;
+import com.amazonaws.services.dynamodbv2.model.PutRequest;
+import com.amazonaws.services.dynamodbv2.model.TableDescription;
+import com.amazonaws.services.dynamodbv2.model.WriteRequest;
+
+/**
+ * Estimates the capacity units DynamoDB charges for reads and writes, for
+ * when a call does not report its consumed capacity. A scan page costs its
+ * total size rounded up to 4 KB per read unit, halved for eventually
+ * consistent scans; a put costs the item's size rounded up to 1 KB per write
+ * unit, plus the same for the entry it adds to every secondary index that has
+ * the item's index key attributes, sized by what the index projects.
+ */
+public class CapacityEstimator {
+
+    /**
+     * One secondary index: its key attributes, and which other attributes it
+     * projects (null for all of them).
+     */
+    private static class Index {
+        private final List<String> keys = new ArrayList<String>();
+        private final Set<String> projected;
+
+        Index(List<KeySchemaElement> keySchema, Projection projection,
+                List<String> tableKeys) {
+            for (KeySchemaElement key : keySchema) {
+                keys.add(key.getAttributeName());
+            }
+            if (projection != null
+                    && ProjectionType.ALL.toString().equals(
+                            projection.getProjectionType())) {
+                projected = null;
+            } else {
+                projected = new HashSet<String>(tableKeys);
+                projected.addAll(keys);
+                if (projection != null
+                        && projection.getNonKeyAttributes() != null) {
+                    projected.addAll(projection.getNonKeyAttributes());
+                }
+            }
+        }
+    }
+
+    private final List<Index> indexes = new ArrayList<Index>();
+
+    /**
+     * Estimates the costs of a table without secondary indexes.
+     */
+    public CapacityEstimator() {
+    }
+
+    /**
+     * Estimates the costs of writing to the described table, including its
+     * secondary indexes.
+     */
+    public CapacityEstimator(TableDescription table) {
+        final List<String> tableKeys = new ArrayList<String>();
+        if (table.getKeySchema() != null) {
+            for (KeySchemaElement key : table.getKeySchema()) {
+                tableKeys.add(key.getAttributeName());
+            }
+        }
+        if (table.getGlobalSecondaryIndexes() != null) {
+            for (GlobalSecondaryIndexDescription index : table
+                    .getGlobalSecondaryIndexes()) {
+                indexes.add(new Index(index.getKeySchema(), index
+                        .getProjection(), tableKeys));
+            }
+        }
+        if (table.getLocalSecondaryIndexes() != null) {
+            for (LocalSecondaryIndexDescription index : table
+                    .getLocalSecondaryIndexes()) {
+                indexes.add(new Index(index.getKeySchema(), index
+                        .getProjection(), tableKeys));
+            }
+        }
+    }
+
+    /**
+     * Returns the number of secondary indexes writes are charged for.
+     */
+    public int getIndexCount() {
+        return indexes.size();
+    }
+
+    /**
+     * Returns the read units a scan page of the given size costs.
+     */
+    public static double scanReadUnits(long pageBytes, boolean consistent) {
+        final double units = Math.ceil(pageBytes
+                / (double) BootstrapConstants.STRONGLY_CONSISTENT_READ_ITEM_SIZE);
+        return consistent ? units : units / 2;
+    }
+
+    /**
+     * Returns the write units a put of an item of the given size costs in the
+     * table itself; every put costs at least one.
+     */
+    public static double writeUnits(int itemBytes) {
+        return Math.max(1.0, Math.ceil(itemBytes
+                / (double) BootstrapConstants.WRITE_ITEM_SIZE));
+    }
+
+    /**
+     * Returns the write units putting the item costs, in the table and its
+     * indexes.
+     */
+    public double writeUnits(Map<String, AttributeValue> item) {
+        double units = writeUnits(ItemSizeCalculator
+                .calculateItemSizeInBytes(item));
+        for (Index index : indexes) {
+            if (!item.keySet().containsAll(index.keys)) {
+                // sparse index, the item is not in it
+                continue;
+            }
+            final int bytes;
+            if (index.projected == null) {
+                bytes = ItemSizeCalculator.calculateItemSizeInBytes(item);
+            } else {
+                int size = 0;
+                for (String name : index.projected) {
+                    AttributeValue value = item.get(name);
+                    if (value != null) {
+                        size += ItemSizeCalculator.calculateItemSizeInBytes(
+                                Collections.singletonMap(name, value));
+                    }
+                }
+                bytes = size;
+            }
+            units += writeUnits(bytes);
+        }
+        return units;
+    }
+
+    /**
+     * Returns the write units the puts among the write requests cost.
+     */
+    public double writeUnits(Collection<WriteRequest> writes) {
+        double units = 0;
+        for (WriteRequest write : writes) {
+            final PutRequest put = write.getPutRequest();
+            if (put != null && put.getItem() != null) {
+                units += writeUnits(put.getItem());
+            } else {
+                // deletes cost at least a unit too
+                units += 1.0;
+            }
+        }
+        return units;
+    }
+}
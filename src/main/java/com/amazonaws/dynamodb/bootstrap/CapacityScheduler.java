@@ -0,0 +1,135 @@
+/*
+ * Copyright 2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.amazonaws.dynamodb.bootstrap;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+
+/**
+ * Shares a global read and write capacity budget between the running jobs of
+ * a multi-table transfer. Each job gets a share of the budget proportional to
+ * its weight, but never more than its own tables allow; whatever a job cannot
+ * use is handed to the others. The budgets are shared out again every time a
+ * job starts or finishes, so capacity moves to the remaining tables as others
+ * complete.
+ */
+public class CapacityScheduler {
+
+    /**
+     * Logger for the CapacityScheduler.
+     */
+    private static final Logger LOGGER = LogManager
+            .getLogger(CapacityScheduler.class);
+
+    /**
+     * Lowest rate given to a running job, as RateLimiters need a positive rate.
+     */
+    private static final double MIN_RATE = 1.0;
+
+    private final double readBudget;
+    private final double writeBudget;
+    private final List<TransferJob> running = new ArrayList<TransferJob>();
+
+    /**
+     * @param readBudget
+     *            total read capacity units per second for all jobs, or
+     *            Double.POSITIVE_INFINITY to only limit jobs by their tables.
+     * @param writeBudget
+     *            total write capacity units per second for all jobs, or
+     *            Double.POSITIVE_INFINITY to only limit jobs by their tables.
+     */
+    public CapacityScheduler(double readBudget, double writeBudget) {
+        this.readBudget = readBudget;
+        this.writeBudget = writeBudget;
+    }
+
+    /**
+     * Adds a job to the running jobs and shares out the budgets again.
+     */
+    public synchronized void jobStarted(TransferJob job) {
+        running.add(job);
+        reallocate();
+    }
+
+    /**
+     * Removes a job from the running jobs and gives its capacity to the rest.
+     */
+    public synchronized void jobFinished(TransferJob job) {
+        if (running.remove(job)) {
+            reallocate();
+        }
+    }
+
+    private void reallocate() {
+        final int size = running.size();
+        if (size == 0) {
+            return;
+        }
+        double[] weights = new double[size];
+        double[] readCaps = new double[size];
+        double[] writeCaps = new double[size];
+        for (int i = 0; i < size; i++) {
+            TransferJob job = running.get(i);
+            weights[i] = job.getWeight();
+            readCaps[i] = job.getMaxReadRate();
+            writeCaps[i] = job.getMaxWriteRate();
+        }
+        double[] reads = allocate(readBudget, weights, readCaps);
+        double[] writes = allocate(writeBudget, weights, writeCaps);
+        for (int i = 0; i < size; i++) {
+            TransferJob job = running.get(i);
+            double read = Math.max(MIN_RATE, reads[i]);
+            double write = Math.max(MIN_RATE, writes[i]);
+            job.setRates(read, write);
+            LOGGER.info("Allocated " + read + " reads/s and " + write
+                    + " writes/s to " + job);
+        }
+    }
+
+    /**
+     * Splits a budget by weight, never giving an entry more than its cap, and
+     * redistributing what capped entries leave unused to the others.
+     */
+    static double[] allocate(double budget, double[] weights, double[] caps) {
+        final int size = weights.length;
+        double[] allocation = new double[size];
+        boolean[] capped = new boolean[size];
+        double remaining = budget;
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            double totalWeight = 0;
+            for (int i = 0; i < size; i++) {
+                if (!capped[i]) {
+                    totalWeight += weights[i];
+                }
+            }
+            if (totalWeight <= 0) {
+                break;
+            }
+            for (int i = 0; i < size; i++) {
+                if (!capped[i]
+                        && remaining * weights[i] / totalWeight >= caps[i]) {
+                    allocation[i] = caps[i];
+                    capped[i] = true;
+                    remaining -= caps[i];
+                    changed = true;
+                }
+            }
+            if (!changed) {
+                for (int i = 0; i < size; i++) {
+                    if (!capped[i]) {
+                        allocation[i] = remaining * weights[i] / totalWeight;
+                    }
+                }
+            }
+        }
+        return allocation;
+    }
+}
@@ -5,8 +5,11 @@
  */
 package com.amazonaws.dynamodb.bootstrap;
 
+import java.io.File;
+
 import com.amazonaws.dynamodb.bootstrap.constants.BootstrapConstants;
 import com.beust.jcommander.Parameter;
+import com.beust.jcommander.ParameterException;
 
 /**
  * This class contains the parameters to input when executing the program from
@@ -30,7 +33,7 @@ public class CommandLineArgs {
     }
 
     public static final String SOURCE_TABLE = "--sourceTable";
-    @Parameter(names = SOURCE_TABLE, description = "Name of the source table", required = true)
+    @Parameter(names = SOURCE_TABLE, description = "Name of the source table. Required unless " + JOB_FILE + " is used", required = false)
     private String sourceTable;
 
     public String getSourceTable() {
@@ -46,7 +49,7 @@ public class CommandLineArgs {
     }
 
     public static final String DESTINATION_TABLE = "--destinationTable";
-    @Parameter(names = DESTINATION_TABLE, description = "Name of the destination table", required = true)
+    @Parameter(names = DESTINATION_TABLE, description = "Name of the destination table. Required unless " + JOB_FILE + " is used", required = false)
     private String destinationTable;
 
     public String getDestinationTable() {
@@ -100,4 +103,509 @@ public class CommandLineArgs {
     public boolean getConsistentScan() {
         return consistentScan;
     }
+
+    public static final String JOB_FILE = "--jobFile";
+    @Parameter(names = JOB_FILE, description = "File with one sourceTable,destinationTable[,priority] line per table to transfer in a single process", required = false)
+    private String jobFile;
+
+    public String getJobFile() {
+        return jobFile;
+    }
+
+    public static final String MAX_CONCURRENT_JOBS = "--maxConcurrentJobs";
+    @Parameter(names = MAX_CONCURRENT_JOBS, description = "Number of tables from the job file to transfer at the same time", required = false)
+    private int maxConcurrentJobs = 4;
+
+    public int getMaxConcurrentJobs() {
+        return maxConcurrentJobs;
+    }
+
+    public static final String MAX_READ_THREADS = "--maxReadThreads";
+    @Parameter(names = MAX_READ_THREADS, description = "Number of max threads shared by all jobs to scan source tables when using a job file", required = false)
+    private int maxReadThreads = BootstrapConstants.DYNAMODB_CLIENT_EXECUTOR_MAX_POOL_SIZE;
+
+    public int getMaxReadThreads() {
+        return maxReadThreads;
+    }
+
+    public static final String TOTAL_READ_CAPACITY = "--totalReadCapacity";
+    @Parameter(names = TOTAL_READ_CAPACITY, description = "Read capacity units per second shared by all jobs when using a job file. Defaults to no limit beyond each table's own", required = false)
+    private double totalReadCapacity = Double.POSITIVE_INFINITY;
+
+    public double getTotalReadCapacity() {
+        return totalReadCapacity;
+    }
+
+    public static final String TOTAL_WRITE_CAPACITY = "--totalWriteCapacity";
+    @Parameter(names = TOTAL_WRITE_CAPACITY, description = "Write capacity units per second shared by all jobs when using a job file. Defaults to no limit beyond each table's own", required = false)
+    private double totalWriteCapacity = Double.POSITIVE_INFINITY;
+
+    public double getTotalWriteCapacity() {
+        return totalWriteCapacity;
+    }
+
+    public static final String ON_DEMAND = "--onDemand";
+    @Parameter(names = ON_DEMAND, description = "Use this flag to ramp rates up from the initial rates instead of using a ratio of provisioned throughput. On-demand tables are detected automatically")
+    private boolean onDemand = false;
+
+    public boolean getOnDemand() {
+        return onDemand;
+    }
+
+    public static final String INITIAL_READ_RATE = "--initialReadRate";
+    @Parameter(names = INITIAL_READ_RATE, description = "Read capacity units per second to start scanning an on-demand source table at", required = false)
+    private double initialReadRate = BootstrapConstants.DEFAULT_ON_DEMAND_INITIAL_RATE;
+
+    public double getInitialReadRate() {
+        return initialReadRate;
+    }
+
+    public static final String INITIAL_WRITE_RATE = "--initialWriteRate";
+    @Parameter(names = INITIAL_WRITE_RATE, description = "Write capacity units per second to start writing an on-demand destination table at", required = false)
+    private double initialWriteRate = BootstrapConstants.DEFAULT_ON_DEMAND_INITIAL_RATE;
+
+    public double getInitialWriteRate() {
+        return initialWriteRate;
+    }
+
+    public static final String MAX_READ_RATE = "--maxReadRate";
+    @Parameter(names = MAX_READ_RATE, description = "Highest read capacity units per second to ramp up to on an on-demand source table", required = false)
+    private double maxReadRate = BootstrapConstants.DEFAULT_ON_DEMAND_MAX_RATE;
+
+    public double getMaxReadRate() {
+        return maxReadRate;
+    }
+
+    public static final String MAX_WRITE_RATE = "--maxWriteRate";
+    @Parameter(names = MAX_WRITE_RATE, description = "Highest write capacity units per second to ramp up to on an on-demand destination table", required = false)
+    private double maxWriteRate = BootstrapConstants.DEFAULT_ON_DEMAND_MAX_RATE;
+
+    public double getMaxWriteRate() {
+        return maxWriteRate;
+    }
+
+    public static final String PLAN = "--plan";
+    @Parameter(names = PLAN, description = "Use this flag to scan a few sample pages first and pick the segments, threads and scan page size from them")
+    private boolean plan = false;
+
+    public boolean getPlan() {
+        return plan;
+    }
+
+    public static final String PLAN_SAMPLE_PAGES = "--planSamplePages";
+    @Parameter(names = PLAN_SAMPLE_PAGES, description = "Number of sample pages to scan when planning the transfer", required = false)
+    private int planSamplePages = BootstrapConstants.DEFAULT_PLANNER_SAMPLE_PAGES;
+
+    public int getPlanSamplePages() {
+        return planSamplePages;
+    }
+
+    public static final String COMPACT_ITEMS = "--compactItems";
+    @Parameter(names = COMPACT_ITEMS, description = "Use this flag to hold scanned items in compact off-heap buffers until they are written")
+    private boolean compactItems = false;
+
+    public boolean getCompactItems() {
+        return compactItems;
+    }
+
+    public static final String COMPACT_POOL_BYTES = "--compactPoolBytes";
+    @Parameter(names = COMPACT_POOL_BYTES, description = "Bytes of freed off-heap buffers to keep for reuse with --compactItems", required = false)
+    private long compactPoolBytes = BootstrapConstants.DEFAULT_COMPACT_POOL_BYTES;
+
+    public long getCompactPoolBytes() {
+        return compactPoolBytes;
+    }
+
+    public static final String SPILL_DIRECTORY = "--spillDirectory";
+    @Parameter(names = SPILL_DIRECTORY, description = "Local directory to spill scanned pages to when writes fall behind the scan", required = false)
+    private String spillDirectory = null;
+
+    public String getSpillDirectory() {
+        return spillDirectory;
+    }
+
+    public static final String SPILL_SEGMENT_BYTES = "--spillSegmentBytes";
+    @Parameter(names = SPILL_SEGMENT_BYTES, description = "Size of each spill segment file", required = false)
+    private int spillSegmentBytes = BootstrapConstants.DEFAULT_SPILL_SEGMENT_BYTES;
+
+    public int getSpillSegmentBytes() {
+        return spillSegmentBytes;
+    }
+
+    public static final String READER_DISPATCH = "--readerDispatch";
+    @Parameter(names = READER_DISPATCH, description = "Use this flag to have each reader thread hand its pages to the writers itself instead of through a single dispatching thread")
+    private boolean readerDispatch = false;
+
+    public boolean getReaderDispatch() {
+        return readerDispatch;
+    }
+
+    public static final String ADAPTIVE_SCAN_LIMIT = "--adaptiveScanLimit";
+    @Parameter(names = ADAPTIVE_SCAN_LIMIT, description = "Use this flag to tune the scan page size of every segment from the item sizes and latencies it sees")
+    private boolean adaptiveScanLimit = false;
+
+    public boolean getAdaptiveScanLimit() {
+        return adaptiveScanLimit;
+    }
+
+    public static final String TARGET_PAGE_BYTES = "--targetPageBytes";
+    @Parameter(names = TARGET_PAGE_BYTES, description = "Page size in bytes that --adaptiveScanLimit aims for", required = false)
+    private int targetPageBytes = BootstrapConstants.DEFAULT_TARGET_PAGE_BYTES;
+
+    public int getTargetPageBytes() {
+        return targetPageBytes;
+    }
+
+    public static final String TARGET_PAGE_LATENCY = "--targetPageLatencyMillis";
+    @Parameter(names = TARGET_PAGE_LATENCY, description = "Scan call time in milliseconds that --adaptiveScanLimit aims for", required = false)
+    private double targetPageLatencyMillis = BootstrapConstants.DEFAULT_TARGET_PAGE_LATENCY_MILLIS;
+
+    public double getTargetPageLatencyMillis() {
+        return targetPageLatencyMillis;
+    }
+
+    public static final String AUTOSCALE_WRITERS = "--autoscaleWriters";
+    @Parameter(names = AUTOSCALE_WRITERS, description = "Use this flag to resize the write thread pool from the observed write latency and the write rate, up to maxWriteThreads")
+    private boolean autoscaleWriters = false;
+
+    public boolean getAutoscaleWriters() {
+        return autoscaleWriters;
+    }
+
+    public static final String MIN_WRITE_THREADS = "--minWriteThreads";
+    @Parameter(names = MIN_WRITE_THREADS, description = "Fewest write threads --autoscaleWriters may shrink the pool to", required = false)
+    private int minWriteThreads = 1;
+
+    public int getMinWriteThreads() {
+        return minWriteThreads;
+    }
+
+    public static final String RECORD_TRACE = "--recordTrace";
+    @Parameter(names = RECORD_TRACE, description = "File to record the timing, size, consumed capacity and errors of every scan and batchWriteItem call to", required = false)
+    private String recordTrace;
+
+    public String getRecordTrace() {
+        return recordTrace;
+    }
+
+    public static final String REPLAY_TRACE = "--replayTrace";
+    @Parameter(names = REPLAY_TRACE, description = "Trace file recorded with " + RECORD_TRACE + " to answer every DynamoDB call from instead of the source and destination tables", required = false)
+    private String replayTrace;
+
+    public String getReplayTrace() {
+        return replayTrace;
+    }
+
+    public static final String REPLAY_SPEEDUP = "--replaySpeedup";
+    @Parameter(names = REPLAY_SPEEDUP, description = "How many times faster than recorded to replay the calls of " + REPLAY_TRACE, required = false)
+    private double replaySpeedup = 1.0;
+
+    public double getReplaySpeedup() {
+        return replaySpeedup;
+    }
+
+    public static final String INTERLEAVE_WRITES = "--interleaveWrites";
+    @Parameter(names = INTERLEAVE_WRITES, description = "Use this flag to build write batches round-robin across partition key buckets instead of in scan order, and to hold back only the keys that get throttled")
+    private boolean interleaveWrites = false;
+
+    public boolean getInterleaveWrites() {
+        return interleaveWrites;
+    }
+
+    public static final String INTERLEAVE_BUCKETS = "--interleaveBuckets";
+    @Parameter(names = INTERLEAVE_BUCKETS, description = "Number of partition key buckets " + INTERLEAVE_WRITES + " spreads items over", required = false)
+    private int interleaveBuckets = BootstrapConstants.DEFAULT_INTERLEAVE_BUCKETS;
+
+    public int getInterleaveBuckets() {
+        return interleaveBuckets;
+    }
+
+    public static final String INTERLEAVE_BUFFER_ITEMS = "--interleaveBufferItems";
+    @Parameter(names = INTERLEAVE_BUFFER_ITEMS, description = "Number of scanned items " + INTERLEAVE_WRITES + " may hold before the scan waits", required = false)
+    private int interleaveBufferItems = BootstrapConstants.DEFAULT_INTERLEAVE_BUFFER_ITEMS;
+
+    public int getInterleaveBufferItems() {
+        return interleaveBufferItems;
+    }
+
+    public static final String JMX_CONTROL = "--jmxControl";
+    @Parameter(names = JMX_CONTROL, description = "Use this flag to register a JMX MBean that changes the read and write rate limits and write threads, pauses and resumes the scan, and shows the status while the transfer runs")
+    private boolean jmxControl = false;
+
+    public boolean getJmxControl() {
+        return jmxControl;
+    }
+
+    public static final String MAX_IN_FLIGHT_BATCHES = "--maxInFlightBatches";
+    @Parameter(names = MAX_IN_FLIGHT_BATCHES, description = "Number of write batches that may be submitted and not yet completed before the scan waits", required = false)
+    private int maxInFlightBatches = BootstrapConstants.DEFAULT_MAX_IN_FLIGHT_BATCHES;
+
+    public int getMaxInFlightBatches() {
+        return maxInFlightBatches;
+    }
+
+    public static final String MAX_RETRIES = "--maxRetries";
+    @Parameter(names = MAX_RETRIES, description = "Number of consecutive times a throttled or failed DynamoDB call is retried before giving up on it", required = false)
+    private int maxRetries = BootstrapConstants.MAX_RETRIES;
+
+    public int getMaxRetries() {
+        return maxRetries;
+    }
+
+    public static final String DEAD_LETTER_FILE = "--deadLetterFile";
+    @Parameter(names = DEAD_LETTER_FILE, description = "File to append items that cannot be written to, with the reason, so the rest of the transfer carries on", required = false)
+    private String deadLetterFile;
+
+    public String getDeadLetterFile() {
+        return deadLetterFile;
+    }
+
+    public static final String REPLAY_DEAD_LETTERS = "--replayDeadLetters";
+    @Parameter(names = REPLAY_DEAD_LETTERS, description = "Dead-letter file whose items to write again to the tables they were meant for, instead of transferring a table", required = false)
+    private String replayDeadLetters;
+
+    public String getReplayDeadLetters() {
+        return replayDeadLetters;
+    }
+
+    public static final String EXPORT_DIRECTORY = "--exportDirectory";
+    @Parameter(names = EXPORT_DIRECTORY, description = "Directory to export the source table into, as bucket files split by a hash of the partition key plus a manifest, instead of copying it to a destination table", required = false)
+    private String exportDirectory;
+
+    public String getExportDirectory() {
+        return exportDirectory;
+    }
+
+    public static final String EXPORT_BUCKETS = "--exportBuckets";
+    @Parameter(names = EXPORT_BUCKETS, description = "Number of bucket files " + EXPORT_DIRECTORY + " splits the items into", required = false)
+    private int exportBuckets = BootstrapConstants.DEFAULT_EXPORT_BUCKETS;
+
+    public int getExportBuckets() {
+        return exportBuckets;
+    }
+
+    public static final String EXPORT_COMPRESSION = "--exportCompression";
+    @Parameter(names = EXPORT_COMPRESSION, description = "Compression of the bucket files of " + EXPORT_DIRECTORY + ": none, or gzip to compress blocks of every file in parallel", required = false)
+    private String exportCompression = ExportManifest.COMPRESSION_NONE;
+
+    public String getExportCompression() {
+        return exportCompression;
+    }
+
+    public static final String COMPRESSION_THREADS = "--compressionThreads";
+    @Parameter(names = COMPRESSION_THREADS, description = "Number of threads compressing the bucket files of " + EXPORT_DIRECTORY, required = false)
+    private int compressionThreads = Runtime.getRuntime().availableProcessors();
+
+    public int getCompressionThreads() {
+        return compressionThreads;
+    }
+
+    public static final String SAMPLE_FRACTION = "--sampleFraction";
+    @Parameter(names = SAMPLE_FRACTION, description = "Makes " + EXPORT_DIRECTORY + " export a sample: the fraction, greater than 0 and at most 1, of randomly chosen segments to scan. The estimated totals of the whole table are logged at the end", required = false)
+    private double sampleFraction = 0;
+
+    public double getSampleFraction() {
+        return sampleFraction;
+    }
+
+    public static final String SAMPLE_ITEM_RATE = "--sampleItemRate";
+    @Parameter(names = SAMPLE_ITEM_RATE, description = "Probability, greater than 0 and at most 1, that an item of a sampled segment is kept in the sample", required = false)
+    private double sampleItemRate = 1.0;
+
+    public double getSampleItemRate() {
+        return sampleItemRate;
+    }
+
+    public static final String SAMPLE_SEED = "--sampleSeed";
+    @Parameter(names = SAMPLE_SEED, description = "Seed of the random sample, to take the same sample again", required = false)
+    private Long sampleSeed;
+
+    public Long getSampleSeed() {
+        return sampleSeed;
+    }
+
+    public static final String PROFILE = "--profile";
+    @Parameter(names = PROFILE, description = "File to write a profile of the source table to instead of copying it: item size percentiles, the presence, types and size of every attribute, the number of distinct partition keys and the hottest keys, gathered in one scan", required = false)
+    private String profile;
+
+    public String getProfile() {
+        return profile;
+    }
+
+    public static final String DAEMON_SPOOL_DIRECTORY = "--daemonSpoolDirectory";
+    @Parameter(names = DAEMON_SPOOL_DIRECTORY, description = "Run as a daemon that takes jobs from files ending in .job in this directory, in the " + JOB_FILE + " format, and runs them on shared clients and thread pools", required = false)
+    private String daemonSpoolDirectory;
+
+    public String getDaemonSpoolDirectory() {
+        return daemonSpoolDirectory;
+    }
+
+    public static final String DAEMON_PORT = "--daemonPort";
+    @Parameter(names = DAEMON_PORT, description = "Run as a daemon that takes SUBMIT, STATUS and SHUTDOWN commands on this port of the loopback address", required = false)
+    private Integer daemonPort;
+
+    public Integer getDaemonPort() {
+        return daemonPort;
+    }
+
+    /**
+     * Returns whether to run as a daemon.
+     */
+    public boolean isDaemon() {
+        return daemonSpoolDirectory != null || daemonPort != null;
+    }
+
+    public static final String DEADLINE = "--deadline";
+    @Parameter(names = DEADLINE, description = "Time the copy must be finished by, as HH:mm (the next time the clock shows it) or yyyy-MM-ddTHH:mm in local time. Read and write rates and write threads are kept at the lowest settings that finish in time, up to the read and write throughput ratios (or " + MAX_READ_RATE + " and " + MAX_WRITE_RATE + " on on-demand tables)", required = false)
+    private String deadline;
+
+    public String getDeadline() {
+        return deadline;
+    }
+
+    public static final String IMPORT_DIRECTORY = "--importDirectory";
+    @Parameter(names = IMPORT_DIRECTORY, description = "Directory of an export made with " + EXPORT_DIRECTORY + " to write to the destination table instead of scanning a source table", required = false)
+    private String importDirectory;
+
+    public String getImportDirectory() {
+        return importDirectory;
+    }
+
+    public static final String IMPORT_BUCKETS = "--importBuckets";
+    @Parameter(names = IMPORT_BUCKETS, description = "Buckets of " + IMPORT_DIRECTORY + " to import, as numbers and ranges such as 0-7,12; all of them if not given", required = false)
+    private String importBuckets;
+
+    public String getImportBuckets() {
+        return importBuckets;
+    }
+
+    public static final String IMPORT_DYNAMODB_EXPORT = "--importDynamoDBExport";
+    @Parameter(names = IMPORT_DYNAMODB_EXPORT, description = "Directory of a DynamoDB table export in DYNAMODB_JSON format, holding manifest-summary.json, manifest-files.json and the data files, to write to the destination table instead of scanning a source table", required = false)
+    private String importDynamoDBExport;
+
+    public String getImportDynamoDBExport() {
+        return importDynamoDBExport;
+    }
+
+    /**
+     * Checks the arguments that depend on each other.
+     */
+    public void validate() {
+        if ((exportDirectory != null ? 1 : 0)
+                + (importDirectory != null ? 1 : 0)
+                + (importDynamoDBExport != null ? 1 : 0)
+                + (profile != null ? 1 : 0) > 1) {
+            throw new ParameterException("Only one of " + EXPORT_DIRECTORY
+                    + ", " + IMPORT_DIRECTORY + ", " + IMPORT_DYNAMODB_EXPORT
+                    + " and " + PROFILE + " can be used");
+        }
+        if (isDaemon()) {
+            if (sourceTable != null || destinationTable != null
+                    || exportDirectory != null || importDirectory != null
+                    || importDynamoDBExport != null || profile != null
+                    || jobFile != null || replayDeadLetters != null
+                    || deadline != null) {
+                throw new ParameterException(DAEMON_SPOOL_DIRECTORY + " and "
+                        + DAEMON_PORT + " take their jobs while running and"
+                        + " cannot be given a table or job");
+            }
+            if (daemonPort != null && (daemonPort < 0 || daemonPort > 65535)) {
+                throw new ParameterException(DAEMON_PORT
+                        + " must be from 0 to 65535");
+            }
+        } else if (profile != null) {
+            if (sourceTable == null) {
+                throw new ParameterException("The following option is required: "
+                        + SOURCE_TABLE);
+            }
+        } else if (exportDirectory != null) {
+            if (sourceTable == null) {
+                throw new ParameterException("The following option is required: "
+                        + SOURCE_TABLE);
+            }
+            if (exportBuckets < 1) {
+                throw new ParameterException(EXPORT_BUCKETS
+                        + " must be at least 1");
+            }
+            if (!ExportManifest.COMPRESSION_NONE.equals(exportCompression)
+                    && !ExportManifest.COMPRESSION_GZIP.equals(exportCompression)) {
+                throw new ParameterException(EXPORT_COMPRESSION
+                        + " must be " + ExportManifest.COMPRESSION_NONE + " or "
+                        + ExportManifest.COMPRESSION_GZIP);
+            }
+            if (compressionThreads < 1) {
+                throw new ParameterException(COMPRESSION_THREADS
+                        + " must be at least 1");
+            }
+            if (sampleFraction < 0 || sampleFraction > 1) {
+                throw new ParameterException(SAMPLE_FRACTION
+                        + " must be greater than 0 and at most 1");
+            }
+            if (sampleItemRate <= 0 || sampleItemRate > 1) {
+                throw new ParameterException(SAMPLE_ITEM_RATE
+                        + " must be greater than 0 and at most 1");
+            }
+            if (sampleFraction > 0 && totalSections > 1) {
+                // the estimates assume every sampled segment was scanned
+                throw new ParameterException(SAMPLE_FRACTION + " and "
+                        + TOTAL_SECTIONS + " cannot be used together");
+            }
+        } else if (importDirectory != null || importDynamoDBExport != null) {
+            if (destinationTable == null) {
+                throw new ParameterException("The following option is required: "
+                        + DESTINATION_TABLE);
+            }
+            if (importBuckets != null) {
+                try {
+                    BucketImportProvider.parseBuckets(importBuckets);
+                } catch (IllegalArgumentException e) {
+                    throw new ParameterException(IMPORT_BUCKETS + ": "
+                            + e.getMessage());
+                }
+            }
+        } else if (jobFile == null && replayDeadLetters == null
+                && (sourceTable == null || destinationTable == null)) {
+            throw new ParameterException("The following options are required: "
+                    + SOURCE_TABLE + " " + DESTINATION_TABLE + " (or " + JOB_FILE
+                    + ", " + REPLAY_DEAD_LETTERS + ", " + EXPORT_DIRECTORY
+                    + ", " + IMPORT_DIRECTORY + ", " + IMPORT_DYNAMODB_EXPORT
+                    + ", " + PROFILE + " or " + DAEMON_SPOOL_DIRECTORY + ")");
+        }
+        if (exportDirectory == null
+                && (sampleFraction != 0 || sampleItemRate != 1.0 || sampleSeed != null)) {
+            throw new ParameterException(SAMPLE_FRACTION + ", "
+                    + SAMPLE_ITEM_RATE + " and " + SAMPLE_SEED
+                    + " only apply to " + EXPORT_DIRECTORY);
+        }
+        if (deadline != null) {
+            if (sourceTable == null || destinationTable == null
+                    || exportDirectory != null || importDirectory != null
+                    || importDynamoDBExport != null || profile != null
+                    || jobFile != null
+                    || replayDeadLetters != null) {
+                throw new ParameterException(DEADLINE
+                        + " only applies to copying " + SOURCE_TABLE + " to "
+                        + DESTINATION_TABLE);
+            }
+            try {
+                DeadlineController.parseDeadline(deadline,
+                        System.currentTimeMillis());
+            } catch (IllegalArgumentException e) {
+                throw new ParameterException(DEADLINE + ": " + e.getMessage());
+            }
+        }
+        if (maxInFlightBatches < 1) {
+            throw new ParameterException(MAX_IN_FLIGHT_BATCHES
+                    + " must be at least 1");
+        }
+        if (maxRetries < 0) {
+            throw new ParameterException(MAX_RETRIES + " must not be negative");
+        }
+        if (replayDeadLetters != null && deadLetterFile != null
+                && new File(replayDeadLetters).getAbsoluteFile().equals(
+                        new File(deadLetterFile).getAbsoluteFile())) {
+            throw new ParameterException(DEAD_LETTER_FILE
+                    + " must not be the file given to " + REPLAY_DEAD_LETTERS);
+        }
+    }
 }
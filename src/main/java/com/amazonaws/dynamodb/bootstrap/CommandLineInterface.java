@@ -5,12 +5,25 @@
  */
 package com.amazonaws.dynamodb.bootstrap;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
+import javax.management.JMException;
+import javax.management.ObjectName;
+
 import org.apache.log4j.LogManager;
 import org.apache.log4j.Logger;
 
@@ -20,6 +33,7 @@ import com.amazonaws.dynamodb.bootstrap.constants.BootstrapConstants;
 import com.amazonaws.dynamodb.bootstrap.exception.NullReadCapacityException;
 import com.amazonaws.dynamodb.bootstrap.exception.SectionOutOfRangeException;
 import com.amazonaws.services.dynamodbv2.AmazonDynamoDBClient;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
 import com.amazonaws.services.dynamodbv2.model.TableDescription;
 import com.beust.jcommander.JCommander;
 import com.beust.jcommander.ParameterException;
@@ -49,6 +63,7 @@ public class CommandLineInterface {
         try {
             // parse given arguments
             cmd.parse(args);
+            params.validate();
         } catch (ParameterException e) {
             LOGGER.error(e);
             JCommander.getConsole().println(e.getMessage());
@@ -63,83 +78,807 @@ public class CommandLineInterface {
         }
         final String sourceEndpoint = params.getSourceEndpoint();
         final String destinationEndpoint = params.getDestinationEndpoint();
-        final String destinationTable = params.getDestinationTable();
-        final String sourceTable = params.getSourceTable();
-        final double readThroughputRatio = params.getReadThroughputRatio();
-        final double writeThroughputRatio = params.getWriteThroughputRatio();
-        final int maxWriteThreads = params.getMaxWriteThreads();
-        final boolean consistentScan = params.getConsistentScan();
 
         final ClientConfiguration sourceConfig = new ClientConfiguration().withMaxConnections(BootstrapConstants.MAX_CONN_SIZE);
         final ClientConfiguration destinationConfig = new ClientConfiguration().withMaxConnections(BootstrapConstants.MAX_CONN_SIZE);
 
-        final AmazonDynamoDBClient sourceClient = new AmazonDynamoDBClient(
+        AmazonDynamoDBClient sourceClient = new AmazonDynamoDBClient(
                 new DefaultAWSCredentialsProviderChain(), sourceConfig);
-        final AmazonDynamoDBClient destinationClient = new AmazonDynamoDBClient(
+        AmazonDynamoDBClient destinationClient = new AmazonDynamoDBClient(
                 new DefaultAWSCredentialsProviderChain(), destinationConfig);
         sourceClient.setEndpoint(sourceEndpoint);
         destinationClient.setEndpoint(destinationEndpoint);
 
+        ReplayDynamoDBClient sourceReplay = null;
+        ReplayDynamoDBClient destinationReplay = null;
+        TrafficRecorder recorder = null;
+        try {
+            if (params.getReplayTrace() != null) {
+                List<TrafficRecorder.Call> calls = TrafficRecorder
+                        .read(new File(params.getReplayTrace()));
+                sourceReplay = new ReplayDynamoDBClient(calls,
+                        TrafficRecorder.ROLE_SOURCE, params.getReplaySpeedup());
+                destinationReplay = new ReplayDynamoDBClient(calls,
+                        TrafficRecorder.ROLE_DESTINATION,
+                        params.getReplaySpeedup());
+                sourceClient = sourceReplay;
+                destinationClient = destinationReplay;
+            }
+            if (params.getRecordTrace() != null) {
+                recorder = new TrafficRecorder(new File(params.getRecordTrace()));
+                sourceClient = new RecordingDynamoDBClient(sourceClient,
+                        recorder, TrafficRecorder.ROLE_SOURCE);
+                destinationClient = new RecordingDynamoDBClient(
+                        destinationClient, recorder,
+                        TrafficRecorder.ROLE_DESTINATION);
+            }
+        } catch (IOException e) {
+            LOGGER.error("Could not open the traffic trace", e);
+            System.exit(1);
+            return;
+        }
+
+        DeadLetterFile deadLetters = null;
+        if (params.getDeadLetterFile() != null) {
+            try {
+                deadLetters = new DeadLetterFile(new File(
+                        params.getDeadLetterFile()));
+            } catch (IOException e) {
+                LOGGER.error("Could not open the dead-letter file", e);
+                System.exit(1);
+                return;
+            }
+        }
+
+        boolean succeeded = true;
+        try {
+            if (params.getReplayDeadLetters() != null) {
+                replayDeadLetters(params, destinationClient, deadLetters);
+            } else if (params.isDaemon()) {
+                runDaemon(params, sourceClient, destinationClient, deadLetters);
+            } else if (params.getProfile() != null) {
+                profileTable(params, sourceClient);
+            } else if (params.getExportDirectory() != null) {
+                succeeded = exportTable(params, sourceClient);
+            } else if (params.getImportDirectory() != null) {
+                succeeded = importBuckets(params, destinationClient,
+                        deadLetters);
+            } else if (params.getImportDynamoDBExport() != null) {
+                succeeded = importDynamoDBExport(params, destinationClient,
+                        deadLetters);
+            } else if (params.getJobFile() != null) {
+                succeeded = runJobFile(params, sourceClient,
+                        destinationClient, deadLetters);
+            } else {
+                succeeded = copyTable(params, sourceClient, destinationClient,
+                        deadLetters);
+            }
+        } finally {
+            if (deadLetters != null) {
+                if (deadLetters.getCount() > 0) {
+                    LOGGER.warn(deadLetters.getCount()
+                            + " items could not be written and are in "
+                            + deadLetters.getFile());
+                }
+                try {
+                    deadLetters.close();
+                } catch (IOException e) {
+                    LOGGER.warn("Could not close the dead-letter file", e);
+                }
+            }
+            if (sourceReplay != null) {
+                LOGGER.info("Replayed "
+                        + (sourceReplay.getReplayedCalls() + destinationReplay
+                                .getReplayedCalls())
+                        + " calls, "
+                        + (sourceReplay.getUnmatchedCalls() + destinationReplay
+                                .getUnmatchedCalls())
+                        + " calls were not in the trace.");
+            }
+            if (recorder != null) {
+                try {
+                    recorder.close();
+                } catch (IOException e) {
+                    LOGGER.warn("Could not close the traffic trace", e);
+                }
+            }
+        }
+        if (!succeeded) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Transfers the table given by the sourceTable and destinationTable
+     * arguments.
+     *
+     * @return whether the table was transferred.
+     */
+    private static boolean copyTable(CommandLineArgs params,
+            AmazonDynamoDBClient sourceClient,
+            AmazonDynamoDBClient destinationClient, DeadLetterFile deadLetters) {
+        final String destinationTable = params.getDestinationTable();
+        final String sourceTable = params.getSourceTable();
+        final double readThroughputRatio = params.getReadThroughputRatio();
+        final double writeThroughputRatio = params.getWriteThroughputRatio();
+        final int maxWriteThreads = params.getMaxWriteThreads();
+        final boolean consistentScan = params.getConsistentScan();
+
         TableDescription readTableDescription = sourceClient.describeTable(
                 sourceTable).getTable();
         TableDescription writeTableDescription = destinationClient
                 .describeTable(destinationTable).getTable();
-        int numSegments = 10;
-        try {
-            numSegments = DynamoDBBootstrapWorker
-                    .getNumberOfSegments(readTableDescription);
-        } catch (NullReadCapacityException e) {
-            LOGGER.warn("Number of segments not specified - defaulting to "
-                    + numSegments, e);
-        }
+        final boolean readOnDemand = params.getOnDemand()
+                || DynamoDBBootstrapWorker.isOnDemand(readTableDescription);
+        final boolean writeOnDemand = params.getOnDemand()
+                || DynamoDBBootstrapWorker.isOnDemand(writeTableDescription);
+        int numSegments = getNumberOfSegments(readTableDescription,
+                readOnDemand);
 
-        final double readThroughput = calculateThroughput(readTableDescription,
-                readThroughputRatio, true);
-        final double writeThroughput = calculateThroughput(
+        final double readThroughput = readOnDemand ? params
+                .getInitialReadRate() : calculateThroughput(
+                readTableDescription, readThroughputRatio, true);
+        final double writeThroughput = writeOnDemand ? params
+                .getInitialWriteRate() : calculateThroughput(
                 writeTableDescription, writeThroughputRatio, false);
 
+        int readThreads = numSegments;
+        int writeThreads = maxWriteThreads;
+        TransferPlan plan = null;
+        if (params.getPlan()) {
+            LOGGER.info("Scanning sample pages to plan the transfer...");
+            TransferPlanner.Sample sample = TransferPlanner.sample(
+                    sourceClient, sourceTable, consistentScan,
+                    params.getPlanSamplePages(), new Random());
+            Long tableSizeBytes = readTableDescription.getTableSizeBytes();
+            // on-demand rates ramp up, so plan for where they are headed
+            plan = TransferPlanner.plan(sample, tableSizeBytes == null ? 0
+                    : tableSizeBytes, readOnDemand ? params.getMaxReadRate()
+                    : readThroughput, writeOnDemand ? params.getMaxWriteRate()
+                    : writeThroughput, consistentScan);
+            LOGGER.info(plan);
+            numSegments = plan.getNumSegments();
+            readThreads = plan.getReadThreads();
+            writeThreads = plan.getWriteThreads();
+        }
+
+        ScheduledExecutorService rateControl = null;
+        ObjectName controlName = null;
         try {
-            ExecutorService sourceExec = getSourceThreadPool(numSegments);
-            ExecutorService destinationExec = getDestinationThreadPool(maxWriteThreads);
+            ExecutorService sourceExec = getSourceThreadPool(readThreads,
+                    numSegments);
+            ExecutorService destinationExec = getDestinationThreadPool(writeThreads);
             DynamoDBConsumer consumer = new DynamoDBConsumer(destinationClient,
                     destinationTable, writeThroughput, destinationExec);
+            consumer.setCapacityEstimator(new CapacityEstimator(
+                    writeTableDescription));
+            final RetryPolicy retryPolicy = new RetryPolicy(
+                    params.getMaxRetries());
+            consumer.setRetryPolicy(retryPolicy);
+            consumer.setDeadLetterFile(deadLetters);
+            consumer.setMaxInFlightBatches(params.getMaxInFlightBatches());
 
             final DynamoDBBootstrapWorker worker = new DynamoDBBootstrapWorker(
                     sourceClient, readThroughput, sourceTable, sourceExec,
                     params.getSection(), params.getTotalSections(), numSegments, consistentScan);
+            if (plan != null) {
+                worker.setScanLimit(plan.getScanLimit());
+            }
+            worker.setReaderDispatch(params.getReaderDispatch());
+            worker.setRetryPolicy(retryPolicy);
+            if (params.getAdaptiveScanLimit()) {
+                worker.setAdaptiveScanLimit(params.getTargetPageBytes(),
+                        params.getTargetPageLatencyMillis());
+            }
+            if (params.getCompactItems()) {
+                worker.setCompactItemPool(new DirectBufferPool(params
+                        .getCompactPoolBytes()));
+            }
+
+            if (params.getDeadline() != null) {
+                final DeadlineController deadline = getDeadlineController(
+                        params, readTableDescription, writeTableDescription,
+                        worker, consumer, readOnDemand ? params.getMaxReadRate()
+                                : readThroughput, writeOnDemand ? params
+                                .getMaxWriteRate() : writeThroughput);
+                deadline.setWritePool((ThreadPoolExecutor) destinationExec,
+                        consumer, params.getMinWriteThreads(), writeThreads);
+                // start at the deadline's rates rather than the initial ones
+                deadline.run();
+                rateControl = Executors.newSingleThreadScheduledExecutor();
+                final long interval = BootstrapConstants.DEADLINE_ADJUST_INTERVAL_SECONDS;
+                rateControl.scheduleAtFixedRate(deadline, interval, interval,
+                        TimeUnit.SECONDS);
+            } else if (readOnDemand || writeOnDemand
+                    || params.getAutoscaleWriters()) {
+                rateControl = Executors.newSingleThreadScheduledExecutor();
+                final long interval = BootstrapConstants.ON_DEMAND_ADJUST_INTERVAL_SECONDS;
+                if (readOnDemand) {
+                    rateControl.scheduleAtFixedRate(new OnDemandRateController(
+                            "read", worker, worker.getReadStats(), params
+                                    .getMaxReadRate()), interval, interval,
+                            TimeUnit.SECONDS);
+                }
+                if (writeOnDemand) {
+                    rateControl.scheduleAtFixedRate(new OnDemandRateController(
+                            "write", consumer, consumer.getWriteStats(),
+                            params.getMaxWriteRate()), interval, interval,
+                            TimeUnit.SECONDS);
+                }
+                if (params.getAutoscaleWriters()) {
+                    final long poolInterval = BootstrapConstants.WRITE_POOL_ADJUST_INTERVAL_SECONDS;
+                    rateControl.scheduleAtFixedRate(new WritePoolAutoscaler(
+                            (ThreadPoolExecutor) destinationExec, consumer,
+                            consumer.getWriteStats(), params
+                                    .getMinWriteThreads(), writeThreads),
+                            poolInterval, poolInterval, TimeUnit.SECONDS);
+                }
+            }
+
+            if (params.getJmxControl()) {
+                try {
+                    controlName = new TransferControl(worker, consumer,
+                            (ThreadPoolExecutor) destinationExec).register();
+                    LOGGER.info("Transfer can be controlled over JMX as "
+                            + controlName);
+                } catch (JMException e) {
+                    LOGGER.warn("Could not register the JMX control", e);
+                }
+            }
+
+            AbstractLogConsumer target = consumer;
+            if (params.getInterleaveWrites()) {
+                target = new InterleavingLogConsumer(consumer,
+                        InterleavingLogConsumer
+                                .getPartitionKey(writeTableDescription),
+                        params.getInterleaveBuckets(),
+                        params.getInterleaveBufferItems());
+            }
+            if (params.getSpillDirectory() != null) {
+                final int scanLimit = plan != null ? plan.getScanLimit()
+                        : BootstrapConstants.SCAN_LIMIT;
+                target = new SpillingLogConsumer(target, new SpillBuffer(
+                        new File(params.getSpillDirectory()),
+                        params.getSpillSegmentBytes()),
+                        getMaxInFlightPages(writeThreads, scanLimit));
+            }
 
             LOGGER.info("Starting transfer...");
-            worker.pipe(consumer);
+            worker.pipe(target);
             LOGGER.info("Finished Copying Table.");
+            return true;
         } catch (ExecutionException e) {
             LOGGER.error("Encountered exception when executing transfer.", e);
+            return false;
         } catch (InterruptedException e) {
             LOGGER.error("Interrupted when executing transfer.", e);
             System.exit(1);
+            return false;
+        } catch (SectionOutOfRangeException e) {
+            LOGGER.error("Invalid section parameter", e);
+            return false;
+        } catch (IOException e) {
+            LOGGER.error("Could not create spill directory", e);
+            return false;
+        } finally {
+            if (rateControl != null) {
+                rateControl.shutdownNow();
+            }
+            if (controlName != null) {
+                TransferControl.unregister(controlName);
+            }
+        }
+    }
+
+    /**
+     * Returns the controller that keeps a copy on schedule for the deadline
+     * argument, estimating the capacity an item costs from the source
+     * table's size until items have been moved.
+     */
+    private static DeadlineController getDeadlineController(
+            CommandLineArgs params, TableDescription readTableDescription,
+            TableDescription writeTableDescription,
+            DynamoDBBootstrapWorker worker, DynamoDBConsumer consumer,
+            double readCeiling, double writeCeiling) {
+        final Long itemCount = readTableDescription.getItemCount();
+        final Long tableSizeBytes = readTableDescription.getTableSizeBytes();
+        final long totalItems = (itemCount == null ? 0 : itemCount)
+                / params.getTotalSections();
+        final int itemBytes = itemCount == null || itemCount == 0
+                || tableSizeBytes == null ? BootstrapConstants.WRITE_ITEM_SIZE
+                : (int) Math.max(1, tableSizeBytes / itemCount);
+        double readUnitsPerItem = itemBytes
+                / (double) BootstrapConstants.STRONGLY_CONSISTENT_READ_ITEM_SIZE;
+        if (!params.getConsistentScan()) {
+            readUnitsPerItem /= 2;
+        }
+        final double writeUnitsPerItem = CapacityEstimator
+                .writeUnits(itemBytes)
+                * (1 + new CapacityEstimator(writeTableDescription)
+                        .getIndexCount());
+        final long deadlineMillis = DeadlineController.parseDeadline(
+                params.getDeadline(), System.currentTimeMillis());
+        if (totalItems == 0) {
+            LOGGER.warn("The source table reports no items, which may be"
+                    + " hours out of date. The copy cannot be paced to "
+                    + new Date(deadlineMillis) + " and runs at its ceilings");
+        } else {
+            LOGGER.info("Keeping the copy of about " + totalItems
+                    + " items on schedule for " + new Date(deadlineMillis));
+        }
+        DeadlineController deadline = new DeadlineController(deadlineMillis,
+                totalItems);
+        deadline.addSide("read", worker, worker.getReadStats(), readCeiling,
+                readUnitsPerItem);
+        deadline.addSide("write", consumer, consumer.getWriteStats(),
+                writeCeiling, writeUnitsPerItem);
+        return deadline;
+    }
+
+    /**
+     * Returns the number of segments to scan a table with.
+     */
+    private static int getNumberOfSegments(TableDescription description,
+            boolean onDemand) {
+        int numSegments = 10;
+        if (onDemand) {
+            numSegments = DynamoDBBootstrapWorker
+                    .getNumberOfSegmentsForTableSize(description);
+        } else {
+            try {
+                numSegments = DynamoDBBootstrapWorker
+                        .getNumberOfSegments(description);
+            } catch (NullReadCapacityException e) {
+                LOGGER.warn("Number of segments not specified - defaulting to "
+                        + numSegments, e);
+            }
+        }
+        return numSegments;
+    }
+
+    /**
+     * Exports the table given by the sourceTable argument into the bucket
+     * files of the directory given by the exportDirectory argument.
+     *
+     * @return whether the table was exported.
+     */
+    private static boolean exportTable(CommandLineArgs params,
+            AmazonDynamoDBClient sourceClient) {
+        final String sourceTable = params.getSourceTable();
+        TableDescription readTableDescription = sourceClient.describeTable(
+                sourceTable).getTable();
+        final boolean readOnDemand = params.getOnDemand()
+                || DynamoDBBootstrapWorker.isOnDemand(readTableDescription);
+        final boolean sampling = params.getSampleFraction() > 0;
+        // a sample reads a few of many small segments
+        final int numSegments = sampling ? BootstrapConstants.SAMPLE_TOTAL_SEGMENTS
+                : getNumberOfSegments(readTableDescription, readOnDemand);
+        final double readThroughput = readOnDemand ? params
+                .getInitialReadRate() : calculateThroughput(
+                readTableDescription, params.getReadThroughputRatio(), true);
+
+        ScheduledExecutorService rateControl = null;
+        ExecutorService compressionPool = null;
+        try {
+            if (ExportManifest.COMPRESSION_GZIP.equals(params
+                    .getExportCompression())) {
+                compressionPool = Executors.newFixedThreadPool(params
+                        .getCompressionThreads());
+            }
+            PartitionedExportConsumer export = new PartitionedExportConsumer(
+                    new File(params.getExportDirectory()), sourceTable,
+                    InterleavingLogConsumer
+                            .getPartitionKey(readTableDescription),
+                    params.getExportBuckets(),
+                    getDestinationThreadPool(params.getMaxWriteThreads()),
+                    compressionPool, params.getCompressionThreads());
+            AbstractLogConsumer consumer = export;
+            final DynamoDBBootstrapWorker worker = new DynamoDBBootstrapWorker(
+                    sourceClient, readThroughput, sourceTable,
+                    getSourceThreadPool(numSegments), params.getSection(),
+                    params.getTotalSections(), numSegments,
+                    params.getConsistentScan());
+            worker.setRetryPolicy(new RetryPolicy(params.getMaxRetries()));
+            SamplingLogConsumer sample = null;
+            if (sampling) {
+                final Random random = params.getSampleSeed() == null ? new Random()
+                        : new Random(params.getSampleSeed());
+                final int[] segments = SamplingLogConsumer.sampleSegments(
+                        numSegments, (int) Math.round(params
+                                .getSampleFraction() * numSegments), random);
+                worker.setSegmentSample(segments);
+                sample = new SamplingLogConsumer(export, numSegments,
+                        segments, params.getSampleItemRate(), random.nextLong());
+                consumer = sample;
+            }
+            if (readOnDemand) {
+                final long interval = BootstrapConstants.ON_DEMAND_ADJUST_INTERVAL_SECONDS;
+                rateControl = Executors.newSingleThreadScheduledExecutor();
+                rateControl.scheduleAtFixedRate(new OnDemandRateController(
+                        "read", worker, worker.getReadStats(), params
+                                .getMaxReadRate()), interval, interval,
+                        TimeUnit.SECONDS);
+            }
+            LOGGER.info("Starting export...");
+            worker.pipe(consumer);
+            LOGGER.info("Finished exporting table.");
+            if (sample != null) {
+                LOGGER.info(sample.report());
+            }
+            return true;
+        } catch (ExecutionException e) {
+            LOGGER.error("Encountered exception when executing export.", e);
+            return false;
+        } catch (InterruptedException e) {
+            LOGGER.error("Interrupted when executing export.", e);
+            System.exit(1);
+            return false;
+        } catch (SectionOutOfRangeException e) {
+            LOGGER.error("Invalid section parameter", e);
+            return false;
+        } catch (IOException e) {
+            LOGGER.error("Could not create the export files", e);
+            return false;
+        } finally {
+            if (rateControl != null) {
+                rateControl.shutdownNow();
+            }
+            if (compressionPool != null) {
+                compressionPool.shutdownNow();
+            }
+        }
+    }
+
+    /**
+     * Scans the table given by the sourceTable argument and writes its profile
+     * to the file given by the profile argument.
+     */
+    private static void profileTable(CommandLineArgs params,
+            AmazonDynamoDBClient sourceClient) {
+        final String sourceTable = params.getSourceTable();
+        TableDescription readTableDescription = sourceClient.describeTable(
+                sourceTable).getTable();
+        final boolean readOnDemand = params.getOnDemand()
+                || DynamoDBBootstrapWorker.isOnDemand(readTableDescription);
+        final int numSegments = getNumberOfSegments(readTableDescription,
+                readOnDemand);
+        final double readThroughput = readOnDemand ? params
+                .getInitialReadRate() : calculateThroughput(
+                readTableDescription, params.getReadThroughputRatio(), true);
+        final int readThreads = Math.min(numSegments,
+                params.getMaxReadThreads());
+
+        ScheduledExecutorService rateControl = null;
+        try {
+            ProfilingLogConsumer profiler = new ProfilingLogConsumer(
+                    sourceTable,
+                    InterleavingLogConsumer
+                            .getPartitionKey(readTableDescription),
+                    readThreads);
+            final DynamoDBBootstrapWorker worker = new DynamoDBBootstrapWorker(
+                    sourceClient, readThroughput, sourceTable,
+                    getSourceThreadPool(readThreads, numSegments), params.getSection(),
+                    params.getTotalSections(), numSegments,
+                    params.getConsistentScan());
+            worker.setRetryPolicy(new RetryPolicy(params.getMaxRetries()));
+            // count every page on the scan thread that read it, into its
+            // segment's shard
+            worker.setReaderDispatch(true);
+            if (readOnDemand) {
+                final long interval = BootstrapConstants.ON_DEMAND_ADJUST_INTERVAL_SECONDS;
+                rateControl = Executors.newSingleThreadScheduledExecutor();
+                rateControl.scheduleAtFixedRate(new OnDemandRateController(
+                        "read", worker, worker.getReadStats(), params
+                                .getMaxReadRate()), interval, interval,
+                        TimeUnit.SECONDS);
+            }
+            LOGGER.info("Starting profile...");
+            worker.pipe(profiler);
+            final TableProfile profile = profiler.getProfile();
+            profile.write(new File(params.getProfile()));
+            LOGGER.info(profile.summary());
+            LOGGER.info("Wrote the profile to " + params.getProfile());
+        } catch (ExecutionException e) {
+            LOGGER.error("Encountered exception when profiling the table.", e);
+        } catch (InterruptedException e) {
+            LOGGER.error("Interrupted when profiling the table.", e);
+            System.exit(1);
         } catch (SectionOutOfRangeException e) {
             LOGGER.error("Invalid section parameter", e);
+        } catch (IOException e) {
+            LOGGER.error("Could not write the profile", e);
+        } finally {
+            if (rateControl != null) {
+                rateControl.shutdownNow();
+            }
+        }
+    }
+
+    /**
+     * Writes the buckets given by the importBuckets argument, or all of them,
+     * of the export in the directory given by the importDirectory argument to
+     * the table given by the destinationTable argument.
+     *
+     * @return whether the buckets were imported.
+     */
+    private static boolean importBuckets(CommandLineArgs params,
+            AmazonDynamoDBClient destinationClient, DeadLetterFile deadLetters) {
+        final BucketImportProvider provider;
+        try {
+            provider = new BucketImportProvider(new File(
+                    params.getImportDirectory()),
+                    params.getImportBuckets() == null ? null
+                            : BucketImportProvider.parseBuckets(params
+                                    .getImportBuckets()),
+                    Executors.newFixedThreadPool(params.getMaxReadThreads()));
+        } catch (IOException e) {
+            LOGGER.error("Could not read the export manifest", e);
+            return false;
+        }
+        return importItems(params, provider, destinationClient, deadLetters);
+    }
+
+    /**
+     * Writes the DynamoDB table export in the directory given by the
+     * importDynamoDBExport argument to the table given by the
+     * destinationTable argument.
+     *
+     * @return whether the export was imported.
+     */
+    private static boolean importDynamoDBExport(CommandLineArgs params,
+            AmazonDynamoDBClient destinationClient, DeadLetterFile deadLetters) {
+        final DynamoDBExportProvider provider;
+        try {
+            provider = new DynamoDBExportProvider(new File(
+                    params.getImportDynamoDBExport()),
+                    Executors.newFixedThreadPool(params.getMaxReadThreads()));
+        } catch (IOException e) {
+            LOGGER.error("Could not read the manifests of the DynamoDB export",
+                    e);
+            return false;
+        }
+        return importItems(params, provider, destinationClient, deadLetters);
+    }
+
+    /**
+     * Writes the items the provider reads to the table given by the
+     * destinationTable argument.
+     *
+     * @return whether every item was written.
+     */
+    private static boolean importItems(CommandLineArgs params,
+            AbstractLogProvider provider,
+            AmazonDynamoDBClient destinationClient, DeadLetterFile deadLetters) {
+        final String destinationTable = params.getDestinationTable();
+        TableDescription writeTableDescription = destinationClient
+                .describeTable(destinationTable).getTable();
+        final boolean writeOnDemand = params.getOnDemand()
+                || DynamoDBBootstrapWorker.isOnDemand(writeTableDescription);
+        final double writeThroughput = writeOnDemand ? params
+                .getInitialWriteRate() : calculateThroughput(
+                writeTableDescription, params.getWriteThroughputRatio(), false);
+
+        ScheduledExecutorService rateControl = null;
+        try {
+            DynamoDBConsumer consumer = new DynamoDBConsumer(destinationClient,
+                    destinationTable, writeThroughput,
+                    getDestinationThreadPool(params.getMaxWriteThreads()));
+            consumer.setCapacityEstimator(new CapacityEstimator(
+                    writeTableDescription));
+            consumer.setRetryPolicy(new RetryPolicy(params.getMaxRetries()));
+            consumer.setDeadLetterFile(deadLetters);
+            consumer.setMaxInFlightBatches(params.getMaxInFlightBatches());
+            if (writeOnDemand) {
+                final long interval = BootstrapConstants.ON_DEMAND_ADJUST_INTERVAL_SECONDS;
+                rateControl = Executors.newSingleThreadScheduledExecutor();
+                rateControl.scheduleAtFixedRate(new OnDemandRateController(
+                        "write", consumer, consumer.getWriteStats(), params
+                                .getMaxWriteRate()), interval, interval,
+                        TimeUnit.SECONDS);
+            }
+            LOGGER.info("Starting import...");
+            provider.pipe(consumer);
+            LOGGER.info("Finished importing.");
+            return true;
+        } catch (ExecutionException e) {
+            LOGGER.error("Encountered exception when executing import.", e);
+            return false;
+        } catch (InterruptedException e) {
+            LOGGER.error("Interrupted when executing import.", e);
+            System.exit(1);
+            return false;
+        } finally {
+            if (rateControl != null) {
+                rateControl.shutdownNow();
+            }
+        }
+    }
+
+    /**
+     * Transfers every table pair listed in the job file in this process,
+     * sharing the clients and thread pools between them.
+     *
+     * @return whether every job succeeded.
+     */
+    private static boolean runJobFile(CommandLineArgs params,
+            AmazonDynamoDBClient sourceClient,
+            AmazonDynamoDBClient destinationClient, DeadLetterFile deadLetters) {
+        List<TransferJob> jobs;
+        try {
+            jobs = TransferJob.parseJobFile(new File(params.getJobFile()),
+                    params.getReadThroughputRatio(),
+                    params.getWriteThroughputRatio(),
+                    params.getConsistentScan());
+        } catch (IOException e) {
+            LOGGER.error("Could not read job file " + params.getJobFile(), e);
+            System.exit(1);
+            return false;
+        }
+
+        ExecutorService sourceExec = getSourceThreadPool(params
+                .getMaxReadThreads());
+        ExecutorService destinationExec = getDestinationThreadPool(params
+                .getMaxWriteThreads());
+        CapacityScheduler scheduler = new CapacityScheduler(
+                params.getTotalReadCapacity(), params.getTotalWriteCapacity());
+        MultiTableTransfer transfer = new MultiTableTransfer(sourceClient,
+                destinationClient, sourceExec, destinationExec, scheduler,
+                params.getMaxConcurrentJobs());
+        transfer.setRetryPolicy(new RetryPolicy(params.getMaxRetries()));
+        transfer.setDeadLetterFile(deadLetters);
+        transfer.setMaxInFlightBatches(params.getMaxInFlightBatches());
+        try {
+            LOGGER.info("Starting transfer of " + jobs.size() + " tables...");
+            int failed = transfer.runAll(jobs);
+            transfer.shutdown();
+            LOGGER.info("Finished transferring tables, " + failed
+                    + " of " + jobs.size() + " failed.");
+            return failed == 0;
+        } catch (InterruptedException e) {
+            LOGGER.error("Interrupted when executing transfer.", e);
+            System.exit(1);
+            return false;
+        } finally {
+            sourceExec.shutdown();
+            destinationExec.shutdown();
+        }
+    }
+
+    /**
+     * Runs jobs from the daemonSpoolDirectory and daemonPort arguments on
+     * shared clients and thread pools until told to shut down.
+     */
+    private static void runDaemon(CommandLineArgs params,
+            AmazonDynamoDBClient sourceClient,
+            AmazonDynamoDBClient destinationClient, DeadLetterFile deadLetters) {
+        ExecutorService sourceExec = getSourceThreadPool(params
+                .getMaxReadThreads());
+        ExecutorService destinationExec = getDestinationThreadPool(params
+                .getMaxWriteThreads());
+        CapacityScheduler scheduler = new CapacityScheduler(
+                params.getTotalReadCapacity(), params.getTotalWriteCapacity());
+        MultiTableTransfer transfer = new MultiTableTransfer(sourceClient,
+                destinationClient, sourceExec, destinationExec, scheduler,
+                params.getMaxConcurrentJobs());
+        transfer.setRetryPolicy(new RetryPolicy(params.getMaxRetries()));
+        transfer.setDeadLetterFile(deadLetters);
+        transfer.setMaxInFlightBatches(params.getMaxInFlightBatches());
+        transfer.setDescriptionCacheMillis(BootstrapConstants.DAEMON_DESCRIPTION_CACHE_MILLIS);
+        TransferDaemon daemon = new TransferDaemon(transfer,
+                params.getReadThroughputRatio(),
+                params.getWriteThroughputRatio(), params.getConsistentScan());
+        if (params.getDaemonSpoolDirectory() != null) {
+            daemon.setSpoolDirectory(new File(params.getDaemonSpoolDirectory()));
+        }
+        if (params.getDaemonPort() != null) {
+            daemon.setPort(params.getDaemonPort());
+        }
+        try {
+            daemon.start();
+            daemon.awaitStop();
+        } catch (IOException e) {
+            LOGGER.error("Could not start the daemon", e);
+            System.exit(1);
+        } catch (InterruptedException e) {
+            LOGGER.error("Interrupted when running the daemon.", e);
+            System.exit(1);
+        } finally {
+            sourceExec.shutdown();
+            destinationExec.shutdown();
         }
     }
 
+    /**
+     * Writes the items of the dead-letter file given by the replayDeadLetters
+     * argument to the tables they were meant for. Items that fail again go to
+     * the file given by the deadLetterFile argument, if any.
+     */
+    private static void replayDeadLetters(CommandLineArgs params,
+            AmazonDynamoDBClient destinationClient, DeadLetterFile deadLetters) {
+        final File file = new File(params.getReplayDeadLetters());
+        List<DeadLetterFile.Entry> entries;
+        try {
+            entries = DeadLetterFile.read(file);
+        } catch (IOException e) {
+            LOGGER.error("Could not read dead-letter file " + file, e);
+            System.exit(1);
+            return;
+        }
+        Map<String, List<Map<String, AttributeValue>>> itemsByTable = new LinkedHashMap<String, List<Map<String, AttributeValue>>>();
+        for (DeadLetterFile.Entry entry : entries) {
+            List<Map<String, AttributeValue>> items = itemsByTable.get(entry
+                    .getTableName());
+            if (items == null) {
+                items = new ArrayList<Map<String, AttributeValue>>();
+                itemsByTable.put(entry.getTableName(), items);
+            }
+            items.add(entry.getItem());
+        }
+
+        final RetryPolicy retryPolicy = new RetryPolicy(params.getMaxRetries());
+        for (Map.Entry<String, List<Map<String, AttributeValue>>> table : itemsByTable
+                .entrySet()) {
+            TableDescription description = destinationClient.describeTable(
+                    table.getKey()).getTable();
+            double writeThroughput = calculateThroughput(description,
+                    params.getWriteThroughputRatio(), false);
+            if (params.getOnDemand()
+                    || DynamoDBBootstrapWorker.isOnDemand(description)
+                    || writeThroughput <= 0) {
+                writeThroughput = params.getInitialWriteRate();
+            }
+            DynamoDBConsumer consumer = new DynamoDBConsumer(
+                    destinationClient, table.getKey(), writeThroughput,
+                    getDestinationThreadPool(params.getMaxWriteThreads()));
+            consumer.setCapacityEstimator(new CapacityEstimator(description));
+            consumer.setRetryPolicy(retryPolicy);
+            consumer.setDeadLetterFile(deadLetters);
+            consumer.setMaxInFlightBatches(params.getMaxInFlightBatches());
+            final List<Map<String, AttributeValue>> items = table.getValue();
+            LOGGER.info("Writing " + items.size() + " dead-lettered items to "
+                    + table.getKey() + "...");
+            final int batchSize = BootstrapConstants.MAX_BATCH_SIZE_WRITE_ITEM;
+            for (int from = 0; from < items.size(); from += batchSize) {
+                consumer.writeItems(items.subList(from,
+                        Math.min(items.size(), from + batchSize)), null);
+            }
+            consumer.shutdown(true);
+        }
+        LOGGER.info("Finished writing " + entries.size()
+                + " dead-lettered items.");
+    }
+
     /**
      * returns the provisioned throughput based on the input ratio and the
      * specified DynamoDB table provisioned throughput.
      */
-    private static double calculateThroughput(
+    static double calculateThroughput(
             TableDescription tableDescription, double throughputRatio,
             boolean read) {
-        if (read) {
-            return tableDescription.getProvisionedThroughput()
-                    .getReadCapacityUnits() * throughputRatio;
+        if (tableDescription.getProvisionedThroughput() == null) {
+            return 0;
         }
-        return tableDescription.getProvisionedThroughput()
-                .getWriteCapacityUnits() * throughputRatio;
+        Long capacity = read ? tableDescription.getProvisionedThroughput()
+                .getReadCapacityUnits() : tableDescription
+                .getProvisionedThroughput().getWriteCapacityUnits();
+        return capacity == null ? 0 : capacity * throughputRatio;
+    }
+
+    /**
+     * Returns how many pages to keep queued or being written so that the
+     * destination pool's threads and queue, one batch each per thread, stay
+     * full. At least two, so one page is written while the next is handed on.
+     */
+    static int getMaxInFlightPages(int writeThreads, int scanLimit) {
+        final int batchesPerPage = (int) Math.ceil(scanLimit
+                / (double) BootstrapConstants.MAX_BATCH_SIZE_WRITE_ITEM);
+        return Math.max(2, (int) Math.ceil(2.0 * writeThreads / batchesPerPage));
     }
 
     /**
      * Returns the thread pool for the destination DynamoDB table.
      */
-    private static ExecutorService getDestinationThreadPool(int maxWriteThreads) {
+    static ExecutorService getDestinationThreadPool(int maxWriteThreads) {
         int corePoolSize = BootstrapConstants.DYNAMODB_CLIENT_EXECUTOR_CORE_POOL_SIZE;
         if (corePoolSize > maxWriteThreads) {
             corePoolSize = maxWriteThreads - 1;
@@ -155,17 +894,25 @@ public class CommandLineInterface {
     /**
      * Returns the thread pool for the source DynamoDB table.
      */
-    private static ExecutorService getSourceThreadPool(int numSegments) {
-        int corePoolSize = BootstrapConstants.DYNAMODB_CLIENT_EXECUTOR_CORE_POOL_SIZE;
-        if (corePoolSize > numSegments) {
-            corePoolSize = numSegments - 1;
-        }
+    static ExecutorService getSourceThreadPool(int numSegments) {
+        return getSourceThreadPool(numSegments, numSegments);
+    }
 
+    /**
+     * Returns the thread pool for the source DynamoDB table, with fewer
+     * threads than segments but room to queue every segment. Since the queue
+     * never fills, the pool would not grow past its core size, so all
+     * maxReadThreads threads are core threads that time out when idle.
+     */
+    static ExecutorService getSourceThreadPool(int maxReadThreads,
+            int numSegments) {
+        final int threads = Math.max(1, maxReadThreads);
         final long keepAlive = BootstrapConstants.DYNAMODB_CLIENT_EXECUTOR_KEEP_ALIVE;
-        ExecutorService exec = new ThreadPoolExecutor(corePoolSize,
-                numSegments, keepAlive, TimeUnit.MILLISECONDS,
-                new ArrayBlockingQueue<Runnable>(numSegments),
+        ThreadPoolExecutor exec = new ThreadPoolExecutor(threads, threads,
+                keepAlive, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(Math.max(1, numSegments)),
                 new ThreadPoolExecutor.CallerRunsPolicy());
+        exec.allowCoreThreadTimeOut(true);
         return exec;
     }
 
@@ -0,0 +1,331 @@
+/*
+ * Copyright 2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.amazonaws.dynamodb.bootstrap;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.amazonaws.dynamodb.bootstrap.constants.BootstrapConstants;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+
+/**
+ * A compact binary encoding of DynamoDB items, used to hold items outside the
+ * heap. An item is a varint attribute count followed by (name, value) pairs;
+ * strings and binaries are a varint length followed by their bytes, and every
+ * value starts with a one byte type tag.
+ */
+public class CompactItemCodec {
+
+    private static final byte TYPE_S = 1;
+    private static final byte TYPE_N = 2;
+    private static final byte TYPE_B = 3;
+    private static final byte TYPE_SS = 4;
+    private static final byte TYPE_NS = 5;
+    private static final byte TYPE_BS = 6;
+    private static final byte TYPE_M = 7;
+    private static final byte TYPE_L = 8;
+    private static final byte TYPE_NULL = 9;
+    private static final byte TYPE_BOOL = 10;
+
+    /**
+     * Returns the number of bytes encode() will write for the item.
+     */
+    public static int encodedSize(Map<String, AttributeValue> item) {
+        int size = varintSize(item.size());
+        for (Map.Entry<String, AttributeValue> entry : item.entrySet()) {
+            size += stringSize(entry.getKey());
+            size += valueSize(entry.getValue());
+        }
+        return size;
+    }
+
+    /**
+     * Writes the item at the buffer's position, advancing it.
+     */
+    public static void encode(Map<String, AttributeValue> item, ByteBuffer out) {
+        writeVarint(item.size(), out);
+        for (Map.Entry<String, AttributeValue> entry : item.entrySet()) {
+            writeString(entry.getKey(), out);
+            writeValue(entry.getValue(), out);
+        }
+    }
+
+    /**
+     * Reads an item at the buffer's position, advancing it.
+     */
+    public static Map<String, AttributeValue> decode(ByteBuffer in) {
+        final int count = readVarint(in);
+        // sized so that count entries fit without rehashing
+        Map<String, AttributeValue> item = new HashMap<String, AttributeValue>(
+                count * 4 / 3 + 1);
+        for (int i = 0; i < count; i++) {
+            String name = readString(in);
+            item.put(name, readValue(in));
+        }
+        return item;
+    }
+
+    private static int valueSize(AttributeValue value) {
+        int size = 1;
+        if (value.getS() != null) {
+            size += stringSize(value.getS());
+        } else if (value.getN() != null) {
+            size += stringSize(value.getN());
+        } else if (value.getB() != null) {
+            size += binarySize(value.getB());
+        } else if (value.getSS() != null) {
+            size += stringsSize(value.getSS());
+        } else if (value.getNS() != null) {
+            size += stringsSize(value.getNS());
+        } else if (value.getBS() != null) {
+            size += varintSize(value.getBS().size());
+            for (ByteBuffer b : value.getBS()) {
+                size += binarySize(b);
+            }
+        } else if (value.getM() != null) {
+            size += encodedSize(value.getM());
+        } else if (value.getL() != null) {
+            size += varintSize(value.getL().size());
+            for (AttributeValue element : value.getL()) {
+                size += valueSize(element);
+            }
+        } else if (value.getNULL() != null || value.getBOOL() != null) {
+            size += 1;
+        }
+        return size;
+    }
+
+    private static void writeValue(AttributeValue value, ByteBuffer out) {
+        if (value.getS() != null) {
+            out.put(TYPE_S);
+            writeString(value.getS(), out);
+        } else if (value.getN() != null) {
+            out.put(TYPE_N);
+            writeString(value.getN(), out);
+        } else if (value.getB() != null) {
+            out.put(TYPE_B);
+            writeBinary(value.getB(), out);
+        } else if (value.getSS() != null) {
+            out.put(TYPE_SS);
+            writeStrings(value.getSS(), out);
+        } else if (value.getNS() != null) {
+            out.put(TYPE_NS);
+            writeStrings(value.getNS(), out);
+        } else if (value.getBS() != null) {
+            out.put(TYPE_BS);
+            writeVarint(value.getBS().size(), out);
+            for (ByteBuffer b : value.getBS()) {
+                writeBinary(b, out);
+            }
+        } else if (value.getM() != null) {
+            out.put(TYPE_M);
+            encode(value.getM(), out);
+        } else if (value.getL() != null) {
+            out.put(TYPE_L);
+            writeVarint(value.getL().size(), out);
+            for (AttributeValue element : value.getL()) {
+                writeValue(element, out);
+            }
+        } else if (value.getNULL() != null) {
+            out.put(TYPE_NULL);
+            out.put((byte) (value.getNULL() ? 1 : 0));
+        } else if (value.getBOOL() != null) {
+            out.put(TYPE_BOOL);
+            out.put((byte) (value.getBOOL() ? 1 : 0));
+        } else {
+            // an empty attribute value, which DynamoDB would reject anyway
+            out.put((byte) 0);
+        }
+    }
+
+    private static AttributeValue readValue(ByteBuffer in) {
+        final byte type = in.get();
+        AttributeValue value = new AttributeValue();
+        switch (type) {
+        case TYPE_S:
+            value.setS(readString(in));
+            break;
+        case TYPE_N:
+            value.setN(readString(in));
+            break;
+        case TYPE_B:
+            value.setB(readBinary(in));
+            break;
+        case TYPE_SS:
+            value.setSS(readStrings(in));
+            break;
+        case TYPE_NS:
+            value.setNS(readStrings(in));
+            break;
+        case TYPE_BS: {
+            final int count = readVarint(in);
+            List<ByteBuffer> bs = new ArrayList<ByteBuffer>(count);
+            for (int i = 0; i < count; i++) {
+                bs.add(readBinary(in));
+            }
+            value.setBS(bs);
+            break;
+        }
+        case TYPE_M:
+            value.setM(decode(in));
+            break;
+        case TYPE_L: {
+            final int count = readVarint(in);
+            List<AttributeValue> list = new ArrayList<AttributeValue>(count);
+            for (int i = 0; i < count; i++) {
+                list.add(readValue(in));
+            }
+            value.setL(list);
+            break;
+        }
+        case TYPE_NULL:
+            value.setNULL(in.get() != 0);
+            break;
+        case TYPE_BOOL:
+            value.setBOOL(in.get() != 0);
+            break;
+        default:
+            break;
+        }
+        return value;
+    }
+
+    private static int stringsSize(List<String> strings) {
+        int size = varintSize(strings.size());
+        for (String s : strings) {
+            size += stringSize(s);
+        }
+        return size;
+    }
+
+    private static void writeStrings(List<String> strings, ByteBuffer out) {
+        writeVarint(strings.size(), out);
+        for (String s : strings) {
+            writeString(s, out);
+        }
+    }
+
+    private static List<String> readStrings(ByteBuffer in) {
+        final int count = readVarint(in);
+        List<String> strings = new ArrayList<String>(count);
+        for (int i = 0; i < count; i++) {
+            strings.add(readString(in));
+        }
+        return strings;
+    }
+
+    private static int binarySize(ByteBuffer b) {
+        return varintSize(b.remaining()) + b.remaining();
+    }
+
+    private static void writeBinary(ByteBuffer b, ByteBuffer out) {
+        writeVarint(b.remaining(), out);
+        out.put(b.duplicate());
+    }
+
+    private static ByteBuffer readBinary(ByteBuffer in) {
+        byte[] bytes = new byte[readVarint(in)];
+        in.get(bytes);
+        return ByteBuffer.wrap(bytes);
+    }
+
+    private static int stringSize(String s) {
+        final int length = utf8Length(s);
+        return varintSize(length) + length;
+    }
+
+    /**
+     * Writes a string as UTF-8 straight into the buffer, without the byte
+     * array String.getBytes would allocate.
+     */
+    private static void writeString(String s, ByteBuffer out) {
+        writeVarint(utf8Length(s), out);
+        final int length = s.length();
+        for (int i = 0; i < length; i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                out.put((byte) c);
+            } else if (c < 0x800) {
+                out.put((byte) (0xC0 | (c >> 6)));
+                out.put((byte) (0x80 | (c & 0x3F)));
+            } else if (Character.isHighSurrogate(c) && i + 1 < length
+                    && Character.isLowSurrogate(s.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, s.charAt(++i));
+                out.put((byte) (0xF0 | (codePoint >> 18)));
+                out.put((byte) (0x80 | ((codePoint >> 12) & 0x3F)));
+                out.put((byte) (0x80 | ((codePoint >> 6) & 0x3F)));
+                out.put((byte) (0x80 | (codePoint & 0x3F)));
+            } else if (Character.isSurrogate(c)) {
+                // unpaired surrogate, replaced like String.getBytes does
+                out.put((byte) '?');
+            } else {
+                out.put((byte) (0xE0 | (c >> 12)));
+                out.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+                out.put((byte) (0x80 | (c & 0x3F)));
+            }
+        }
+    }
+
+    private static String readString(ByteBuffer in) {
+        byte[] bytes = new byte[readVarint(in)];
+        in.get(bytes);
+        return new String(bytes, BootstrapConstants.UTF8);
+    }
+
+    private static int utf8Length(String s) {
+        final int length = s.length();
+        int bytes = 0;
+        for (int i = 0; i < length; i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                bytes += 1;
+            } else if (c < 0x800) {
+                bytes += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < length
+                    && Character.isLowSurrogate(s.charAt(i + 1))) {
+                bytes += 4;
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                bytes += 1;
+            } else {
+                bytes += 3;
+            }
+        }
+        return bytes;
+    }
+
+    private static int varintSize(int value) {
+        int size = 1;
+        while ((value & ~0x7F) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    private static void writeVarint(int value, ByteBuffer out) {
+        while ((value & ~0x7F) != 0) {
+            out.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte) value);
+    }
+
+    private static int readVarint(ByteBuffer in) {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = in.get();
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+}
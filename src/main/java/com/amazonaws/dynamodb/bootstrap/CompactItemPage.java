@@ -0,0 +1,138 @@
+/*
+ * Copyright 2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.amazonaws.dynamodb.bootstrap;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.BatchWriteItemRequest;
+import com.amazonaws.services.dynamodbv2.model.PutRequest;
+import com.amazonaws.services.dynamodbv2.model.ReturnConsumedCapacity;
+import com.amazonaws.services.dynamodbv2.model.WriteRequest;
+
+/**
+ * A page of scanned items held in a single pooled direct buffer, encoded with
+ * CompactItemCodec, instead of as AttributeValue object graphs on the heap.
+ * Items are only decoded again when a batch is about to be written. The page
+ * is reference counted: every batch written from it holds a reference, and
+ * the buffer goes back to the pool once the last one is released.
+ */
+public class CompactItemPage {
+
+    private final DirectBufferPool pool;
+    private final int[] offsets;
+    private final AtomicInteger references = new AtomicInteger(1);
+    private volatile ByteBuffer buffer;
+
+    private CompactItemPage(DirectBufferPool pool, ByteBuffer buffer,
+            int[] offsets) {
+        this.pool = pool;
+        this.buffer = buffer;
+        this.offsets = offsets;
+    }
+
+    /**
+     * Encodes the items into a buffer taken from the pool. The returned page
+     * holds one reference.
+     */
+    public static CompactItemPage encode(List<Map<String, AttributeValue>> items,
+            DirectBufferPool pool) {
+        final int count = items.size();
+        int[] offsets = new int[count + 1];
+        int size = 0;
+        for (int i = 0; i < count; i++) {
+            offsets[i] = size;
+            size += CompactItemCodec.encodedSize(items.get(i));
+        }
+        offsets[count] = size;
+        ByteBuffer buffer = pool.acquire(size);
+        for (Map<String, AttributeValue> item : items) {
+            CompactItemCodec.encode(item, buffer);
+        }
+        return new CompactItemPage(pool, buffer, offsets);
+    }
+
+    public int getItemCount() {
+        return offsets.length - 1;
+    }
+
+    /**
+     * Returns the number of bytes the encoded items take.
+     */
+    public int getEncodedBytes() {
+        return offsets[offsets.length - 1];
+    }
+
+    /**
+     * Decodes the item at the given index.
+     */
+    public Map<String, AttributeValue> getItem(int index) {
+        ByteBuffer view = currentBuffer().duplicate();
+        view.limit(offsets[index + 1]);
+        view.position(offsets[index]);
+        return CompactItemCodec.decode(view);
+    }
+
+    /**
+     * Decodes the items in [from, to).
+     */
+    public List<Map<String, AttributeValue>> getItems(int from, int to) {
+        List<Map<String, AttributeValue>> items = new ArrayList<Map<String, AttributeValue>>(
+                to - from);
+        for (int i = from; i < to; i++) {
+            items.add(getItem(i));
+        }
+        return items;
+    }
+
+    /**
+     * Decodes the items in [from, to) into a batch write of put requests.
+     */
+    public BatchWriteItemRequest toBatchWriteItemRequest(int from, int to,
+            String tableName) {
+        List<WriteRequest> writeRequests = new ArrayList<WriteRequest>(to
+                - from);
+        for (int i = from; i < to; i++) {
+            writeRequests.add(new WriteRequest(new PutRequest(getItem(i))));
+        }
+        return new BatchWriteItemRequest().withReturnConsumedCapacity(
+                ReturnConsumedCapacity.TOTAL).addRequestItemsEntry(tableName,
+                writeRequests);
+    }
+
+    /**
+     * Adds references for holders that will each call release().
+     */
+    public void retain(int count) {
+        references.addAndGet(count);
+    }
+
+    /**
+     * Drops one reference, giving the buffer back to the pool after the last.
+     */
+    public void release() {
+        final int remaining = references.decrementAndGet();
+        if (remaining == 0) {
+            ByteBuffer released = buffer;
+            buffer = null;
+            pool.release(released);
+        } else if (remaining < 0) {
+            throw new IllegalStateException("Compact item page released too often");
+        }
+    }
+
+    private ByteBuffer currentBuffer() {
+        ByteBuffer current = buffer;
+        if (current == null) {
+            throw new IllegalStateException("Compact item page already released");
+        }
+        return current;
+    }
+}
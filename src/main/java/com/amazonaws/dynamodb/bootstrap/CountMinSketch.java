@@ -0,0 +1,92 @@
+/*
+ * Copyright 2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.amazonaws.dynamodb.bootstrap;
+
+/**
+ * A count-min sketch, which estimates how much was counted for each value of
+ * a stream in depth rows of width counters. A value's 64-bit hash picks one
+ * counter per row; counting adds to all of them and the estimate is the
+ * smallest. Estimates are never too low, and too high by at most e / width
+ * of the total with probability 1 - e^-depth. Sketches of the same size merge
+ * by adding their counters. Not thread safe.
+ */
+public class CountMinSketch {
+
+    private final int depth;
+    private final int width;
+    private final long[] counters;
+    private long total;
+
+    public CountMinSketch(int depth, int width) {
+        if (depth < 1 || width < 1) {
+            throw new IllegalArgumentException("Invalid size " + depth + "x"
+                    + width);
+        }
+        this.depth = depth;
+        this.width = width;
+        this.counters = new long[depth * width];
+    }
+
+    /**
+     * Adds count to the value with the given hash, which must be well mixed.
+     */
+    public void add(long hash, long count) {
+        for (int row = 0; row < depth; row++) {
+            counters[row * width + column(hash, row)] += count;
+        }
+        total += count;
+    }
+
+    /**
+     * Returns the estimated count of the value with the given hash.
+     */
+    public long estimate(long hash) {
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            estimate = Math.min(estimate, counters[row * width
+                    + column(hash, row)]);
+        }
+        return estimate;
+    }
+
+    /**
+     * Adds the counts of another sketch of the same size.
+     */
+    public void merge(CountMinSketch other) {
+        if (other.depth != depth || other.width != width) {
+            throw new IllegalArgumentException("Cannot merge a sketch of "
+                    + other.depth + "x" + other.width + " into " + depth + "x"
+                    + width);
+        }
+        for (int i = 0; i < counters.length; i++) {
+            counters[i] += other.counters[i];
+        }
+        total += other.total;
+    }
+
+    /**
+     * Returns the sum of all counts.
+     */
+    public long getTotal() {
+        return total;
+    }
+
+    /**
+     * Returns how much an estimate may be too high, with high probability.
+     */
+    public double getErrorBound() {
+        return Math.E / width * total;
+    }
+
+    /**
+     * Picks the counter of a row from the two halves of the hash, as
+     * h1 + row * h2.
+     */
+    private int column(long hash, int row) {
+        final int combined = (int) hash + row * (int) (hash >>> 32);
+        return (combined & Integer.MAX_VALUE) % width;
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright 2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.amazonaws.dynamodb.bootstrap;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+/**
+ * A file of the items that could not be written, one JSON object per line
+ * with the destination table, the reason, the number of attempts made and
+ * the item in DynamoDB JSON:
+ *
+ * <pre>
+ * {"table":"t","reason":"ValidationException: ...","attempts":1,"item":{"id":{"S":"a"}}}
+ * </pre>
+ *
+ * Entries are flushed as they are written, so they survive the process being
+ * killed, and can be read back with read() to write the items again once the
+ * cause has been fixed. May be shared between threads.
+ */
+public class DeadLetterFile implements Closeable {
+
+    private static final String TABLE = "table";
+    private static final String REASON = "reason";
+    private static final String ATTEMPTS = "attempts";
+    private static final String ITEM = "item";
+
+    private final File file;
+    private final JsonGenerator generator;
+    private long count;
+
+    /**
+     * One item that could not be written.
+     */
+    public static class Entry {
+        private final String tableName;
+        private final String reason;
+        private final int attempts;
+        private final Map<String, AttributeValue> item;
+
+        public Entry(String tableName, String reason, int attempts,
+                Map<String, AttributeValue> item) {
+            this.tableName = tableName;
+            this.reason = reason;
+            this.attempts = attempts;
+            this.item = item;
+        }
+
+        public String getTableName() {
+            return tableName;
+        }
+
+        public String getReason() {
+            return reason;
+        }
+
+        public int getAttempts() {
+            return attempts;
+        }
+
+        public Map<String, AttributeValue> getItem() {
+            return item;
+        }
+    }
+
+    /**
+     * Opens the file for appending, creating it if it does not exist.
+     */
+    public DeadLetterFile(File file) throws IOException {
+        this.file = file;
+        this.generator = DynamoDBJsonCodec
+                .createGenerator(new BufferedOutputStream(new FileOutputStream(
+                        file, true)));
+        // end every entry with a newline instead, so appending to an
+        // existing file keeps one entry per line
+        generator.setRootValueSeparator(null);
+    }
+
+    /**
+     * Appends the item with the reason it could not be written.
+     */
+    public synchronized void write(String tableName,
+            Map<String, AttributeValue> item, String reason, int attempts)
+            throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField(TABLE, tableName);
+        generator.writeStringField(REASON, reason);
+        generator.writeNumberField(ATTEMPTS, attempts);
+        generator.writeFieldName(ITEM);
+        DynamoDBJsonCodec.writeItem(generator, item);
+        generator.writeEndObject();
+        generator.writeRaw('\n');
+        generator.flush();
+        count++;
+    }
+
+    /**
+     * Returns the number of items written to the file since it was opened.
+     */
+    public synchronized long getCount() {
+        return count;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        generator.close();
+    }
+
+    /**
+     * Reads every entry of a dead-letter file.
+     */
+    public static List<Entry> read(File file) throws IOException {
+        List<Entry> entries = new ArrayList<Entry>();
+        InputStream in = new BufferedInputStream(new FileInputStream(file));
+        try {
+            JsonParser parser = DynamoDBJsonCodec.createParser(in);
+            JsonToken token;
+            while ((token = parser.nextToken()) != null) {
+                if (token != JsonToken.START_OBJECT) {
+                    throw new JsonParseException("Expected an entry but got "
+                            + token, parser.getCurrentLocation());
+                }
+                entries.add(readEntry(parser));
+            }
+        } finally {
+            in.close();
+        }
+        return entries;
+    }
+
+    private static Entry readEntry(JsonParser parser) throws IOException {
+        String tableName = null;
+        String reason = null;
+        int attempts = 0;
+        Map<String, AttributeValue> item = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            final String name = parser.getCurrentName();
+            final JsonToken value = parser.nextToken();
+            if (TABLE.equals(name)) {
+                tableName = parser.getText();
+            } else if (REASON.equals(name)) {
+                reason = parser.getText();
+            } else if (ATTEMPTS.equals(name)) {
+                attempts = parser.getIntValue();
+            } else if (ITEM.equals(name) && value == JsonToken.START_OBJECT) {
+                item = DynamoDBJsonCodec.readAttributeMap(parser);
+            } else {
+                parser.skipChildren();
+            }
+        }
+        if (tableName == null || item == null) {
+            throw new JsonParseException("Entry without a table or item",
+                    parser.getCurrentLocation());
+        }
+        return new Entry(tableName, reason, attempts, item);
+    }
+}
@@ -0,0 +1,309 @@
+/*
+ * Copyright 2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.amazonaws.dynamodb.bootstrap;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ThreadPoolExecutor;
+
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+
+/**
+ * Runs a transfer as gently as a deadline allows. Run periodically, it takes
+ * the items each side (the scan and the writes) still has to move, the time
+ * left and the capacity units an item has cost so far, and sets every rate
+ * limit to what finishes just before the deadline, never above the side's
+ * ceiling. The write pool, if given, is sized for the write rate it sets. As
+ * soon as a side cannot finish in time even at its ceiling, it warns with
+ * the projected finish, and again when the transfer is back on schedule.
+ * Table item counts are only refreshed every few hours, so a side that has
+ * no estimate to go by, or has already moved more items than estimated,
+ * runs at its ceiling with a warning that its finish cannot be predicted.
+ */
+public class DeadlineController implements Runnable {
+
+    /**
+     * Logger for the DeadlineController.
+     */
+    private static final Logger LOGGER = LogManager
+            .getLogger(DeadlineController.class);
+
+    /**
+     * Rate on top of the one that would finish exactly at the deadline, so
+     * that stalls and the lag of the writes behind the scan are made up.
+     */
+    private static final double RATE_HEADROOM = 1.2;
+
+    /**
+     * Lowest rate ever set, as RateLimiters need a positive rate.
+     */
+    private static final double MIN_RATE = 1.0;
+
+    private final long deadlineMillis;
+    private final long totalItems;
+    private final List<Side> sides = new ArrayList<Side>();
+    private ThreadPoolExecutor writePool;
+    private Side writeSide;
+    private int minWriteThreads;
+    private int maxWriteThreads;
+    private OperationStats.Snapshot lastWrites;
+    private boolean late;
+
+    /**
+     * The scan or the writes: a rate limit to set and the calls it makes.
+     */
+    private static class Side {
+        private final String name;
+        private final RateLimitAdjustable target;
+        private final OperationStats stats;
+        private final double ceiling;
+        private final double estimatedUnitsPerItem;
+        private boolean unreliable;
+
+        Side(String name, RateLimitAdjustable target, OperationStats stats,
+                double ceiling, double estimatedUnitsPerItem) {
+            this.name = name;
+            this.target = target;
+            this.stats = stats;
+            this.ceiling = ceiling;
+            this.estimatedUnitsPerItem = estimatedUnitsPerItem;
+        }
+
+        /**
+         * Returns the units an item has cost so far, or the estimate before
+         * any item has been moved.
+         */
+        double unitsPerItem(OperationStats.Snapshot total) {
+            return total.getItems() == 0 ? estimatedUnitsPerItem : total
+                    .getConsumedCapacity() / total.getItems();
+        }
+    }
+
+    /**
+     * @param deadlineMillis
+     *            when the transfer must be finished, in milliseconds since
+     *            the epoch.
+     * @param totalItems
+     *            estimated number of items to move, e.g. the source table's
+     *            item count, or 0 if unknown.
+     */
+    public DeadlineController(long deadlineMillis, long totalItems) {
+        this.deadlineMillis = deadlineMillis;
+        this.totalItems = totalItems;
+    }
+
+    /**
+     * Adds a side of the transfer whose rate limit to set.
+     *
+     * @param name
+     *            "read" or "write", for logging.
+     * @param target
+     *            the reader or writer whose rate limit is set.
+     * @param stats
+     *            the stats of the calls made by the target.
+     * @param ceiling
+     *            the highest rate to set, in capacity units per second.
+     * @param estimatedUnitsPerItem
+     *            the capacity units an item is expected to cost, used until
+     *            items have been moved.
+     */
+    public void addSide(String name, RateLimitAdjustable target,
+            OperationStats stats, double ceiling, double estimatedUnitsPerItem) {
+        sides.add(new Side(name, target, stats, ceiling,
+                estimatedUnitsPerItem));
+    }
+
+    /**
+     * Makes the controller size the write pool for the write rate it sets.
+     * Must be called after the write side has been added.
+     */
+    public void setWritePool(ThreadPoolExecutor writePool,
+            RateLimitAdjustable writer, int minThreads, int maxThreads) {
+        for (Side side : sides) {
+            if (side.target == writer) {
+                writeSide = side;
+            }
+        }
+        if (writeSide == null) {
+            throw new IllegalArgumentException(
+                    "The writer has not been added as a side");
+        }
+        this.writePool = writePool;
+        this.minWriteThreads = Math.max(1, minThreads);
+        this.maxWriteThreads = Math.max(this.minWriteThreads, maxThreads);
+        this.lastWrites = writeSide.stats.snapshot();
+    }
+
+    @Override
+    public void run() {
+        try {
+            adjust(System.currentTimeMillis());
+        } catch (RuntimeException e) {
+            // keep the periodic task scheduled
+            LOGGER.warn("Could not adjust the rates to the deadline", e);
+        }
+    }
+
+    /**
+     * Returns whether every side could finish by the deadline at the last
+     * adjustment, which is not known for sides running at their ceiling for
+     * want of an estimate.
+     */
+    public synchronized boolean isOnSchedule() {
+        for (Side side : sides) {
+            if (side.unreliable) {
+                return false;
+            }
+        }
+        return !late;
+    }
+
+    /**
+     * Sets the rates for the progress made by nowMillis.
+     */
+    synchronized void adjust(long nowMillis) {
+        final double secondsLeft = (deadlineMillis - nowMillis) / 1000.0;
+        long projectedFinish = nowMillis;
+        String lateSide = null;
+        for (Side side : sides) {
+            final OperationStats.Snapshot total = side.stats.snapshot();
+            final long remaining = totalItems - total.getItems();
+            if (remaining <= 0) {
+                runAtCeiling(side, total);
+                continue;
+            }
+            if (side.unreliable) {
+                side.unreliable = false;
+                LOGGER.info("Pacing the " + side.name
+                        + " rate to the deadline again");
+            }
+            final double units = remaining * side.unitsPerItem(total);
+            final double needed = secondsLeft <= 0 ? Double.POSITIVE_INFINITY
+                    : units / secondsLeft * RATE_HEADROOM;
+            final double newRate = Math.max(MIN_RATE,
+                    Math.min(side.ceiling, needed));
+            final long finish = nowMillis
+                    + (long) (units / Math.max(MIN_RATE, side.ceiling) * 1000);
+            if (finish > projectedFinish) {
+                projectedFinish = finish;
+            }
+            if (needed > side.ceiling * RATE_HEADROOM) {
+                lateSide = side.name;
+            }
+            final double rate = side.target.getRateLimit();
+            if (Math.abs(newRate - rate) > rate * 0.01) {
+                side.target.setRateLimit(newRate);
+                LOGGER.info(String.format("Changed %s rate from %.1f to %.1f"
+                        + " units/s: %d items left at %.3f units each,"
+                        + " %.0f s to the deadline", side.name, rate, newRate,
+                        remaining, side.unitsPerItem(total), secondsLeft));
+            }
+        }
+        if (lateSide != null && !late) {
+            LOGGER.warn("The deadline " + new Date(deadlineMillis)
+                    + " can no longer be met: the " + lateSide
+                    + " rate ceiling is too low. At the ceilings the transfer"
+                    + " would finish around " + new Date(projectedFinish));
+        } else if (lateSide == null && late) {
+            LOGGER.info("The transfer is back on schedule for "
+                    + new Date(deadlineMillis));
+        }
+        late = lateSide != null;
+        if (writePool != null) {
+            resizeWritePool();
+        }
+    }
+
+    /**
+     * Sets a side without a usable estimate of the items left to its
+     * ceiling, warning the first time.
+     */
+    private void runAtCeiling(Side side, OperationStats.Snapshot total) {
+        if (!side.unreliable) {
+            side.unreliable = true;
+            LOGGER.warn("The " + side.name + " side has moved "
+                    + total.getItems() + " items of an estimated "
+                    + totalItems + ", so its remaining work is unknown. Running"
+                    + " it at its ceiling of " + side.ceiling
+                    + " units/s; the deadline may still be missed");
+        }
+        if (side.target.getRateLimit() != side.ceiling) {
+            side.target.setRateLimit(side.ceiling);
+        }
+    }
+
+    /**
+     * Sizes the write pool for the write rate, by the latency and capacity
+     * of the writes since the last adjustment.
+     */
+    private void resizeWritePool() {
+        final OperationStats.Snapshot now = writeSide.stats.snapshot();
+        final OperationStats.Snapshot window = now.since(lastWrites);
+        lastWrites = now;
+        if (window.getCalls() == 0) {
+            return;
+        }
+        final int current = writePool.getMaximumPoolSize();
+        final int needed = WritePoolAutoscaler.requiredThreads(
+                writeSide.target.getRateLimit(), window.getConsumedCapacity()
+                        / window.getCalls(),
+                window.getAverageLatencyMillis(), minWriteThreads,
+                maxWriteThreads);
+        if (needed == current) {
+            return;
+        }
+        // the core size may never exceed the maximum size
+        if (needed > current) {
+            writePool.setMaximumPoolSize(needed);
+            writePool.setCorePoolSize(needed);
+        } else {
+            writePool.setCorePoolSize(needed);
+            writePool.setMaximumPoolSize(needed);
+        }
+        LOGGER.info("Changed write threads from " + current + " to " + needed
+                + " for the deadline");
+    }
+
+    /**
+     * Parses a deadline given as HH:mm, the next time the clock shows it, or
+     * as yyyy-MM-dd'T'HH:mm, both in the local time zone.
+     *
+     * @return the deadline in milliseconds since the epoch.
+     */
+    public static long parseDeadline(String spec, long nowMillis) {
+        final String value = spec.trim();
+        try {
+            if (value.indexOf('T') >= 0) {
+                SimpleDateFormat format = new SimpleDateFormat(
+                        "yyyy-MM-dd'T'HH:mm");
+                format.setLenient(false);
+                return format.parse(value).getTime();
+            }
+            SimpleDateFormat format = new SimpleDateFormat("HH:mm");
+            format.setLenient(false);
+            final Calendar time = Calendar.getInstance();
+            time.setTime(format.parse(value));
+            final Calendar deadline = Calendar.getInstance();
+            deadline.setTimeInMillis(nowMillis);
+            deadline.set(Calendar.HOUR_OF_DAY, time.get(Calendar.HOUR_OF_DAY));
+            deadline.set(Calendar.MINUTE, time.get(Calendar.MINUTE));
+            deadline.set(Calendar.SECOND, 0);
+            deadline.set(Calendar.MILLISECOND, 0);
+            if (deadline.getTimeInMillis() <= nowMillis) {
+                deadline.add(Calendar.DAY_OF_MONTH, 1);
+            }
+            return deadline.getTimeInMillis();
+        } catch (ParseException e) {
+            throw new IllegalArgumentException("Invalid deadline " + spec
+                    + ", expected HH:mm or yyyy-MM-ddTHH:mm", e);
+        }
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.amazonaws.dynamodb.bootstrap;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A pool of direct ByteBuffers in power of two sizes. Buffers are handed out
+ * from the smallest size class that fits and go back to their class when
+ * released, up to maxPooledBytes in total; beyond that, or above the largest
+ * class, buffers are simply left to the garbage collector.
+ */
+public class DirectBufferPool {
+
+    /**
+     * Smallest buffer handed out, as a power of two.
+     */
+    private static final int MIN_SIZE_SHIFT = 12;
+
+    /**
+     * Largest pooled buffer, as a power of two.
+     */
+    private static final int MAX_SIZE_SHIFT = 24;
+
+    private final ConcurrentLinkedQueue<ByteBuffer>[] freeBuffers;
+    private final long maxPooledBytes;
+    private final AtomicLong pooledBytes = new AtomicLong();
+
+    /**
+     * @param maxPooledBytes
+     *            most bytes of released buffers to keep for reuse.
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    public DirectBufferPool(long maxPooledBytes) {
+        this.maxPooledBytes = maxPooledBytes;
+        this.freeBuffers = new ConcurrentLinkedQueue[MAX_SIZE_SHIFT
+                - MIN_SIZE_SHIFT + 1];
+        for (int i = 0; i < freeBuffers.length; i++) {
+            freeBuffers[i] = new ConcurrentLinkedQueue<ByteBuffer>();
+        }
+    }
+
+    /**
+     * Returns a cleared direct buffer with room for at least size bytes, whose
+     * limit is set to size.
+     */
+    public ByteBuffer acquire(int size) {
+        final int sizeClass = sizeClass(size);
+        if (sizeClass >= freeBuffers.length) {
+            return ByteBuffer.allocateDirect(size);
+        }
+        ByteBuffer buffer = freeBuffers[sizeClass].poll();
+        if (buffer == null) {
+            buffer = ByteBuffer.allocateDirect(1 << (sizeClass + MIN_SIZE_SHIFT));
+        } else {
+            pooledBytes.addAndGet(-buffer.capacity());
+        }
+        buffer.clear();
+        buffer.limit(size);
+        return buffer;
+    }
+
+    /**
+     * Gives a buffer obtained from acquire back to the pool.
+     */
+    public void release(ByteBuffer buffer) {
+        final int capacity = buffer.capacity();
+        if (Integer.bitCount(capacity) != 1) {
+            // not one of ours
+            return;
+        }
+        final int sizeClass = sizeClass(capacity);
+        if (sizeClass >= freeBuffers.length
+                || pooledBytes.addAndGet(capacity) > maxPooledBytes) {
+            pooledBytes.addAndGet(-capacity);
+            return;
+        }
+        freeBuffers[sizeClass].offer(buffer);
+    }
+
+    /**
+     * Returns the bytes held by released buffers waiting for reuse.
+     */
+    public long getPooledBytes() {
+        return pooledBytes.get();
+    }
+
+    private static int sizeClass(int size) {
+        if (size <= 1 << MIN_SIZE_SHIFT) {
+            return 0;
+        }
+        return 32 - Integer.numberOfLeadingZeros(size - 1) - MIN_SIZE_SHIFT;
+    }
+}
@@ -22,9 +22,20 @@ import com.amazonaws.services.dynamodbv2.model.TableDescription;
  * The base class to start a parallel scan and connect the results with a
  * consumer to accept the results.
  */
-public class DynamoDBBootstrapWorker extends AbstractLogProvider {
+public class DynamoDBBootstrapWorker extends AbstractLogProvider implements
+        RateLimitAdjustable {
     private final AmazonDynamoDBClient client;
-    private final double rateLimit;
+    private volatile double rateLimit;
+    private volatile DynamoDBTableScan scanner;
+    private final OperationStats readStats = new OperationStats();
+    private int scanLimit = BootstrapConstants.SCAN_LIMIT;
+    private DirectBufferPool compactItemPool;
+    private PauseGate pauseGate;
+    private RetryPolicy retryPolicy;
+    private int[] segmentSample;
+    private boolean readerDispatch;
+    private double targetPageBytes;
+    private double targetPageLatencyMillis;
     private final String tableName;
     private final int numSegments;
     private int section;
@@ -88,28 +99,164 @@ public class DynamoDBBootstrapWorker extends AbstractLogProvider {
     /**
      * Begins to pipe the log results by parallel scanning the table and the
      * consumer writing the results.
+     *
+     * @throws ExecutionException
+     *             if a scan failed, or if the consumer reports a failed
+     *             write, in which case the transfer is stopped.
      */
     public void pipe(final AbstractLogConsumer consumer)
             throws ExecutionException, InterruptedException {
-        final DynamoDBTableScan scanner = new DynamoDBTableScan(rateLimit,
-                client);
+        scanner = new DynamoDBTableScan(rateLimit, client, readStats);
+        // pick up a rate that was changed while the scanner was created
+        scanner.setRateLimit(rateLimit);
+        if (compactItemPool != null) {
+            scanner.setCompactItemPool(compactItemPool);
+        }
+        if (pauseGate != null) {
+            scanner.setPauseGate(pauseGate);
+        }
+        if (retryPolicy != null) {
+            scanner.setRetryPolicy(retryPolicy);
+        }
+        if (segmentSample != null) {
+            scanner.setSegmentSample(segmentSample);
+        }
+        if (targetPageBytes > 0) {
+            scanner.setAdaptiveScanLimit(targetPageBytes,
+                    targetPageLatencyMillis);
+        }
 
         final ScanRequest request = new ScanRequest().withTableName(tableName)
                 .withReturnConsumedCapacity(ReturnConsumedCapacity.TOTAL)
-                .withLimit(BootstrapConstants.SCAN_LIMIT)
+                .withLimit(scanLimit)
                 .withConsistentRead(consistentScan);
 
-        final ParallelScanExecutor scanService = scanner
-                .getParallelScanCompletionService(request, numSegments,
-                        threadPool, section, totalSections);
+        try {
+            if (readerDispatch) {
+                scanner.getParallelScanCompletionService(request, numSegments,
+                        threadPool, section, totalSections, consumer)
+                        .awaitFinished();
+            } else {
+                final ParallelScanExecutor scanService = scanner
+                        .getParallelScanCompletionService(request,
+                                numSegments, threadPool, section,
+                                totalSections);
+
+                while (!scanService.finished()
+                        && consumer.getFailure() == null) {
+                    SegmentedScanResult result = scanService.grab();
+                    consumer.writeResult(result);
+                }
+            }
+        } catch (ExecutionException e) {
+            // a failed write is reported below as the cause
+            if (consumer.getFailure() == null) {
+                throw e;
+            }
+        } catch (RuntimeException e) {
+            if (consumer.getFailure() == null) {
+                throw e;
+            }
+        }
 
-        while (!scanService.finished()) {
-            SegmentedScanResult result = scanService.grab();
-            consumer.writeResult(result);
+        if (consumer.getFailure() != null) {
+            shutdown(false);
+            consumer.shutdown(false);
+        } else {
+            shutdown(true);
+            consumer.shutdown(true);
+        }
+        final Throwable failure = consumer.getFailure();
+        if (failure != null) {
+            throw new ExecutionException("Could not write to the destination",
+                    failure);
         }
+    }
+
+    /**
+     * Changes the read rate limit, taking effect immediately if the scan is
+     * already running.
+     */
+    @Override
+    public void setRateLimit(double rateLimit) {
+        this.rateLimit = rateLimit;
+        final DynamoDBTableScan currentScanner = scanner;
+        if (currentScanner != null) {
+            currentScanner.setRateLimit(rateLimit);
+        }
+    }
+
+    @Override
+    public double getRateLimit() {
+        return rateLimit;
+    }
+
+    /**
+     * Sets the maximum number of items per scan call. Must be called before
+     * pipe.
+     */
+    public void setScanLimit(int scanLimit) {
+        this.scanLimit = scanLimit;
+    }
+
+    /**
+     * Makes the scan hold items in compact off-heap pages from the given pool
+     * until they are written. Must be called before pipe.
+     */
+    public void setCompactItemPool(DirectBufferPool compactItemPool) {
+        this.compactItemPool = compactItemPool;
+    }
+
+    /**
+     * Makes every segment adapt its scan Limit, starting from the scan limit,
+     * toward pages of about targetPageBytes taking about
+     * targetPageLatencyMillis. Must be called before pipe.
+     */
+    public void setAdaptiveScanLimit(double targetPageBytes,
+            double targetPageLatencyMillis) {
+        this.targetPageBytes = targetPageBytes;
+        this.targetPageLatencyMillis = targetPageLatencyMillis;
+    }
+
+    /**
+     * Makes the reader threads hand their pages to the consumer themselves
+     * rather than through the thread calling pipe, which then only waits. The
+     * consumer's writeResult must be safe to call from several threads. Must
+     * be called before pipe.
+     */
+    public void setReaderDispatch(boolean readerDispatch) {
+        this.readerDispatch = readerDispatch;
+    }
+
+    /**
+     * Sets when to retry failed scan calls and when to give up on them. Must
+     * be called before pipe.
+     */
+    public void setRetryPolicy(RetryPolicy retryPolicy) {
+        this.retryPolicy = retryPolicy;
+    }
+
+    /**
+     * Makes the scan read only the given segments, in ascending order, of
+     * those in its section. Must be called before pipe.
+     */
+    public void setSegmentSample(int[] segmentSample) {
+        this.segmentSample = segmentSample;
+    }
+
+    /**
+     * Makes the scan wait while the gate is paused before every scan call.
+     * Must be called before pipe.
+     */
+    public void setPauseGate(PauseGate pauseGate) {
+        this.pauseGate = pauseGate;
+    }
 
-        shutdown(true);
-        consumer.shutdown(true);
+    /**
+     * Returns the stats of every scan call made by this worker.
+     */
+    public OperationStats getReadStats() {
+        return readStats;
     }
 
     /**
@@ -118,13 +265,17 @@ public class DynamoDBBootstrapWorker extends AbstractLogProvider {
      * write capacity, with which you can scan much faster, or the size of your
      * table, which should need many more segments in order to scan the table
      * fast enough in parallel so that one worker does not finish long before
-     * other workers.
+     * other workers. On-demand tables have no capacity to go by, so they are
+     * split by size alone.
      * 
      * @throws NullReadCapacityException
      *             if the table returns a null readCapacity units.
      */
     public static int getNumberOfSegments(TableDescription description)
             throws NullReadCapacityException {
+        if (isOnDemand(description)) {
+            return getNumberOfSegmentsForTableSize(description);
+        }
         ProvisionedThroughputDescription provisionedThroughput = description
                 .getProvisionedThroughput();
         double tableSizeInGigabytes = Math.ceil(description.getTableSizeBytes()
@@ -143,4 +294,33 @@ public class DynamoDBBootstrapWorker extends AbstractLogProvider {
                 Math.ceil(tableSizeInGigabytes) / 10));
     }
 
+    /**
+     * returns the number of segments to scan a table with based only on its
+     * size: one segment per gigabyte, with a minimum so that small on-demand
+     * tables are still scanned in parallel.
+     */
+    public static int getNumberOfSegmentsForTableSize(
+            TableDescription description) {
+        Long tableSizeBytes = description.getTableSizeBytes();
+        double tableSizeInGigabytes = tableSizeBytes == null ? 0 : Math
+                .ceil(tableSizeBytes / BootstrapConstants.GIGABYTE);
+        return (int) Math.max(BootstrapConstants.MIN_ON_DEMAND_SEGMENTS,
+                tableSizeInGigabytes);
+    }
+
+    /**
+     * returns whether the table is billed per request, which DynamoDB reports
+     * as a provisioned throughput of zero (or none at all).
+     */
+    public static boolean isOnDemand(TableDescription description) {
+        ProvisionedThroughputDescription provisionedThroughput = description
+                .getProvisionedThroughput();
+        if (provisionedThroughput == null) {
+            return true;
+        }
+        Long readCapacity = provisionedThroughput.getReadCapacityUnits();
+        Long writeCapacity = provisionedThroughput.getWriteCapacityUnits();
+        return (readCapacity == null || readCapacity == 0)
+                && (writeCapacity == null || writeCapacity == 0);
+    }
 }
@@ -5,13 +5,23 @@
  */
 package com.amazonaws.dynamodb.bootstrap;
 
+import java.util.ArrayList;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorCompletionService;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
 
 import com.amazonaws.dynamodb.bootstrap.constants.BootstrapConstants;
 import com.amazonaws.services.dynamodbv2.AmazonDynamoDBClient;
@@ -27,11 +37,29 @@ import com.google.common.util.concurrent.RateLimiter;
  * Takes in SegmentedScanResults and launches several DynamoDBConsumerWorker for
  * each batch of items to write to a DynamoDB table.
  */
-public class DynamoDBConsumer extends AbstractLogConsumer {
+public class DynamoDBConsumer extends AbstractLogConsumer implements
+        RateLimitAdjustable {
+
+    /**
+     * Logger for the DynamoDBConsumer.
+     */
+    private static final Logger LOGGER = LogManager
+            .getLogger(DynamoDBConsumer.class);
 
     private final AmazonDynamoDBClient client;
     private final String tableName;
     private final RateLimiter rateLimiter;
+    private final OperationStats writeStats = new OperationStats();
+    private final FractionalPermits permits;
+    private CapacityEstimator capacityEstimator = new CapacityEstimator();
+    private RetryPolicy retryPolicy = new RetryPolicy();
+    private DeadLetterFile deadLetters;
+    private final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+    private final AtomicLong completedBatches = new AtomicLong();
+    private final AtomicLong failedBatches = new AtomicLong();
+    private int maxInFlightBatches;
+    private Semaphore window;
+    private Thread drainThread;
 
     /**
      * Class to consume logs and write them to a DynamoDB table.
@@ -41,64 +69,381 @@ public class DynamoDBConsumer extends AbstractLogConsumer {
         this.client = client;
         this.tableName = tableName;
         this.rateLimiter = RateLimiter.create(rateLimit);
+        this.permits = new FractionalPermits(rateLimiter);
         super.threadPool = exec;
         super.exec = new ExecutorCompletionService<Void>(threadPool);
     }
 
+    /**
+     * The batches of one page, done once every one of them is.
+     */
+    private static class PageFuture implements Future<Void> {
+        private final List<Future<Void>> batches;
+
+        PageFuture(List<Future<Void>> batches) {
+            this.batches = batches;
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            boolean cancelled = false;
+            for (Future<Void> batch : batches) {
+                cancelled |= batch.cancel(mayInterruptIfRunning);
+            }
+            return cancelled;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            for (Future<Void> batch : batches) {
+                if (batch.isCancelled()) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public boolean isDone() {
+            for (Future<Void> batch : batches) {
+                if (!batch.isDone()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public Void get() throws InterruptedException, ExecutionException {
+            for (Future<Void> batch : batches) {
+                batch.get();
+            }
+            return null;
+        }
+
+        @Override
+        public Void get(long timeout, TimeUnit unit)
+                throws InterruptedException, ExecutionException,
+                TimeoutException {
+            final long deadline = System.nanoTime() + unit.toNanos(timeout);
+            for (Future<Void> batch : batches) {
+                batch.get(Math.max(0, deadline - System.nanoTime()),
+                        TimeUnit.NANOSECONDS);
+            }
+            return null;
+        }
+    }
+
     /**
      * calls splitResultIntoBatches to turn the SegmentedScanResult into several
      * BatchWriteItemRequests and then submits them as individual jobs to the
-     * ExecutorService.
+     * ExecutorService. The returned future is done once every batch of the
+     * page is, or null if the page is empty.
      */
     @Override
     public Future<Void> writeResult(SegmentedScanResult result) {
-        Future<Void> jobSubmission = null;
+        if (result.getCompactPage() != null) {
+            return writeCompactPage(result.getCompactPage());
+        }
         List<BatchWriteItemRequest> batches = splitResultIntoBatches(
                 result.getScanResult(), tableName);
-        Iterator<BatchWriteItemRequest> batchesIterator = batches.iterator();
-        while (batchesIterator.hasNext()) {
+        List<Future<Void>> jobSubmissions = new ArrayList<Future<Void>>(
+                batches.size());
+        for (int i = 0; i < batches.size(); i++) {
             try {
-                jobSubmission = exec
-                        .submit(new DynamoDBConsumerWorker(batchesIterator
-                                .next(), client, rateLimiter, tableName));
+                jobSubmissions.add(submit(worker(new DynamoDBConsumerWorker(
+                        batches.get(i), client, rateLimiter, tableName,
+                        writeStats))));
             } catch (NullPointerException npe) {
                 throw new NullPointerException(
                         "Thread pool not initialized for LogStashExecutor");
             }
         }
-        return jobSubmission;
+        return jobSubmissions.isEmpty() ? null : new PageFuture(jobSubmissions);
     }
 
     /**
-     * Splits up a ScanResult into a list of BatchWriteItemRequests of size 25
-     * items or less each.
+     * Submits one worker per batch of the page. Each worker decodes its own
+     * items when it runs and holds a reference to the page until its batch is
+     * written, so the buffer is freed once every batch has been acknowledged.
      */
-    public static List<BatchWriteItemRequest> splitResultIntoBatches(
-            ScanResult result, String tableName) {
-        List<BatchWriteItemRequest> batches = new LinkedList<BatchWriteItemRequest>();
-        Iterator<Map<String, AttributeValue>> it = result.getItems().iterator();
+    private Future<Void> writeCompactPage(CompactItemPage page) {
+        final int count = page.getItemCount();
+        final int batchSize = BootstrapConstants.MAX_BATCH_SIZE_WRITE_ITEM;
+        List<Future<Void>> jobSubmissions = new ArrayList<Future<Void>>(
+                (count + batchSize - 1) / batchSize);
+        try {
+            for (int from = 0; from < count; from += batchSize) {
+                // one reference per batch actually submitted, so a failed
+                // submit leaves none behind for workers that never run
+                page.retain(1);
+                try {
+                    jobSubmissions.add(submit(worker(new DynamoDBConsumerWorker(
+                            page, from, Math.min(count, from + batchSize),
+                            client, rateLimiter, tableName, writeStats))));
+                } catch (RuntimeException e) {
+                    page.release();
+                    throw e;
+                }
+            }
+        } catch (NullPointerException npe) {
+            throw new NullPointerException(
+                    "Thread pool not initialized for LogStashExecutor");
+        } finally {
+            page.release();
+        }
+        return jobSubmissions.isEmpty() ? null : new PageFuture(jobSubmissions);
+    }
 
+    /**
+     * Submits the items, at most 25, as one batch, telling the listener about
+     * any of them DynamoDB leaves unprocessed.
+     */
+    public Future<Void> writeItems(List<Map<String, AttributeValue>> items,
+            DynamoDBConsumerWorker.UnprocessedListener listener) {
+        List<WriteRequest> writeRequests = new ArrayList<WriteRequest>(
+                items.size());
+        for (int i = 0; i < items.size(); i++) {
+            writeRequests.add(new WriteRequest(new PutRequest(items.get(i))));
+        }
         BatchWriteItemRequest req = new BatchWriteItemRequest()
-                .withReturnConsumedCapacity(ReturnConsumedCapacity.TOTAL);
-        List<WriteRequest> writeRequests = new LinkedList<WriteRequest>();
-        int i = 0;
-        while (it.hasNext()) {
-            PutRequest put = new PutRequest(it.next());
-            writeRequests.add(new WriteRequest(put));
-
-            i++;
-            if (i == BootstrapConstants.MAX_BATCH_SIZE_WRITE_ITEM) {
-                req.addRequestItemsEntry(tableName, writeRequests);
-                batches.add(req);
-                req = new BatchWriteItemRequest()
-                        .withReturnConsumedCapacity(ReturnConsumedCapacity.TOTAL);
-                writeRequests = new LinkedList<WriteRequest>();
-                i = 0;
+                .withReturnConsumedCapacity(ReturnConsumedCapacity.TOTAL)
+                .addRequestItemsEntry(tableName, writeRequests);
+        DynamoDBConsumerWorker worker = worker(new DynamoDBConsumerWorker(req,
+                client, rateLimiter, tableName, writeStats));
+        worker.setUnprocessedListener(listener);
+        try {
+            return submit(worker);
+        } catch (NullPointerException npe) {
+            throw new NullPointerException(
+                    "Thread pool not initialized for LogStashExecutor");
+        }
+    }
+
+    /**
+     * Submits a batch, first waiting for room in the window of batches in
+     * flight if there is one. Throws once a batch has failed.
+     */
+    private Future<Void> submit(DynamoDBConsumerWorker worker) {
+        throwIfFailed();
+        if (window == null) {
+            return exec.submit(worker);
+        }
+        // the drain thread gives permits back as batches complete
+        window.acquireUninterruptibly();
+        try {
+            return exec.submit(worker);
+        } catch (RuntimeException e) {
+            window.release();
+            throw e;
+        }
+    }
+
+    private void throwIfFailed() {
+        final Throwable cause = failure.get();
+        if (cause != null) {
+            throw new IllegalStateException("An earlier write to " + tableName
+                    + " failed", cause);
+        }
+    }
+
+    /**
+     * Bounds the batches submitted but not yet completed to
+     * maxInFlightBatches, making writeResult wait for room, and starts a
+     * thread that takes every completed batch off the completion queue as it
+     * completes, so completed futures are not held for the whole transfer.
+     * The first batch that fails is kept and returned by getFailure, and
+     * later writes throw. Must be called before the first write.
+     */
+    public void setMaxInFlightBatches(int maxInFlightBatches) {
+        if (window != null) {
+            throw new IllegalStateException(
+                    "The window of batches in flight is already set");
+        }
+        this.maxInFlightBatches = Math.max(1, maxInFlightBatches);
+        this.window = new Semaphore(this.maxInFlightBatches);
+        this.drainThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                drainCompletions();
+            }
+        }, "write-completions");
+        drainThread.setDaemon(true);
+        drainThread.start();
+    }
+
+    /**
+     * Takes completed batches off the completion queue until interrupted by
+     * shutdown.
+     */
+    private void drainCompletions() {
+        try {
+            while (true) {
+                completed(exec.take());
+            }
+        } catch (InterruptedException e) {
+            // shut down; the rest is drained by shutdown
+        }
+    }
+
+    /**
+     * Frees the window slot of a completed batch and records how it ended.
+     */
+    private void completed(Future<Void> future) {
+        window.release();
+        try {
+            future.get();
+            completedBatches.incrementAndGet();
+        } catch (ExecutionException e) {
+            failedBatches.incrementAndGet();
+            if (failure.compareAndSet(null, e.getCause())) {
+                LOGGER.error("Writing a batch to " + tableName
+                        + " failed, stopping the transfer", e.getCause());
             }
+        } catch (CancellationException e) {
+            failedBatches.incrementAndGet();
+        } catch (InterruptedException e) {
+            // cannot happen, the future is done
+            Thread.currentThread().interrupt();
         }
-        if (i > 0) {
-            req.addRequestItemsEntry(tableName, writeRequests);
-            batches.add(req);
+    }
+
+    /**
+     * Shuts the thread pool down and, if the window of batches in flight is
+     * set, stops draining completions once every batch has been accounted for.
+     */
+    @Override
+    public void shutdown(boolean awaitTermination) {
+        super.shutdown(awaitTermination);
+        if (drainThread == null) {
+            return;
+        }
+        drainThread.interrupt();
+        boolean interrupted = false;
+        try {
+            drainThread.join();
+        } catch (InterruptedException e) {
+            interrupted = true;
+        }
+        Future<Void> future;
+        while ((future = exec.poll()) != null) {
+            completed(future);
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Returns the first batch failure, once the window of batches in flight is
+     * set; null if every batch so far was written.
+     */
+    @Override
+    public Throwable getFailure() {
+        return failure.get();
+    }
+
+    /**
+     * Returns the number of batches written, counted once the window of
+     * batches in flight is set.
+     */
+    public long getCompletedBatches() {
+        return completedBatches.get();
+    }
+
+    /**
+     * Returns the number of batches that threw or were cancelled, counted
+     * once the window of batches in flight is set.
+     */
+    public long getFailedBatches() {
+        return failedBatches.get();
+    }
+
+    /**
+     * Returns the number of batches submitted and not yet completed, or 0 if
+     * the window of batches in flight is not set.
+     */
+    public int getInFlightBatches() {
+        return window == null ? 0 : maxInFlightBatches
+                - window.availablePermits();
+    }
+
+    private DynamoDBConsumerWorker worker(DynamoDBConsumerWorker worker) {
+        worker.setPermits(permits);
+        worker.setCapacityEstimator(capacityEstimator);
+        worker.setRetryPolicy(retryPolicy);
+        worker.setDeadLetterFile(deadLetters);
+        return worker;
+    }
+
+    /**
+     * Sets how to estimate the capacity of writes that do not report it, e.g.
+     * to include the secondary indexes of the table.
+     */
+    public void setCapacityEstimator(CapacityEstimator capacityEstimator) {
+        this.capacityEstimator = capacityEstimator;
+    }
+
+    /**
+     * Sets when to retry failed writes and when to give up on them.
+     */
+    public void setRetryPolicy(RetryPolicy retryPolicy) {
+        this.retryPolicy = retryPolicy;
+    }
+
+    /**
+     * Sets the file items that cannot be written go to, with the reason, so
+     * that the rest of the transfer carries on without them. Without one such
+     * items are logged.
+     */
+    public void setDeadLetterFile(DeadLetterFile deadLetters) {
+        this.deadLetters = deadLetters;
+    }
+
+    /**
+     * Changes the write rate limit, taking effect for the next batches that
+     * complete.
+     */
+    @Override
+    public void setRateLimit(double rateLimit) {
+        rateLimiter.setRate(rateLimit);
+    }
+
+    @Override
+    public double getRateLimit() {
+        return rateLimiter.getRate();
+    }
+
+    /**
+     * Returns the stats of every batchWriteItem call made by this consumer.
+     */
+    public OperationStats getWriteStats() {
+        return writeStats;
+    }
+
+    /**
+     * Splits up a ScanResult into a list of BatchWriteItemRequests of size 25
+     * items or less each. The lists are sized up front, since a page is split
+     * for every 25 items written.
+     */
+    public static List<BatchWriteItemRequest> splitResultIntoBatches(
+            ScanResult result, String tableName) {
+        final List<Map<String, AttributeValue>> items = result.getItems();
+        final int count = items.size();
+        final int batchSize = BootstrapConstants.MAX_BATCH_SIZE_WRITE_ITEM;
+        List<BatchWriteItemRequest> batches = new ArrayList<BatchWriteItemRequest>(
+                (count + batchSize - 1) / batchSize);
+        // one iterator, since the page need not be a random access list
+        Iterator<Map<String, AttributeValue>> it = items.iterator();
+        for (int from = 0; from < count; from += batchSize) {
+            final int size = Math.min(batchSize, count - from);
+            List<WriteRequest> writeRequests = new ArrayList<WriteRequest>(size);
+            for (int i = 0; i < size; i++) {
+                writeRequests.add(new WriteRequest(new PutRequest(it.next())));
+            }
+            batches.add(new BatchWriteItemRequest().withReturnConsumedCapacity(
+                    ReturnConsumedCapacity.TOTAL).addRequestItemsEntry(
+                    tableName, writeRequests));
         }
         return batches;
     }
@@ -5,17 +5,23 @@
  */
 package com.amazonaws.dynamodb.bootstrap;
 
-import java.util.Iterator;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
-import java.util.LinkedList;
 import java.util.Map;
 import java.util.concurrent.Callable;
 
-import com.amazonaws.dynamodb.bootstrap.constants.BootstrapConstants;
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+
+import com.amazonaws.AmazonServiceException;
 import com.amazonaws.services.dynamodbv2.AmazonDynamoDBClient;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
 import com.amazonaws.services.dynamodbv2.model.BatchWriteItemRequest;
 import com.amazonaws.services.dynamodbv2.model.BatchWriteItemResult;
 import com.amazonaws.services.dynamodbv2.model.ConsumedCapacity;
+import com.amazonaws.services.dynamodbv2.model.ReturnConsumedCapacity;
 import com.amazonaws.services.dynamodbv2.model.WriteRequest;
 import com.google.common.util.concurrent.RateLimiter;
 
@@ -24,11 +30,36 @@ import com.google.common.util.concurrent.RateLimiter;
  */
 public class DynamoDBConsumerWorker implements Callable<Void> {
 
+    /**
+     * Logger for the DynamoDBConsumerWorker.
+     */
+    private static final Logger LOGGER = LogManager
+            .getLogger(DynamoDBConsumerWorker.class);
+
     private final AmazonDynamoDBClient client;
     private final RateLimiter rateLimiter;
-    private long exponentialBackoffTime;
+    private RetryPolicy retryPolicy = new RetryPolicy();
+    private DeadLetterFile deadLetters;
     private BatchWriteItemRequest batch;
     private final String tableName;
+    private final OperationStats stats;
+    private final CompactItemPage page;
+    private final int from;
+    private final int to;
+    private FractionalPermits permits;
+    private CapacityEstimator capacityEstimator;
+    private UnprocessedListener unprocessedListener;
+    private boolean capacityReported;
+    private BatchWriteItemRequest single;
+    private List<WriteRequest> singleWrites;
+
+    /**
+     * Told about the items of every batchWriteItem call that DynamoDB leaves
+     * unprocessed, before they are retried.
+     */
+    public interface UnprocessedListener {
+        void unprocessed(List<WriteRequest> writes);
+    }
 
     /**
      * Callable class that when called will try to write a batch to a DynamoDB
@@ -38,11 +69,80 @@ public class DynamoDBConsumerWorker implements Callable<Void> {
     public DynamoDBConsumerWorker(BatchWriteItemRequest batchWriteItemRequest,
             AmazonDynamoDBClient client, RateLimiter rateLimiter,
             String tableName) {
+        this(batchWriteItemRequest, client, rateLimiter, tableName,
+                new OperationStats());
+    }
+
+    /**
+     * Callable class that when called will try to write a batch to a DynamoDB
+     * table, recording every batchWriteItem call in the given stats.
+     */
+    public DynamoDBConsumerWorker(BatchWriteItemRequest batchWriteItemRequest,
+            AmazonDynamoDBClient client, RateLimiter rateLimiter,
+            String tableName, OperationStats stats) {
         this.batch = batchWriteItemRequest;
         this.client = client;
         this.rateLimiter = rateLimiter;
         this.tableName = tableName;
-        this.exponentialBackoffTime = BootstrapConstants.INITIAL_RETRY_TIME_MILLISECONDS;
+        this.stats = stats;
+        this.page = null;
+        this.from = 0;
+        this.to = 0;
+    }
+
+    /**
+     * Callable class that when called will decode the items [from, to) of a
+     * compact page into a batch and write it, releasing its reference to the
+     * page once the batch has been written.
+     */
+    public DynamoDBConsumerWorker(CompactItemPage page, int from, int to,
+            AmazonDynamoDBClient client, RateLimiter rateLimiter,
+            String tableName, OperationStats stats) {
+        this.page = page;
+        this.from = from;
+        this.to = to;
+        this.client = client;
+        this.rateLimiter = rateLimiter;
+        this.tableName = tableName;
+        this.stats = stats;
+    }
+
+    /**
+     * Makes the worker acquire its capacity through permits shared with other
+     * workers, so the fractions of units every batch leaves over add up.
+     */
+    void setPermits(FractionalPermits permits) {
+        this.permits = permits;
+    }
+
+    /**
+     * Sets how to estimate the capacity of the batch if the write does not
+     * report it.
+     */
+    void setCapacityEstimator(CapacityEstimator capacityEstimator) {
+        this.capacityEstimator = capacityEstimator;
+    }
+
+    /**
+     * Sets when to retry failed writes and when to give up on them.
+     */
+    void setRetryPolicy(RetryPolicy retryPolicy) {
+        this.retryPolicy = retryPolicy;
+    }
+
+    /**
+     * Sets the file items that cannot be written go to; without one they are
+     * logged.
+     */
+    void setDeadLetterFile(DeadLetterFile deadLetters) {
+        this.deadLetters = deadLetters;
+    }
+
+    /**
+     * Sets who to tell about unprocessed items.
+     */
+    void setUnprocessedListener(UnprocessedListener unprocessedListener) {
+        this.unprocessedListener = unprocessedListener;
     }
 
     /**
@@ -51,52 +151,211 @@ public class DynamoDBConsumerWorker implements Callable<Void> {
      */
     @Override
     public Void call() {
-        List<ConsumedCapacity> batchResult = runWithBackoff(batch);
-        Iterator<ConsumedCapacity> it = batchResult.iterator();
-        int consumedCapacity = 0;
-        while (it.hasNext()) {
-            consumedCapacity += it.next().getCapacityUnits().intValue();
+        double consumedCapacity;
+        List<WriteRequest> writes;
+        if (page != null) {
+            try {
+                batch = page.toBatchWriteItemRequest(from, to, tableName);
+                writes = batch.getRequestItems().get(tableName);
+                consumedCapacity = runWithBackoff(batch);
+            } finally {
+                page.release();
+            }
+        } else {
+            // the request is changed to the unprocessed items while retrying
+            writes = batch.getRequestItems().get(tableName);
+            consumedCapacity = runWithBackoff(batch);
+        }
+        if (!capacityReported && writes != null) {
+            consumedCapacity = (capacityEstimator != null ? capacityEstimator
+                    : new CapacityEstimator()).writeUnits(writes);
         }
-        rateLimiter.acquire(consumedCapacity);
+        (permits != null ? permits : new FractionalPermits(rateLimiter))
+                .acquire(consumedCapacity);
         return null;
     }
 
     /**
      * Writes to DynamoDBTable using an exponential backoff. If the
      * batchWriteItem returns unprocessed items then it will exponentially
-     * backoff and retry the unprocessed items.
+     * backoff and retry the unprocessed items, until the retry policy gives up
+     * on them and they go to the dead-letter file. A batch rejected as invalid
+     * is written again one item at a time, so only the invalid items go to the
+     * dead-letter file. Other errors are retried if the policy allows it and
+     * thrown otherwise. Returns the capacity units the writes reported
+     * consuming; see {@link #isCapacityReported()} for whether any did.
      */
-    public List<ConsumedCapacity> runWithBackoff(BatchWriteItemRequest req) {
-        BatchWriteItemResult writeItemResult = null;
-        List<ConsumedCapacity> consumedCapacities = new LinkedList<ConsumedCapacity>();
-        Map<String, List<WriteRequest>> unprocessedItems = null;
+    public double runWithBackoff(BatchWriteItemRequest req) {
+        double consumedCapacity = 0;
+        int retries = 0;
         boolean interrupted = false;
         try {
-            do {
-                writeItemResult = client.batchWriteItem(req);
-                unprocessedItems = writeItemResult.getUnprocessedItems();
-                consumedCapacities
-                        .addAll(writeItemResult.getConsumedCapacity());
-
-                if (unprocessedItems != null) {
-                    req.setRequestItems(unprocessedItems);
-                    try {
-                        Thread.sleep(exponentialBackoffTime);
-                    } catch (InterruptedException ie) {
-                        interrupted = true;
-                    } finally {
-                        exponentialBackoffTime *= 2;
-                        if (exponentialBackoffTime > BootstrapConstants.MAX_EXPONENTIAL_BACKOFF_TIME) {
-                            exponentialBackoffTime = BootstrapConstants.MAX_EXPONENTIAL_BACKOFF_TIME;
+            int requested = countItems(req.getRequestItems());
+            while (requested > 0) {
+                final long start = System.nanoTime();
+                final BatchWriteItemResult writeItemResult;
+                try {
+                    writeItemResult = client.batchWriteItem(req);
+                } catch (RuntimeException e) {
+                    stats.record(System.nanoTime() - start, 0, 0,
+                            ScanSegmentWorker.isThrottle(e));
+                    if (retryPolicy.shouldRetry(e, retries)) {
+                        interrupted |= backoff(retries++);
+                        continue;
+                    }
+                    if (!isInvalidItem(e)) {
+                        throw e;
+                    }
+                    final List<WriteRequest> writes = req.getRequestItems()
+                            .get(tableName);
+                    if (requested > 1) {
+                        // one bad item fails the whole batch
+                        for (int i = 0; i < writes.size(); i++) {
+                            consumedCapacity += runWithBackoff(singleWrite(writes
+                                    .get(i)));
                         }
+                    } else {
+                        deadLetter(writes, RetryPolicy.describe(e), retries + 1);
                     }
+                    break;
+                }
+                final long latency = System.nanoTime() - start;
+                final Map<String, List<WriteRequest>> unprocessedItems = writeItemResult
+                        .getUnprocessedItems();
+                final double units = sumCapacity(writeItemResult
+                        .getConsumedCapacity());
+                consumedCapacity += units;
+                final int unprocessed = countItems(unprocessedItems);
+                stats.record(latency, units, requested - unprocessed,
+                        unprocessed > 0);
+                if (unprocessed == 0) {
+                    break;
+                }
+
+                if (unprocessedListener != null) {
+                    unprocessedListener.unprocessed(unprocessedItems
+                            .get(tableName));
+                }
+                if (unprocessed < requested) {
+                    // only calls that make no progress count toward giving up
+                    retries = 0;
                 }
-            } while (unprocessedItems != null && unprocessedItems.get(tableName) != null);
-            return consumedCapacities;
+                if (!retryPolicy.canRetry(retries)) {
+                    deadLetter(unprocessedItems.get(tableName),
+                            "Unprocessed after " + (retries + 1)
+                                    + " attempts", retries + 1);
+                    break;
+                }
+                req.setRequestItems(unprocessedItems);
+                requested = unprocessed;
+                interrupted |= backoff(retries++);
+            }
+            return consumedCapacity;
         } finally {
             if (interrupted) {
                 Thread.currentThread().interrupt();
             }
         }
     }
+
+    /**
+     * Returns whether any write of this worker reported the capacity it
+     * consumed, so that it need not be estimated.
+     */
+    public boolean isCapacityReported() {
+        return capacityReported;
+    }
+
+    /**
+     * Sleeps for the backoff of a retry, returning whether it was interrupted.
+     */
+    private boolean backoff(int retries) {
+        try {
+            retryPolicy.backoff(retries);
+            return false;
+        } catch (InterruptedException e) {
+            return true;
+        }
+    }
+
+    /**
+     * Returns a request for just the write. The request is reused for every
+     * item of a batch that is split, since each is written before the next.
+     */
+    private BatchWriteItemRequest singleWrite(WriteRequest write) {
+        if (single == null) {
+            singleWrites = new ArrayList<WriteRequest>(1);
+            singleWrites.add(write);
+            single = new BatchWriteItemRequest()
+                    .withReturnConsumedCapacity(ReturnConsumedCapacity.TOTAL);
+        }
+        singleWrites.set(0, write);
+        // retries replace the request items with the unprocessed ones
+        Map<String, List<WriteRequest>> requestItems = new HashMap<String, List<WriteRequest>>(
+                2);
+        requestItems.put(tableName, singleWrites);
+        single.setRequestItems(requestItems);
+        return single;
+    }
+
+    /**
+     * Writes the items to the dead-letter file, or logs them if there is none.
+     */
+    private void deadLetter(List<WriteRequest> writes, String reason,
+            int attempts) {
+        if (writes == null) {
+            return;
+        }
+        for (WriteRequest write : writes) {
+            final Map<String, AttributeValue> item = write.getPutRequest() != null ? write
+                    .getPutRequest().getItem() : write.getDeleteRequest()
+                    .getKey();
+            if (deadLetters != null) {
+                try {
+                    deadLetters.write(tableName, item, reason, attempts);
+                    continue;
+                } catch (IOException e) {
+                    LOGGER.error("Could not write to the dead-letter file "
+                            + deadLetters.getFile(), e);
+                }
+            }
+            LOGGER.error("Could not write item to " + tableName + " ("
+                    + reason + "): " + item);
+        }
+    }
+
+    /**
+     * Returns whether DynamoDB rejected the request because of what is in it,
+     * such as an item over the size limit or with an empty key, rather than
+     * because of the table or credentials.
+     */
+    static boolean isInvalidItem(RuntimeException e) {
+        return e instanceof AmazonServiceException
+                && "ValidationException".equals(((AmazonServiceException) e)
+                        .getErrorCode());
+    }
+
+    private static int countItems(Map<String, List<WriteRequest>> requestItems) {
+        int count = 0;
+        if (requestItems != null) {
+            for (List<WriteRequest> writes : requestItems.values()) {
+                count += writes.size();
+            }
+        }
+        return count;
+    }
+
+    private double sumCapacity(List<ConsumedCapacity> capacities) {
+        double total = 0;
+        if (capacities != null) {
+            for (int i = 0; i < capacities.size(); i++) {
+                final Double units = capacities.get(i).getCapacityUnits();
+                if (units != null) {
+                    total += units;
+                    capacityReported = true;
+                }
+            }
+        }
+        return total;
+    }
 }
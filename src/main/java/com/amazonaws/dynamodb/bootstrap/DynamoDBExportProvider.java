@@ -0,0 +1,401 @@
+/*
+ * Copyright 2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.amazonaws.dynamodb.bootstrap;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+
+import com.amazonaws.dynamodb.bootstrap.constants.BootstrapConstants;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.ScanResult;
+import com.amazonaws.util.BinaryUtils;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+/**
+ * Reads a table export made by DynamoDB itself (ExportTableToPointInTime in
+ * DYNAMODB_JSON format) that has been copied to local disk, and hands its
+ * items to a consumer in pages. The directory is the one holding
+ * manifest-summary.json and manifest-files.json; the latter lists the
+ * gzipped data files, which are decompressed and parsed on the pool, one
+ * file per thread. Every data file is checked against the item count and MD5
+ * checksum the manifest lists for it. The consumer's rate limit and window of
+ * batches in flight apply as for any other source, since readers block in
+ * writeResult.
+ */
+public class DynamoDBExportProvider extends AbstractLogProvider {
+
+    /**
+     * Logger for the DynamoDBExportProvider.
+     */
+    private static final Logger LOGGER = LogManager
+            .getLogger(DynamoDBExportProvider.class);
+
+    /**
+     * Name of the summary of an export.
+     */
+    public static final String SUMMARY_FILE_NAME = "manifest-summary.json";
+
+    /**
+     * Name of the list of data files of an export.
+     */
+    public static final String FILES_FILE_NAME = "manifest-files.json";
+
+    /**
+     * The only output format whose items this provider can read.
+     */
+    public static final String OUTPUT_FORMAT = "DYNAMODB_JSON";
+
+    private static final String ITEM_FIELD = "Item";
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+    private static final int GZIP_BUFFER_SIZE = 64 * 1024;
+
+    private final File directory;
+    private final long itemCount;
+    private final List<DataFile> dataFiles;
+    private int pageSize = BootstrapConstants.SCAN_LIMIT;
+
+    /**
+     * One data file of the export, as listed in manifest-files.json.
+     */
+    public static class DataFile {
+        private final File file;
+        private final long itemCount;
+        private final String md5Checksum;
+
+        public DataFile(File file, long itemCount, String md5Checksum) {
+            this.file = file;
+            this.itemCount = itemCount;
+            this.md5Checksum = md5Checksum;
+        }
+
+        public File getFile() {
+            return file;
+        }
+
+        public long getItemCount() {
+            return itemCount;
+        }
+
+        /**
+         * Returns the base64 MD5 of the gzipped file, or null if the manifest
+         * does not list one.
+         */
+        public String getMd5Checksum() {
+            return md5Checksum;
+        }
+    }
+
+    /**
+     * @param directory
+     *            the export directory, holding manifest-summary.json,
+     *            manifest-files.json and the data directory.
+     * @param exec
+     *            the pool the data files are read on.
+     */
+    public DynamoDBExportProvider(File directory, ExecutorService exec)
+            throws IOException {
+        this.directory = directory;
+        final String[] summary = readSummary(new File(directory,
+                SUMMARY_FILE_NAME));
+        if (summary[0] != null && !OUTPUT_FORMAT.equals(summary[0])) {
+            throw new IOException("Export in " + directory + " is "
+                    + summary[0] + ", only " + OUTPUT_FORMAT
+                    + " can be imported");
+        }
+        this.itemCount = summary[1] == null ? -1 : Long.parseLong(summary[1]);
+        this.dataFiles = readFiles(new File(directory, FILES_FILE_NAME),
+                directory, summary[2]);
+        super.threadPool = exec;
+    }
+
+    /**
+     * Returns the data files of the export.
+     */
+    public List<DataFile> getDataFiles() {
+        return dataFiles;
+    }
+
+    /**
+     * Returns the item count in the summary, or -1 if it lists none.
+     */
+    public long getItemCount() {
+        return itemCount;
+    }
+
+    /**
+     * Sets the number of items handed to the consumer at a time.
+     */
+    public void setPageSize(int pageSize) {
+        this.pageSize = Math.max(1, pageSize);
+    }
+
+    /**
+     * Reads the data files and writes their items with the consumer, then
+     * shuts both down. Throws if a data file cannot be read or does not match
+     * the manifest, or the consumer reports a failed write.
+     */
+    @Override
+    public void pipe(final AbstractLogConsumer consumer)
+            throws ExecutionException, InterruptedException {
+        LOGGER.info("Importing " + dataFiles.size() + " data files of the "
+                + "export in " + directory);
+        List<Future<Long>> readers = new ArrayList<Future<Long>>();
+        for (int i = 0; i < dataFiles.size(); i++) {
+            final int segment = i;
+            readers.add(threadPool.submit(new Callable<Long>() {
+                @Override
+                public Long call() throws IOException {
+                    return importFile(dataFiles.get(segment), segment,
+                            consumer);
+                }
+            }));
+        }
+        ExecutionException readFailure = null;
+        long items = 0;
+        for (Future<Long> reader : readers) {
+            try {
+                items += reader.get();
+            } catch (ExecutionException e) {
+                if (readFailure == null) {
+                    readFailure = e;
+                }
+            }
+        }
+
+        final boolean failed = readFailure != null
+                || consumer.getFailure() != null;
+        shutdown(!failed);
+        consumer.shutdown(!failed);
+        if (consumer.getFailure() != null) {
+            throw new ExecutionException("Could not write to the destination",
+                    consumer.getFailure());
+        }
+        if (readFailure != null) {
+            throw readFailure;
+        }
+        if (itemCount >= 0 && items != itemCount) {
+            LOGGER.warn("Imported " + items + " items but the export summary"
+                    + " lists " + itemCount);
+        }
+        LOGGER.info("Imported " + items + " items");
+    }
+
+    /**
+     * Hands the items of one data file to the consumer and returns their
+     * number.
+     */
+    private long importFile(DataFile dataFile, int segment,
+            AbstractLogConsumer consumer) throws IOException {
+        // the gzip stream reads the file up to its trailer before it ends, so
+        // the digest covers all of it
+        final MessageDigest md5 = md5();
+        long items = 0;
+        InputStream in = new GZIPInputStream(new DigestInputStream(
+                new FileInputStream(dataFile.getFile()), md5),
+                GZIP_BUFFER_SIZE);
+        try {
+            JsonParser parser = DynamoDBJsonCodec.createParser(in);
+            List<Map<String, AttributeValue>> page = new ArrayList<Map<String, AttributeValue>>(
+                    pageSize);
+            Map<String, AttributeValue> item;
+            while ((item = readItem(parser)) != null) {
+                page.add(item);
+                if (page.size() == pageSize) {
+                    items += writePage(page, segment, consumer);
+                    page = new ArrayList<Map<String, AttributeValue>>(pageSize);
+                }
+            }
+            if (!page.isEmpty()) {
+                items += writePage(page, segment, consumer);
+            }
+        } finally {
+            in.close();
+        }
+        if (items != dataFile.getItemCount()) {
+            throw new IOException(dataFile.getFile() + " holds " + items
+                    + " items but the manifest lists "
+                    + dataFile.getItemCount());
+        }
+        if (dataFile.getMd5Checksum() != null
+                && !dataFile.getMd5Checksum().equals(
+                        BinaryUtils.toBase64(md5.digest()))) {
+            throw new IOException(dataFile.getFile()
+                    + " does not match the checksum in the manifest");
+        }
+        return items;
+    }
+
+    /**
+     * Reads the next {"Item":{...}} line of a data file.
+     *
+     * @return the item, or null if the end of the file has been reached.
+     */
+    static Map<String, AttributeValue> readItem(JsonParser parser)
+            throws IOException {
+        JsonToken token = parser.nextToken();
+        if (token == null) {
+            return null;
+        }
+        expect(parser, token, JsonToken.START_OBJECT);
+        Map<String, AttributeValue> item = null;
+        while ((token = parser.nextToken()) == JsonToken.FIELD_NAME) {
+            final String name = parser.getCurrentName();
+            token = parser.nextToken();
+            if (ITEM_FIELD.equals(name)) {
+                expect(parser, token, JsonToken.START_OBJECT);
+                item = DynamoDBJsonCodec.readAttributeMap(parser);
+            } else {
+                parser.skipChildren();
+            }
+        }
+        expect(parser, token, JsonToken.END_OBJECT);
+        if (item == null) {
+            throw new JsonParseException("Line without an " + ITEM_FIELD,
+                    parser.getCurrentLocation());
+        }
+        return item;
+    }
+
+    private static int writePage(List<Map<String, AttributeValue>> page,
+            int segment, AbstractLogConsumer consumer) {
+        consumer.writeResult(new SegmentedScanResult(new ScanResult()
+                .withItems(page).withCount(page.size()), segment));
+        return page.size();
+    }
+
+    /**
+     * Returns the output format, item count and manifest-files S3 key of the
+     * summary, each null if it is not there.
+     */
+    private static String[] readSummary(File file) throws IOException {
+        final String[] summary = new String[3];
+        InputStream in = new FileInputStream(file);
+        try {
+            JsonParser parser = JSON_FACTORY.createParser(in);
+            expect(parser, parser.nextToken(), JsonToken.START_OBJECT);
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                final String name = parser.getCurrentName();
+                parser.nextToken();
+                if ("outputFormat".equals(name)) {
+                    summary[0] = parser.getText();
+                } else if ("itemCount".equals(name)) {
+                    summary[1] = parser.getText();
+                } else if ("manifestFilesS3Key".equals(name)) {
+                    summary[2] = parser.getText();
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        } finally {
+            in.close();
+        }
+        return summary;
+    }
+
+    /**
+     * Reads the data files listed one per line in manifest-files.json.
+     */
+    private static List<DataFile> readFiles(File file, File directory,
+            String manifestFilesKey) throws IOException {
+        // data file keys are relative to the bucket, the export is under the
+        // prefix the manifest itself is in
+        final String prefix = manifestFilesKey == null
+                || manifestFilesKey.lastIndexOf('/') < 0 ? null
+                : manifestFilesKey.substring(0,
+                        manifestFilesKey.lastIndexOf('/') + 1);
+        List<DataFile> files = new ArrayList<DataFile>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new FileInputStream(file), UTF8));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.trim().isEmpty()) {
+                    continue;
+                }
+                JsonParser parser = JSON_FACTORY.createParser(line);
+                expect(parser, parser.nextToken(), JsonToken.START_OBJECT);
+                String key = null;
+                long items = -1;
+                String md5Checksum = null;
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    final String name = parser.getCurrentName();
+                    parser.nextToken();
+                    if ("dataFileS3Key".equals(name)) {
+                        key = parser.getText();
+                    } else if ("itemCount".equals(name)) {
+                        items = parser.getLongValue();
+                    } else if ("md5Checksum".equals(name)) {
+                        md5Checksum = parser.getText();
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+                if (key == null || items < 0) {
+                    throw new JsonParseException(
+                            "Data file without a key or item count",
+                            parser.getCurrentLocation());
+                }
+                files.add(new DataFile(resolve(directory, prefix, key), items,
+                        md5Checksum));
+            }
+        } finally {
+            reader.close();
+        }
+        return Collections.unmodifiableList(files);
+    }
+
+    /**
+     * Returns the local file of a data file key: its path below the export's
+     * prefix, or else data/ and its name.
+     */
+    static File resolve(File directory, String prefix, String key) {
+        if (prefix != null && key.startsWith(prefix)) {
+            return new File(directory, key.substring(prefix.length()));
+        }
+        return new File(new File(directory, "data"),
+                key.substring(key.lastIndexOf('/') + 1));
+    }
+
+    private static MessageDigest md5() {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("MD5 is not available", e);
+        }
+    }
+
+    private static void expect(JsonParser parser, JsonToken actual,
+            JsonToken expected) throws JsonParseException {
+        if (actual != expected) {
+            throw new JsonParseException("Expected " + expected + " but got "
+                    + actual, parser.getCurrentLocation());
+        }
+    }
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright 2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.amazonaws.dynamodb.bootstrap;
+
+import java.util.List;
+import java.util.Map;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+
+/**
+ * Encapsulates a run of consecutive items from one scanned page with their
+ * total size, handed off as one entry instead of one entry per item.
+ */
+public class DynamoDBItemSlice {
+
+    private final List<Map<String, AttributeValue>> entries;
+    private final long size;
+
+    public DynamoDBItemSlice(List<Map<String, AttributeValue>> entries,
+            long size) {
+        this.entries = entries;
+        this.size = size;
+    }
+
+    /**
+     * Returns the total size of the items in bytes, or -1 for the entry that
+     * marks the end of the scan.
+     */
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * Returns the items, or null for the entry that marks the end of the scan.
+     */
+    public List<Map<String, AttributeValue>> getEntries() {
+        return entries;
+    }
+}
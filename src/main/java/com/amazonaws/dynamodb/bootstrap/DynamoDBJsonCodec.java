@@ -0,0 +1,271 @@
+/*
+ * Copyright 2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.amazonaws.dynamodb.bootstrap;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.SerializedString;
+
+/**
+ * Reads and writes DynamoDB JSON ({"attr":{"S":"value"}}) directly on the
+ * Jackson streaming parser and generator. Unlike mapping AttributeValue
+ * through an ObjectMapper with the AttributeValueMixIn, no reflection or
+ * intermediate tree model is involved: tokens are turned straight into
+ * AttributeValues and back.
+ */
+public class DynamoDBJsonCodec {
+
+    private static final String S = "S";
+    private static final String N = "N";
+    private static final String B = "B";
+    private static final String SS = "SS";
+    private static final String NS = "NS";
+    private static final String BS = "BS";
+    private static final String M = "M";
+    private static final String L = "L";
+    private static final String NULL = "NULL";
+    private static final String BOOL = "BOOL";
+
+    private static final SerializableString S_FIELD = new SerializedString(S);
+    private static final SerializableString N_FIELD = new SerializedString(N);
+    private static final SerializableString B_FIELD = new SerializedString(B);
+    private static final SerializableString SS_FIELD = new SerializedString(SS);
+    private static final SerializableString NS_FIELD = new SerializedString(NS);
+    private static final SerializableString BS_FIELD = new SerializedString(BS);
+    private static final SerializableString M_FIELD = new SerializedString(M);
+    private static final SerializableString L_FIELD = new SerializedString(L);
+    private static final SerializableString NULL_FIELD = new SerializedString(NULL);
+    private static final SerializableString BOOL_FIELD = new SerializedString(BOOL);
+
+    /**
+     * Separator between top level items, so that every item is on its own line.
+     */
+    private static final SerializableString LINE_SEPARATOR = new SerializedString("\n");
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    /**
+     * Creates a generator that writes one item per line to the given stream.
+     */
+    public static JsonGenerator createGenerator(OutputStream out)
+            throws IOException {
+        JsonGenerator generator = JSON_FACTORY.createGenerator(out,
+                JsonEncoding.UTF8);
+        generator.setRootValueSeparator(LINE_SEPARATOR);
+        return generator;
+    }
+
+    /**
+     * Creates a parser that reads a sequence of whitespace separated items
+     * from the given stream.
+     */
+    public static JsonParser createParser(InputStream in) throws IOException {
+        return JSON_FACTORY.createParser(in);
+    }
+
+    /**
+     * Writes one item as a DynamoDB JSON object.
+     */
+    public static void writeItem(JsonGenerator generator,
+            Map<String, AttributeValue> item) throws IOException {
+        generator.writeStartObject();
+        for (Map.Entry<String, AttributeValue> entry : item.entrySet()) {
+            generator.writeFieldName(entry.getKey());
+            writeAttributeValue(generator, entry.getValue());
+        }
+        generator.writeEndObject();
+    }
+
+    /**
+     * Writes one attribute value as a single-field DynamoDB JSON object, such
+     * as {"N":"1"}.
+     */
+    public static void writeAttributeValue(JsonGenerator generator,
+            AttributeValue value) throws IOException {
+        generator.writeStartObject();
+        if (value.getS() != null) {
+            generator.writeFieldName(S_FIELD);
+            generator.writeString(value.getS());
+        } else if (value.getN() != null) {
+            generator.writeFieldName(N_FIELD);
+            generator.writeString(value.getN());
+        } else if (value.getB() != null) {
+            generator.writeFieldName(B_FIELD);
+            writeBinary(generator, value.getB());
+        } else if (value.getSS() != null) {
+            generator.writeFieldName(SS_FIELD);
+            writeStrings(generator, value.getSS());
+        } else if (value.getNS() != null) {
+            generator.writeFieldName(NS_FIELD);
+            writeStrings(generator, value.getNS());
+        } else if (value.getBS() != null) {
+            generator.writeFieldName(BS_FIELD);
+            generator.writeStartArray();
+            for (ByteBuffer b : value.getBS()) {
+                writeBinary(generator, b);
+            }
+            generator.writeEndArray();
+        } else if (value.getM() != null) {
+            generator.writeFieldName(M_FIELD);
+            writeItem(generator, value.getM());
+        } else if (value.getL() != null) {
+            generator.writeFieldName(L_FIELD);
+            generator.writeStartArray();
+            for (AttributeValue element : value.getL()) {
+                writeAttributeValue(generator, element);
+            }
+            generator.writeEndArray();
+        } else if (value.getNULL() != null) {
+            generator.writeFieldName(NULL_FIELD);
+            generator.writeBoolean(value.getNULL());
+        } else if (value.getBOOL() != null) {
+            generator.writeFieldName(BOOL_FIELD);
+            generator.writeBoolean(value.getBOOL());
+        }
+        generator.writeEndObject();
+    }
+
+    /**
+     * Reads the next item from the parser.
+     *
+     * @return the item, or null if the end of the input has been reached.
+     */
+    public static Map<String, AttributeValue> readItem(JsonParser parser)
+            throws IOException {
+        JsonToken token = parser.nextToken();
+        if (token == null) {
+            return null;
+        }
+        expect(parser, token, JsonToken.START_OBJECT);
+        return readAttributeMap(parser);
+    }
+
+    /**
+     * Reads the fields of an object whose START_OBJECT token has already been
+     * consumed, up to and including its END_OBJECT.
+     */
+    public static Map<String, AttributeValue> readAttributeMap(JsonParser parser)
+            throws IOException {
+        Map<String, AttributeValue> item = new HashMap<String, AttributeValue>();
+        JsonToken token;
+        while ((token = parser.nextToken()) == JsonToken.FIELD_NAME) {
+            String name = parser.getCurrentName();
+            expect(parser, parser.nextToken(), JsonToken.START_OBJECT);
+            item.put(name, readAttributeValue(parser));
+        }
+        expect(parser, token, JsonToken.END_OBJECT);
+        return item;
+    }
+
+    /**
+     * Reads an attribute value whose START_OBJECT token has already been
+     * consumed, up to and including its END_OBJECT.
+     */
+    public static AttributeValue readAttributeValue(JsonParser parser)
+            throws IOException {
+        expect(parser, parser.nextToken(), JsonToken.FIELD_NAME);
+        String type = parser.getCurrentName();
+        JsonToken token = parser.nextToken();
+        AttributeValue value = new AttributeValue();
+        if (S.equals(type)) {
+            value.setS(parser.getText());
+        } else if (N.equals(type)) {
+            value.setN(parser.getText());
+        } else if (B.equals(type)) {
+            value.setB(ByteBuffer.wrap(parser.getBinaryValue()));
+        } else if (SS.equals(type)) {
+            expect(parser, token, JsonToken.START_ARRAY);
+            value.setSS(readStrings(parser));
+        } else if (NS.equals(type)) {
+            expect(parser, token, JsonToken.START_ARRAY);
+            value.setNS(readStrings(parser));
+        } else if (BS.equals(type)) {
+            expect(parser, token, JsonToken.START_ARRAY);
+            List<ByteBuffer> bs = new ArrayList<ByteBuffer>();
+            while (parser.nextToken() != JsonToken.END_ARRAY) {
+                bs.add(ByteBuffer.wrap(parser.getBinaryValue()));
+            }
+            value.setBS(bs);
+        } else if (M.equals(type)) {
+            expect(parser, token, JsonToken.START_OBJECT);
+            value.setM(readAttributeMap(parser));
+        } else if (L.equals(type)) {
+            expect(parser, token, JsonToken.START_ARRAY);
+            List<AttributeValue> list = new ArrayList<AttributeValue>();
+            while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+                expect(parser, token, JsonToken.START_OBJECT);
+                list.add(readAttributeValue(parser));
+            }
+            value.setL(list);
+        } else if (NULL.equals(type)) {
+            value.setNULL(parser.getBooleanValue());
+        } else if (BOOL.equals(type)) {
+            value.setBOOL(parser.getBooleanValue());
+        } else {
+            throw new JsonParseException("Unknown attribute value type "
+                    + type, parser.getCurrentLocation());
+        }
+        expect(parser, parser.nextToken(), JsonToken.END_OBJECT);
+        return value;
+    }
+
+    private static void writeStrings(JsonGenerator generator,
+            List<String> strings) throws IOException {
+        generator.writeStartArray();
+        for (String s : strings) {
+            generator.writeString(s);
+        }
+        generator.writeEndArray();
+    }
+
+    private static List<String> readStrings(JsonParser parser)
+            throws IOException {
+        List<String> strings = new ArrayList<String>();
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            strings.add(parser.getText());
+        }
+        return strings;
+    }
+
+    /**
+     * Writes the remaining bytes of the buffer as base64 without changing its
+     * position.
+     */
+    private static void writeBinary(JsonGenerator generator, ByteBuffer b)
+            throws IOException {
+        if (b.hasArray()) {
+            generator.writeBinary(b.array(), b.arrayOffset() + b.position(),
+                    b.remaining());
+        } else {
+            byte[] bytes = new byte[b.remaining()];
+            b.duplicate().get(bytes);
+            generator.writeBinary(bytes);
+        }
+    }
+
+    private static void expect(JsonParser parser, JsonToken actual,
+            JsonToken expected) throws JsonParseException {
+        if (actual != expected) {
+            throw new JsonParseException("Expected " + expected + " but was "
+                    + actual, parser.getCurrentLocation());
+        }
+    }
+}
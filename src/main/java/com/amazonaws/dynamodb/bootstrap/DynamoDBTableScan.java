@@ -5,6 +5,7 @@
  */
 package com.amazonaws.dynamodb.bootstrap;
 
+import java.util.Arrays;
 import java.util.concurrent.Executor;
 
 import com.amazonaws.services.dynamodbv2.AmazonDynamoDBClient;
@@ -18,13 +19,30 @@ public class DynamoDBTableScan {
 
     private final RateLimiter rateLimiter;
     private final AmazonDynamoDBClient client;
+    private final OperationStats stats;
+    private DirectBufferPool compactItemPool;
+    private PauseGate pauseGate;
+    private RetryPolicy retryPolicy;
+    private double targetPageBytes;
+    private double targetPageLatencyMillis;
+    private int[] segmentSample;
 
     /**
      * Initializes the RateLimiter and sets the AmazonDynamoDBClient.
      */
     public DynamoDBTableScan(double rateLimit, AmazonDynamoDBClient client) {
+        this(rateLimit, client, new OperationStats());
+    }
+
+    /**
+     * Initializes the RateLimiter and sets the AmazonDynamoDBClient and the
+     * stats every scan call is recorded in.
+     */
+    public DynamoDBTableScan(double rateLimit, AmazonDynamoDBClient client,
+            OperationStats stats) {
         rateLimiter = RateLimiter.create(rateLimit);
         this.client = client;
+        this.stats = stats;
     }
 
     /**
@@ -40,9 +58,24 @@ public class DynamoDBTableScan {
     public ParallelScanExecutor getParallelScanCompletionService(
             ScanRequest initialRequest, int numSegments, Executor executor,
             int section, int totalSections) {
+        return getParallelScanCompletionService(initialRequest, numSegments,
+                executor, section, totalSections, null);
+    }
+
+    /**
+     * Like getParallelScanCompletionService, but if consumer is not null the
+     * reader threads hand every page to it themselves; wait for the scan with
+     * awaitFinished instead of calling grab.
+     */
+    public ParallelScanExecutor getParallelScanCompletionService(
+            ScanRequest initialRequest, int numSegments, Executor executor,
+            int section, int totalSections, AbstractLogConsumer consumer) {
         final int segments = Math.max(1, numSegments);
         final ParallelScanExecutor completion = new ParallelScanExecutor(
                 executor, segments);
+        if (consumer != null) {
+            completion.dispatchTo(consumer);
+        }
 
         int sectionSize = segments / totalSections;
         int start = sectionSize * section;
@@ -52,15 +85,90 @@ public class DynamoDBTableScan {
         }
 
         for (int segment = start; segment < end; segment++) {
+            if (segmentSample != null
+                    && Arrays.binarySearch(segmentSample, segment) < 0) {
+                continue;
+            }
             ScanRequest scanSegment = copyScanRequest(initialRequest)
                     .withTotalSegments(segments).withSegment(segment);
-            completion.addWorker(new ScanSegmentWorker(this.client,
-                    this.rateLimiter, scanSegment), segment);
+            ScanSegmentWorker worker = new ScanSegmentWorker(this.client,
+                    this.rateLimiter, scanSegment, stats);
+            if (compactItemPool != null) {
+                worker.setCompactItemPool(compactItemPool);
+            }
+            if (pauseGate != null) {
+                worker.setPauseGate(pauseGate);
+            }
+            if (retryPolicy != null) {
+                worker.setRetryPolicy(retryPolicy);
+            }
+            if (targetPageBytes > 0) {
+                worker.setAdaptiveLimit(new AdaptiveScanLimit(
+                        scanSegment.getLimit(), targetPageBytes,
+                        targetPageLatencyMillis));
+            }
+            completion.addWorker(worker, segment);
         }
 
         return completion;
     }
 
+    /**
+     * Updates the rate at which this scan consumes read capacity.
+     */
+    public void setRateLimit(double rateLimit) {
+        rateLimiter.setRate(rateLimit);
+    }
+
+    /**
+     * Makes every segment tune its own scan Limit toward pages of about
+     * targetPageBytes that take about targetPageLatencyMillis, starting from
+     * the Limit of the initial request. Must be called before
+     * getParallelScanCompletionService.
+     */
+    public void setAdaptiveScanLimit(double targetPageBytes,
+            double targetPageLatencyMillis) {
+        this.targetPageBytes = targetPageBytes;
+        this.targetPageLatencyMillis = targetPageLatencyMillis;
+    }
+
+    /**
+     * Makes the scan hold scanned items in compact pages from the given pool.
+     * Must be called before getParallelScanCompletionService.
+     */
+    public void setCompactItemPool(DirectBufferPool compactItemPool) {
+        this.compactItemPool = compactItemPool;
+    }
+
+    /**
+     * Sets when to retry failed scan calls and when to give up on them. Must
+     * be called before getParallelScanCompletionService.
+     */
+    public void setRetryPolicy(RetryPolicy retryPolicy) {
+        this.retryPolicy = retryPolicy;
+    }
+
+    /**
+     * Makes every segment wait while the gate is paused before each scan
+     * call. Must be called before getParallelScanCompletionService.
+     */
+    public void setPauseGate(PauseGate pauseGate) {
+        this.pauseGate = pauseGate;
+    }
+
+    /**
+     * Makes the scan read only the given segments, in ascending order, of
+     * those in its section. Must be called before
+     * getParallelScanCompletionService.
+     */
+    public void setSegmentSample(int[] segmentSample) {
+        this.segmentSample = segmentSample;
+    }
+
+    public OperationStats getStats() {
+        return stats;
+    }
+
     public ScanRequest copyScanRequest(ScanRequest request) {
         return new ScanRequest()
                 .withTableName(request.getTableName())
@@ -0,0 +1,322 @@
+/*
+ * Copyright 2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.amazonaws.dynamodb.bootstrap;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+/**
+ * Describes a partitioned export: the table, its partition key, and for every
+ * bucket the file holding its items, how many there are and their size. Each
+ * item is in the bucket given by bucketOf its partition key value, so all
+ * items of a partition key are in one bucket and importers that each take
+ * their own buckets never write to the same partition key. The manifest is
+ * written last, so an export directory without one is incomplete.
+ */
+public class ExportManifest {
+
+    /**
+     * Name of the manifest file in an export directory.
+     */
+    public static final String FILE_NAME = "manifest.json";
+
+    /**
+     * Name of the hash that maps partition key values to buckets.
+     */
+    public static final String HASH = "fnv1a-32";
+
+    /**
+     * Compression of bucket files that are plain JSON lines.
+     */
+    public static final String COMPRESSION_NONE = "none";
+
+    /**
+     * Compression of bucket files written with ParallelGzipOutputStream.
+     */
+    public static final String COMPRESSION_GZIP = "gzip";
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final int FNV_OFFSET_BASIS = 0x811c9dc5;
+    private static final int FNV_PRIME = 0x01000193;
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private final String tableName;
+    private final String partitionKey;
+    private final String compression;
+    private final List<Bucket> buckets;
+
+    /**
+     * One bucket of the export.
+     */
+    public static class Bucket {
+        private final int index;
+        private final String fileName;
+        private final long items;
+        private final long bytes;
+
+        public Bucket(int index, String fileName, long items, long bytes) {
+            this.index = index;
+            this.fileName = fileName;
+            this.items = items;
+            this.bytes = bytes;
+        }
+
+        public int getIndex() {
+            return index;
+        }
+
+        public String getFileName() {
+            return fileName;
+        }
+
+        public long getItems() {
+            return items;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+    }
+
+    public ExportManifest(String tableName, String partitionKey,
+            List<Bucket> buckets) {
+        this(tableName, partitionKey, COMPRESSION_NONE, buckets);
+    }
+
+    /**
+     * Describes an export whose bucket files are compressed with the given
+     * compression, COMPRESSION_NONE or COMPRESSION_GZIP.
+     */
+    public ExportManifest(String tableName, String partitionKey,
+            String compression, List<Bucket> buckets) {
+        this.tableName = tableName;
+        this.partitionKey = partitionKey;
+        this.compression = compression;
+        this.buckets = Collections.unmodifiableList(new ArrayList<Bucket>(
+                buckets));
+    }
+
+    public String getTableName() {
+        return tableName;
+    }
+
+    public String getPartitionKey() {
+        return partitionKey;
+    }
+
+    public String getCompression() {
+        return compression;
+    }
+
+    public boolean isCompressed() {
+        return COMPRESSION_GZIP.equals(compression);
+    }
+
+    /**
+     * Returns the buckets, in order of their index.
+     */
+    public List<Bucket> getBuckets() {
+        return buckets;
+    }
+
+    public long getTotalItems() {
+        long total = 0;
+        for (Bucket bucket : buckets) {
+            total += bucket.getItems();
+        }
+        return total;
+    }
+
+    /**
+     * Returns the file name of a bucket.
+     */
+    public static String bucketFileName(int index) {
+        return String.format("bucket-%05d.json", index);
+    }
+
+    /**
+     * Returns the file name of a bucket compressed with the given compression.
+     */
+    public static String bucketFileName(int index, String compression) {
+        return COMPRESSION_GZIP.equals(compression) ? bucketFileName(index)
+                + ".gz" : bucketFileName(index);
+    }
+
+    /**
+     * Returns the bucket of a partition key value: the FNV-1a hash of its type
+     * and value modulo the number of buckets. Unlike AttributeValue.hashCode
+     * it does not depend on the SDK version, so exports made by different
+     * versions of the tool agree.
+     */
+    public static int bucketOf(AttributeValue key, int bucketCount) {
+        int hash = FNV_OFFSET_BASIS;
+        if (key != null) {
+            if (key.getS() != null) {
+                hash = fnv(hash, (byte) 'S');
+                hash = fnv(hash, key.getS().getBytes(UTF8));
+            } else if (key.getN() != null) {
+                hash = fnv(hash, (byte) 'N');
+                hash = fnv(hash, key.getN().getBytes(UTF8));
+            } else if (key.getB() != null) {
+                hash = fnv(hash, (byte) 'B');
+                final ByteBuffer b = key.getB().duplicate();
+                while (b.hasRemaining()) {
+                    hash = fnv(hash, b.get());
+                }
+            }
+        }
+        return (hash & Integer.MAX_VALUE) % bucketCount;
+    }
+
+    private static int fnv(int hash, byte b) {
+        return (hash ^ (b & 0xff)) * FNV_PRIME;
+    }
+
+    private static int fnv(int hash, byte[] bytes) {
+        for (byte b : bytes) {
+            hash = fnv(hash, b);
+        }
+        return hash;
+    }
+
+    /**
+     * Writes the manifest to the export directory.
+     */
+    public void write(File directory) throws IOException {
+        OutputStream out = new FileOutputStream(new File(directory, FILE_NAME));
+        try {
+            JsonGenerator generator = JSON_FACTORY.createGenerator(out,
+                    JsonEncoding.UTF8);
+            generator.useDefaultPrettyPrinter();
+            generator.writeStartObject();
+            generator.writeStringField("table", tableName);
+            generator.writeStringField("partitionKey", partitionKey);
+            generator.writeStringField("hash", HASH);
+            generator.writeStringField("compression", compression);
+            generator.writeNumberField("bucketCount", buckets.size());
+            generator.writeNumberField("totalItems", getTotalItems());
+            generator.writeArrayFieldStart("buckets");
+            for (Bucket bucket : buckets) {
+                generator.writeStartObject();
+                generator.writeNumberField("bucket", bucket.getIndex());
+                generator.writeStringField("file", bucket.getFileName());
+                generator.writeNumberField("items", bucket.getItems());
+                generator.writeNumberField("bytes", bucket.getBytes());
+                generator.writeEndObject();
+            }
+            generator.writeEndArray();
+            generator.writeEndObject();
+            generator.close();
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Reads the manifest of an export directory.
+     */
+    public static ExportManifest read(File directory) throws IOException {
+        InputStream in = new FileInputStream(new File(directory, FILE_NAME));
+        try {
+            JsonParser parser = JSON_FACTORY.createParser(in);
+            expect(parser, parser.nextToken(), JsonToken.START_OBJECT);
+            String tableName = null;
+            String partitionKey = null;
+            String hash = null;
+            // exports made before compression was supported have none
+            String compression = COMPRESSION_NONE;
+            List<Bucket> buckets = new ArrayList<Bucket>();
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                final String name = parser.getCurrentName();
+                final JsonToken value = parser.nextToken();
+                if ("table".equals(name)) {
+                    tableName = parser.getText();
+                } else if ("partitionKey".equals(name)) {
+                    partitionKey = parser.getText();
+                } else if ("hash".equals(name)) {
+                    hash = parser.getText();
+                } else if ("compression".equals(name)) {
+                    compression = parser.getText();
+                } else if ("buckets".equals(name)) {
+                    expect(parser, value, JsonToken.START_ARRAY);
+                    while (parser.nextToken() == JsonToken.START_OBJECT) {
+                        buckets.add(readBucket(parser));
+                    }
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            if (!HASH.equals(hash)) {
+                throw new JsonParseException("Unknown bucket hash " + hash,
+                        parser.getCurrentLocation());
+            }
+            if (!COMPRESSION_NONE.equals(compression)
+                    && !COMPRESSION_GZIP.equals(compression)) {
+                throw new JsonParseException("Unknown compression "
+                        + compression, parser.getCurrentLocation());
+            }
+            for (int i = 0; i < buckets.size(); i++) {
+                if (buckets.get(i).getIndex() != i) {
+                    throw new JsonParseException("Bucket " + i
+                            + " is missing from the manifest",
+                            parser.getCurrentLocation());
+                }
+            }
+            return new ExportManifest(tableName, partitionKey, compression,
+                    buckets);
+        } finally {
+            in.close();
+        }
+    }
+
+    private static Bucket readBucket(JsonParser parser) throws IOException {
+        int index = -1;
+        String fileName = null;
+        long items = 0;
+        long bytes = 0;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            final String name = parser.getCurrentName();
+            parser.nextToken();
+            if ("bucket".equals(name)) {
+                index = parser.getIntValue();
+            } else if ("file".equals(name)) {
+                fileName = parser.getText();
+            } else if ("items".equals(name)) {
+                items = parser.getLongValue();
+            } else if ("bytes".equals(name)) {
+                bytes = parser.getLongValue();
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return new Bucket(index, fileName, items, bytes);
+    }
+
+    private static void expect(JsonParser parser, JsonToken actual,
+            JsonToken expected) throws JsonParseException {
+        if (actual != expected) {
+            throw new JsonParseException("Expected " + expected + " but got "
+                    + actual, parser.getCurrentLocation());
+        }
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright 2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.amazonaws.dynamodb.bootstrap;
+
+import com.google.common.util.concurrent.RateLimiter;
+
+/**
+ * Takes fractional capacity units from a RateLimiter, which only hands out
+ * whole permits. The fractions are added up and a permit is acquired whenever
+ * they make a whole one, so half units of eventually consistent reads and
+ * sub-unit estimates are neither dropped nor rounded up. May be shared
+ * between threads.
+ */
+public class FractionalPermits {
+
+    private final RateLimiter rateLimiter;
+    private double owed;
+
+    public FractionalPermits(RateLimiter rateLimiter) {
+        this.rateLimiter = rateLimiter;
+    }
+
+    /**
+     * Acquires the whole permits that units and the fractions left over from
+     * earlier calls add up to, blocking until they are granted.
+     */
+    public void acquire(double units) {
+        if (units <= 0) {
+            return;
+        }
+        final int permits;
+        synchronized (this) {
+            owed += units;
+            permits = (int) Math.min(Integer.MAX_VALUE, Math.floor(owed));
+            owed -= permits;
+        }
+        if (permits > 0) {
+            rateLimiter.acquire(permits);
+        }
+    }
+
+    /**
+     * Returns the fraction of a permit used but not acquired yet.
+     */
+    public synchronized double getOwed() {
+        return owed;
+    }
+}
@@ -0,0 +1,370 @@
+/*
+ * Copyright 2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.amazonaws.dynamodb.bootstrap;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+
+import com.amazonaws.dynamodb.bootstrap.constants.BootstrapConstants;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.KeySchemaElement;
+import com.amazonaws.services.dynamodbv2.model.KeyType;
+import com.amazonaws.services.dynamodbv2.model.TableDescription;
+import com.amazonaws.services.dynamodbv2.model.WriteRequest;
+
+/**
+ * Sits between the scan and a DynamoDBConsumer and reorders the writes so that
+ * a batch spreads over many destination partitions. A scan returns the items
+ * of a partition key together, so writing pages in order sends whole batches
+ * to one partition, which throttles long before the table's capacity is used.
+ * Here the items of many pages are put into buckets by a hash of their
+ * partition key, and a dispatch thread builds every batch by taking one item
+ * from each bucket in turn. When DynamoDB leaves items unprocessed, their
+ * buckets are left out of batches for a backoff that doubles while they keep
+ * being throttled and halves as they are written again, so only the hot keys
+ * slow down.
+ */
+public class InterleavingLogConsumer extends AbstractLogConsumer {
+
+    /**
+     * Logger for the InterleavingLogConsumer.
+     */
+    private static final Logger LOGGER = LogManager
+            .getLogger(InterleavingLogConsumer.class);
+
+    /**
+     * How long a batch that could not be filled from distinct buckets waits
+     * for more items before it is filled from the buckets it has.
+     */
+    private static final long LINGER_NANOS = TimeUnit.MILLISECONDS.toNanos(20);
+
+    /**
+     * Backoff of a bucket the first time it is throttled.
+     */
+    private static final long MIN_PENALTY_NANOS = TimeUnit.MILLISECONDS
+            .toNanos(BootstrapConstants.INITIAL_RETRY_TIME_MILLISECONDS);
+
+    /**
+     * Longest a throttled bucket is left out.
+     */
+    private static final long MAX_PENALTY_NANOS = TimeUnit.MILLISECONDS
+            .toNanos(BootstrapConstants.MAX_EXPONENTIAL_BACKOFF_TIME);
+
+    private final DynamoDBConsumer consumer;
+    private final String partitionKey;
+    private final int maxPendingItems;
+    private final ArrayDeque<Map<String, AttributeValue>>[] buckets;
+    private final long[] notBefore;
+    private final long[] penalty;
+    private final Thread dispatchThread;
+    private final DynamoDBConsumerWorker.UnprocessedListener throttleListener;
+    private int cursor;
+    private int pending;
+    private long lastAdded;
+    private long throttledItems;
+    private boolean finishing;
+    private boolean stopped;
+    private volatile Throwable failure;
+
+    /**
+     * @param consumer
+     *            the consumer the batches are written with.
+     * @param partitionKey
+     *            the partition key attribute of the destination table.
+     * @param bucketCount
+     *            number of buckets items are hashed into; more buckets keep
+     *            throttling of one key from slowing down others.
+     * @param maxPendingItems
+     *            number of items that may wait in buckets before writeResult
+     *            blocks.
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    public InterleavingLogConsumer(DynamoDBConsumer consumer,
+            String partitionKey, int bucketCount, int maxPendingItems) {
+        this.consumer = consumer;
+        this.partitionKey = partitionKey;
+        this.maxPendingItems = Math.max(
+                BootstrapConstants.MAX_BATCH_SIZE_WRITE_ITEM, maxPendingItems);
+        final int count = Math.max(1, bucketCount);
+        this.buckets = new ArrayDeque[count];
+        for (int i = 0; i < count; i++) {
+            buckets[i] = new ArrayDeque<Map<String, AttributeValue>>();
+        }
+        this.notBefore = new long[count];
+        this.penalty = new long[count];
+        this.throttleListener = new DynamoDBConsumerWorker.UnprocessedListener() {
+            @Override
+            public void unprocessed(List<WriteRequest> writes) {
+                throttled(writes);
+            }
+        };
+        this.dispatchThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                dispatch();
+            }
+        }, "interleave-dispatch");
+        dispatchThread.setDaemon(true);
+        dispatchThread.start();
+    }
+
+    /**
+     * Puts the items of the page into their buckets, blocking while too many
+     * items are waiting. Returns null, since the page is not written as one.
+     */
+    @Override
+    public Future<Void> writeResult(SegmentedScanResult result) {
+        final List<Map<String, AttributeValue>> items = getItems(result);
+        boolean interrupted = false;
+        synchronized (this) {
+            // a page larger than the limit is still let in when nothing waits
+            while (!stopped && pending > 0
+                    && pending + items.size() > maxPendingItems) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                    break;
+                }
+            }
+            for (Map<String, AttributeValue> item : items) {
+                buckets[bucketOf(item)].add(item);
+            }
+            pending += items.size();
+            lastAdded = System.nanoTime();
+            notifyAll();
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        return null;
+    }
+
+    /**
+     * Returns the number of items whose buckets were held back because
+     * DynamoDB left them unprocessed.
+     */
+    public synchronized long getThrottledItems() {
+        return throttledItems;
+    }
+
+    @Override
+    public Throwable getFailure() {
+        final Throwable consumerFailure = consumer.getFailure();
+        return consumerFailure == null ? failure : consumerFailure;
+    }
+
+    /**
+     * If awaitTermination is true, writes every item still in a bucket before
+     * shutting the consumer down; otherwise drops them.
+     */
+    @Override
+    public void shutdown(boolean awaitTermination) {
+        synchronized (this) {
+            if (awaitTermination) {
+                finishing = true;
+            } else {
+                stopped = true;
+            }
+            notifyAll();
+        }
+        boolean interrupted = false;
+        try {
+            if (!awaitTermination) {
+                dispatchThread.interrupt();
+            }
+            dispatchThread.join();
+        } catch (InterruptedException e) {
+            interrupted = true;
+            LOGGER.warn("Interrupted while writing buffered items: "
+                    + e.getMessage());
+        } finally {
+            consumer.shutdown(awaitTermination);
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Builds batches from the buckets and hands them to the consumer, until
+     * the scan is finished and every bucket is empty.
+     */
+    private void dispatch() {
+        try {
+            while (true) {
+                List<Map<String, AttributeValue>> batch;
+                synchronized (this) {
+                    while (true) {
+                        if (stopped || (finishing && pending == 0)) {
+                            return;
+                        }
+                        final long now = System.nanoTime();
+                        batch = takeBatch(now);
+                        if (batch != null) {
+                            break;
+                        }
+                        waitForItems(now);
+                    }
+                    notifyAll();
+                }
+                // the consumer may write the batch on this thread
+                consumer.writeItems(batch, throttleListener);
+            }
+        } catch (InterruptedException e) {
+            LOGGER.warn("Interleaving dispatch interrupted: " + e.getMessage());
+        } catch (RuntimeException e) {
+            LOGGER.error("Could not write a batch, dropping buffered items", e);
+            failure = e;
+            synchronized (this) {
+                // do not leave the scan blocked on a full buffer
+                stopped = true;
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Returns the next batch, or null if it is better to wait. A batch takes
+     * one item from each bucket that is not held back, starting after the
+     * bucket the previous batch ended at. If that does not fill it, it waits
+     * for more pages for a while, or until half the buffer is taken, and then
+     * takes several items per bucket. Must be called holding the lock.
+     */
+    private List<Map<String, AttributeValue>> takeBatch(long now) {
+        final int size = BootstrapConstants.MAX_BATCH_SIZE_WRITE_ITEM;
+        if (pending == 0) {
+            return null;
+        }
+        final boolean fill = finishing || pending * 2 >= maxPendingItems
+                || now - lastAdded >= LINGER_NANOS;
+        if (!fill && pending < size) {
+            return null;
+        }
+        List<Map<String, AttributeValue>> batch = new ArrayList<Map<String, AttributeValue>>(
+                size);
+        int[] taken = new int[size];
+        boolean progress = true;
+        while (batch.size() < size && progress) {
+            progress = false;
+            for (int i = 0; i < buckets.length && batch.size() < size; i++) {
+                final int b = cursor;
+                cursor = (cursor + 1) % buckets.length;
+                if (!buckets[b].isEmpty() && notBefore[b] - now <= 0) {
+                    taken[batch.size()] = b;
+                    batch.add(buckets[b].poll());
+                    progress = true;
+                }
+            }
+            if (!fill) {
+                break;
+            }
+        }
+        if (batch.isEmpty() || (!fill && batch.size() < size)) {
+            // put the items back in front, in order
+            for (int i = batch.size() - 1; i >= 0; i--) {
+                buckets[taken[i]].addFirst(batch.get(i));
+            }
+            return null;
+        }
+        for (int i = 0; i < batch.size(); i++) {
+            // a bucket that is written again slowly cools down
+            penalty[taken[i]] /= 2;
+        }
+        pending -= batch.size();
+        return batch;
+    }
+
+    /**
+     * Waits until more items may come in, a held back bucket is let back in
+     * or the linger time of a partial batch runs out. Must be called holding
+     * the lock.
+     */
+    private void waitForItems(long now) throws InterruptedException {
+        long waitNanos = pending == 0 ? 0 : LINGER_NANOS;
+        if (pending > 0) {
+            for (int b = 0; b < buckets.length; b++) {
+                if (!buckets[b].isEmpty() && notBefore[b] - now > 0) {
+                    waitNanos = Math.min(waitNanos, notBefore[b] - now);
+                }
+            }
+        }
+        if (waitNanos == 0) {
+            wait();
+        } else {
+            TimeUnit.NANOSECONDS.timedWait(this, waitNanos);
+        }
+    }
+
+    /**
+     * Holds back the buckets of items DynamoDB left unprocessed.
+     */
+    private synchronized void throttled(List<WriteRequest> writes) {
+        if (writes == null) {
+            return;
+        }
+        final long now = System.nanoTime();
+        for (WriteRequest write : writes) {
+            if (write.getPutRequest() == null) {
+                continue;
+            }
+            final int b = bucketOf(write.getPutRequest().getItem());
+            if (notBefore[b] - now > 0) {
+                // already held back for this round of throttling
+                continue;
+            }
+            penalty[b] = Math.min(MAX_PENALTY_NANOS,
+                    Math.max(MIN_PENALTY_NANOS, penalty[b] * 2));
+            notBefore[b] = now + penalty[b];
+            throttledItems++;
+        }
+    }
+
+    /**
+     * Returns the partition key attribute of the table.
+     */
+    public static String getPartitionKey(TableDescription table) {
+        if (table.getKeySchema() != null) {
+            for (KeySchemaElement key : table.getKeySchema()) {
+                if (KeyType.HASH.toString().equals(key.getKeyType())) {
+                    return key.getAttributeName();
+                }
+            }
+        }
+        throw new IllegalArgumentException("Table " + table.getTableName()
+                + " has no partition key");
+    }
+
+    /**
+     * Returns the bucket of the item's partition key.
+     */
+    int bucketOf(Map<String, AttributeValue> item) {
+        final AttributeValue key = item.get(partitionKey);
+        int h = key == null ? 0 : key.hashCode();
+        h ^= h >>> 16;
+        return (h & Integer.MAX_VALUE) % buckets.length;
+    }
+
+    private static List<Map<String, AttributeValue>> getItems(
+            SegmentedScanResult result) {
+        CompactItemPage page = result.getCompactPage();
+        if (page == null) {
+            return result.getScanResult().getItems();
+        }
+        try {
+            return page.getItems(0, page.getItemCount());
+        } finally {
+            page.release();
+        }
+    }
+}
@@ -48,8 +48,63 @@ public class ItemSizeCalculator {
         return totalBytes;
     }
 
+    /**
+     * Calculate the size DynamoDB stores a number in: one byte for every two
+     * significant digits, paired from the decimal point, plus one byte, plus
+     * one more for negative numbers. Leading and trailing zeros do not count.
+     */
+    public static int calculateNumberSizeInBytes(String number) {
+        final String n = number.trim();
+        int start = 0;
+        boolean negative = false;
+        if (n.startsWith("-") || n.startsWith("+")) {
+            negative = n.charAt(0) == '-';
+            start = 1;
+        }
+        int end = n.length();
+        int exponent = 0;
+        final int e = Math.max(n.indexOf('e'), n.indexOf('E'));
+        if (e >= 0) {
+            try {
+                exponent = Integer.parseInt(n.substring(e + 1).replace("+", ""));
+            } catch (NumberFormatException nfe) {
+                return BootstrapConstants.MAX_NUMBER_OF_BYTES_FOR_NUMBER;
+            }
+            end = e;
+        }
+        int point = n.indexOf('.', start);
+        if (point < 0 || point > end) {
+            point = end;
+        }
+
+        // decimal positions of the most and least significant non-zero digit,
+        // 0 being the units digit
+        int highest = Integer.MIN_VALUE;
+        int lowest = Integer.MAX_VALUE;
+        for (int i = start; i < end; i++) {
+            final char c = n.charAt(i);
+            if (c < '0' || c > '9') {
+                continue;
+            }
+            if (c != '0') {
+                final int position = (i < point ? point - i - 1 : point - i)
+                        + exponent;
+                highest = Math.max(highest, position);
+                lowest = Math.min(lowest, position);
+            }
+        }
+        if (highest == Integer.MIN_VALUE) {
+            // zero
+            return 1;
+        }
+        // the shifts round towards negative infinity, pairing fraction digits
+        final int pairs = (highest >> 1) - (lowest >> 1) + 1;
+        final int size = pairs + 1 + (negative ? 1 : 0);
+        return Math.min(size, BootstrapConstants.MAX_NUMBER_OF_BYTES_FOR_NUMBER);
+    }
+
     /** Calculate attribute value size */
-    private static int calculateAttributeSizeInBytes(AttributeValue value) {
+    static int calculateAttributeSizeInBytes(AttributeValue value) {
         int attrValSize = 0;
         if (value == null) {
             return attrValSize;
@@ -62,7 +117,7 @@ public class ItemSizeCalculator {
             String s = value.getS();
             attrValSize += s.getBytes(BootstrapConstants.UTF8).length;
         } else if (value.getN() != null) {
-            attrValSize += BootstrapConstants.MAX_NUMBER_OF_BYTES_FOR_NUMBER;
+            attrValSize += calculateNumberSizeInBytes(value.getN());
         } else if (value.getBS() != null) {
             List<ByteBuffer> bs = value.getBS();
             for (ByteBuffer b : bs) {
@@ -81,7 +136,7 @@ public class ItemSizeCalculator {
             List<String> ns = value.getNS();
             for (String n : ns) {
                 if (n != null) {
-                    attrValSize += BootstrapConstants.MAX_NUMBER_OF_BYTES_FOR_NUMBER;
+                    attrValSize += calculateNumberSizeInBytes(n);
                 }
             }
         } else if (value.getBOOL() != null) {
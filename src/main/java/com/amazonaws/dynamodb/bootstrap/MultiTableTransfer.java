@@ -0,0 +1,260 @@
+/*
+ * Copyright 2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.amazonaws.dynamodb.bootstrap;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+
+import com.amazonaws.dynamodb.bootstrap.constants.BootstrapConstants;
+import com.amazonaws.dynamodb.bootstrap.exception.NullReadCapacityException;
+import com.amazonaws.dynamodb.bootstrap.exception.SectionOutOfRangeException;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDBClient;
+import com.amazonaws.services.dynamodbv2.model.TableDescription;
+
+/**
+ * Runs several table to table transfers in one process. All jobs share the
+ * same source and destination clients and thread pools, at most
+ * maxConcurrentJobs run at a time in order of priority, and a
+ * CapacityScheduler shares the read and write budgets between them.
+ */
+public class MultiTableTransfer {
+
+    /**
+     * Logger for the MultiTableTransfer.
+     */
+    private static final Logger LOGGER = LogManager
+            .getLogger(MultiTableTransfer.class);
+
+    /**
+     * Number of segments used when a table does not report its read capacity.
+     */
+    private static final int DEFAULT_NUM_SEGMENTS = 10;
+
+    private final AmazonDynamoDBClient sourceClient;
+    private final AmazonDynamoDBClient destinationClient;
+    private final ExecutorService sourceExec;
+    private final ExecutorService destinationExec;
+    private final CapacityScheduler scheduler;
+    private final ExecutorService jobExec;
+    private final ConcurrentHashMap<String, CachedDescription> descriptions = new ConcurrentHashMap<String, CachedDescription>();
+    private RetryPolicy retryPolicy;
+    private DeadLetterFile deadLetters;
+    private int maxInFlightBatches;
+    private long descriptionCacheMillis;
+
+    /**
+     * A table description and when it was fetched.
+     */
+    private static class CachedDescription {
+        private final TableDescription description;
+        private final long fetchedMillis;
+
+        CachedDescription(TableDescription description, long fetchedMillis) {
+            this.description = description;
+            this.fetchedMillis = fetchedMillis;
+        }
+    }
+
+    public MultiTableTransfer(AmazonDynamoDBClient sourceClient,
+            AmazonDynamoDBClient destinationClient,
+            ExecutorService sourceExec, ExecutorService destinationExec,
+            CapacityScheduler scheduler, int maxConcurrentJobs) {
+        this.sourceClient = sourceClient;
+        this.destinationClient = destinationClient;
+        this.sourceExec = sourceExec;
+        this.destinationExec = destinationExec;
+        this.scheduler = scheduler;
+        this.jobExec = Executors.newFixedThreadPool(Math.max(1,
+                maxConcurrentJobs));
+    }
+
+    /**
+     * Sets when to retry failed calls of every job and when to give up on
+     * them. Must be called before jobs are submitted.
+     */
+    public void setRetryPolicy(RetryPolicy retryPolicy) {
+        this.retryPolicy = retryPolicy;
+    }
+
+    /**
+     * Sets the file the items no job can write go to, each with its table.
+     * Must be called before jobs are submitted.
+     */
+    public void setDeadLetterFile(DeadLetterFile deadLetters) {
+        this.deadLetters = deadLetters;
+    }
+
+    /**
+     * Bounds the write batches each job may have in flight, so that a failed
+     * write fails its job. Must be called before jobs are submitted.
+     */
+    public void setMaxInFlightBatches(int maxInFlightBatches) {
+        this.maxInFlightBatches = maxInFlightBatches;
+    }
+
+    /**
+     * Reuses the description of a table for jobs that start within the given
+     * time of the job that fetched it, so that repeated jobs on the same
+     * tables skip describeTable. Off by default, since a cached description
+     * misses changes to the table's capacity.
+     */
+    public void setDescriptionCacheMillis(long descriptionCacheMillis) {
+        this.descriptionCacheMillis = descriptionCacheMillis;
+    }
+
+    /**
+     * Queues a job to run once one of the concurrent job slots is free.
+     */
+    public Future<Void> submit(final TransferJob job) {
+        return jobExec.submit(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                runJob(job);
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Runs all jobs, highest priority first, and waits for them to finish.
+     *
+     * @return the number of jobs that failed.
+     */
+    public int runAll(List<TransferJob> jobs) throws InterruptedException {
+        List<TransferJob> ordered = new ArrayList<TransferJob>(jobs);
+        Collections.sort(ordered, new Comparator<TransferJob>() {
+            @Override
+            public int compare(TransferJob a, TransferJob b) {
+                return b.getPriority() - a.getPriority();
+            }
+        });
+        List<Future<Void>> futures = new ArrayList<Future<Void>>();
+        for (TransferJob job : ordered) {
+            futures.add(submit(job));
+        }
+        int failed = 0;
+        for (int i = 0; i < futures.size(); i++) {
+            try {
+                futures.get(i).get();
+            } catch (ExecutionException e) {
+                failed++;
+                LOGGER.error("Transfer job " + ordered.get(i) + " failed.",
+                        e.getCause());
+            }
+        }
+        return failed;
+    }
+
+    /**
+     * Stops accepting jobs and waits for the running ones. The shared client
+     * thread pools are left to the caller.
+     */
+    public void shutdown() throws InterruptedException {
+        jobExec.shutdown();
+        while (!jobExec.awaitTermination(
+                BootstrapConstants.WAITING_PERIOD_FOR_THREAD_TERMINATION_SECONDS,
+                TimeUnit.SECONDS)) {
+            LOGGER.info("Waiting for transfer jobs to finish...");
+        }
+    }
+
+    private void runJob(TransferJob job) throws ExecutionException,
+            InterruptedException, SectionOutOfRangeException {
+        TableDescription readTableDescription = describe(sourceClient,
+                "source", job.getSourceTable());
+        TableDescription writeTableDescription = describe(destinationClient,
+                "destination", job.getDestinationTable());
+        int numSegments = DEFAULT_NUM_SEGMENTS;
+        try {
+            numSegments = DynamoDBBootstrapWorker
+                    .getNumberOfSegments(readTableDescription);
+        } catch (NullReadCapacityException e) {
+            LOGGER.warn("Number of segments not specified for " + job
+                    + " - defaulting to " + numSegments, e);
+        }
+        final double maxReadRate = getMaxRate(readTableDescription,
+                job.getReadThroughputRatio(), true);
+        final double maxWriteRate = getMaxRate(writeTableDescription,
+                job.getWriteThroughputRatio(), false);
+        Long tableSizeBytes = readTableDescription.getTableSizeBytes();
+        job.setTableLimits(tableSizeBytes == null ? 0 : tableSizeBytes,
+                maxReadRate, maxWriteRate);
+
+        DynamoDBConsumer consumer = new DynamoDBConsumer(destinationClient,
+                job.getDestinationTable(), maxWriteRate,
+                new SharedExecutorView(destinationExec));
+        consumer.setCapacityEstimator(new CapacityEstimator(
+                writeTableDescription));
+        DynamoDBBootstrapWorker worker = new DynamoDBBootstrapWorker(
+                sourceClient, maxReadRate, job.getSourceTable(),
+                new SharedExecutorView(sourceExec), 0, 1, numSegments,
+                job.getConsistentScan());
+        if (retryPolicy != null) {
+            consumer.setRetryPolicy(retryPolicy);
+            worker.setRetryPolicy(retryPolicy);
+        }
+        consumer.setDeadLetterFile(deadLetters);
+        if (maxInFlightBatches > 0) {
+            consumer.setMaxInFlightBatches(maxInFlightBatches);
+        }
+        job.attach(worker, consumer);
+        scheduler.jobStarted(job);
+        try {
+            LOGGER.info("Starting transfer " + job + "...");
+            worker.pipe(consumer);
+            LOGGER.info("Finished transfer " + job + ".");
+        } finally {
+            scheduler.jobFinished(job);
+            job.detach();
+        }
+    }
+
+    /**
+     * Returns the description of a table, from the cache while it is fresh.
+     */
+    private TableDescription describe(AmazonDynamoDBClient client,
+            String side, String table) {
+        if (descriptionCacheMillis <= 0) {
+            return client.describeTable(table).getTable();
+        }
+        final String key = side + ":" + table;
+        final long now = System.currentTimeMillis();
+        final CachedDescription cached = descriptions.get(key);
+        if (cached != null && now - cached.fetchedMillis < descriptionCacheMillis) {
+            return cached.description;
+        }
+        final TableDescription description = client.describeTable(table)
+                .getTable();
+        descriptions.put(key, new CachedDescription(description, now));
+        return description;
+    }
+
+    /**
+     * Returns the most capacity a job may use on a table: the ratio of its
+     * provisioned throughput, or of the on-demand throughput quota for
+     * on-demand tables.
+     */
+    private static double getMaxRate(TableDescription description,
+            double ratio, boolean read) {
+        if (DynamoDBBootstrapWorker.isOnDemand(description)) {
+            return BootstrapConstants.DEFAULT_ON_DEMAND_MAX_RATE * ratio;
+        }
+        return CommandLineInterface.calculateThroughput(description, ratio,
+                read);
+    }
+}
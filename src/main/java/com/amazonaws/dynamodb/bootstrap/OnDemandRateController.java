@@ -0,0 +1,144 @@
+/*
+ * Copyright 2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.amazonaws.dynamodb.bootstrap;
+
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+
+/**
+ * Finds the rate an on-demand table can sustain, since it has no provisioned
+ * capacity to take a ratio of. Run periodically, it looks at the calls made
+ * since the last run and raises the rate limit while calls are neither
+ * throttled nor slowing down and the current limit is actually being used.
+ * The rate grows by half each step until the first throttle, then by a tenth,
+ * and is cut back on every throttle. It never goes above maxRate, which caps
+ * what the transfer may cost.
+ */
+public class OnDemandRateController implements Runnable {
+
+    /**
+     * Logger for the OnDemandRateController.
+     */
+    private static final Logger LOGGER = LogManager
+            .getLogger(OnDemandRateController.class);
+
+    /**
+     * Rate multiplier used until the first throttle.
+     */
+    private static final double SLOW_START_FACTOR = 1.5;
+
+    /**
+     * Rate multiplier used after the first throttle.
+     */
+    private static final double PROBE_FACTOR = 1.1;
+
+    /**
+     * Rate multiplier applied when calls are throttled.
+     */
+    private static final double BACKOFF_FACTOR = 0.7;
+
+    /**
+     * Latency, relative to the lowest seen, above which the table is taken to
+     * be at its plateau.
+     */
+    private static final double LATENCY_PLATEAU_FACTOR = 2.0;
+
+    /**
+     * Fraction of the rate limit that must be used before it is raised.
+     */
+    private static final double UTILIZATION_THRESHOLD = 0.8;
+
+    /**
+     * Lowest rate ever set, as RateLimiters need a positive rate.
+     */
+    private static final double MIN_RATE = 1.0;
+
+    private final String name;
+    private final RateLimitAdjustable target;
+    private final OperationStats stats;
+    private final double maxRate;
+    private OperationStats.Snapshot last;
+    private double lowestLatencyMillis = Double.MAX_VALUE;
+    private boolean slowStart = true;
+
+    /**
+     * @param name
+     *            what is being controlled, for logging.
+     * @param target
+     *            the reader or writer whose rate limit is adjusted.
+     * @param stats
+     *            the stats of the calls made by the target.
+     * @param maxRate
+     *            the highest rate to allow, in capacity units per second.
+     */
+    public OnDemandRateController(String name, RateLimitAdjustable target,
+            OperationStats stats, double maxRate) {
+        this.name = name;
+        this.target = target;
+        this.stats = stats;
+        this.maxRate = maxRate;
+        this.last = stats.snapshot();
+    }
+
+    @Override
+    public void run() {
+        try {
+            adjust();
+        } catch (RuntimeException e) {
+            // keep the periodic task scheduled
+            LOGGER.warn("Could not adjust the " + name + " rate", e);
+        }
+    }
+
+    /**
+     * Looks at the calls made since the previous adjustment and changes the
+     * rate limit accordingly.
+     */
+    synchronized void adjust() {
+        final OperationStats.Snapshot now = stats.snapshot();
+        final OperationStats.Snapshot window = now.since(last);
+        last = now;
+        if (window.getCalls() == 0) {
+            return;
+        }
+
+        final double rate = target.getRateLimit();
+        final double latency = window.getAverageLatencyMillis();
+        double newRate = rate;
+        String reason;
+        if (window.getThrottledCalls() > 0) {
+            slowStart = false;
+            newRate = Math.max(MIN_RATE, rate * BACKOFF_FACTOR);
+            reason = window.getThrottledCalls() + " of " + window.getCalls()
+                    + " calls were throttled";
+        } else {
+            lowestLatencyMillis = Math.min(lowestLatencyMillis, latency);
+            if (latency > lowestLatencyMillis * LATENCY_PLATEAU_FACTOR) {
+                reason = "latency rose to " + latency + " ms from "
+                        + lowestLatencyMillis + " ms";
+            } else if (window.getCapacityPerSecond() < rate
+                    * UTILIZATION_THRESHOLD) {
+                reason = "only " + window.getCapacityPerSecond()
+                        + " units/s of the limit were used";
+            } else if (rate >= maxRate) {
+                reason = "the maximum rate has been reached";
+            } else {
+                newRate = Math.min(maxRate, rate
+                        * (slowStart ? SLOW_START_FACTOR : PROBE_FACTOR));
+                reason = "calls are neither throttled nor slowing down";
+            }
+        }
+
+        if (newRate != rate) {
+            target.setRateLimit(newRate);
+            LOGGER.info("Changed " + name + " rate from " + rate + " to "
+                    + newRate + " units/s: " + reason);
+        } else if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("Keeping " + name + " rate at " + rate
+                    + " units/s: " + reason);
+        }
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.amazonaws.dynamodb.bootstrap;
+
+/**
+ * Running totals for one kind of DynamoDB call (scan or batchWriteItem):
+ * number of calls, how many were throttled, time spent, capacity consumed and
+ * items transferred. Controllers take snapshots periodically and look at the
+ * difference between two of them.
+ */
+public class OperationStats {
+
+    private long calls;
+    private long throttledCalls;
+    private long latencyNanos;
+    private long items;
+    private double consumedCapacity;
+
+    /**
+     * Records one call to DynamoDB.
+     *
+     * @param latencyNanos
+     *            how long the call took.
+     * @param consumedCapacity
+     *            capacity units consumed by the call.
+     * @param items
+     *            number of items read or written by the call.
+     * @param throttled
+     *            whether the call was throttled, fully or partially.
+     */
+    public synchronized void record(long latencyNanos,
+            double consumedCapacity, int items, boolean throttled) {
+        this.calls++;
+        this.latencyNanos += latencyNanos;
+        this.consumedCapacity += consumedCapacity;
+        this.items += items;
+        if (throttled) {
+            this.throttledCalls++;
+        }
+    }
+
+    public synchronized Snapshot snapshot() {
+        return new Snapshot(System.nanoTime(), calls, throttledCalls,
+                latencyNanos, items, consumedCapacity);
+    }
+
+    /**
+     * The totals at one point in time.
+     */
+    public static class Snapshot {
+        private final long timeNanos;
+        private final long calls;
+        private final long throttledCalls;
+        private final long latencyNanos;
+        private final long items;
+        private final double consumedCapacity;
+
+        Snapshot(long timeNanos, long calls, long throttledCalls,
+                long latencyNanos, long items, double consumedCapacity) {
+            this.timeNanos = timeNanos;
+            this.calls = calls;
+            this.throttledCalls = throttledCalls;
+            this.latencyNanos = latencyNanos;
+            this.items = items;
+            this.consumedCapacity = consumedCapacity;
+        }
+
+        /**
+         * Returns what happened between an earlier snapshot and this one.
+         */
+        public Snapshot since(Snapshot earlier) {
+            return new Snapshot(timeNanos - earlier.timeNanos, calls
+                    - earlier.calls, throttledCalls - earlier.throttledCalls,
+                    latencyNanos - earlier.latencyNanos,
+                    items - earlier.items, consumedCapacity
+                            - earlier.consumedCapacity);
+        }
+
+        public long getCalls() {
+            return calls;
+        }
+
+        public long getThrottledCalls() {
+            return throttledCalls;
+        }
+
+        public long getItems() {
+            return items;
+        }
+
+        public double getConsumedCapacity() {
+            return consumedCapacity;
+        }
+
+        /**
+         * Time covered by this snapshot: since the start for a snapshot taken
+         * from OperationStats, or between two snapshots for one returned by
+         * since().
+         */
+        public long getTimeNanos() {
+            return timeNanos;
+        }
+
+        public double getAverageLatencyMillis() {
+            return calls == 0 ? 0 : latencyNanos / 1000000.0 / calls;
+        }
+
+        /**
+         * Capacity consumed per second over the interval of a snapshot
+         * returned by since().
+         */
+        public double getCapacityPerSecond() {
+            return timeNanos <= 0 ? 0 : consumedCapacity * 1e9 / timeNanos;
+        }
+    }
+}
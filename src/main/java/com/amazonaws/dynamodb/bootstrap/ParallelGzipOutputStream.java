@@ -0,0 +1,391 @@
+/*
+ * Copyright 2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.amazonaws.dynamodb.bootstrap;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Writes a gzip file whose blocks are compressed in parallel. The stream is
+ * cut into blocks of a fixed size, each block is compressed on the pool into
+ * a gzip member of its own, and the members are written in order, so the file
+ * is an ordinary concatenated gzip stream that gunzip and GZIPInputStream
+ * read as one. The header of every member has an extra field holding the
+ * member's compressed length, which lets readIndex list the blocks of a file
+ * without decompressing it, so readers can decompress them in parallel too.
+ * Not safe for use by several threads at once.
+ */
+public class ParallelGzipOutputStream extends OutputStream {
+
+    /**
+     * First byte of the extra subfield holding a member's length.
+     */
+    static final byte SUBFIELD_ID1 = 'D';
+
+    /**
+     * Second byte of the extra subfield holding a member's length.
+     */
+    static final byte SUBFIELD_ID2 = 'B';
+
+    private static final int HEADER_LENGTH = 20;
+    private static final int TRAILER_LENGTH = 8;
+
+    private final OutputStream out;
+    private final ExecutorService exec;
+    private final int blockSize;
+    private final int maxPendingBlocks;
+    private final int level;
+    private final ArrayDeque<Future<Member>> pending = new ArrayDeque<Future<Member>>();
+    private byte[] block;
+    private int count;
+    private long blocks;
+    private boolean closed;
+
+    /**
+     * One block of a file, as found by readIndex.
+     */
+    public static class Block {
+        private final long offset;
+        private final int length;
+        private final long uncompressedLength;
+
+        public Block(long offset, int length, long uncompressedLength) {
+            this.offset = offset;
+            this.length = length;
+            this.uncompressedLength = uncompressedLength;
+        }
+
+        /**
+         * Returns where the block's gzip member starts in the file.
+         */
+        public long getOffset() {
+            return offset;
+        }
+
+        /**
+         * Returns the length of the block's gzip member.
+         */
+        public int getLength() {
+            return length;
+        }
+
+        public long getUncompressedLength() {
+            return uncompressedLength;
+        }
+    }
+
+    /**
+     * A compressed block, ready to be written.
+     */
+    private static class Member {
+        private final byte[] bytes;
+        private final int length;
+
+        Member(byte[] bytes, int length) {
+            this.bytes = bytes;
+            this.length = length;
+        }
+    }
+
+    /**
+     * @param out
+     *            the stream the compressed blocks are written to, closed with
+     *            this one.
+     * @param exec
+     *            the pool blocks are compressed on. Must not be a pool whose
+     *            threads write to this stream, since they wait for it.
+     * @param blockSize
+     *            number of uncompressed bytes per block.
+     * @param maxPendingBlocks
+     *            number of blocks that may be compressing or waiting to be
+     *            written before writes block.
+     */
+    public ParallelGzipOutputStream(OutputStream out, ExecutorService exec,
+            int blockSize, int maxPendingBlocks) {
+        this(out, exec, blockSize, maxPendingBlocks,
+                Deflater.DEFAULT_COMPRESSION);
+    }
+
+    /**
+     * Compresses the blocks at the given Deflater level.
+     */
+    public ParallelGzipOutputStream(OutputStream out, ExecutorService exec,
+            int blockSize, int maxPendingBlocks, int level) {
+        if (blockSize < 1) {
+            throw new IllegalArgumentException(
+                    "Block size must be at least 1: " + blockSize);
+        }
+        this.out = out;
+        this.exec = exec;
+        this.blockSize = blockSize;
+        this.maxPendingBlocks = Math.max(1, maxPendingBlocks);
+        this.level = level;
+        this.block = new byte[blockSize];
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        ensureOpen();
+        block[count++] = (byte) b;
+        if (count == blockSize) {
+            submitBlock();
+        }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        ensureOpen();
+        while (len > 0) {
+            final int n = Math.min(len, blockSize - count);
+            System.arraycopy(b, off, block, count, n);
+            count += n;
+            off += n;
+            len -= n;
+            if (count == blockSize) {
+                submitBlock();
+            }
+        }
+    }
+
+    /**
+     * Compresses what has been written so far as a block of its own and waits
+     * until every block is written, so flushing often makes the file larger.
+     */
+    @Override
+    public void flush() throws IOException {
+        ensureOpen();
+        if (count > 0) {
+            submitBlock();
+        }
+        while (!pending.isEmpty()) {
+            writeMember(pending.poll());
+        }
+        out.flush();
+    }
+
+    /**
+     * Writes the last block, waits for every block to be written and closes
+     * the underlying stream. A file nothing was written to still gets an empty
+     * member, so that it is a valid gzip file.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        try {
+            if (count > 0 || blocks == 0) {
+                submitBlock();
+            }
+            while (!pending.isEmpty()) {
+                writeMember(pending.poll());
+            }
+        } finally {
+            closed = true;
+            for (Future<Member> member : pending) {
+                member.cancel(true);
+            }
+            pending.clear();
+            block = null;
+            out.close();
+        }
+    }
+
+    /**
+     * Returns the number of blocks compressed so far.
+     */
+    public long getBlockCount() {
+        return blocks;
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+    }
+
+    /**
+     * Hands the current block to the pool, first writing the blocks that are
+     * done and, while too many are pending, waiting for the oldest.
+     */
+    private void submitBlock() throws IOException {
+        while (!pending.isEmpty()
+                && (pending.size() >= maxPendingBlocks || pending.peek()
+                        .isDone())) {
+            writeMember(pending.poll());
+        }
+        final byte[] input = block;
+        final int length = count;
+        pending.add(exec.submit(new Callable<Member>() {
+            @Override
+            public Member call() {
+                return compress(input, length, level);
+            }
+        }));
+        blocks++;
+        block = new byte[blockSize];
+        count = 0;
+    }
+
+    private void writeMember(Future<Member> future) throws IOException {
+        final Member member;
+        try {
+            member = future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(
+                    "Interrupted while compressing a block");
+        } catch (ExecutionException e) {
+            throw new IOException("Could not compress a block", e.getCause());
+        }
+        out.write(member.bytes, 0, member.length);
+    }
+
+    /**
+     * Compresses the bytes into a gzip member whose header records its
+     * length.
+     */
+    private static Member compress(byte[] input, int length, int level) {
+        // deflate output never exceeds zlib's compressBound
+        final int bound = length + (length >>> 12) + (length >>> 14)
+                + (length >>> 25) + 13;
+        byte[] buffer = new byte[HEADER_LENGTH + bound + TRAILER_LENGTH];
+        int size = HEADER_LENGTH;
+        final Deflater deflater = new Deflater(level, true);
+        try {
+            deflater.setInput(input, 0, length);
+            deflater.finish();
+            while (!deflater.finished()) {
+                if (size == buffer.length - TRAILER_LENGTH) {
+                    byte[] grown = new byte[buffer.length * 2];
+                    System.arraycopy(buffer, 0, grown, 0, size);
+                    buffer = grown;
+                }
+                size += deflater.deflate(buffer, size, buffer.length
+                        - TRAILER_LENGTH - size);
+            }
+        } finally {
+            deflater.end();
+        }
+        final CRC32 crc = new CRC32();
+        crc.update(input, 0, length);
+        writeIntLE(buffer, size, (int) crc.getValue());
+        writeIntLE(buffer, size + 4, length);
+        size += TRAILER_LENGTH;
+
+        buffer[0] = (byte) 0x1f;
+        buffer[1] = (byte) 0x8b;
+        buffer[2] = Deflater.DEFLATED;
+        // FEXTRA
+        buffer[3] = 4;
+        // no modification time, no extra flags
+        writeIntLE(buffer, 4, 0);
+        buffer[8] = 0;
+        // unknown operating system
+        buffer[9] = (byte) 0xff;
+        writeShortLE(buffer, 10, 8);
+        buffer[12] = SUBFIELD_ID1;
+        buffer[13] = SUBFIELD_ID2;
+        writeShortLE(buffer, 14, 4);
+        writeIntLE(buffer, 16, size);
+        return new Member(buffer, size);
+    }
+
+    /**
+     * Lists the blocks of a file written by this class, reading only their
+     * headers and trailers. Throws if a member lacks the length subfield, as
+     * members written by other gzip tools do.
+     */
+    public static List<Block> readIndex(File file) throws IOException {
+        List<Block> index = new ArrayList<Block>();
+        RandomAccessFile in = new RandomAccessFile(file, "r");
+        try {
+            final long fileLength = in.length();
+            long offset = 0;
+            final byte[] header = new byte[HEADER_LENGTH];
+            while (offset < fileLength) {
+                in.seek(offset);
+                try {
+                    in.readFully(header);
+                } catch (EOFException e) {
+                    throw new IOException("Truncated block at " + offset
+                            + " in " + file);
+                }
+                if ((header[0] & 0xff) != 0x1f || (header[1] & 0xff) != 0x8b
+                        || (header[3] & 4) == 0 || readShortLE(header, 10) != 8
+                        || header[12] != SUBFIELD_ID1
+                        || header[13] != SUBFIELD_ID2
+                        || readShortLE(header, 14) != 4) {
+                    throw new IOException("No block index at " + offset
+                            + " in " + file);
+                }
+                final int length = readIntLE(header, 16);
+                if (length < HEADER_LENGTH + TRAILER_LENGTH
+                        || offset + length > fileLength) {
+                    throw new IOException("Invalid block length " + length
+                            + " at " + offset + " in " + file);
+                }
+                in.seek(offset + length - 4);
+                final long uncompressed = Integer.reverseBytes(in.readInt()) & 0xffffffffL;
+                index.add(new Block(offset, length, uncompressed));
+                offset += length;
+            }
+        } finally {
+            in.close();
+        }
+        return Collections.unmodifiableList(index);
+    }
+
+    /**
+     * Reads the gzip member of one block, e.g. to decompress it on its own.
+     */
+    public static byte[] readBlock(File file, Block block) throws IOException {
+        final byte[] bytes = new byte[block.getLength()];
+        RandomAccessFile in = new RandomAccessFile(file, "r");
+        try {
+            in.seek(block.getOffset());
+            in.readFully(bytes);
+        } finally {
+            in.close();
+        }
+        return bytes;
+    }
+
+    private static void writeIntLE(byte[] b, int off, int value) {
+        b[off] = (byte) value;
+        b[off + 1] = (byte) (value >>> 8);
+        b[off + 2] = (byte) (value >>> 16);
+        b[off + 3] = (byte) (value >>> 24);
+    }
+
+    private static void writeShortLE(byte[] b, int off, int value) {
+        b[off] = (byte) value;
+        b[off + 1] = (byte) (value >>> 8);
+    }
+
+    private static int readIntLE(byte[] b, int off) {
+        return (b[off] & 0xff) | (b[off + 1] & 0xff) << 8
+                | (b[off + 2] & 0xff) << 16 | (b[off + 3] & 0xff) << 24;
+    }
+
+    private static int readShortLE(byte[] b, int off) {
+        return (b[off] & 0xff) | (b[off + 1] & 0xff) << 8;
+    }
+}
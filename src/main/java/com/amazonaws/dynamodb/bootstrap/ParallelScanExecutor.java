@@ -5,27 +5,41 @@
  */
 package com.amazonaws.dynamodb.bootstrap;
 
-import java.util.BitSet;
+import java.util.concurrent.Callable;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorCompletionService;
 import java.util.concurrent.Future;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * This class executes multiple scan requests on one segment of a table in
  * series, as a runnable. Instances meant to be used as tasks of the worker
  * thread pool for parallel scans.
- * 
+ *
+ * Completed pages can either be taken with grab(), which any number of
+ * dispatcher threads may call at once, or be handed to a consumer directly by
+ * the reader thread that scanned them, after dispatchTo(). Segment completion
+ * is tracked without locks.
  */
 public class ParallelScanExecutor {
-    private final BitSet finished;
+    private final AtomicIntegerArray finished;
+    private final AtomicInteger finishedCount = new AtomicInteger();
+    private final AtomicInteger addedCount = new AtomicInteger();
     private final ScanSegmentWorker[] workers;
+    private final Executor executor;
     private final ExecutorCompletionService<SegmentedScanResult> exec;
+    private volatile AbstractLogConsumer consumer;
+    private final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+    private final Object done = new Object();
 
     public ParallelScanExecutor(Executor executor, int segments) {
+        this.executor = executor;
         this.exec = new ExecutorCompletionService<SegmentedScanResult>(executor);
-        this.finished = new BitSet(segments);
-        this.finished.clear();
+        this.finished = new AtomicIntegerArray(segments);
         this.workers = new ScanSegmentWorker[segments];
     }
 
@@ -33,28 +47,28 @@ public class ParallelScanExecutor {
      * Set the segment to finished
      */
     public void finishSegment(int segment) {
-        synchronized (finished) {
-            if (segment > finished.size()) {
-                throw new IllegalArgumentException(
-                        "Invalid segment passed to finishSegment");
-            }
-            finished.set(segment);
+        if (segment < 0 || segment >= workers.length) {
+            throw new IllegalArgumentException(
+                    "Invalid segment passed to finishSegment");
+        }
+        if (finished.compareAndSet(segment, 0, 1)
+                && finishedCount.incrementAndGet() == addedCount.get()) {
+            wakeWaiters();
         }
     }
 
     /**
-     * returns if the scan is finished
+     * returns if the scan is finished, meaning every segment that was added
+     * has been scanned to its end
      */
     public boolean finished() {
-        synchronized (finished) {
-            return finished.cardinality() == workers.length;
-        }
+        return finishedCount.get() == addedCount.get();
     }
 
     /**
      * This method gets a segmentedScanResult and submits the next scan request
      * for that segment, if there is one.
-     * 
+     *
      * @return the next available ScanResult
      * @throws ExecutionException
      *             if one of the segment pages threw while executing
@@ -63,9 +77,25 @@ public class ParallelScanExecutor {
      */
     public SegmentedScanResult grab() throws ExecutionException,
             InterruptedException {
-        Future<SegmentedScanResult> ret = exec.take();
+        return resubmit(exec.take());
+    }
 
-        int segment = ret.get().getSegment();
+    /**
+     * Like grab, but returns null if no page completes within the timeout.
+     * Several dispatcher threads should use this rather than grab, since the
+     * last page may be taken by another thread between their finished() check
+     * and their call.
+     */
+    public SegmentedScanResult grab(long timeout, TimeUnit unit)
+            throws ExecutionException, InterruptedException {
+        Future<SegmentedScanResult> ret = exec.poll(timeout, unit);
+        return ret == null ? null : resubmit(ret);
+    }
+
+    private SegmentedScanResult resubmit(Future<SegmentedScanResult> ret)
+            throws ExecutionException, InterruptedException {
+        SegmentedScanResult result = ret.get();
+        int segment = result.getSegment();
         ScanSegmentWorker sw = workers[segment];
 
         if (sw.hasNext()) {
@@ -74,7 +104,43 @@ public class ParallelScanExecutor {
             finishSegment(segment);
         }
 
-        return ret.get();
+        return result;
+    }
+
+    /**
+     * Makes every reader thread hand the pages it scans straight to the
+     * consumer and then queue the next page of its segment, instead of
+     * returning them through grab(). Must be called before the workers are
+     * added; the consumer's writeResult is then called from several threads
+     * at once.
+     */
+    public void dispatchTo(AbstractLogConsumer consumer) {
+        this.consumer = consumer;
+    }
+
+    /**
+     * Waits until every segment has been scanned and handed to the consumer
+     * given to dispatchTo.
+     *
+     * @throws ExecutionException
+     *             if scanning or dispatching a page threw
+     */
+    public void awaitFinished() throws ExecutionException, InterruptedException {
+        synchronized (done) {
+            while (!finished() && failure.get() == null) {
+                done.wait();
+            }
+        }
+        Throwable cause = failure.get();
+        if (cause != null) {
+            throw new ExecutionException(cause);
+        }
+    }
+
+    private void wakeWaiters() {
+        synchronized (done) {
+            done.notifyAll();
+        }
     }
 
     /**
@@ -82,6 +148,45 @@ public class ParallelScanExecutor {
      */
     public void addWorker(ScanSegmentWorker ssw, int segment) {
         workers[segment] = ssw;
-        exec.submit(ssw);
+        addedCount.incrementAndGet();
+        if (consumer != null) {
+            executor.execute(new ReaderTask(ssw, segment));
+        } else {
+            exec.submit(ssw);
+        }
+    }
+
+    /**
+     * Scans one page of a segment, hands it to the consumer and queues itself
+     * again for the next page.
+     */
+    private class ReaderTask implements Runnable {
+        private final Callable<SegmentedScanResult> worker;
+        private final int segment;
+
+        ReaderTask(ScanSegmentWorker worker, int segment) {
+            this.worker = worker;
+            this.segment = segment;
+        }
+
+        @Override
+        public void run() {
+            if (failure.get() != null) {
+                return;
+            }
+            try {
+                consumer.writeResult(worker.call());
+            } catch (Throwable t) {
+                failure.compareAndSet(null, t);
+                wakeWaiters();
+                return;
+            }
+            if (workers[segment].hasNext()) {
+                // requeue rather than loop so that segments share the readers
+                executor.execute(this);
+            } else {
+                finishSegment(segment);
+            }
+        }
     }
 }
@@ -0,0 +1,289 @@
+/*
+ * Copyright 2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.amazonaws.dynamodb.bootstrap;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+
+import com.amazonaws.dynamodb.bootstrap.constants.BootstrapConstants;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+/**
+ * Exports scanned items to a directory of bucket files instead of a table.
+ * Each item goes to the bucket of its partition key (see ExportManifest), one
+ * DynamoDB JSON item per line, and once the scan is finished a manifest lists
+ * the item count and size of every bucket. Pages are split into buckets on
+ * the thread pool; each bucket file is written under its own lock. Bucket
+ * files may be gzip compressed with a ParallelGzipOutputStream each, on a
+ * compression pool shared by all buckets.
+ */
+public class PartitionedExportConsumer extends AbstractLogConsumer {
+
+    /**
+     * Logger for the PartitionedExportConsumer.
+     */
+    private static final Logger LOGGER = LogManager
+            .getLogger(PartitionedExportConsumer.class);
+
+    private final File directory;
+    private final String tableName;
+    private final String partitionKey;
+    private final String compression;
+    private final BucketWriter[] buckets;
+    private final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+    private boolean closed;
+
+    /**
+     * Counts the bytes written through it.
+     */
+    private static class CountingOutputStream extends FilterOutputStream {
+        private long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+
+    /**
+     * The file of one bucket.
+     */
+    private static class BucketWriter {
+        private final CountingOutputStream counter;
+        private final JsonGenerator generator;
+        private long items;
+
+        BucketWriter(File file) throws IOException {
+            counter = new CountingOutputStream(new FileOutputStream(file));
+            generator = DynamoDBJsonCodec
+                    .createGenerator(new BufferedOutputStream(counter));
+        }
+
+        /**
+         * Writes a gzip compressed file; the count is of compressed bytes.
+         */
+        BucketWriter(File file, ExecutorService compressionPool,
+                int maxPendingBlocks) throws IOException {
+            counter = new CountingOutputStream(new FileOutputStream(file));
+            // the gzip stream buffers whole blocks itself
+            generator = DynamoDBJsonCodec
+                    .createGenerator(new ParallelGzipOutputStream(counter,
+                            compressionPool,
+                            BootstrapConstants.COMPRESSION_BLOCK_SIZE,
+                            maxPendingBlocks));
+        }
+
+        synchronized void write(List<Map<String, AttributeValue>> page)
+                throws IOException {
+            for (Map<String, AttributeValue> item : page) {
+                DynamoDBJsonCodec.writeItem(generator, item);
+            }
+            items += page.size();
+        }
+
+        synchronized void close() throws IOException {
+            if (items > 0) {
+                generator.writeRaw('\n');
+            }
+            generator.close();
+        }
+    }
+
+    /**
+     * @param directory
+     *            the directory to write the bucket files and manifest to,
+     *            created if it does not exist.
+     * @param tableName
+     *            the table being exported, recorded in the manifest.
+     * @param partitionKey
+     *            the partition key attribute of the table.
+     * @param bucketCount
+     *            number of bucket files.
+     * @param exec
+     *            the pool pages are split and written on.
+     */
+    public PartitionedExportConsumer(File directory, String tableName,
+            String partitionKey, int bucketCount, ExecutorService exec)
+            throws IOException {
+        this(directory, tableName, partitionKey, bucketCount, exec, null, 0);
+    }
+
+    /**
+     * Writes gzip compressed bucket files if compressionPool is not null.
+     *
+     * @param compressionPool
+     *            the pool blocks of the bucket files are compressed on, or
+     *            null to write them uncompressed. Must not be exec, whose
+     *            threads wait for it.
+     * @param compressionThreads
+     *            number of threads of the compression pool, which bounds how
+     *            many blocks each bucket keeps pending.
+     */
+    public PartitionedExportConsumer(File directory, String tableName,
+            String partitionKey, int bucketCount, ExecutorService exec,
+            ExecutorService compressionPool, int compressionThreads)
+            throws IOException {
+        if (bucketCount < 1) {
+            throw new IllegalArgumentException(
+                    "Bucket count must be at least 1: " + bucketCount);
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create export directory "
+                    + directory);
+        }
+        if (new File(directory, ExportManifest.FILE_NAME).exists()) {
+            throw new IOException("Export directory " + directory
+                    + " already holds an export");
+        }
+        this.directory = directory;
+        this.tableName = tableName;
+        this.partitionKey = partitionKey;
+        this.compression = compressionPool == null ? ExportManifest.COMPRESSION_NONE
+                : ExportManifest.COMPRESSION_GZIP;
+        this.buckets = new BucketWriter[bucketCount];
+        // enough pending blocks between all buckets to keep the pool busy
+        final int maxPendingBlocks = Math.max(2, 2 * compressionThreads
+                / bucketCount);
+        for (int i = 0; i < bucketCount; i++) {
+            final File file = new File(directory,
+                    ExportManifest.bucketFileName(i, compression));
+            buckets[i] = compressionPool == null ? new BucketWriter(file)
+                    : new BucketWriter(file, compressionPool, maxPendingBlocks);
+        }
+        super.threadPool = exec;
+    }
+
+    /**
+     * Splits the page into buckets and appends them to their files on the
+     * thread pool.
+     */
+    @Override
+    public Future<Void> writeResult(final SegmentedScanResult result) {
+        final Throwable cause = failure.get();
+        if (cause != null) {
+            throw new IllegalStateException("An earlier export write failed",
+                    cause);
+        }
+        return threadPool.submit(new Callable<Void>() {
+            @Override
+            public Void call() {
+                try {
+                    writePage(result);
+                } catch (IOException e) {
+                    if (failure.compareAndSet(null, e)) {
+                        LOGGER.error("Could not write to export directory "
+                                + directory, e);
+                    }
+                }
+                return null;
+            }
+        });
+    }
+
+    private void writePage(SegmentedScanResult result) throws IOException {
+        final List<Map<String, AttributeValue>> items;
+        final CompactItemPage page = result.getCompactPage();
+        if (page == null) {
+            items = result.getScanResult().getItems();
+        } else {
+            try {
+                items = page.getItems(0, page.getItemCount());
+            } finally {
+                page.release();
+            }
+        }
+        @SuppressWarnings({ "unchecked", "rawtypes" })
+        final List<Map<String, AttributeValue>>[] split = new List[buckets.length];
+        for (Map<String, AttributeValue> item : items) {
+            final int bucket = ExportManifest.bucketOf(item.get(partitionKey),
+                    buckets.length);
+            if (split[bucket] == null) {
+                split[bucket] = new ArrayList<Map<String, AttributeValue>>();
+            }
+            split[bucket].add(item);
+        }
+        for (int i = 0; i < split.length; i++) {
+            if (split[i] != null) {
+                buckets[i].write(split[i]);
+            }
+        }
+    }
+
+    @Override
+    public Throwable getFailure() {
+        return failure.get();
+    }
+
+    /**
+     * Waits for the pages being written if awaitTermination is true, then
+     * closes the bucket files. The manifest is only written if every page was
+     * written, so an interrupted export has none.
+     */
+    @Override
+    public void shutdown(boolean awaitTermination) {
+        super.shutdown(awaitTermination);
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        List<ExportManifest.Bucket> written = new ArrayList<ExportManifest.Bucket>();
+        for (int i = 0; i < buckets.length; i++) {
+            try {
+                buckets[i].close();
+            } catch (IOException e) {
+                failure.compareAndSet(null, e);
+                LOGGER.error("Could not close bucket " + i, e);
+            }
+            written.add(new ExportManifest.Bucket(i, ExportManifest
+                    .bucketFileName(i, compression), buckets[i].items,
+                    buckets[i].counter.count));
+        }
+        if (!awaitTermination || failure.get() != null) {
+            LOGGER.warn("Export to " + directory
+                    + " did not finish, not writing its manifest");
+            return;
+        }
+        ExportManifest manifest = new ExportManifest(tableName, partitionKey,
+                compression, written);
+        try {
+            manifest.write(directory);
+            LOGGER.info("Exported " + manifest.getTotalItems() + " items of "
+                    + tableName + " into " + buckets.length + " buckets in "
+                    + directory);
+        } catch (IOException e) {
+            failure.compareAndSet(null, e);
+            LOGGER.error("Could not write the export manifest", e);
+        }
+    }
+}
@@ -0,0 +1,45 @@
+/*
+ * Copyright 2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.amazonaws.dynamodb.bootstrap;
+
+/**
+ * A gate the scan passes before every scan call, which an operator can close
+ * to pause the scan and open again to resume it. Pages already scanned are
+ * still written while the scan is paused, and the scan picks up where every
+ * segment left off.
+ */
+public class PauseGate {
+
+    private boolean paused;
+
+    /**
+     * Makes scan calls that have not started yet wait until resume is called.
+     */
+    public synchronized void pause() {
+        paused = true;
+    }
+
+    /**
+     * Lets waiting and later scan calls go ahead.
+     */
+    public synchronized void resume() {
+        paused = false;
+        notifyAll();
+    }
+
+    public synchronized boolean isPaused() {
+        return paused;
+    }
+
+    /**
+     * Blocks while the gate is paused.
+     */
+    public synchronized void awaitResumed() throws InterruptedException {
+        while (paused) {
+            wait();
+        }
+    }
+}
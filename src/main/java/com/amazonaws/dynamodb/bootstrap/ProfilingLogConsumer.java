@@ -0,0 +1,94 @@
+/*
+ * Copyright 2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.amazonaws.dynamodb.bootstrap;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Future;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+
+/**
+ * Profiles a table as it is scanned instead of writing its items anywhere.
+ * Every page is counted into the profile of its segment's shard on the scan
+ * thread that read it; segments are spread over as many shards as there are
+ * scan threads, so parallel segments rarely wait for each other, and the
+ * shards are merged into the table's profile at the end.
+ */
+public class ProfilingLogConsumer extends AbstractLogConsumer {
+
+    private final String tableName;
+    private final String partitionKey;
+    private final TableProfile[] shards;
+
+    /**
+     * @param tableName
+     *            the table that is scanned.
+     * @param partitionKey
+     *            the partition key attribute of the table.
+     * @param shardCount
+     *            number of profiles segments are counted into, e.g. the
+     *            number of scan threads.
+     */
+    public ProfilingLogConsumer(String tableName, String partitionKey,
+            int shardCount) {
+        this.tableName = tableName;
+        this.partitionKey = partitionKey;
+        this.shards = new TableProfile[Math.max(1, shardCount)];
+        for (int i = 0; i < shards.length; i++) {
+            shards[i] = new TableProfile(tableName, partitionKey);
+        }
+    }
+
+    /**
+     * Counts the items of the page. Returns null, since nothing is written.
+     */
+    @Override
+    public Future<Void> writeResult(SegmentedScanResult result) {
+        final List<Map<String, AttributeValue>> items = getItems(result);
+        final TableProfile shard = shards[result.getSegment() % shards.length];
+        synchronized (shard) {
+            for (Map<String, AttributeValue> item : items) {
+                shard.add(item);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * There is nothing to shut down.
+     */
+    @Override
+    public void shutdown(boolean awaitTermination) {
+    }
+
+    /**
+     * Returns the profile of everything counted so far, merged from the
+     * shards.
+     */
+    public TableProfile getProfile() {
+        TableProfile profile = new TableProfile(tableName, partitionKey);
+        for (TableProfile shard : shards) {
+            synchronized (shard) {
+                profile.merge(shard);
+            }
+        }
+        return profile;
+    }
+
+    private static List<Map<String, AttributeValue>> getItems(
+            SegmentedScanResult result) {
+        CompactItemPage page = result.getCompactPage();
+        if (page == null) {
+            return result.getScanResult().getItems();
+        }
+        try {
+            return page.getItems(0, page.getItemCount());
+        } finally {
+            page.release();
+        }
+    }
+}
@@ -0,0 +1,23 @@
+/*
+ * Copyright 2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.amazonaws.dynamodb.bootstrap;
+
+/**
+ * Something that consumes DynamoDB capacity under a rate limit that can be
+ * changed while it runs.
+ */
+public interface RateLimitAdjustable {
+
+    /**
+     * Returns the current rate limit in capacity units per second.
+     */
+    double getRateLimit();
+
+    /**
+     * Changes the rate limit, in capacity units per second.
+     */
+    void setRateLimit(double rateLimit);
+}
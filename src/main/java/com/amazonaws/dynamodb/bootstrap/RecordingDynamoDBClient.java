@@ -0,0 +1,184 @@
+/*
+ * Copyright 2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.amazonaws.dynamodb.bootstrap;
+
+import java.util.List;
+import java.util.Map;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDBClient;
+import com.amazonaws.services.dynamodbv2.model.BatchWriteItemRequest;
+import com.amazonaws.services.dynamodbv2.model.BatchWriteItemResult;
+import com.amazonaws.services.dynamodbv2.model.ConsumedCapacity;
+import com.amazonaws.services.dynamodbv2.model.DescribeTableRequest;
+import com.amazonaws.services.dynamodbv2.model.DescribeTableResult;
+import com.amazonaws.services.dynamodbv2.model.KeySchemaElement;
+import com.amazonaws.services.dynamodbv2.model.KeyType;
+import com.amazonaws.services.dynamodbv2.model.ProvisionedThroughputDescription;
+import com.amazonaws.services.dynamodbv2.model.ScanRequest;
+import com.amazonaws.services.dynamodbv2.model.ScanResult;
+import com.amazonaws.services.dynamodbv2.model.TableDescription;
+import com.amazonaws.services.dynamodbv2.model.WriteRequest;
+
+/**
+ * A client that passes the calls a transfer makes on to another client and
+ * records each of them with a TrafficRecorder. Only scan, batchWriteItem and
+ * describeTable are passed on.
+ */
+public class RecordingDynamoDBClient extends AmazonDynamoDBClient {
+
+    private final AmazonDynamoDBClient client;
+    private final TrafficRecorder recorder;
+    private final byte role;
+
+    /**
+     * @param client
+     *            the client that makes the calls.
+     * @param recorder
+     *            the trace to record them to, which may be shared with other
+     *            recording clients.
+     * @param role
+     *            TrafficRecorder.ROLE_SOURCE or ROLE_DESTINATION, the side of
+     *            the transfer the client is used for.
+     */
+    public RecordingDynamoDBClient(AmazonDynamoDBClient client,
+            TrafficRecorder recorder, byte role) {
+        this.client = client;
+        this.recorder = recorder;
+        this.role = role;
+    }
+
+    @Override
+    public ScanResult scan(ScanRequest request) {
+        final int segment = request.getSegment() == null ? -1 : request
+                .getSegment();
+        final long start = recorder.now();
+        final ScanResult result;
+        try {
+            result = client.scan(request);
+        } catch (RuntimeException e) {
+            recordError(TrafficRecorder.SCAN, request.getTableName(), segment,
+                    start, e);
+            throw e;
+        }
+        final double consumed = result.getConsumedCapacity() == null ? 0
+                : result.getConsumedCapacity().getCapacityUnits();
+        final long items = result.getItems() == null ? 0 : result.getItems()
+                .size();
+        recorder.record(new TrafficRecorder.Call(TrafficRecorder.SCAN, role,
+                request.getTableName(), segment, start, recorder.now() - start,
+                items, ItemSizeCalculator
+                        .calculateScanResultSizeInBytes(result), consumed, 0,
+                result.getLastEvaluatedKey() != null, null, null, 0));
+        return result;
+    }
+
+    @Override
+    public BatchWriteItemResult batchWriteItem(BatchWriteItemRequest request) {
+        final String tableName = getTableName(request.getRequestItems());
+        final long start = recorder.now();
+        final BatchWriteItemResult result;
+        try {
+            result = client.batchWriteItem(request);
+        } catch (RuntimeException e) {
+            recordError(TrafficRecorder.BATCH_WRITE, tableName, -1, start, e);
+            throw e;
+        }
+        long items = 0;
+        long bytes = 0;
+        for (List<WriteRequest> writes : request.getRequestItems().values()) {
+            for (WriteRequest write : writes) {
+                items++;
+                if (write.getPutRequest() != null) {
+                    bytes += ItemSizeCalculator.calculateItemSizeInBytes(write
+                            .getPutRequest().getItem());
+                }
+            }
+        }
+        double consumed = 0;
+        if (result.getConsumedCapacity() != null) {
+            for (ConsumedCapacity capacity : result.getConsumedCapacity()) {
+                consumed += capacity.getCapacityUnits();
+            }
+        }
+        recorder.record(new TrafficRecorder.Call(TrafficRecorder.BATCH_WRITE,
+                role, tableName, -1, start, recorder.now() - start, items,
+                bytes, consumed, countWrites(result.getUnprocessedItems()),
+                false, null, null, 0));
+        return result;
+    }
+
+    @Override
+    public DescribeTableResult describeTable(DescribeTableRequest request) {
+        final long start = recorder.now();
+        final DescribeTableResult result;
+        try {
+            result = client.describeTable(request);
+        } catch (RuntimeException e) {
+            recordError(TrafficRecorder.DESCRIBE_TABLE,
+                    request.getTableName(), -1, start, e);
+            throw e;
+        }
+        final TableDescription table = result.getTable();
+        final ProvisionedThroughputDescription throughput = table
+                .getProvisionedThroughput();
+        String hashKey = null;
+        if (table.getKeySchema() != null) {
+            for (KeySchemaElement key : table.getKeySchema()) {
+                if (KeyType.HASH.toString().equals(key.getKeyType())) {
+                    hashKey = key.getAttributeName();
+                }
+            }
+        }
+        recorder.record(new TrafficRecorder.Call(
+                TrafficRecorder.DESCRIBE_TABLE, role, request.getTableName(),
+                -1, start, recorder.now() - start,
+                valueOf(table.getItemCount()),
+                valueOf(table.getTableSizeBytes()),
+                throughput == null ? 0 : valueOf(throughput
+                        .getReadCapacityUnits()),
+                throughput == null ? 0 : valueOf(throughput
+                        .getWriteCapacityUnits()), false, hashKey, null, 0));
+        return result;
+    }
+
+    private void recordError(byte operation, String tableName, int segment,
+            long start, RuntimeException e) {
+        String errorCode = e.getClass().getSimpleName();
+        int statusCode = 0;
+        if (e instanceof AmazonServiceException) {
+            AmazonServiceException ase = (AmazonServiceException) e;
+            if (ase.getErrorCode() != null) {
+                errorCode = ase.getErrorCode();
+            }
+            statusCode = ase.getStatusCode();
+        }
+        recorder.record(new TrafficRecorder.Call(operation, role, tableName,
+                segment, start, recorder.now() - start, 0, 0, 0, 0, false,
+                null, errorCode, statusCode));
+    }
+
+    private static String getTableName(Map<String, List<WriteRequest>> items) {
+        if (items == null || items.isEmpty()) {
+            return "";
+        }
+        return items.keySet().iterator().next();
+    }
+
+    static long countWrites(Map<String, List<WriteRequest>> items) {
+        long count = 0;
+        if (items != null) {
+            for (List<WriteRequest> writes : items.values()) {
+                count += writes.size();
+            }
+        }
+        return count;
+    }
+
+    private static long valueOf(Long value) {
+        return value == null ? 0 : value;
+    }
+}
@@ -0,0 +1,293 @@
+/*
+ * Copyright 2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.amazonaws.dynamodb.bootstrap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDBClient;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.BatchWriteItemRequest;
+import com.amazonaws.services.dynamodbv2.model.BatchWriteItemResult;
+import com.amazonaws.services.dynamodbv2.model.ConsumedCapacity;
+import com.amazonaws.services.dynamodbv2.model.DescribeTableRequest;
+import com.amazonaws.services.dynamodbv2.model.DescribeTableResult;
+import com.amazonaws.services.dynamodbv2.model.KeySchemaElement;
+import com.amazonaws.services.dynamodbv2.model.KeyType;
+import com.amazonaws.services.dynamodbv2.model.ProvisionedThroughputDescription;
+import com.amazonaws.services.dynamodbv2.model.ProvisionedThroughputExceededException;
+import com.amazonaws.services.dynamodbv2.model.ResourceNotFoundException;
+import com.amazonaws.services.dynamodbv2.model.ScanRequest;
+import com.amazonaws.services.dynamodbv2.model.ScanResult;
+import com.amazonaws.services.dynamodbv2.model.TableDescription;
+import com.amazonaws.services.dynamodbv2.model.WriteRequest;
+
+/**
+ * A client that answers the calls of a transfer from a trace written by
+ * TrafficRecorder, so that the real scan and write machinery can be run against
+ * the latencies, throttling and unprocessed items of a recorded copy. A client
+ * answers for one side of the transfer from the calls recorded for that side,
+ * so a copy between tables of the same name needs one client for the source and
+ * one for the destination. Scans of each table segment get the recorded scans
+ * of that segment in order, and batch writes to each table the recorded batch
+ * writes to it: each call waits for its recorded latency divided by the
+ * speedup, then fails with the recorded error or returns made-up items of the
+ * recorded count and size, the recorded consumed capacity and, for writes, as
+ * many of its items unprocessed as were recorded. Calls beyond the end of the
+ * trace return immediately: scans with no items, writes with everything
+ * processed.
+ */
+public class ReplayDynamoDBClient extends AmazonDynamoDBClient {
+
+    /**
+     * Attribute that holds the made-up bulk of replayed items.
+     */
+    private static final String PAYLOAD_ATTRIBUTE = "payload";
+
+    private final Map<String, Queue<TrafficRecorder.Call>> scans = new ConcurrentHashMap<String, Queue<TrafficRecorder.Call>>();
+    private final Map<String, Queue<TrafficRecorder.Call>> writes = new ConcurrentHashMap<String, Queue<TrafficRecorder.Call>>();
+    private final Map<String, TrafficRecorder.Call> tables = new ConcurrentHashMap<String, TrafficRecorder.Call>();
+    private final double speedup;
+    private final AtomicLong nextKey = new AtomicLong();
+    private final AtomicLong replayedCalls = new AtomicLong();
+    private final AtomicLong unmatchedCalls = new AtomicLong();
+
+    /**
+     * @param calls
+     *            the recorded calls, in the order they were recorded.
+     * @param role
+     *            TrafficRecorder.ROLE_SOURCE or ROLE_DESTINATION, the side of
+     *            the transfer whose calls to answer.
+     * @param speedup
+     *            how many times faster than recorded to answer calls; 1 replays
+     *            the recorded latencies.
+     */
+    public ReplayDynamoDBClient(List<TrafficRecorder.Call> calls, byte role,
+            double speedup) {
+        if (speedup <= 0) {
+            throw new IllegalArgumentException("speedup must be positive");
+        }
+        this.speedup = speedup;
+        for (TrafficRecorder.Call call : calls) {
+            if (call.getRole() != role) {
+                continue;
+            }
+            switch (call.getOperation()) {
+            case TrafficRecorder.SCAN:
+                queue(scans, scanKey(call.getTableName(), call.getSegment()))
+                        .add(call);
+                break;
+            case TrafficRecorder.BATCH_WRITE:
+                queue(writes, call.getTableName()).add(call);
+                break;
+            case TrafficRecorder.DESCRIBE_TABLE:
+                if (!call.isError()) {
+                    tables.put(call.getTableName(), call);
+                }
+                break;
+            default:
+                break;
+            }
+        }
+    }
+
+    private static Queue<TrafficRecorder.Call> queue(
+            Map<String, Queue<TrafficRecorder.Call>> queues, String key) {
+        Queue<TrafficRecorder.Call> queue = queues.get(key);
+        if (queue == null) {
+            queue = new ConcurrentLinkedQueue<TrafficRecorder.Call>();
+            queues.put(key, queue);
+        }
+        return queue;
+    }
+
+    private static String scanKey(String tableName, int segment) {
+        return tableName + "#" + segment;
+    }
+
+    @Override
+    public DescribeTableResult describeTable(DescribeTableRequest request) {
+        TrafficRecorder.Call table = tables.get(request.getTableName());
+        if (table == null) {
+            throw new ResourceNotFoundException("Table "
+                    + request.getTableName() + " is not in the trace");
+        }
+        return new DescribeTableResult().withTable(new TableDescription()
+                .withTableName(table.getTableName())
+                .withItemCount(table.getItems())
+                .withTableSizeBytes(table.getPayloadBytes())
+                .withKeySchema(
+                        new KeySchemaElement(getKeyAttribute(table
+                                .getTableName()), KeyType.HASH))
+                .withProvisionedThroughput(
+                        new ProvisionedThroughputDescription()
+                                .withReadCapacityUnits(
+                                        (long) table.getConsumedCapacity())
+                                .withWriteCapacityUnits(table.getUnprocessed())));
+    }
+
+    @Override
+    public ScanResult scan(ScanRequest request) {
+        final int segment = request.getSegment() == null ? -1 : request
+                .getSegment();
+        final Queue<TrafficRecorder.Call> queue = scans.get(scanKey(
+                request.getTableName(), segment));
+        final TrafficRecorder.Call call = queue == null ? null : queue.poll();
+        if (call == null) {
+            unmatchedCalls.incrementAndGet();
+            return new ScanResult().withItems(
+                    new ArrayList<Map<String, AttributeValue>>()).withCount(0);
+        }
+        replay(call);
+
+        final String keyAttribute = getKeyAttribute(request.getTableName());
+        final List<Map<String, AttributeValue>> items = new ArrayList<Map<String, AttributeValue>>(
+                (int) call.getItems());
+        for (long i = 0; i < call.getItems(); i++) {
+            items.add(makeItem(keyAttribute, call.getPayloadBytes()
+                    / call.getItems()));
+        }
+        ScanResult result = new ScanResult().withItems(items)
+                .withCount(items.size()).withScannedCount(items.size())
+                .withConsumedCapacity(new ConsumedCapacity()
+                        .withTableName(request.getTableName())
+                        .withCapacityUnits(call.getConsumedCapacity()));
+        if (call.hasMore()) {
+            result.setLastEvaluatedKey(items.isEmpty() ? Collections
+                    .singletonMap(keyAttribute,
+                            new AttributeValue().withS("replay-"
+                                    + nextKey.getAndIncrement())) : Collections
+                    .singletonMap(keyAttribute,
+                            items.get(items.size() - 1).get(keyAttribute)));
+        }
+        return result;
+    }
+
+    @Override
+    public BatchWriteItemResult batchWriteItem(BatchWriteItemRequest request) {
+        final Map<String, List<WriteRequest>> requestItems = request
+                .getRequestItems();
+        final String tableName = requestItems.isEmpty() ? "" : requestItems
+                .keySet().iterator().next();
+        final Queue<TrafficRecorder.Call> queue = writes.get(tableName);
+        final TrafficRecorder.Call call = queue == null ? null : queue.poll();
+        final long requested = RecordingDynamoDBClient
+                .countWrites(requestItems);
+        if (call == null) {
+            unmatchedCalls.incrementAndGet();
+            return new BatchWriteItemResult().withConsumedCapacity(
+                    new ConsumedCapacity().withTableName(tableName)
+                            .withCapacityUnits((double) requested))
+                    .withUnprocessedItems(
+                            new HashMap<String, List<WriteRequest>>());
+        }
+        replay(call);
+
+        // the last items of the request are the ones left unprocessed
+        final Map<String, List<WriteRequest>> unprocessed = new HashMap<String, List<WriteRequest>>();
+        long left = Math.min(call.getUnprocessed(), requested);
+        for (Map.Entry<String, List<WriteRequest>> entry : requestItems
+                .entrySet()) {
+            if (left == 0) {
+                break;
+            }
+            final List<WriteRequest> tableWrites = entry.getValue();
+            final int count = (int) Math.min(left, tableWrites.size());
+            unprocessed.put(entry.getKey(), new ArrayList<WriteRequest>(
+                    tableWrites.subList(tableWrites.size() - count,
+                            tableWrites.size())));
+            left -= count;
+        }
+        return new BatchWriteItemResult().withUnprocessedItems(unprocessed)
+                .withConsumedCapacity(new ConsumedCapacity()
+                        .withTableName(tableName)
+                        .withCapacityUnits(call.getConsumedCapacity()));
+    }
+
+    /**
+     * Waits out the recorded latency of a call and throws its recorded error.
+     */
+    private void replay(TrafficRecorder.Call call) {
+        replayedCalls.incrementAndGet();
+        final long nanos = (long) (call.getLatencyMicros() * 1000 / speedup);
+        if (nanos > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(nanos);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new AmazonClientException("Interrupted while replaying",
+                        e);
+            }
+        }
+        if (!call.isError()) {
+            return;
+        }
+        final AmazonServiceException error;
+        if ("ProvisionedThroughputExceededException".equals(call
+                .getErrorCode())) {
+            error = new ProvisionedThroughputExceededException("Replayed "
+                    + call.getErrorCode());
+        } else if (call.getStatusCode() == 0) {
+            throw new AmazonClientException("Replayed " + call.getErrorCode());
+        } else {
+            error = new AmazonServiceException("Replayed "
+                    + call.getErrorCode());
+        }
+        error.setErrorCode(call.getErrorCode());
+        error.setStatusCode(call.getStatusCode());
+        throw error;
+    }
+
+    private String getKeyAttribute(String tableName) {
+        TrafficRecorder.Call table = tables.get(tableName);
+        return table == null || table.getKeyAttribute().isEmpty() ? "id"
+                : table.getKeyAttribute();
+    }
+
+    /**
+     * Returns an item with a unique key whose size ItemSizeCalculator puts at
+     * about the given number of bytes.
+     */
+    private Map<String, AttributeValue> makeItem(String keyAttribute,
+            long bytes) {
+        final String key = "replay-" + nextKey.getAndIncrement();
+        final long payload = Math.max(1, bytes - keyAttribute.length()
+                - key.length() - PAYLOAD_ATTRIBUTE.length());
+        final char[] filler = new char[(int) Math.min(payload,
+                Integer.MAX_VALUE)];
+        Arrays.fill(filler, 'x');
+        Map<String, AttributeValue> item = new HashMap<String, AttributeValue>();
+        item.put(keyAttribute, new AttributeValue().withS(key));
+        item.put(PAYLOAD_ATTRIBUTE, new AttributeValue().withS(new String(
+                filler)));
+        return item;
+    }
+
+    /**
+     * Returns the number of calls answered from the trace.
+     */
+    public long getReplayedCalls() {
+        return replayedCalls.get();
+    }
+
+    /**
+     * Returns the number of calls that found no recorded call left to replay.
+     */
+    public long getUnmatchedCalls() {
+        return unmatchedCalls.get();
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright 2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.amazonaws.dynamodb.bootstrap;
+
+import java.util.Random;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.dynamodb.bootstrap.constants.BootstrapConstants;
+
+/**
+ * Decides whether and when a failed DynamoDB call is tried again. Throttling,
+ * server errors and client side errors such as timeouts are retried, other
+ * service errors such as a ValidationException are fatal, since they fail the
+ * same way every time. Retries wait for an exponential backoff, capped and
+ * with jitter so that threads that were throttled together do not all retry
+ * together, and stop after a number of consecutive attempts.
+ */
+public class RetryPolicy {
+
+    private final int maxRetries;
+    private final long initialBackoffMillis;
+    private final long maxBackoffMillis;
+    private final Random random;
+
+    /**
+     * Retries up to BootstrapConstants.MAX_RETRIES times.
+     */
+    public RetryPolicy() {
+        this(BootstrapConstants.MAX_RETRIES);
+    }
+
+    public RetryPolicy(int maxRetries) {
+        this(maxRetries, BootstrapConstants.INITIAL_RETRY_TIME_MILLISECONDS,
+                BootstrapConstants.MAX_EXPONENTIAL_BACKOFF_TIME, new Random());
+    }
+
+    /**
+     * @param maxRetries
+     *            number of consecutive retries after which to give up.
+     * @param initialBackoffMillis
+     *            backoff before the first retry.
+     * @param maxBackoffMillis
+     *            longest backoff before a retry.
+     * @param random
+     *            source of the jitter.
+     */
+    public RetryPolicy(int maxRetries, long initialBackoffMillis,
+            long maxBackoffMillis, Random random) {
+        if (maxRetries < 0) {
+            throw new IllegalArgumentException(
+                    "Retries must not be negative: " + maxRetries);
+        }
+        this.maxRetries = maxRetries;
+        this.initialBackoffMillis = Math.max(1, initialBackoffMillis);
+        this.maxBackoffMillis = Math.max(this.initialBackoffMillis,
+                maxBackoffMillis);
+        this.random = random;
+    }
+
+    public int getMaxRetries() {
+        return maxRetries;
+    }
+
+    /**
+     * Returns whether another attempt may be made after the given number of
+     * consecutive retries.
+     */
+    public boolean canRetry(int retries) {
+        return retries < maxRetries;
+    }
+
+    /**
+     * Returns whether a call that threw the exception may succeed if tried
+     * again, after the given number of consecutive retries.
+     */
+    public boolean shouldRetry(RuntimeException e, int retries) {
+        return canRetry(retries) && isRetryable(e);
+    }
+
+    /**
+     * Returns how long to wait before the retry that follows the given number
+     * of consecutive retries: the doubled backoff, capped, scaled by a random
+     * factor between one half and one.
+     */
+    public long backoffMillis(int retries) {
+        final int doublings = Math.min(Math.max(0, retries), 30);
+        final long backoff = Math.min(maxBackoffMillis,
+                initialBackoffMillis << doublings);
+        final double jitter;
+        synchronized (random) {
+            jitter = random.nextDouble();
+        }
+        return backoff / 2 + (long) (jitter * (backoff - backoff / 2));
+    }
+
+    /**
+     * Sleeps for the backoff of the given retry.
+     */
+    public void backoff(int retries) throws InterruptedException {
+        Thread.sleep(backoffMillis(retries));
+    }
+
+    /**
+     * Returns whether the exception may go away if the call is made again:
+     * throttling, errors of the service itself and errors reaching it.
+     */
+    public static boolean isRetryable(RuntimeException e) {
+        if (e instanceof AmazonServiceException) {
+            final AmazonServiceException service = (AmazonServiceException) e;
+            if (ScanSegmentWorker.isThrottle(service)
+                    || "RequestLimitExceeded".equals(service.getErrorCode())) {
+                return true;
+            }
+            return service.getErrorType() == AmazonServiceException.ErrorType.Service
+                    || service.getStatusCode() >= 500;
+        }
+        // timeouts, connection resets and the like
+        return e instanceof AmazonClientException;
+    }
+
+    /**
+     * Returns a short description of why a call failed, for the dead-letter
+     * file and logs.
+     */
+    public static String describe(RuntimeException e) {
+        if (e instanceof AmazonServiceException) {
+            final AmazonServiceException service = (AmazonServiceException) e;
+            return service.getErrorCode() + ": " + service.getErrorMessage();
+        }
+        return e.getClass().getSimpleName() + ": " + e.getMessage();
+    }
+}
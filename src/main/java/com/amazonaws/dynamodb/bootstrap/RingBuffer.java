@@ -0,0 +1,164 @@
+/*
+ * Copyright 2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.amazonaws.dynamodb.bootstrap;
+
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A preallocated ring buffer for one producer and any number of consumers,
+ * bounded both by its number of slots and by the total bytes of the elements
+ * in it. Every slot carries a sequence number telling whether it is free for
+ * the producer or ready for a consumer, so neither side takes a lock; threads
+ * that have to wait spin briefly and then park for short intervals.
+ */
+public class RingBuffer<E> {
+
+    /**
+     * Times a waiting thread yields before it starts parking.
+     */
+    private static final int SPINS = 100;
+
+    /**
+     * How long a waiting thread parks at a time.
+     */
+    private static final long PARK_NANOS = 50000;
+
+    private final Object[] elements;
+    private final long[] weights;
+    private final AtomicLongArray sequences;
+    private final int mask;
+    private final long capacityBytes;
+    private final AtomicLong usedBytes = new AtomicLong();
+    private final AtomicInteger count = new AtomicInteger();
+    private final AtomicLong readPosition = new AtomicLong();
+    // only the producer writes this
+    private long writePosition;
+
+    /**
+     * @param slots
+     *            number of slots, rounded up to a power of two.
+     * @param capacityBytes
+     *            most bytes held at once. An element bigger than this is still
+     *            accepted once the buffer is empty.
+     */
+    public RingBuffer(int slots, long capacityBytes) {
+        int size = Integer.highestOneBit(Math.max(2, slots) - 1) << 1;
+        this.elements = new Object[size];
+        this.weights = new long[size];
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+        this.mask = size - 1;
+        this.capacityBytes = capacityBytes;
+    }
+
+    /**
+     * Adds an element, waiting for a free slot and for enough free bytes. Must
+     * only be called from one thread at a time.
+     */
+    public void put(E element, long bytes) throws InterruptedException {
+        final long position = writePosition;
+        final int index = (int) position & mask;
+        int waits = 0;
+        while (sequences.get(index) != position
+                || (usedBytes.get() > 0 && usedBytes.get() + bytes > capacityBytes)) {
+            waits = backOff(waits);
+        }
+        elements[index] = element;
+        weights[index] = bytes;
+        usedBytes.addAndGet(bytes);
+        count.incrementAndGet();
+        writePosition = position + 1;
+        // publishes the element to consumers
+        sequences.set(index, position + 1);
+    }
+
+    /**
+     * Removes the oldest element, or returns null if the buffer is empty.
+     */
+    public E poll() {
+        while (true) {
+            final long position = readPosition.get();
+            final int index = (int) position & mask;
+            final long sequence = sequences.get(index);
+            if (sequence < position + 1) {
+                return null;
+            }
+            if (sequence == position + 1
+                    && readPosition.compareAndSet(position, position + 1)) {
+                @SuppressWarnings("unchecked")
+                E element = (E) elements[index];
+                elements[index] = null;
+                usedBytes.addAndGet(-weights[index]);
+                count.decrementAndGet();
+                // hands the slot back to the producer for its next lap
+                sequences.set(index, position + elements.length);
+                return element;
+            }
+        }
+    }
+
+    /**
+     * Removes the oldest element, waiting for one if the buffer is empty.
+     */
+    public E take() throws InterruptedException {
+        int waits = 0;
+        E element;
+        while ((element = poll()) == null) {
+            waits = backOff(waits);
+        }
+        return element;
+    }
+
+    /**
+     * Moves up to maxElements available elements into the collection without
+     * waiting, and returns how many were moved.
+     */
+    public int drainTo(Collection<? super E> collection, int maxElements) {
+        int drained = 0;
+        E element;
+        while (drained < maxElements && (element = poll()) != null) {
+            collection.add(element);
+            drained++;
+        }
+        return drained;
+    }
+
+    /**
+     * Returns the number of elements in the buffer.
+     */
+    public int size() {
+        return count.get();
+    }
+
+    /**
+     * Returns the bytes of the elements in the buffer.
+     */
+    public long getUsedBytes() {
+        return usedBytes.get();
+    }
+
+    public long getCapacityBytes() {
+        return capacityBytes;
+    }
+
+    private static int backOff(int waits) throws InterruptedException {
+        if (Thread.interrupted()) {
+            throw new InterruptedException();
+        }
+        if (waits < SPINS) {
+            Thread.yield();
+        } else {
+            LockSupport.parkNanos(PARK_NANOS);
+        }
+        return waits + 1;
+    }
+}
@@ -0,0 +1,246 @@
+/*
+ * Copyright 2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.amazonaws.dynamodb.bootstrap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.ScanResult;
+
+/**
+ * Sits between a scan of a random sample of segments and the consumer that
+ * writes the sample, keeping each scanned item with a given probability and
+ * counting the items and bytes every segment held. Since the segments were
+ * chosen uniformly at random, the table's totals are estimated as the number
+ * of segments times the mean per scanned segment, with the standard error of
+ * sampling segments without replacement.
+ */
+public class SamplingLogConsumer extends AbstractLogConsumer {
+
+    private final AbstractLogConsumer consumer;
+    private final double itemRate;
+    private final long seed;
+    private final int totalSegments;
+    private final int[] segments;
+    private final AtomicLongArray segmentItems;
+    private final AtomicLongArray segmentBytes;
+    private final Random[] randoms;
+    private final AtomicLong keptItems = new AtomicLong();
+
+    /**
+     * An estimate of a table total and its standard error.
+     */
+    public static class Estimate {
+        private final double total;
+        private final double standardError;
+
+        public Estimate(double total, double standardError) {
+            this.total = total;
+            this.standardError = standardError;
+        }
+
+        public double getTotal() {
+            return total;
+        }
+
+        public double getStandardError() {
+            return standardError;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%.0f (+/- %.0f)", total, standardError);
+        }
+    }
+
+    /**
+     * @param consumer
+     *            the consumer the kept items are written with.
+     * @param totalSegments
+     *            number of segments the table is scanned as.
+     * @param segments
+     *            the segments that are scanned, in ascending order.
+     * @param itemRate
+     *            probability that a scanned item is kept, from 0 to 1.
+     * @param seed
+     *            seed of the item sampling; every segment draws from its own
+     *            generator, so the same seed keeps the same items.
+     */
+    public SamplingLogConsumer(AbstractLogConsumer consumer,
+            int totalSegments, int[] segments, double itemRate, long seed) {
+        if (itemRate <= 0 || itemRate > 1) {
+            throw new IllegalArgumentException(
+                    "Item rate must be in (0, 1]: " + itemRate);
+        }
+        this.consumer = consumer;
+        this.totalSegments = totalSegments;
+        this.segments = segments.clone();
+        this.itemRate = itemRate;
+        this.seed = seed;
+        this.segmentItems = new AtomicLongArray(totalSegments);
+        this.segmentBytes = new AtomicLongArray(totalSegments);
+        this.randoms = new Random[totalSegments];
+    }
+
+    /**
+     * Returns count segments of totalSegments chosen uniformly at random, in
+     * ascending order.
+     */
+    public static int[] sampleSegments(int totalSegments, int count,
+            Random random) {
+        final int k = Math.max(1, Math.min(totalSegments, count));
+        // a partial Fisher-Yates shuffle of the segment numbers
+        final int[] all = new int[totalSegments];
+        for (int i = 0; i < totalSegments; i++) {
+            all[i] = i;
+        }
+        for (int i = 0; i < k; i++) {
+            final int j = i + random.nextInt(totalSegments - i);
+            final int swap = all[i];
+            all[i] = all[j];
+            all[j] = swap;
+        }
+        final int[] sample = Arrays.copyOf(all, k);
+        Arrays.sort(sample);
+        return sample;
+    }
+
+    /**
+     * Counts the page toward its segment and writes the items that are kept.
+     */
+    @Override
+    public Future<Void> writeResult(SegmentedScanResult result) {
+        final int segment = result.getSegment();
+        final List<Map<String, AttributeValue>> items = getItems(result);
+        final Random random = random(segment);
+        List<Map<String, AttributeValue>> kept = new ArrayList<Map<String, AttributeValue>>();
+        long bytes = 0;
+        for (Map<String, AttributeValue> item : items) {
+            bytes += ItemSizeCalculator.calculateItemSizeInBytes(item);
+            if (itemRate >= 1 || random.nextDouble() < itemRate) {
+                kept.add(item);
+            }
+        }
+        segmentItems.addAndGet(segment, items.size());
+        segmentBytes.addAndGet(segment, bytes);
+        keptItems.addAndGet(kept.size());
+        return consumer.writeResult(new SegmentedScanResult(new ScanResult()
+                .withItems(kept).withCount(kept.size()), segment));
+    }
+
+    @Override
+    public Throwable getFailure() {
+        return consumer.getFailure();
+    }
+
+    @Override
+    public void shutdown(boolean awaitTermination) {
+        consumer.shutdown(awaitTermination);
+    }
+
+    /**
+     * Returns the fraction of the table's items that ends up in the sample.
+     */
+    public double getSampleFraction() {
+        return segments.length / (double) totalSegments * itemRate;
+    }
+
+    /**
+     * Returns the number of items scanned, before item sampling.
+     */
+    public long getScannedItems() {
+        long total = 0;
+        for (int segment : segments) {
+            total += segmentItems.get(segment);
+        }
+        return total;
+    }
+
+    /**
+     * Returns the number of items written to the sample.
+     */
+    public long getKeptItems() {
+        return keptItems.get();
+    }
+
+    /**
+     * Estimates the number of items in the table.
+     */
+    public Estimate estimateItems() {
+        return estimate(segmentItems);
+    }
+
+    /**
+     * Estimates the size of the table's items in bytes.
+     */
+    public Estimate estimateBytes() {
+        return estimate(segmentBytes);
+    }
+
+    /**
+     * Returns a line describing the sample and the estimated table totals.
+     */
+    public String report() {
+        return String.format("Sampled %d of %d segments and %.4f of their items"
+                + " (%.4f%% of the table): scanned %d items, kept %d."
+                + " Estimated table totals: %s items, %s bytes",
+                segments.length, totalSegments, itemRate,
+                getSampleFraction() * 100, getScannedItems(), getKeptItems(),
+                estimateItems(), estimateBytes());
+    }
+
+    private Estimate estimate(AtomicLongArray perSegment) {
+        final int k = segments.length;
+        double sum = 0;
+        for (int segment : segments) {
+            sum += perSegment.get(segment);
+        }
+        final double mean = sum / k;
+        if (k < 2) {
+            return new Estimate(totalSegments * mean, Double.NaN);
+        }
+        double squares = 0;
+        for (int segment : segments) {
+            final double d = perSegment.get(segment) - mean;
+            squares += d * d;
+        }
+        final double variance = squares / (k - 1);
+        final double finiteCorrection = 1 - k / (double) totalSegments;
+        return new Estimate(totalSegments * mean, totalSegments
+                * Math.sqrt(finiteCorrection * variance / k));
+    }
+
+    /**
+     * Returns the generator of a segment. Pages of a segment are scanned one
+     * after the other, so it is not drawn from by two threads at once.
+     */
+    private synchronized Random random(int segment) {
+        if (randoms[segment] == null) {
+            randoms[segment] = new Random(seed * 31 + segment);
+        }
+        return randoms[segment];
+    }
+
+    private static List<Map<String, AttributeValue>> getItems(
+            SegmentedScanResult result) {
+        CompactItemPage page = result.getCompactPage();
+        if (page == null) {
+            return result.getScanResult().getItems();
+        }
+        try {
+            return page.getItems(0, page.getItemCount());
+        } finally {
+            page.release();
+        }
+    }
+}
@@ -7,9 +7,10 @@ package com.amazonaws.dynamodb.bootstrap;
 
 import java.util.concurrent.Callable;
 
-import com.amazonaws.dynamodb.bootstrap.constants.BootstrapConstants;
+import com.amazonaws.AmazonServiceException;
 import com.amazonaws.services.dynamodbv2.AmazonDynamoDBClient;
 import com.amazonaws.services.dynamodbv2.model.ConsumedCapacity;
+import com.amazonaws.services.dynamodbv2.model.ProvisionedThroughputExceededException;
 import com.amazonaws.services.dynamodbv2.model.ScanRequest;
 import com.amazonaws.services.dynamodbv2.model.ScanResult;
 import com.google.common.util.concurrent.RateLimiter;
@@ -23,18 +24,24 @@ import com.google.common.util.concurrent.RateLimiter;
 public class ScanSegmentWorker implements Callable<SegmentedScanResult> {
     private final ScanRequest request;
     private boolean hasNext;
-    private int lastConsumedCapacity;
-    private long exponentialBackoffTime;
+    private double lastConsumedCapacity;
     private final AmazonDynamoDBClient client;
-    private final RateLimiter rateLimiter;
+    private final FractionalPermits permits;
+    private final OperationStats stats;
+    private long lastLatencyNanos;
+    private DirectBufferPool compactItemPool;
+    private AdaptiveScanLimit adaptiveLimit;
+    private PauseGate pauseGate;
+    private RetryPolicy retryPolicy = new RetryPolicy();
 
     ScanSegmentWorker(final AmazonDynamoDBClient client,
-            final RateLimiter rateLimiter, ScanRequest request) {
+            final RateLimiter rateLimiter, ScanRequest request,
+            OperationStats stats) {
         this.request = request;
         this.client = client;
-        this.rateLimiter = rateLimiter;
+        this.permits = new FractionalPermits(rateLimiter);
+        this.stats = stats;
         this.hasNext = true;
-        this.exponentialBackoffTime = BootstrapConstants.INITIAL_RETRY_TIME_MILLISECONDS;
         lastConsumedCapacity = 256;
     }
 
@@ -42,25 +49,71 @@ public class ScanSegmentWorker implements Callable<SegmentedScanResult> {
         return hasNext;
     }
 
+    /**
+     * Makes the worker pick the Limit of every scan call from the pages it
+     * has scanned so far.
+     */
+    void setAdaptiveLimit(AdaptiveScanLimit adaptiveLimit) {
+        this.adaptiveLimit = adaptiveLimit;
+        request.setLimit(adaptiveLimit.getLimit());
+    }
+
+    /**
+     * Makes the worker encode every page it scans into a buffer from the pool
+     * and drop the scanned item objects straight away.
+     */
+    void setCompactItemPool(DirectBufferPool compactItemPool) {
+        this.compactItemPool = compactItemPool;
+    }
+
+    /**
+     * Sets when to retry failed scan calls and when to give up on them.
+     */
+    void setRetryPolicy(RetryPolicy retryPolicy) {
+        this.retryPolicy = retryPolicy;
+    }
+
+    /**
+     * Makes the worker wait while the gate is paused before every scan call.
+     */
+    void setPauseGate(PauseGate pauseGate) {
+        this.pauseGate = pauseGate;
+    }
+
     @Override
     public SegmentedScanResult call() {
+        if (pauseGate != null) {
+            try {
+                pauseGate.awaitResumed();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
         ScanResult result = null;
         result = runWithBackoff();
 
         final ConsumedCapacity cc = result.getConsumedCapacity();
 
+        double consumed = 0;
+        int pageBytes = -1;
         if (cc != null && cc.getCapacityUnits() != null) {
-            lastConsumedCapacity = result.getConsumedCapacity()
-                    .getCapacityUnits().intValue();
+            consumed = cc.getCapacityUnits();
+            lastConsumedCapacity = consumed;
         } else if (result.getScannedCount() != null && result.getCount() != null) {
-
-            final boolean isConsistent = request.getConsistentRead();
-            int itemSize = isConsistent ? BootstrapConstants.STRONGLY_CONSISTENT_READ_ITEM_SIZE
-                    : BootstrapConstants.EVENTUALLY_CONSISTENT_READ_ITEM_SIZE;
-
-            lastConsumedCapacity = (result.getScannedCount() / (int) Math.max(1.0, result.getCount()))
-                    * (ItemSizeCalculator.calculateScanResultSizeInBytes(result) / itemSize);
+            // scans are charged for every item scanned, not just the ones
+            // returned, so scale the returned bytes up by the ratio
+            final boolean isConsistent = Boolean.TRUE.equals(request
+                    .getConsistentRead());
+            pageBytes = ItemSizeCalculator.calculateScanResultSizeInBytes(result);
+            final double scannedBytes = result.getCount() > 0 ? pageBytes
+                    * (double) result.getScannedCount() / result.getCount()
+                    : 0;
+            lastConsumedCapacity = CapacityEstimator.scanReadUnits(
+                    (long) Math.ceil(scannedBytes), isConsistent);
+            consumed = lastConsumedCapacity;
         }
+        stats.record(lastLatencyNanos, consumed,
+                result.getCount() == null ? 0 : result.getCount(), false);
 
         if (result.getLastEvaluatedKey() != null
                 && !result.getLastEvaluatedKey().isEmpty()) {
@@ -70,38 +123,70 @@ public class ScanSegmentWorker implements Callable<SegmentedScanResult> {
             hasNext = false;
         }
 
-        if (lastConsumedCapacity > 0) {
-            rateLimiter.acquire(lastConsumedCapacity);
+        if (adaptiveLimit != null && result.getItems() != null) {
+            if (pageBytes < 0) {
+                pageBytes = ItemSizeCalculator
+                        .calculateScanResultSizeInBytes(result);
+            }
+            final Integer scanned = result.getScannedCount() != null ? result
+                    .getScannedCount() : result.getCount();
+            request.setLimit(adaptiveLimit.update(scanned == null ? 0
+                    : scanned, pageBytes, lastLatencyNanos / 1000000.0));
+        }
+
+        permits.acquire(lastConsumedCapacity);
+        if (compactItemPool != null && result.getItems() != null) {
+            CompactItemPage page = CompactItemPage.encode(result.getItems(),
+                    compactItemPool);
+            result.setItems(null);
+            return new SegmentedScanResult(result, request.getSegment(), page);
         }
         return new SegmentedScanResult(result, request.getSegment());
     }
 
     /**
-     * begins a scan with an exponential back off if throttled.
+     * begins a scan with an exponential back off if throttled. Errors that
+     * the retry policy does not retry, or keeps failing on, are thrown.
      */
     public ScanResult runWithBackoff() {
-        ScanResult result = null;
+        int retries = 0;
         boolean interrupted = false;
         try {
-            do {
+            while (true) {
+                final long start = System.nanoTime();
                 try {
-                    result = client.scan(request);
-                } catch (Exception e) {
+                    final ScanResult result = client.scan(request);
+                    lastLatencyNanos = System.nanoTime() - start;
+                    return result;
+                } catch (RuntimeException e) {
+                    stats.record(System.nanoTime() - start, 0, 0,
+                            isThrottle(e));
+                    if (!retryPolicy.shouldRetry(e, retries)) {
+                        throw e;
+                    }
                     try {
-                        Thread.sleep(exponentialBackoffTime);
+                        retryPolicy.backoff(retries++);
                     } catch (InterruptedException ie) {
                         interrupted = true;
-                    } finally {
-                        exponentialBackoffTime *= 2;
                     }
-                    continue;
                 }
-            } while (result == null);
-            return result;
+            }
         } finally {
             if (interrupted) {
                 Thread.currentThread().interrupt();
             }
         }
     }
+
+    /**
+     * Returns whether the exception means the table is being throttled.
+     */
+    static boolean isThrottle(Exception e) {
+        if (e instanceof ProvisionedThroughputExceededException) {
+            return true;
+        }
+        return e instanceof AmazonServiceException
+                && "ThrottlingException".equals(((AmazonServiceException) e)
+                        .getErrorCode());
+    }
 }
@@ -14,10 +14,21 @@ import com.amazonaws.services.dynamodbv2.model.ScanResult;
 public class SegmentedScanResult {
     private final ScanResult result;
     private final int segment;
+    private final CompactItemPage compactPage;
 
     public SegmentedScanResult(ScanResult result, int segment) {
+        this(result, segment, null);
+    }
+
+    /**
+     * Creates a result whose items are held in a compact page rather than in
+     * the ScanResult.
+     */
+    public SegmentedScanResult(ScanResult result, int segment,
+            CompactItemPage compactPage) {
         this.result = result;
         this.segment = segment;
+        this.compactPage = compactPage;
     }
 
     public ScanResult getScanResult() {
@@ -27,4 +38,12 @@ public class SegmentedScanResult {
     public int getSegment() {
         return segment;
     }
+
+    /**
+     * Returns the page holding the items off the heap, or null if the items
+     * are in the ScanResult.
+     */
+    public CompactItemPage getCompactPage() {
+        return compactPage;
+    }
 }
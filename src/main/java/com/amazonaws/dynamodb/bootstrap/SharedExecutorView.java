@@ -0,0 +1,116 @@
+/*
+ * Copyright 2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.amazonaws.dynamodb.bootstrap;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An ExecutorService that runs its tasks on a shared thread pool, but can be
+ * shut down and awaited on its own. This lets several transfers run on the
+ * same threads while each provider and consumer still shuts down "its" pool
+ * when it is done: shutting down the view only waits for the tasks that were
+ * submitted through it and leaves the shared pool running.
+ */
+public class SharedExecutorView extends AbstractExecutorService {
+
+    private final ExecutorService delegate;
+    private final Object lock = new Object();
+    private int outstandingTasks;
+    private boolean shutdown;
+
+    public SharedExecutorView(ExecutorService delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public void execute(final Runnable command) {
+        synchronized (lock) {
+            if (shutdown) {
+                throw new RejectedExecutionException(
+                        "Shared executor view has been shut down");
+            }
+            outstandingTasks++;
+        }
+        try {
+            delegate.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        command.run();
+                    } finally {
+                        taskDone();
+                    }
+                }
+            });
+        } catch (RuntimeException e) {
+            taskDone();
+            throw e;
+        }
+    }
+
+    private void taskDone() {
+        synchronized (lock) {
+            outstandingTasks--;
+            if (outstandingTasks == 0) {
+                lock.notifyAll();
+            }
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        synchronized (lock) {
+            shutdown = true;
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * Stops accepting tasks. Tasks already handed to the shared pool are left
+     * to finish, since they cannot be told apart from other users' tasks.
+     */
+    @Override
+    public List<Runnable> shutdownNow() {
+        shutdown();
+        return Collections.emptyList();
+    }
+
+    @Override
+    public boolean isShutdown() {
+        synchronized (lock) {
+            return shutdown;
+        }
+    }
+
+    @Override
+    public boolean isTerminated() {
+        synchronized (lock) {
+            return shutdown && outstandingTasks == 0;
+        }
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit)
+            throws InterruptedException {
+        long remaining = unit.toNanos(timeout);
+        final long deadline = System.nanoTime() + remaining;
+        synchronized (lock) {
+            while (!(shutdown && outstandingTasks == 0)) {
+                if (remaining <= 0) {
+                    return false;
+                }
+                TimeUnit.NANOSECONDS.timedWait(lock, remaining);
+                remaining = deadline - System.nanoTime();
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,210 @@
+/*
+ * Copyright 2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.amazonaws.dynamodb.bootstrap;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.ScanResult;
+
+/**
+ * A first in, first out queue of scanned pages kept on local disk. Pages are
+ * appended to memory-mapped segment files of a fixed size, encoded with
+ * CompactItemCodec, and a segment file is deleted as soon as every page in it
+ * has been read back. Only the segment being written and the one being read
+ * are mapped at a time, so heap use does not grow with the number of spilled
+ * pages. Appends are serialized among themselves and may run while another
+ * thread polls.
+ */
+public class SpillBuffer implements Closeable {
+
+    /**
+     * Bytes in front of every page: its length, scan segment and item count.
+     */
+    private static final int PAGE_HEADER_BYTES = 12;
+
+    private final File directory;
+    private final int segmentBytes;
+    private final LinkedList<SpillSegment> segments = new LinkedList<SpillSegment>();
+    private final Object appendLock = new Object();
+    private int nextSegmentId;
+    private long spilledBytes;
+    private int spilledPages;
+    private boolean closed;
+
+    /**
+     * A mapped segment file, written from the front and read from the front.
+     */
+    private static class SpillSegment {
+        private final File file;
+        private MappedByteBuffer buffer;
+        private int writePosition;
+        private int readPosition;
+
+        SpillSegment(File file, int size) throws IOException {
+            this.file = file;
+            RandomAccessFile raf = new RandomAccessFile(file, "rw");
+            try {
+                // the mapping stays valid after the file is closed
+                buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE,
+                        0, size);
+            } finally {
+                raf.close();
+            }
+        }
+
+        int remaining() {
+            return buffer.capacity() - writePosition;
+        }
+
+        void delete() {
+            buffer = null;
+            file.delete();
+        }
+    }
+
+    /**
+     * @param directory
+     *            where the segment files go; created if it does not exist.
+     * @param segmentBytes
+     *            size of each segment file. Pages larger than this get a
+     *            segment of their own.
+     */
+    public SpillBuffer(File directory, int segmentBytes) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create spill directory "
+                    + directory);
+        }
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+    }
+
+    /**
+     * Appends the items of a scanned page to the end of the buffer.
+     */
+    public void append(List<Map<String, AttributeValue>> items, int scanSegment)
+            throws IOException {
+        synchronized (appendLock) {
+            appendPage(items, scanSegment);
+        }
+    }
+
+    private void appendPage(List<Map<String, AttributeValue>> items,
+            int scanSegment) throws IOException {
+        int size = PAGE_HEADER_BYTES;
+        for (Map<String, AttributeValue> item : items) {
+            size += CompactItemCodec.encodedSize(item);
+        }
+        final SpillSegment segment;
+        synchronized (this) {
+            if (closed) {
+                throw new IOException("Spill buffer is closed");
+            }
+            SpillSegment last = segments.peekLast();
+            if (last == null || last.remaining() < size) {
+                last = new SpillSegment(new File(directory, String.format(
+                        "spill-%08d.seg", nextSegmentId++)), Math.max(size,
+                        segmentBytes));
+                segments.add(last);
+            }
+            segment = last;
+        }
+        // appends hold appendLock, and readers never go past writePosition
+        ByteBuffer out = segment.buffer.duplicate();
+        out.position(segment.writePosition);
+        out.putInt(size);
+        out.putInt(scanSegment);
+        out.putInt(items.size());
+        for (Map<String, AttributeValue> item : items) {
+            CompactItemCodec.encode(item, out);
+        }
+        synchronized (this) {
+            segment.writePosition += size;
+            spilledBytes += size;
+            spilledPages++;
+        }
+    }
+
+    /**
+     * Removes the oldest page from the buffer, or returns null if it is empty.
+     */
+    public SegmentedScanResult poll() {
+        final SpillSegment segment;
+        final int position;
+        synchronized (this) {
+            SpillSegment first = segments.peekFirst();
+            while (first != null && first.readPosition == first.writePosition
+                    && first != segments.peekLast()) {
+                segments.removeFirst().delete();
+                first = segments.peekFirst();
+            }
+            if (first == null || first.readPosition == first.writePosition) {
+                return null;
+            }
+            segment = first;
+            position = first.readPosition;
+        }
+        ByteBuffer in = segment.buffer.duplicate();
+        in.position(position);
+        final int size = in.getInt();
+        final int scanSegment = in.getInt();
+        final int count = in.getInt();
+        List<Map<String, AttributeValue>> items = new ArrayList<Map<String, AttributeValue>>(
+                count);
+        for (int i = 0; i < count; i++) {
+            items.add(CompactItemCodec.decode(in));
+        }
+        synchronized (this) {
+            segment.readPosition += size;
+            spilledBytes -= size;
+            spilledPages--;
+        }
+        return new SegmentedScanResult(new ScanResult().withItems(items)
+                .withCount(count), scanSegment);
+    }
+
+    public synchronized boolean isEmpty() {
+        return spilledPages == 0;
+    }
+
+    /**
+     * Returns the number of pages waiting to be read.
+     */
+    public synchronized int getSpilledPages() {
+        return spilledPages;
+    }
+
+    /**
+     * Returns the bytes of the pages waiting to be read.
+     */
+    public synchronized long getSpilledBytes() {
+        return spilledBytes;
+    }
+
+    /**
+     * Deletes every segment file, dropping any pages not yet read.
+     */
+    @Override
+    public synchronized void close() {
+        closed = true;
+        for (SpillSegment segment : segments) {
+            segment.delete();
+        }
+        segments.clear();
+        spilledBytes = 0;
+        spilledPages = 0;
+    }
+}
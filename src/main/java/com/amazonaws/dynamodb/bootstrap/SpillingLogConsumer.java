@@ -0,0 +1,266 @@
+/*
+ * Copyright 2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.amazonaws.dynamodb.bootstrap;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+
+/**
+ * Sits between the scan and another consumer so that a slow destination does
+ * not slow the scan down. Only a drain thread hands pages to the consumer, so
+ * batches a full write pool runs on the calling thread never hold up the scan.
+ * Pages wait for it in memory while fewer than maxInFlightPages pages are
+ * queued or being written; once the consumer falls behind, pages are appended
+ * to a SpillBuffer on local disk instead, and the drain thread hands them on,
+ * oldest first, as the writes of earlier pages complete. The scan can then
+ * finish at the source's speed while the writes catch up afterwards.
+ */
+public class SpillingLogConsumer extends AbstractLogConsumer {
+
+    /**
+     * Logger for the SpillingLogConsumer.
+     */
+    private static final Logger LOGGER = LogManager
+            .getLogger(SpillingLogConsumer.class);
+
+    private final AbstractLogConsumer consumer;
+    private final SpillBuffer spill;
+    private final int maxInFlightPages;
+    private final LinkedList<SegmentedScanResult> queued = new LinkedList<SegmentedScanResult>();
+    private final LinkedList<Future<Void>> inFlight = new LinkedList<Future<Void>>();
+    private final Thread drainThread;
+    private int forwarding;
+    private boolean finishing;
+    private boolean stopped;
+    private boolean spilling;
+
+    /**
+     * @param consumer
+     *            the consumer the pages are written to.
+     * @param spill
+     *            where pages wait while the consumer is behind.
+     * @param maxInFlightPages
+     *            number of pages that may be queued in memory or being
+     *            written before new pages are spilled.
+     */
+    public SpillingLogConsumer(AbstractLogConsumer consumer, SpillBuffer spill,
+            int maxInFlightPages) {
+        this.consumer = consumer;
+        this.spill = spill;
+        this.maxInFlightPages = Math.max(1, maxInFlightPages);
+        this.drainThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                drain();
+            }
+        }, "spill-drain");
+        drainThread.setDaemon(true);
+        drainThread.start();
+    }
+
+    /**
+     * Queues the page for the drain thread if the consumer keeps up, otherwise
+     * spills it. Returns null, since the page is written later.
+     */
+    @Override
+    public Future<Void> writeResult(SegmentedScanResult result) {
+        synchronized (this) {
+            removeCompleted();
+            if (spill.isEmpty() && pagesInFlight() < maxInFlightPages) {
+                queued.add(result);
+                notifyAll();
+                return null;
+            }
+            if (!spilling) {
+                spilling = true;
+                LOGGER.info("Writes are falling behind the scan, spilling pages to disk");
+            }
+        }
+        try {
+            spill.append(getItems(result), result.getSegment());
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not spill scanned page", e);
+        }
+        synchronized (this) {
+            notifyAll();
+        }
+        return null;
+    }
+
+    /**
+     * Returns the pages waiting on disk.
+     */
+    public SpillBuffer getSpillBuffer() {
+        return spill;
+    }
+
+    @Override
+    public Throwable getFailure() {
+        return consumer.getFailure();
+    }
+
+    /**
+     * If awaitTermination is true, waits for every queued and spilled page to
+     * be handed to the consumer before shutting it down; otherwise drops them.
+     */
+    @Override
+    public void shutdown(boolean awaitTermination) {
+        synchronized (this) {
+            if (awaitTermination) {
+                finishing = true;
+                if (!spill.isEmpty()) {
+                    LOGGER.info("Scan finished, draining " + spill.getSpilledPages()
+                            + " spilled pages (" + spill.getSpilledBytes()
+                            + " bytes) to the destination");
+                }
+            } else {
+                stopped = true;
+            }
+            notifyAll();
+        }
+        boolean interrupted = false;
+        try {
+            if (!awaitTermination) {
+                drainThread.interrupt();
+            }
+            drainThread.join();
+        } catch (InterruptedException e) {
+            interrupted = true;
+            LOGGER.warn("Interrupted while draining spilled pages: "
+                    + e.getMessage());
+        } finally {
+            dropQueued();
+            spill.close();
+            consumer.shutdown(awaitTermination);
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Moves queued pages, then spilled ones, to the consumer whenever it has
+     * room for them, until the scan is finished and both are empty.
+     */
+    private void drain() {
+        try {
+            while (true) {
+                SegmentedScanResult next = null;
+                Future<Void> oldest = null;
+                synchronized (this) {
+                    while (!stopped && queued.isEmpty() && spill.isEmpty()) {
+                        if (finishing) {
+                            return;
+                        }
+                        wait();
+                    }
+                    if (stopped) {
+                        return;
+                    }
+                    removeCompleted();
+                    if (!queued.isEmpty()) {
+                        // queued pages are older than any spilled page and
+                        // already count as in flight
+                        next = queued.poll();
+                        forwarding++;
+                    } else if (inFlight.size() + forwarding < maxInFlightPages) {
+                        next = spill.poll();
+                        forwarding++;
+                    } else {
+                        oldest = inFlight.peekFirst();
+                    }
+                }
+                if (next != null) {
+                    forward(next);
+                    continue;
+                }
+                // wait for the consumer outside the lock so the scan can spill
+                try {
+                    oldest.get();
+                } catch (ExecutionException e) {
+                    LOGGER.warn("Writing a page failed: " + e.getMessage());
+                }
+            }
+        } catch (InterruptedException e) {
+            LOGGER.warn("Spill drain interrupted: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Hands the page to the consumer outside the lock, since the consumer may
+     * write some of it on the calling thread.
+     */
+    private void forward(SegmentedScanResult result) {
+        Future<Void> future = null;
+        try {
+            future = consumer.writeResult(result);
+        } finally {
+            synchronized (this) {
+                forwarding--;
+                if (future != null) {
+                    inFlight.add(future);
+                }
+                // room for the scan to queue another page
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Releases the compact pages of pages the drain thread never handed on.
+     */
+    private synchronized void dropQueued() {
+        for (SegmentedScanResult result : queued) {
+            if (result.getCompactPage() != null) {
+                result.getCompactPage().release();
+            }
+        }
+        queued.clear();
+    }
+
+    /**
+     * Returns the pages queued, being handed to the consumer or being
+     * written. Must be called holding the lock.
+     */
+    private int pagesInFlight() {
+        return queued.size() + forwarding + inFlight.size();
+    }
+
+    /**
+     * Must be called holding the lock.
+     */
+    private void removeCompleted() {
+        Iterator<Future<Void>> it = inFlight.iterator();
+        while (it.hasNext()) {
+            if (it.next().isDone()) {
+                it.remove();
+            }
+        }
+    }
+
+    private static List<Map<String, AttributeValue>> getItems(
+            SegmentedScanResult result) {
+        CompactItemPage page = result.getCompactPage();
+        if (page == null) {
+            return result.getScanResult().getItems();
+        }
+        try {
+            return page.getItems(0, page.getItemCount());
+        } finally {
+            page.release();
+        }
+    }
+}
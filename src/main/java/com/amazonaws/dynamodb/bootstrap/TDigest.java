@@ -0,0 +1,234 @@
+/*
+ * Copyright 2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.amazonaws.dynamodb.bootstrap;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * A merging t-digest, which estimates the quantiles of a stream of values in
+ * a fixed amount of memory. Values are buffered and, when the buffer is full,
+ * sorted into the centroids, which are merged as long as they stay within the
+ * size the asin scale function allows at their quantile. Centroids near the
+ * tails stay small, so the tail quantiles are the most accurate. Digests of
+ * parts of a stream merge into a digest of the whole. Not thread safe.
+ */
+public class TDigest {
+
+    private final double compression;
+    private final double[] means;
+    private final double[] weights;
+    private int centroids;
+    private final double[] bufferValues;
+    private final double[] bufferWeights;
+    private int buffered;
+    private double totalWeight;
+    private double sum;
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+
+    /**
+     * @param compression
+     *            bounds the number of centroids to about this many; 100 keeps
+     *            the middle quantiles within a percent or so and the tails
+     *            much closer.
+     */
+    public TDigest(double compression) {
+        if (compression < 10) {
+            throw new IllegalArgumentException(
+                    "Compression must be at least 10: " + compression);
+        }
+        this.compression = compression;
+        // a merge leaves at most one centroid per unit of the scale function
+        final int capacity = 2 * (int) Math.ceil(compression) + 10;
+        this.means = new double[capacity];
+        this.weights = new double[capacity];
+        this.bufferValues = new double[5 * capacity];
+        this.bufferWeights = new double[5 * capacity];
+    }
+
+    public void add(double value) {
+        add(value, 1);
+    }
+
+    /**
+     * Adds a value that occurred weight times.
+     */
+    public void add(double value, double weight) {
+        if (buffered == bufferValues.length) {
+            compress();
+        }
+        bufferValues[buffered] = value;
+        bufferWeights[buffered] = weight;
+        buffered++;
+        totalWeight += weight;
+        sum += value * weight;
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+    }
+
+    /**
+     * Adds the values of another digest to this one.
+     */
+    public void merge(TDigest other) {
+        final double otherMin = other.min;
+        final double otherMax = other.max;
+        other.compress();
+        for (int i = 0; i < other.centroids; i++) {
+            add(other.means[i], other.weights[i]);
+        }
+        min = Math.min(min, otherMin);
+        max = Math.max(max, otherMax);
+    }
+
+    /**
+     * Returns the number of values added, or their total weight.
+     */
+    public double getCount() {
+        return totalWeight;
+    }
+
+    public double getMin() {
+        return totalWeight == 0 ? Double.NaN : min;
+    }
+
+    public double getMax() {
+        return totalWeight == 0 ? Double.NaN : max;
+    }
+
+    public double getMean() {
+        return totalWeight == 0 ? Double.NaN : sum / totalWeight;
+    }
+
+    /**
+     * Returns the number of centroids the values are summarized in.
+     */
+    public int getCentroidCount() {
+        compress();
+        return centroids;
+    }
+
+    /**
+     * Estimates the value below which the fraction q of the values lie, by
+     * interpolating between the centers of the centroids around it.
+     */
+    public double quantile(double q) {
+        if (q < 0 || q > 1) {
+            throw new IllegalArgumentException("Quantile must be in [0, 1]: "
+                    + q);
+        }
+        compress();
+        if (centroids == 0) {
+            return Double.NaN;
+        }
+        if (centroids == 1) {
+            return means[0];
+        }
+        final double index = q * totalWeight;
+        // weight left of the center of the current centroid
+        double before = weights[0] / 2;
+        if (index <= before) {
+            return min + (means[0] - min) * index / before;
+        }
+        for (int i = 0; i < centroids - 1; i++) {
+            final double gap = (weights[i] + weights[i + 1]) / 2;
+            if (index <= before + gap) {
+                return means[i] + (means[i + 1] - means[i])
+                        * (index - before) / gap;
+            }
+            before += gap;
+        }
+        final int last = centroids - 1;
+        return means[last] + (max - means[last])
+                * Math.min(1, (index - before) / (weights[last] / 2));
+    }
+
+    /**
+     * Sorts the buffered values into the centroids and merges neighbours
+     * while the scale function allows.
+     */
+    private void compress() {
+        if (buffered == 0) {
+            return;
+        }
+        final int n = centroids + buffered;
+        final double[] m = new double[n];
+        final double[] w = new double[n];
+        System.arraycopy(means, 0, m, 0, centroids);
+        System.arraycopy(weights, 0, w, 0, centroids);
+        System.arraycopy(bufferValues, 0, m, centroids, buffered);
+        System.arraycopy(bufferWeights, 0, w, centroids, buffered);
+        sortByMean(m, w);
+        buffered = 0;
+
+        int out = 0;
+        double mean = m[0];
+        double weight = w[0];
+        double weightBefore = 0;
+        double limit = totalWeight * maxQuantile(0);
+        for (int i = 1; i < n; i++) {
+            final double proposed = weight + w[i];
+            if (weightBefore + proposed <= limit) {
+                mean += (m[i] - mean) * w[i] / proposed;
+                weight = proposed;
+            } else {
+                means[out] = mean;
+                weights[out] = weight;
+                out++;
+                weightBefore += weight;
+                limit = totalWeight * maxQuantile(weightBefore / totalWeight);
+                mean = m[i];
+                weight = w[i];
+            }
+        }
+        means[out] = mean;
+        weights[out] = weight;
+        centroids = out + 1;
+    }
+
+    /**
+     * Returns the highest quantile a centroid starting at quantile q may
+     * reach: one unit of k(q) = compression / (2 pi) * asin(2q - 1) further.
+     */
+    private double maxQuantile(double q) {
+        final double k = Math.asin(Math.max(-1, Math.min(1, 2 * q - 1)))
+                + 2 * Math.PI / compression;
+        return (Math.sin(Math.min(k, Math.PI / 2)) + 1) / 2;
+    }
+
+    /**
+     * Sorts the values and their weights by value.
+     */
+    private static void sortByMean(final double[] m, double[] w) {
+        boolean unit = true;
+        for (int i = 0; i < m.length; i++) {
+            unit &= w[i] == 1;
+        }
+        if (unit) {
+            // the common case of unweighted values needs no permutation
+            Arrays.sort(m);
+            return;
+        }
+        final Integer[] index = new Integer[m.length];
+        for (int i = 0; i < index.length; i++) {
+            index[i] = i;
+        }
+        Arrays.sort(index, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return Double.compare(m[a], m[b]);
+            }
+        });
+        final double[] sortedMeans = new double[m.length];
+        final double[] sortedWeights = new double[m.length];
+        for (int i = 0; i < index.length; i++) {
+            sortedMeans[i] = m[index[i]];
+            sortedWeights[i] = w[index[i]];
+        }
+        System.arraycopy(sortedMeans, 0, m, 0, m.length);
+        System.arraycopy(sortedWeights, 0, w, 0, w.length);
+    }
+}
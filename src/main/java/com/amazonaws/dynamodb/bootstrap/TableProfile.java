@@ -0,0 +1,531 @@
+/*
+ * Copyright 2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.amazonaws.dynamodb.bootstrap;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.amazonaws.dynamodb.bootstrap.constants.BootstrapConstants;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.util.BinaryUtils;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+/**
+ * Statistics of the items of a table, gathered in one pass: the distribution
+ * of item sizes in a t-digest, the presence, type mix and size of every
+ * attribute, the number of distinct partition keys in a HyperLogLog and the
+ * items and bytes per partition key in count-min sketches, from which the
+ * hottest keys are tracked. Profiles of parts of a table, e.g. of segments
+ * scanned in parallel, merge into the profile of the whole. Not thread safe.
+ */
+public class TableProfile {
+
+    /**
+     * Type names of attribute values, in the order they are counted in.
+     */
+    static final String[] TYPES = { "S", "N", "B", "BOOL", "NULL", "SS",
+            "NS", "BS", "L", "M" };
+
+    /**
+     * Most distinct attribute names profiled; values of further names are
+     * only counted, so that tables with generated names stay small.
+     */
+    static final int MAX_ATTRIBUTES = 1000;
+
+    /**
+     * Number of hottest partition keys reported.
+     */
+    static final int HOT_KEYS = 20;
+
+    /**
+     * Number of candidate hot keys tracked, more than reported so that keys
+     * that heat up late are still caught.
+     */
+    private static final int HOT_KEY_CANDIDATES = 4 * HOT_KEYS;
+
+    private static final double DIGEST_COMPRESSION = 100;
+    private static final int HLL_PRECISION = 14;
+    private static final int SKETCH_DEPTH = 4;
+    private static final int SKETCH_WIDTH = 2048;
+    private static final double[] QUANTILES = { 0.5, 0.9, 0.99, 0.999 };
+    private static final String[] QUANTILE_NAMES = { "p50", "p90", "p99",
+            "p999" };
+    private static final HashFunction HASH = Hashing.murmur3_128();
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private final String tableName;
+    private final String partitionKey;
+    private long items;
+    private long bytes;
+    private long unprofiledAttributes;
+    private final TDigest itemSizes = new TDigest(DIGEST_COMPRESSION);
+    private final Map<String, AttributeStats> attributes = new HashMap<String, AttributeStats>();
+    private final HyperLogLog keys = new HyperLogLog(HLL_PRECISION);
+    private final CountMinSketch keyItems = new CountMinSketch(SKETCH_DEPTH,
+            SKETCH_WIDTH);
+    private final CountMinSketch keyBytes = new CountMinSketch(SKETCH_DEPTH,
+            SKETCH_WIDTH);
+    private final Map<String, Long> hotKeyCandidates = new HashMap<String, Long>();
+    private long candidateFloor;
+
+    /**
+     * The counts of one attribute name.
+     */
+    public static class AttributeStats {
+        private long items;
+        private long bytes;
+        private final long[] types = new long[TYPES.length];
+
+        /**
+         * Returns the number of items that have the attribute.
+         */
+        public long getItems() {
+            return items;
+        }
+
+        /**
+         * Returns the size of the attribute's names and values.
+         */
+        public long getBytes() {
+            return bytes;
+        }
+
+        /**
+         * Returns the number of items whose value is of the given type, one
+         * of TYPES.
+         */
+        public long getItems(String type) {
+            for (int i = 0; i < TYPES.length; i++) {
+                if (TYPES[i].equals(type)) {
+                    return types[i];
+                }
+            }
+            throw new IllegalArgumentException("Unknown type " + type);
+        }
+
+        void merge(AttributeStats other) {
+            items += other.items;
+            bytes += other.bytes;
+            for (int i = 0; i < types.length; i++) {
+                types[i] += other.types[i];
+            }
+        }
+    }
+
+    /**
+     * A partition key and its estimated share of the table.
+     */
+    public static class HotKey {
+        private final String key;
+        private final long items;
+        private final long bytes;
+
+        public HotKey(String key, long items, long bytes) {
+            this.key = key;
+            this.items = items;
+            this.bytes = bytes;
+        }
+
+        /**
+         * Returns the key's value, Base64 encoded for binary keys.
+         */
+        public String getKey() {
+            return key;
+        }
+
+        public long getItems() {
+            return items;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+    }
+
+    public TableProfile(String tableName, String partitionKey) {
+        this.tableName = tableName;
+        this.partitionKey = partitionKey;
+    }
+
+    /**
+     * Counts an item.
+     */
+    public void add(Map<String, AttributeValue> item) {
+        int size = 0;
+        for (Map.Entry<String, AttributeValue> entry : item.entrySet()) {
+            final int attributeSize = entry.getKey().getBytes(
+                    BootstrapConstants.UTF8).length
+                    + ItemSizeCalculator.calculateAttributeSizeInBytes(entry
+                            .getValue());
+            size += attributeSize;
+            AttributeStats stats = attributes.get(entry.getKey());
+            if (stats == null) {
+                if (attributes.size() >= MAX_ATTRIBUTES) {
+                    unprofiledAttributes++;
+                    continue;
+                }
+                stats = new AttributeStats();
+                attributes.put(entry.getKey(), stats);
+            }
+            stats.items++;
+            stats.bytes += attributeSize;
+            final int type = typeOf(entry.getValue());
+            if (type >= 0) {
+                stats.types[type]++;
+            }
+        }
+        items++;
+        bytes += size;
+        itemSizes.add(size);
+
+        final AttributeValue key = item.get(partitionKey);
+        if (key != null) {
+            final long hash = hash(key);
+            keys.add(hash);
+            keyItems.add(hash, 1);
+            keyBytes.add(hash, size);
+            trackHotKey(keyString(key), hash);
+        }
+    }
+
+    /**
+     * Adds the counts of another profile of the same table.
+     */
+    public void merge(TableProfile other) {
+        items += other.items;
+        bytes += other.bytes;
+        unprofiledAttributes += other.unprofiledAttributes;
+        itemSizes.merge(other.itemSizes);
+        for (Map.Entry<String, AttributeStats> entry : other.attributes
+                .entrySet()) {
+            AttributeStats stats = attributes.get(entry.getKey());
+            if (stats == null) {
+                if (attributes.size() >= MAX_ATTRIBUTES) {
+                    unprofiledAttributes += entry.getValue().items;
+                    continue;
+                }
+                stats = new AttributeStats();
+                attributes.put(entry.getKey(), stats);
+            }
+            stats.merge(entry.getValue());
+        }
+        keys.merge(other.keys);
+        keyItems.merge(other.keyItems);
+        keyBytes.merge(other.keyBytes);
+        // the candidates of both, ranked by the merged counts
+        hotKeyCandidates.putAll(other.hotKeyCandidates);
+        final List<HotKey> ranked = rankCandidates();
+        hotKeyCandidates.keySet().retainAll(keysOf(ranked.subList(0,
+                Math.min(HOT_KEY_CANDIDATES, ranked.size()))));
+        candidateFloor = 0;
+    }
+
+    public long getItems() {
+        return items;
+    }
+
+    public long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * Returns the distribution of item sizes in bytes.
+     */
+    public TDigest getItemSizes() {
+        return itemSizes;
+    }
+
+    /**
+     * Returns the counts of an attribute, or null if no item has it or it was
+     * not profiled.
+     */
+    public AttributeStats getAttribute(String name) {
+        return attributes.get(name);
+    }
+
+    /**
+     * Returns the number of attribute values not profiled because there were
+     * more than MAX_ATTRIBUTES distinct names.
+     */
+    public long getUnprofiledAttributes() {
+        return unprofiledAttributes;
+    }
+
+    /**
+     * Returns the estimated number of distinct partition keys.
+     */
+    public long estimateDistinctKeys() {
+        return keys.estimate();
+    }
+
+    /**
+     * Returns the partition keys with the most items, most first.
+     */
+    public List<HotKey> getHotKeys() {
+        final List<HotKey> ranked = rankCandidates();
+        return ranked.subList(0, Math.min(HOT_KEYS, ranked.size()));
+    }
+
+    /**
+     * Returns a line summing the profile up.
+     */
+    public String summary() {
+        final List<HotKey> hot = getHotKeys();
+        return String.format("Profiled %d items of %s, %d bytes: item size"
+                + " p50 %.0f, p99 %.0f, max %.0f bytes; %d attributes; about"
+                + " %d distinct partition keys, the hottest with %s items",
+                items, tableName, bytes, itemSizes.quantile(0.5),
+                itemSizes.quantile(0.99), itemSizes.getMax(),
+                attributes.size(), estimateDistinctKeys(),
+                hot.isEmpty() ? "no" : "about " + hot.get(0).getItems());
+    }
+
+    /**
+     * Writes the profile as JSON.
+     */
+    public void write(File file) throws IOException {
+        OutputStream out = new FileOutputStream(file);
+        try {
+            write(out);
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Writes the profile as JSON to the stream, leaving it open.
+     */
+    public void write(OutputStream out) throws IOException {
+        JsonGenerator generator = JSON_FACTORY.createGenerator(out,
+                JsonEncoding.UTF8);
+        generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        generator.useDefaultPrettyPrinter();
+        generator.writeStartObject();
+        generator.writeStringField("table", tableName);
+        generator.writeNumberField("items", items);
+        generator.writeNumberField("bytes", bytes);
+
+        generator.writeObjectFieldStart("itemSize");
+        if (items > 0) {
+            generator.writeNumberField("min", itemSizes.getMin());
+            generator.writeNumberField("mean", itemSizes.getMean());
+            for (int i = 0; i < QUANTILES.length; i++) {
+                generator.writeNumberField(QUANTILE_NAMES[i],
+                        Math.round(itemSizes.quantile(QUANTILES[i])));
+            }
+            generator.writeNumberField("max", itemSizes.getMax());
+        }
+        generator.writeEndObject();
+
+        generator.writeArrayFieldStart("attributes");
+        for (Map.Entry<String, AttributeStats> entry : sortedAttributes()) {
+            final AttributeStats stats = entry.getValue();
+            generator.writeStartObject();
+            generator.writeStringField("name", entry.getKey());
+            generator.writeNumberField("items", stats.items);
+            generator.writeNumberField("presence", stats.items
+                    / (double) items);
+            generator.writeNumberField("bytes", stats.bytes);
+            generator.writeObjectFieldStart("types");
+            for (int i = 0; i < TYPES.length; i++) {
+                if (stats.types[i] > 0) {
+                    generator.writeNumberField(TYPES[i], stats.types[i]);
+                }
+            }
+            generator.writeEndObject();
+            generator.writeEndObject();
+        }
+        generator.writeEndArray();
+        generator.writeNumberField("unprofiledAttributeValues",
+                unprofiledAttributes);
+
+        generator.writeObjectFieldStart("partitionKey");
+        generator.writeStringField("name", partitionKey);
+        final long distinct = estimateDistinctKeys();
+        generator.writeNumberField("distinct", distinct);
+        generator.writeNumberField("distinctRelativeError",
+                keys.getRelativeError());
+        generator.writeNumberField("itemsPerKey", distinct == 0 ? 0 : items
+                / (double) distinct);
+        generator.writeNumberField("hotKeyItemsError",
+                Math.round(keyItems.getErrorBound()));
+        generator.writeArrayFieldStart("hotKeys");
+        for (HotKey hot : getHotKeys()) {
+            generator.writeStartObject();
+            generator.writeStringField("key", hot.getKey());
+            generator.writeNumberField("items", hot.getItems());
+            generator.writeNumberField("itemShare", hot.getItems()
+                    / (double) items);
+            generator.writeNumberField("bytes", hot.getBytes());
+            generator.writeEndObject();
+        }
+        generator.writeEndArray();
+        generator.writeEndObject();
+
+        generator.writeEndObject();
+        generator.close();
+    }
+
+    /**
+     * Keeps the key among the candidates if its count is among the highest.
+     * The floor is a lower bound of the candidates' counts, so the candidates
+     * are only scanned when a key may beat one of them.
+     */
+    private void trackHotKey(String key, long hash) {
+        if (hotKeyCandidates.containsKey(key)) {
+            return;
+        }
+        if (hotKeyCandidates.size() < HOT_KEY_CANDIDATES) {
+            hotKeyCandidates.put(key, hash);
+            return;
+        }
+        final long count = keyItems.estimate(hash);
+        if (count <= candidateFloor) {
+            return;
+        }
+        String coldest = null;
+        long coldestCount = Long.MAX_VALUE;
+        for (Map.Entry<String, Long> candidate : hotKeyCandidates.entrySet()) {
+            final long candidateCount = keyItems.estimate(candidate.getValue());
+            if (candidateCount < coldestCount) {
+                coldest = candidate.getKey();
+                coldestCount = candidateCount;
+            }
+        }
+        if (count > coldestCount) {
+            hotKeyCandidates.remove(coldest);
+            hotKeyCandidates.put(key, hash);
+        } else {
+            candidateFloor = coldestCount;
+        }
+    }
+
+    /**
+     * Returns the candidates with their estimated counts, most items first.
+     */
+    private List<HotKey> rankCandidates() {
+        List<HotKey> ranked = new ArrayList<HotKey>(hotKeyCandidates.size());
+        for (Map.Entry<String, Long> candidate : hotKeyCandidates.entrySet()) {
+            ranked.add(new HotKey(candidate.getKey(), keyItems
+                    .estimate(candidate.getValue()), keyBytes
+                    .estimate(candidate.getValue())));
+        }
+        Collections.sort(ranked, new Comparator<HotKey>() {
+            @Override
+            public int compare(HotKey a, HotKey b) {
+                final int byItems = Long.compare(b.getItems(), a.getItems());
+                return byItems != 0 ? byItems : a.getKey().compareTo(
+                        b.getKey());
+            }
+        });
+        return ranked;
+    }
+
+    private static List<String> keysOf(List<HotKey> hotKeys) {
+        List<String> keys = new ArrayList<String>(hotKeys.size());
+        for (HotKey hot : hotKeys) {
+            keys.add(hot.getKey());
+        }
+        return keys;
+    }
+
+    /**
+     * Returns the attributes, most common first.
+     */
+    private List<Map.Entry<String, AttributeStats>> sortedAttributes() {
+        List<Map.Entry<String, AttributeStats>> sorted = new ArrayList<Map.Entry<String, AttributeStats>>(
+                attributes.entrySet());
+        Collections.sort(sorted,
+                new Comparator<Map.Entry<String, AttributeStats>>() {
+                    @Override
+                    public int compare(Map.Entry<String, AttributeStats> a,
+                            Map.Entry<String, AttributeStats> b) {
+                        final int byItems = Long.compare(b.getValue().items,
+                                a.getValue().items);
+                        return byItems != 0 ? byItems : a.getKey().compareTo(
+                                b.getKey());
+                    }
+                });
+        return sorted;
+    }
+
+    /**
+     * Returns the index in TYPES of the value's type, or -1 if it is empty.
+     */
+    static int typeOf(AttributeValue value) {
+        if (value.getS() != null) {
+            return 0;
+        } else if (value.getN() != null) {
+            return 1;
+        } else if (value.getB() != null) {
+            return 2;
+        } else if (value.getBOOL() != null) {
+            return 3;
+        } else if (value.getNULL() != null) {
+            return 4;
+        } else if (value.getSS() != null) {
+            return 5;
+        } else if (value.getNS() != null) {
+            return 6;
+        } else if (value.getBS() != null) {
+            return 7;
+        } else if (value.getL() != null) {
+            return 8;
+        } else if (value.getM() != null) {
+            return 9;
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the 64-bit hash of a key's type and value.
+     */
+    private static long hash(AttributeValue key) {
+        final Hasher hasher = HASH.newHasher();
+        if (key.getS() != null) {
+            hasher.putByte((byte) 'S').putBytes(
+                    key.getS().getBytes(BootstrapConstants.UTF8));
+        } else if (key.getN() != null) {
+            hasher.putByte((byte) 'N').putBytes(
+                    key.getN().getBytes(BootstrapConstants.UTF8));
+        } else if (key.getB() != null) {
+            hasher.putByte((byte) 'B').putBytes(bytesOf(key.getB()));
+        }
+        return hasher.hash().asLong();
+    }
+
+    private static String keyString(AttributeValue key) {
+        if (key.getS() != null) {
+            return key.getS();
+        } else if (key.getN() != null) {
+            return key.getN();
+        } else if (key.getB() != null) {
+            return BinaryUtils.toBase64(bytesOf(key.getB()));
+        }
+        return "";
+    }
+
+    private static byte[] bytesOf(ByteBuffer buffer) {
+        final ByteBuffer b = buffer.duplicate();
+        final byte[] bytes = new byte[b.remaining()];
+        b.get(bytes);
+        return bytes;
+    }
+}
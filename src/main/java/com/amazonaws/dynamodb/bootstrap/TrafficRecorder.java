@@ -0,0 +1,267 @@
+/*
+ * Copyright 2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.amazonaws.dynamodb.bootstrap;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+
+/**
+ * Writes a trace of the scan, batchWriteItem and describeTable calls a
+ * transfer makes to a local file: for every call its start and latency, the
+ * items and bytes it carried, the capacity it consumed, the items left
+ * unprocessed and the error it failed with, if any. Items themselves are not
+ * recorded, which keeps a trace of a long copy small. Every call is marked
+ * with the side of the transfer that made it, so that the source and
+ * destination tables stay apart even when they have the same name.
+ * ReplayDynamoDBClient plays a trace back.
+ */
+public class TrafficRecorder implements Closeable {
+
+    /**
+     * Logger for the TrafficRecorder.
+     */
+    private static final Logger LOGGER = LogManager
+            .getLogger(TrafficRecorder.class);
+
+    /**
+     * First bytes of every trace file: "DDBT" and a format version.
+     */
+    private static final int MAGIC = 0x44444254;
+    private static final int VERSION = 2;
+
+    public static final byte SCAN = 1;
+    public static final byte BATCH_WRITE = 2;
+    public static final byte DESCRIBE_TABLE = 3;
+
+    public static final byte ROLE_SOURCE = 1;
+    public static final byte ROLE_DESTINATION = 2;
+
+    private final DataOutputStream out;
+    private final long startNanos = System.nanoTime();
+    private boolean failed;
+
+    /**
+     * One recorded call. For describeTable calls, items is the table's item
+     * count, payloadBytes its size and consumedCapacity and unprocessed its
+     * provisioned read and write capacity; keyAttribute is its hash key.
+     */
+    public static class Call {
+        private final byte operation;
+        private final byte role;
+        private final String tableName;
+        private final int segment;
+        private final long startMicros;
+        private final long latencyMicros;
+        private final long items;
+        private final long payloadBytes;
+        private final double consumedCapacity;
+        private final long unprocessed;
+        private final boolean more;
+        private final String keyAttribute;
+        private final String errorCode;
+        private final int statusCode;
+
+        public Call(byte operation, byte role, String tableName, int segment,
+                long startMicros, long latencyMicros, long items,
+                long payloadBytes, double consumedCapacity, long unprocessed,
+                boolean more, String keyAttribute, String errorCode,
+                int statusCode) {
+            this.operation = operation;
+            this.role = role;
+            this.tableName = tableName;
+            this.segment = segment;
+            this.startMicros = startMicros;
+            this.latencyMicros = latencyMicros;
+            this.items = items;
+            this.payloadBytes = payloadBytes;
+            this.consumedCapacity = consumedCapacity;
+            this.unprocessed = unprocessed;
+            this.more = more;
+            this.keyAttribute = keyAttribute == null ? "" : keyAttribute;
+            this.errorCode = errorCode == null ? "" : errorCode;
+            this.statusCode = statusCode;
+        }
+
+        public byte getOperation() {
+            return operation;
+        }
+
+        /**
+         * Returns ROLE_SOURCE or ROLE_DESTINATION, the side of the transfer
+         * that made the call.
+         */
+        public byte getRole() {
+            return role;
+        }
+
+        public String getTableName() {
+            return tableName;
+        }
+
+        /**
+         * Returns the scan segment, or -1 for unsegmented scans and other
+         * calls.
+         */
+        public int getSegment() {
+            return segment;
+        }
+
+        /**
+         * Returns when the call started, in microseconds since the trace
+         * started.
+         */
+        public long getStartMicros() {
+            return startMicros;
+        }
+
+        public long getLatencyMicros() {
+            return latencyMicros;
+        }
+
+        public long getItems() {
+            return items;
+        }
+
+        public long getPayloadBytes() {
+            return payloadBytes;
+        }
+
+        public double getConsumedCapacity() {
+            return consumedCapacity;
+        }
+
+        public long getUnprocessed() {
+            return unprocessed;
+        }
+
+        /**
+         * Returns whether a scan returned a LastEvaluatedKey.
+         */
+        public boolean hasMore() {
+            return more;
+        }
+
+        public String getKeyAttribute() {
+            return keyAttribute;
+        }
+
+        /**
+         * Returns the error code the call failed with, or an empty string if
+         * it succeeded.
+         */
+        public String getErrorCode() {
+            return errorCode;
+        }
+
+        public int getStatusCode() {
+            return statusCode;
+        }
+
+        public boolean isError() {
+            return !errorCode.isEmpty();
+        }
+    }
+
+    /**
+     * @param file
+     *            the trace file to create, replacing any existing one.
+     */
+    public TrafficRecorder(File file) throws IOException {
+        out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(file)));
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+    }
+
+    /**
+     * Returns the microseconds since the trace started.
+     */
+    long now() {
+        return (System.nanoTime() - startNanos) / 1000;
+    }
+
+    /**
+     * Appends a call to the trace. A trace that cannot be written is given up
+     * on with a warning rather than failing the transfer it records.
+     */
+    public synchronized void record(Call call) {
+        if (failed) {
+            return;
+        }
+        try {
+            out.writeByte(call.operation);
+            out.writeByte(call.role);
+            out.writeUTF(call.tableName);
+            out.writeInt(call.segment);
+            out.writeLong(call.startMicros);
+            out.writeLong(call.latencyMicros);
+            out.writeLong(call.items);
+            out.writeLong(call.payloadBytes);
+            out.writeDouble(call.consumedCapacity);
+            out.writeLong(call.unprocessed);
+            out.writeBoolean(call.more);
+            out.writeUTF(call.keyAttribute);
+            out.writeUTF(call.errorCode);
+            out.writeShort(call.statusCode);
+        } catch (IOException e) {
+            failed = true;
+            LOGGER.warn("Could not write the traffic trace, stopped recording",
+                    e);
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        out.close();
+    }
+
+    /**
+     * Reads every call in a trace file, in the order they were recorded.
+     */
+    public static List<Call> read(File file) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new FileInputStream(file)));
+        try {
+            if (in.readInt() != MAGIC) {
+                throw new IOException(file + " is not a traffic trace");
+            }
+            final int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported traffic trace version "
+                        + version + " in " + file);
+            }
+            List<Call> calls = new ArrayList<Call>();
+            while (true) {
+                byte operation;
+                try {
+                    operation = in.readByte();
+                } catch (EOFException e) {
+                    return calls;
+                }
+                calls.add(new Call(operation, in.readByte(), in.readUTF(), in
+                        .readInt(), in.readLong(), in.readLong(), in
+                        .readLong(), in.readLong(), in.readDouble(), in
+                        .readLong(), in.readBoolean(), in.readUTF(), in
+                        .readUTF(), in.readShort()));
+            }
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,223 @@
+/*
+ * Copyright 2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.amazonaws.dynamodb.bootstrap;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+
+/**
+ * Lets an operator tune a running transfer over JMX, with jconsole or any
+ * other JMX client: change the read and write rate limits and the number of
+ * write threads, pause and resume the scan, and read the current settings
+ * and progress. Rates changed here may later be changed again by the
+ * on-demand rate controllers, and the write threads by the write pool
+ * autoscaler, if those are running.
+ */
+public class TransferControl implements TransferControlMBean {
+
+    /**
+     * Name the control of the transfer is registered under.
+     */
+    public static final String OBJECT_NAME = "com.amazonaws.dynamodb.bootstrap:type=TransferControl";
+
+    /**
+     * Logger for the TransferControl.
+     */
+    private static final Logger LOGGER = LogManager
+            .getLogger(TransferControl.class);
+
+    private final RateLimitAdjustable reader;
+    private final OperationStats readStats;
+    private final RateLimitAdjustable writer;
+    private final OperationStats writeStats;
+    private final ThreadPoolExecutor writePool;
+    private final PauseGate pauseGate;
+    private final long startNanos = System.nanoTime();
+
+    /**
+     * @param worker
+     *            the worker scanning the source table; the gate is set on it,
+     *            so this must be created before its pipe is called.
+     * @param consumer
+     *            the consumer writing to the destination table.
+     * @param writePool
+     *            the pool the consumer writes with, or null if its size
+     *            cannot be changed.
+     */
+    public TransferControl(DynamoDBBootstrapWorker worker,
+            DynamoDBConsumer consumer, ThreadPoolExecutor writePool) {
+        this(worker, worker.getReadStats(), consumer,
+                consumer.getWriteStats(), writePool, new PauseGate());
+        worker.setPauseGate(pauseGate);
+    }
+
+    TransferControl(RateLimitAdjustable reader, OperationStats readStats,
+            RateLimitAdjustable writer, OperationStats writeStats,
+            ThreadPoolExecutor writePool, PauseGate pauseGate) {
+        this.reader = reader;
+        this.readStats = readStats;
+        this.writer = writer;
+        this.writeStats = writeStats;
+        this.writePool = writePool;
+        this.pauseGate = pauseGate;
+    }
+
+    /**
+     * Registers this control with the platform MBean server and returns the
+     * name it is registered under.
+     */
+    public ObjectName register() throws JMException {
+        final ObjectName name = new ObjectName(OBJECT_NAME);
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, name);
+        return name;
+    }
+
+    /**
+     * Unregisters the control registered under name, logging rather than
+     * throwing if it cannot.
+     */
+    public static void unregister(ObjectName name) {
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+        } catch (JMException e) {
+            LOGGER.warn("Could not unregister " + name, e);
+        }
+    }
+
+    @Override
+    public double getReadRateLimit() {
+        return reader.getRateLimit();
+    }
+
+    @Override
+    public void setReadRateLimit(double rateLimit) {
+        checkRate(rateLimit);
+        LOGGER.info("Changing read rate limit from " + reader.getRateLimit()
+                + " to " + rateLimit);
+        reader.setRateLimit(rateLimit);
+    }
+
+    @Override
+    public double getWriteRateLimit() {
+        return writer.getRateLimit();
+    }
+
+    @Override
+    public void setWriteRateLimit(double rateLimit) {
+        checkRate(rateLimit);
+        LOGGER.info("Changing write rate limit from " + writer.getRateLimit()
+                + " to " + rateLimit);
+        writer.setRateLimit(rateLimit);
+    }
+
+    @Override
+    public int getWriteThreads() {
+        return writePool == null ? 0 : writePool.getMaximumPoolSize();
+    }
+
+    @Override
+    public synchronized void setWriteThreads(int threads) {
+        if (writePool == null) {
+            throw new UnsupportedOperationException(
+                    "The write pool of this transfer cannot be resized");
+        }
+        if (threads < 1) {
+            throw new IllegalArgumentException(
+                    "Write threads must be at least 1: " + threads);
+        }
+        final int current = writePool.getMaximumPoolSize();
+        // the core size may never exceed the maximum size
+        if (threads > current) {
+            writePool.setMaximumPoolSize(threads);
+            writePool.setCorePoolSize(threads);
+        } else {
+            writePool.setCorePoolSize(threads);
+            writePool.setMaximumPoolSize(threads);
+        }
+        LOGGER.info("Changed write threads from " + current + " to "
+                + threads);
+    }
+
+    @Override
+    public boolean isPaused() {
+        return pauseGate.isPaused();
+    }
+
+    @Override
+    public long getItemsRead() {
+        return readStats.snapshot().getItems();
+    }
+
+    @Override
+    public long getItemsWritten() {
+        return writeStats.snapshot().getItems();
+    }
+
+    @Override
+    public long getThrottledReads() {
+        return readStats.snapshot().getThrottledCalls();
+    }
+
+    @Override
+    public long getThrottledWrites() {
+        return writeStats.snapshot().getThrottledCalls();
+    }
+
+    /**
+     * Returns the settings and progress of the transfer on one line.
+     */
+    @Override
+    public String getStatus() {
+        final OperationStats.Snapshot read = readStats.snapshot();
+        final OperationStats.Snapshot write = writeStats.snapshot();
+        final long seconds = TimeUnit.NANOSECONDS.toSeconds(System.nanoTime()
+                - startNanos);
+        return (isPaused() ? "paused" : "running") + " for " + seconds
+                + " s; read: " + describe(read, getReadRateLimit())
+                + "; write: " + describe(write, getWriteRateLimit())
+                + ", " + getWriteThreads() + " threads";
+    }
+
+    @Override
+    public void pause() {
+        LOGGER.info("Pausing the scan");
+        pauseGate.pause();
+    }
+
+    @Override
+    public void resume() {
+        LOGGER.info("Resuming the scan");
+        pauseGate.resume();
+    }
+
+    private static String describe(OperationStats.Snapshot stats,
+            double rateLimit) {
+        return stats.getItems() + " items, " + stats.getCalls() + " calls, "
+                + stats.getThrottledCalls() + " throttled, "
+                + String.format("%.1f", stats.getConsumedCapacity())
+                + " units consumed, "
+                + String.format("%.1f", stats.getAverageLatencyMillis())
+                + " ms per call, limit " + rateLimit + " units/s";
+    }
+
+    private static void checkRate(double rateLimit) {
+        if (!(rateLimit > 0)) {
+            throw new IllegalArgumentException(
+                    "Rate limit must be positive: " + rateLimit);
+        }
+    }
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright 2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.amazonaws.dynamodb.bootstrap;
+
+/**
+ * The JMX management interface of a running transfer, see TransferControl.
+ */
+public interface TransferControlMBean {
+
+    double getReadRateLimit();
+
+    void setReadRateLimit(double rateLimit);
+
+    double getWriteRateLimit();
+
+    void setWriteRateLimit(double rateLimit);
+
+    int getWriteThreads();
+
+    void setWriteThreads(int threads);
+
+    boolean isPaused();
+
+    long getItemsRead();
+
+    long getItemsWritten();
+
+    long getThrottledReads();
+
+    long getThrottledWrites();
+
+    String getStatus();
+
+    void pause();
+
+    void resume();
+}
@@ -0,0 +1,571 @@
+/*
+ * Copyright 2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.amazonaws.dynamodb.bootstrap;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+
+import com.amazonaws.dynamodb.bootstrap.constants.BootstrapConstants;
+
+/**
+ * Keeps a MultiTableTransfer running and feeds it jobs as they arrive, so that
+ * a stream of small transfers shares warm clients, connection pools, thread
+ * pools and compiled code instead of paying for a new JVM each.
+ * <p>
+ * Jobs arrive in a spool directory, a file ending in .job holding lines in
+ * the job file format, or on a socket bound to the loopback address, one
+ * command per line:
+ * <ul>
+ * <li>SUBMIT sourceTable,destinationTable[,priority] answers OK and the job's
+ * id.</li>
+ * <li>STATUS [id] answers a line per job, or for the job with the id, then
+ * END.</li>
+ * <li>SHUTDOWN stops taking jobs, answers OK and lets the running ones
+ * finish.</li>
+ * </ul>
+ * A spooled file is renamed to .running when it is taken, and to .done or
+ * .failed when its jobs are finished; the errors of failed jobs are added to
+ * it as comments, so it can be spooled again as it is.
+ */
+public class TransferDaemon {
+
+    /**
+     * Logger for the TransferDaemon.
+     */
+    private static final Logger LOGGER = LogManager
+            .getLogger(TransferDaemon.class);
+
+    static final String JOB_SUFFIX = ".job";
+    static final String RUNNING_SUFFIX = ".running";
+    static final String DONE_SUFFIX = ".done";
+    static final String FAILED_SUFFIX = ".failed";
+
+    /**
+     * The state of a job.
+     */
+    public enum State {
+        QUEUED, RUNNING, DONE, FAILED
+    }
+
+    /**
+     * A job the daemon took and where it came from.
+     */
+    public static class JobStatus {
+        private final long id;
+        private final TransferJob job;
+        private final String origin;
+        private final Future<Void> future;
+
+        JobStatus(long id, TransferJob job, String origin, Future<Void> future) {
+            this.id = id;
+            this.job = job;
+            this.origin = origin;
+            this.future = future;
+        }
+
+        public long getId() {
+            return id;
+        }
+
+        public TransferJob getJob() {
+            return job;
+        }
+
+        /**
+         * Returns "socket" or the name of the spooled file.
+         */
+        public String getOrigin() {
+            return origin;
+        }
+
+        public State getState() {
+            if (!future.isDone()) {
+                return job.isRunning() ? State.RUNNING : State.QUEUED;
+            }
+            return getError() == null ? State.DONE : State.FAILED;
+        }
+
+        /**
+         * Returns why the job failed, or null if it has not.
+         */
+        public Throwable getError() {
+            if (!future.isDone()) {
+                return null;
+            }
+            try {
+                future.get();
+                return null;
+            } catch (ExecutionException e) {
+                return e.getCause();
+            } catch (CancellationException e) {
+                return e;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return e;
+            }
+        }
+
+        @Override
+        public String toString() {
+            final State state = getState();
+            final Throwable error = getError();
+            return id + " " + state + " " + job + " items="
+                    + job.getItemsWritten() + " origin=" + origin
+                    + (error == null ? "" : " error=" + error);
+        }
+    }
+
+    private final MultiTableTransfer transfer;
+    private final double readThroughputRatio;
+    private final double writeThroughputRatio;
+    private final boolean consistentScan;
+    private final Map<Long, JobStatus> jobs = new LinkedHashMap<Long, JobStatus>();
+    private final Map<File, List<JobStatus>> spooled = new LinkedHashMap<File, List<JobStatus>>();
+    private final CountDownLatch stopped = new CountDownLatch(1);
+    private long nextId = 1;
+    private File spoolDirectory;
+    private int port = -1;
+    private ServerSocket serverSocket;
+    private Thread acceptThread;
+    private ScheduledExecutorService spoolPoller;
+    private volatile boolean stopping;
+
+    /**
+     * @param transfer
+     *            the transfer jobs are run by, with its shared clients and
+     *            pools.
+     * @param readThroughputRatio
+     *            read throughput ratio of every job.
+     * @param writeThroughputRatio
+     *            write throughput ratio of every job.
+     * @param consistentScan
+     *            whether every job scans consistently.
+     */
+    public TransferDaemon(MultiTableTransfer transfer,
+            double readThroughputRatio, double writeThroughputRatio,
+            boolean consistentScan) {
+        this.transfer = transfer;
+        this.readThroughputRatio = readThroughputRatio;
+        this.writeThroughputRatio = writeThroughputRatio;
+        this.consistentScan = consistentScan;
+    }
+
+    /**
+     * Takes jobs from .job files in the directory. Must be called before
+     * start.
+     */
+    public void setSpoolDirectory(File spoolDirectory) {
+        this.spoolDirectory = spoolDirectory;
+    }
+
+    /**
+     * Takes commands on the port of the loopback address; 0 picks a free
+     * port. Must be called before start.
+     */
+    public void setPort(int port) {
+        this.port = port;
+    }
+
+    /**
+     * Starts taking jobs.
+     */
+    public void start() throws IOException {
+        if (spoolDirectory != null) {
+            if (!spoolDirectory.isDirectory()) {
+                throw new IOException("Spool directory " + spoolDirectory
+                        + " does not exist");
+            }
+            spoolPoller = Executors.newSingleThreadScheduledExecutor();
+            final long interval = BootstrapConstants.DAEMON_SPOOL_POLL_MILLIS;
+            spoolPoller.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        pollSpool();
+                    } catch (RuntimeException e) {
+                        // keep the periodic task scheduled
+                        LOGGER.warn("Could not poll the spool directory", e);
+                    }
+                }
+            }, 0, interval, TimeUnit.MILLISECONDS);
+            LOGGER.info("Taking jobs from " + spoolDirectory);
+        }
+        if (port >= 0) {
+            serverSocket = new ServerSocket(port, 50,
+                    InetAddress.getLoopbackAddress());
+            acceptThread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    accept();
+                }
+            }, "daemon-accept");
+            acceptThread.setDaemon(true);
+            acceptThread.start();
+            LOGGER.info("Taking commands on " + serverSocket.getInetAddress()
+                    .getHostAddress() + ":" + serverSocket.getLocalPort());
+        }
+    }
+
+    /**
+     * Returns the port commands are taken on, or -1.
+     */
+    public int getPort() {
+        return serverSocket == null ? -1 : serverSocket.getLocalPort();
+    }
+
+    /**
+     * Queues a job.
+     *
+     * @return the job's id.
+     */
+    public synchronized long submit(TransferJob job, String origin) {
+        if (stopping) {
+            throw new IllegalStateException("The daemon is shutting down");
+        }
+        final long id = nextId++;
+        jobs.put(id, new JobStatus(id, job, origin, transfer.submit(job)));
+        forgetOldJobs();
+        LOGGER.info("Queued job " + id + ": " + job + " from " + origin);
+        return id;
+    }
+
+    /**
+     * Returns the status of a job, or null if there is no such job or it
+     * finished long ago.
+     */
+    public synchronized JobStatus getStatus(long id) {
+        return jobs.get(id);
+    }
+
+    /**
+     * Returns the status of the queued, running and recently finished jobs,
+     * oldest first.
+     */
+    public synchronized List<JobStatus> getStatuses() {
+        return new ArrayList<JobStatus>(jobs.values());
+    }
+
+    /**
+     * Stops taking jobs and waits for the queued and running ones to finish.
+     * The shared client thread pools are left to the caller.
+     */
+    public void stop() throws InterruptedException {
+        synchronized (this) {
+            if (stopping) {
+                return;
+            }
+            stopping = true;
+        }
+        LOGGER.info("Shutting down, waiting for the queued jobs...");
+        try {
+            if (serverSocket != null) {
+                try {
+                    serverSocket.close();
+                } catch (IOException e) {
+                    LOGGER.warn("Could not close the command socket", e);
+                }
+            }
+            if (spoolPoller != null) {
+                spoolPoller.shutdown();
+                spoolPoller.awaitTermination(
+                        BootstrapConstants.WAITING_PERIOD_FOR_THREAD_TERMINATION_SECONDS,
+                        TimeUnit.SECONDS);
+            }
+            transfer.shutdown();
+            if (spoolDirectory != null) {
+                // mark the files whose jobs finished since the last poll
+                finishSpooledFiles();
+            }
+        } finally {
+            stopped.countDown();
+        }
+        LOGGER.info("Shut down.");
+    }
+
+    /**
+     * Waits until the daemon is stopped.
+     */
+    public void awaitStop() throws InterruptedException {
+        stopped.await();
+    }
+
+    /**
+     * Takes the .job files in the spool directory, in order of their names,
+     * and marks the files whose jobs are finished.
+     */
+    void pollSpool() {
+        finishSpooledFiles();
+        if (stopping) {
+            return;
+        }
+        final String[] names = spoolDirectory.list(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.endsWith(JOB_SUFFIX);
+            }
+        });
+        if (names == null) {
+            LOGGER.warn("Could not list spool directory " + spoolDirectory);
+            return;
+        }
+        Arrays.sort(names);
+        for (String name : names) {
+            final File file = new File(spoolDirectory, name);
+            final File running = new File(spoolDirectory, name
+                    + RUNNING_SUFFIX);
+            if (!file.renameTo(running)) {
+                // taken by another daemon, or still being moved in
+                continue;
+            }
+            List<TransferJob> parsed;
+            try {
+                parsed = TransferJob.parseJobFile(running,
+                        readThroughputRatio, writeThroughputRatio,
+                        consistentScan);
+            } catch (IOException e) {
+                LOGGER.error("Could not read spooled job file " + name, e);
+                appendErrors(running, "# " + e.getMessage());
+                rename(running, name + FAILED_SUFFIX);
+                continue;
+            }
+            List<JobStatus> statuses = new ArrayList<JobStatus>();
+            try {
+                for (TransferJob job : parsed) {
+                    statuses.add(getStatus(submit(job, name)));
+                }
+            } catch (IllegalStateException e) {
+                // shutting down: the file is marked with the jobs it got
+                LOGGER.warn("Did not queue all jobs of " + name + ": "
+                        + e.getMessage());
+            }
+            synchronized (this) {
+                spooled.put(running, statuses);
+            }
+        }
+    }
+
+    /**
+     * Renames the spooled files whose jobs are all finished to .done, or to
+     * .failed with the errors appended if any job failed.
+     */
+    private void finishSpooledFiles() {
+        List<Map.Entry<File, List<JobStatus>>> finished = new ArrayList<Map.Entry<File, List<JobStatus>>>();
+        synchronized (this) {
+            Iterator<Map.Entry<File, List<JobStatus>>> it = spooled.entrySet()
+                    .iterator();
+            while (it.hasNext()) {
+                Map.Entry<File, List<JobStatus>> entry = it.next();
+                boolean done = true;
+                for (JobStatus status : entry.getValue()) {
+                    done &= status.future.isDone();
+                }
+                if (done) {
+                    finished.add(entry);
+                    it.remove();
+                }
+            }
+        }
+        for (Map.Entry<File, List<JobStatus>> entry : finished) {
+            final File running = entry.getKey();
+            final String name = running.getName().substring(0,
+                    running.getName().length() - RUNNING_SUFFIX.length());
+            StringBuilder errors = new StringBuilder();
+            for (JobStatus status : entry.getValue()) {
+                final Throwable error = status.getError();
+                if (error != null) {
+                    errors.append("# ").append(status.getJob()).append(": ")
+                            .append(error).append('\n');
+                }
+            }
+            if (errors.length() == 0) {
+                rename(running, name + DONE_SUFFIX);
+            } else {
+                appendErrors(running, errors.toString());
+                rename(running, name + FAILED_SUFFIX);
+            }
+        }
+    }
+
+    private void rename(File file, String name) {
+        final File target = new File(file.getParentFile(), name);
+        if (!file.renameTo(target)) {
+            LOGGER.warn("Could not rename " + file + " to " + target);
+        }
+    }
+
+    private static void appendErrors(File file, String errors) {
+        try {
+            Writer writer = new OutputStreamWriter(new FileOutputStream(file,
+                    true), BootstrapConstants.UTF8);
+            try {
+                writer.write("\n" + errors);
+            } finally {
+                writer.close();
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Could not add the errors to " + file, e);
+        }
+    }
+
+    /**
+     * Serves command connections one at a time until the socket is closed.
+     */
+    private void accept() {
+        while (!stopping) {
+            Socket socket;
+            try {
+                socket = serverSocket.accept();
+            } catch (SocketException e) {
+                // closed by stop
+                return;
+            } catch (IOException e) {
+                LOGGER.warn("Could not accept a command connection", e);
+                continue;
+            }
+            try {
+                serve(socket);
+            } catch (IOException e) {
+                LOGGER.warn("Command connection failed: " + e.getMessage());
+            } finally {
+                try {
+                    socket.close();
+                } catch (IOException e) {
+                    LOGGER.debug("Could not close a command connection", e);
+                }
+            }
+        }
+    }
+
+    private void serve(Socket socket) throws IOException {
+        socket.setSoTimeout(BootstrapConstants.DAEMON_CLIENT_TIMEOUT_MILLIS);
+        BufferedReader in = new BufferedReader(new InputStreamReader(
+                socket.getInputStream(), BootstrapConstants.UTF8));
+        Writer out = new OutputStreamWriter(socket.getOutputStream(),
+                BootstrapConstants.UTF8);
+        String line;
+        while ((line = in.readLine()) != null) {
+            line = line.trim();
+            if (line.isEmpty()) {
+                continue;
+            }
+            final boolean shutdown = line.equalsIgnoreCase("SHUTDOWN");
+            out.write(handle(line));
+            out.flush();
+            if (shutdown) {
+                startStop();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Answers a command line.
+     */
+    String handle(String line) {
+        final String[] words = line.trim().split("\\s+", 2);
+        final String command = words[0].toUpperCase();
+        final String argument = words.length > 1 ? words[1].trim() : null;
+        if (command.equals("SUBMIT") && argument != null) {
+            final String[] fields = argument.split(",");
+            if (fields.length < 2 || fields.length > 3) {
+                return "ERROR expected SUBMIT sourceTable,destinationTable[,priority]\n";
+            }
+            try {
+                final int priority = fields.length == 3 ? Integer
+                        .parseInt(fields[2].trim()) : 1;
+                return "OK "
+                        + submit(new TransferJob(fields[0].trim(), fields[1]
+                                .trim(), priority, readThroughputRatio,
+                                writeThroughputRatio, consistentScan),
+                                "socket") + "\n";
+            } catch (NumberFormatException e) {
+                return "ERROR invalid priority " + fields[2].trim() + "\n";
+            } catch (IllegalArgumentException | IllegalStateException e) {
+                return "ERROR " + e.getMessage() + "\n";
+            }
+        } else if (command.equals("STATUS")) {
+            StringBuilder out = new StringBuilder();
+            if (argument == null) {
+                for (JobStatus status : getStatuses()) {
+                    out.append(status).append('\n');
+                }
+            } else {
+                final JobStatus status;
+                try {
+                    status = getStatus(Long.parseLong(argument));
+                } catch (NumberFormatException e) {
+                    return "ERROR invalid job id " + argument + "\n";
+                }
+                if (status == null) {
+                    return "ERROR no job " + argument + "\n";
+                }
+                out.append(status).append('\n');
+            }
+            return out.append("END\n").toString();
+        } else if (command.equals("SHUTDOWN")) {
+            return "OK\n";
+        }
+        return "ERROR unknown command " + line.trim() + "\n";
+    }
+
+    /**
+     * Stops the daemon on a thread of its own, since stopping waits for the
+     * jobs.
+     */
+    private void startStop() {
+        Thread stopThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    TransferDaemon.this.stop();
+                } catch (InterruptedException e) {
+                    LOGGER.warn("Interrupted while shutting down");
+                }
+            }
+        }, "daemon-stop");
+        stopThread.start();
+    }
+
+    /**
+     * Forgets the oldest finished jobs beyond the history that is kept. Must
+     * be called holding the lock.
+     */
+    private void forgetOldJobs() {
+        Iterator<JobStatus> it = jobs.values().iterator();
+        while (jobs.size() > BootstrapConstants.DAEMON_JOB_HISTORY
+                && it.hasNext()) {
+            if (it.next().future.isDone()) {
+                it.remove();
+            }
+        }
+    }
+}
@@ -0,0 +1,213 @@
+/*
+ * Copyright 2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.amazonaws.dynamodb.bootstrap;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.amazonaws.dynamodb.bootstrap.constants.BootstrapConstants;
+
+/**
+ * One source table to destination table copy within a multi-table transfer.
+ * Holds the job's settings, the capacity limits derived from its tables, and
+ * the worker and consumer while the job is running so that the
+ * CapacityScheduler can move capacity to and from it.
+ */
+public class TransferJob {
+
+    private final String sourceTable;
+    private final String destinationTable;
+    private final int priority;
+    private final double readThroughputRatio;
+    private final double writeThroughputRatio;
+    private final boolean consistentScan;
+
+    private volatile long tableSizeBytes;
+    private volatile double maxReadRate;
+    private volatile double maxWriteRate;
+    private volatile double readRate;
+    private volatile double writeRate;
+    private volatile DynamoDBBootstrapWorker worker;
+    private volatile DynamoDBConsumer consumer;
+    private volatile long itemsWritten;
+
+    public TransferJob(String sourceTable, String destinationTable,
+            int priority, double readThroughputRatio,
+            double writeThroughputRatio, boolean consistentScan) {
+        if (priority < 1) {
+            throw new IllegalArgumentException(
+                    "Priority of a transfer job must be at least 1");
+        }
+        this.sourceTable = sourceTable;
+        this.destinationTable = destinationTable;
+        this.priority = priority;
+        this.readThroughputRatio = readThroughputRatio;
+        this.writeThroughputRatio = writeThroughputRatio;
+        this.consistentScan = consistentScan;
+    }
+
+    /**
+     * Reads a job file with one "sourceTable,destinationTable[,priority]" line
+     * per job. Blank lines and lines starting with '#' are ignored.
+     */
+    public static List<TransferJob> parseJobFile(File jobFile,
+            double readThroughputRatio, double writeThroughputRatio,
+            boolean consistentScan) throws IOException {
+        List<TransferJob> jobs = new ArrayList<TransferJob>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new FileInputStream(jobFile), BootstrapConstants.UTF8));
+        try {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] fields = line.split(",");
+                if (fields.length < 2 || fields.length > 3) {
+                    throw new IOException("Invalid job on line " + lineNumber
+                            + " of " + jobFile
+                            + ": expected sourceTable,destinationTable[,priority]");
+                }
+                int priority = 1;
+                if (fields.length == 3) {
+                    try {
+                        priority = Integer.parseInt(fields[2].trim());
+                    } catch (NumberFormatException e) {
+                        throw new IOException("Invalid priority on line "
+                                + lineNumber + " of " + jobFile, e);
+                    }
+                }
+                jobs.add(new TransferJob(fields[0].trim(), fields[1].trim(),
+                        priority, readThroughputRatio, writeThroughputRatio,
+                        consistentScan));
+            }
+        } finally {
+            reader.close();
+        }
+        return jobs;
+    }
+
+    /**
+     * Sets the read and write rates given to this job, applying them to the
+     * running worker and consumer.
+     */
+    void setRates(double readRate, double writeRate) {
+        this.readRate = readRate;
+        this.writeRate = writeRate;
+        final DynamoDBBootstrapWorker currentWorker = worker;
+        if (currentWorker != null) {
+            currentWorker.setRateLimit(readRate);
+        }
+        final DynamoDBConsumer currentConsumer = consumer;
+        if (currentConsumer != null) {
+            currentConsumer.setRateLimit(writeRate);
+        }
+    }
+
+    void attach(DynamoDBBootstrapWorker worker, DynamoDBConsumer consumer) {
+        this.worker = worker;
+        this.consumer = consumer;
+    }
+
+    void detach() {
+        final DynamoDBConsumer currentConsumer = consumer;
+        if (currentConsumer != null) {
+            itemsWritten = currentConsumer.getWriteStats().snapshot()
+                    .getItems();
+        }
+        this.worker = null;
+        this.consumer = null;
+    }
+
+    /**
+     * Returns whether the job is copying items.
+     */
+    public boolean isRunning() {
+        return consumer != null;
+    }
+
+    /**
+     * Returns the number of items written so far, or in total once the job
+     * has finished.
+     */
+    public long getItemsWritten() {
+        final DynamoDBConsumer currentConsumer = consumer;
+        return currentConsumer == null ? itemsWritten : currentConsumer
+                .getWriteStats().snapshot().getItems();
+    }
+
+    void setTableLimits(long tableSizeBytes, double maxReadRate,
+            double maxWriteRate) {
+        this.tableSizeBytes = tableSizeBytes;
+        this.maxReadRate = maxReadRate;
+        this.maxWriteRate = maxWriteRate;
+    }
+
+    /**
+     * The share of the scheduler's budgets this job asks for, relative to the
+     * other running jobs. Bigger tables and higher priorities get more.
+     */
+    double getWeight() {
+        return priority * (1.0 + tableSizeBytes / BootstrapConstants.GIGABYTE);
+    }
+
+    public String getSourceTable() {
+        return sourceTable;
+    }
+
+    public String getDestinationTable() {
+        return destinationTable;
+    }
+
+    public int getPriority() {
+        return priority;
+    }
+
+    public double getReadThroughputRatio() {
+        return readThroughputRatio;
+    }
+
+    public double getWriteThroughputRatio() {
+        return writeThroughputRatio;
+    }
+
+    public boolean getConsistentScan() {
+        return consistentScan;
+    }
+
+    public long getTableSizeBytes() {
+        return tableSizeBytes;
+    }
+
+    public double getMaxReadRate() {
+        return maxReadRate;
+    }
+
+    public double getMaxWriteRate() {
+        return maxWriteRate;
+    }
+
+    public double getReadRate() {
+        return readRate;
+    }
+
+    public double getWriteRate() {
+        return writeRate;
+    }
+
+    @Override
+    public String toString() {
+        return sourceTable + " -> " + destinationTable;
+    }
+}
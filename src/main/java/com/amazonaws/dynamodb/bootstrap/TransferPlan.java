@@ -0,0 +1,100 @@
+/*
+ * Copyright 2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.amazonaws.dynamodb.bootstrap;
+
+/**
+ * The settings TransferPlanner picked for a transfer, together with the
+ * measurements they are based on and the expected duration.
+ */
+public class TransferPlan {
+
+    private final int numSegments;
+    private final int readThreads;
+    private final int writeThreads;
+    private final int scanLimit;
+    private final double averageItemSizeBytes;
+    private final int medianItemSizeBytes;
+    private final int p99ItemSizeBytes;
+    private final double pageLatencyMillis;
+    private final double bytesPerSecond;
+    private final long expectedDurationSeconds;
+
+    public TransferPlan(int numSegments, int readThreads, int writeThreads,
+            int scanLimit, double averageItemSizeBytes,
+            int medianItemSizeBytes, int p99ItemSizeBytes,
+            double pageLatencyMillis, double bytesPerSecond,
+            long expectedDurationSeconds) {
+        this.numSegments = numSegments;
+        this.readThreads = readThreads;
+        this.writeThreads = writeThreads;
+        this.scanLimit = scanLimit;
+        this.averageItemSizeBytes = averageItemSizeBytes;
+        this.medianItemSizeBytes = medianItemSizeBytes;
+        this.p99ItemSizeBytes = p99ItemSizeBytes;
+        this.pageLatencyMillis = pageLatencyMillis;
+        this.bytesPerSecond = bytesPerSecond;
+        this.expectedDurationSeconds = expectedDurationSeconds;
+    }
+
+    public int getNumSegments() {
+        return numSegments;
+    }
+
+    public int getReadThreads() {
+        return readThreads;
+    }
+
+    public int getWriteThreads() {
+        return writeThreads;
+    }
+
+    public int getScanLimit() {
+        return scanLimit;
+    }
+
+    public double getAverageItemSizeBytes() {
+        return averageItemSizeBytes;
+    }
+
+    public int getMedianItemSizeBytes() {
+        return medianItemSizeBytes;
+    }
+
+    public int getP99ItemSizeBytes() {
+        return p99ItemSizeBytes;
+    }
+
+    public double getPageLatencyMillis() {
+        return pageLatencyMillis;
+    }
+
+    public double getBytesPerSecond() {
+        return bytesPerSecond;
+    }
+
+    /**
+     * Returns how long the transfer is expected to take, or -1 if the table
+     * size is not known.
+     */
+    public long getExpectedDurationSeconds() {
+        return expectedDurationSeconds;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Transfer plan:%n"
+                + "  item size: average %.0f bytes, median %d bytes, p99 %d bytes%n"
+                + "  scan page: limit %d items, expected latency %.1f ms%n"
+                + "  segments: %d%n" + "  read threads: %d%n"
+                + "  write threads: %d%n"
+                + "  expected throughput: %.0f bytes/s%n"
+                + "  expected duration: %s", averageItemSizeBytes,
+                medianItemSizeBytes, p99ItemSizeBytes, scanLimit,
+                pageLatencyMillis, numSegments, readThreads, writeThreads,
+                bytesPerSecond, expectedDurationSeconds < 0 ? "unknown"
+                        : expectedDurationSeconds + " s");
+    }
+}
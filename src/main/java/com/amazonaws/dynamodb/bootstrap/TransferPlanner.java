@@ -0,0 +1,256 @@
+/*
+ * Copyright 2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.amazonaws.dynamodb.bootstrap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+
+import com.amazonaws.dynamodb.bootstrap.constants.BootstrapConstants;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDBClient;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.ScanRequest;
+import com.amazonaws.services.dynamodbv2.model.ScanResult;
+
+/**
+ * Plans a transfer from a few sample pages of the source table instead of
+ * guessing from provisioned capacity. It scans one page from each of a few
+ * random segments, measures item sizes, bytes per page and call latency, and
+ * from those picks the scan Limit, the number of segments and the read and
+ * write concurrency needed to reach the target rates (by Little's law:
+ * concurrency = calls per second * seconds per call).
+ */
+public class TransferPlanner {
+
+    /**
+     * Logger for the TransferPlanner.
+     */
+    private static final Logger LOGGER = LogManager
+            .getLogger(TransferPlanner.class);
+
+    /**
+     * Number of segments the table is split into when picking sample pages.
+     */
+    private static final int SAMPLE_TOTAL_SEGMENTS = 1000;
+
+    /**
+     * Extra concurrency on top of what Little's law asks for, to absorb
+     * latency variation.
+     */
+    private static final double CONCURRENCY_HEADROOM = 1.25;
+
+    /**
+     * Measurements taken from the sample pages.
+     */
+    public static class Sample {
+        private final List<Integer> itemSizes = new ArrayList<Integer>();
+        private final List<Double> pageBytes = new ArrayList<Double>();
+        private final List<Double> pageLatencyMillis = new ArrayList<Double>();
+
+        /**
+         * Adds one scanned page.
+         */
+        public void addPage(List<Map<String, AttributeValue>> items,
+                double latencyMillis) {
+            int bytes = 0;
+            for (Map<String, AttributeValue> item : items) {
+                int size = ItemSizeCalculator.calculateItemSizeInBytes(item);
+                itemSizes.add(size);
+                bytes += size;
+            }
+            addPage(bytes, latencyMillis);
+        }
+
+        void addPage(double bytes, double latencyMillis) {
+            pageBytes.add(bytes);
+            pageLatencyMillis.add(latencyMillis);
+        }
+
+        void addItemSize(int size) {
+            itemSizes.add(size);
+        }
+
+        public int getPageCount() {
+            return pageBytes.size();
+        }
+
+        public int getItemCount() {
+            return itemSizes.size();
+        }
+    }
+
+    /**
+     * Scans one page from each of samplePages random segments of the table.
+     */
+    public static Sample sample(AmazonDynamoDBClient client, String tableName,
+            boolean consistentScan, int samplePages, Random random) {
+        Sample sample = new Sample();
+        for (int i = 0; i < samplePages; i++) {
+            ScanRequest request = new ScanRequest().withTableName(tableName)
+                    .withTotalSegments(SAMPLE_TOTAL_SEGMENTS)
+                    .withSegment(random.nextInt(SAMPLE_TOTAL_SEGMENTS))
+                    .withLimit(BootstrapConstants.SCAN_LIMIT)
+                    .withConsistentRead(consistentScan);
+            final long start = System.nanoTime();
+            try {
+                ScanResult result = client.scan(request);
+                sample.addPage(result.getItems(),
+                        (System.nanoTime() - start) / 1000000.0);
+            } catch (Exception e) {
+                LOGGER.warn("Could not scan sample page of segment "
+                        + request.getSegment() + ", skipping it", e);
+            }
+        }
+        return sample;
+    }
+
+    /**
+     * Picks the transfer settings that reach the target rates for the
+     * measured sample.
+     *
+     * @param sample
+     *            the sample pages of the source table.
+     * @param tableSizeBytes
+     *            the size of the source table.
+     * @param readRate
+     *            target read capacity units per second.
+     * @param writeRate
+     *            target write capacity units per second.
+     * @param consistentScan
+     *            whether the scan is strongly consistent.
+     */
+    public static TransferPlan plan(Sample sample, long tableSizeBytes,
+            double readRate, double writeRate, boolean consistentScan) {
+        int[] sizes = new int[sample.itemSizes.size()];
+        long totalSize = 0;
+        double totalWriteUnits = 0;
+        for (int i = 0; i < sizes.length; i++) {
+            sizes[i] = sample.itemSizes.get(i);
+            totalSize += sizes[i];
+            totalWriteUnits += CapacityEstimator.writeUnits(sizes[i]);
+        }
+        Arrays.sort(sizes);
+        final double averageItemSize = sizes.length == 0 ? 1.0 : Math.max(
+                1.0, totalSize / (double) sizes.length);
+        final int medianItemSize = percentile(sizes, 0.5);
+        final int p99ItemSize = percentile(sizes, 0.99);
+
+        // fill pages up to the scan page size cap, based on the average item
+        final int scanLimit;
+        if (sizes.length == 0) {
+            LOGGER.warn("The sample pages held no items, using the default"
+                    + " scan limit of " + BootstrapConstants.SCAN_LIMIT);
+            scanLimit = BootstrapConstants.SCAN_LIMIT;
+        } else {
+            scanLimit = (int) Math.max(1, Math.min(
+                    BootstrapConstants.MAX_SCAN_LIMIT,
+                    Math.floor(BootstrapConstants.MAX_SCAN_PAGE_BYTES
+                            / averageItemSize)));
+        }
+        final double plannedPageBytes = scanLimit * averageItemSize;
+        final double pageLatencyMillis = Math.max(1.0,
+                estimateLatency(sample, plannedPageBytes));
+
+        // bytes per second allowed by the read and write rates
+        final int readItemSize = consistentScan ? BootstrapConstants.STRONGLY_CONSISTENT_READ_ITEM_SIZE
+                : BootstrapConstants.EVENTUALLY_CONSISTENT_READ_ITEM_SIZE;
+        final double readBytesPerSecond = readRate * readItemSize;
+        // every item is rounded up to a whole unit on its own
+        final double writeUnitsPerItem = sizes.length == 0 ? 1.0
+                : totalWriteUnits / sizes.length;
+        final double writeBytesPerSecond = writeRate / writeUnitsPerItem
+                * averageItemSize;
+        final double bytesPerSecond = Math.max(1.0,
+                Math.min(readBytesPerSecond, writeBytesPerSecond));
+
+        final double pagesPerSecond = bytesPerSecond / plannedPageBytes;
+        final int readThreads = concurrency(pagesPerSecond, pageLatencyMillis);
+
+        final double batchesPerSecond = bytesPerSecond / averageItemSize
+                / BootstrapConstants.MAX_BATCH_SIZE_WRITE_ITEM;
+        // no writes are sampled, so assume a batch takes as long as a page
+        final int writeThreads = concurrency(batchesPerSecond,
+                pageLatencyMillis);
+
+        final int numSegments;
+        final long expectedDurationSeconds;
+        if (tableSizeBytes <= 0 && sizes.length > 0) {
+            // the table size is refreshed only every few hours, so a table
+            // loaded since reports none although the sample found items
+            numSegments = Math.max(readThreads,
+                    BootstrapConstants.MIN_ON_DEMAND_SEGMENTS);
+            expectedDurationSeconds = -1;
+            LOGGER.warn("The table reports a size of 0 bytes but the sample"
+                    + " pages held items, planning " + numSegments
+                    + " segments without an expected duration");
+        } else {
+            // every reader needs a segment, but no segment should be empty
+            final long tablePages = (long) Math.max(1,
+                    Math.ceil(tableSizeBytes / plannedPageBytes));
+            numSegments = (int) Math.max(1, Math.min(tablePages, Math.max(
+                    readThreads,
+                    Math.ceil(tableSizeBytes / BootstrapConstants.GIGABYTE))));
+            expectedDurationSeconds = (long) Math.ceil(tableSizeBytes
+                    / bytesPerSecond);
+        }
+        return new TransferPlan(numSegments,
+                Math.min(readThreads, numSegments), writeThreads, scanLimit,
+                averageItemSize, medianItemSize, p99ItemSize,
+                pageLatencyMillis, bytesPerSecond, expectedDurationSeconds);
+    }
+
+    private static int concurrency(double callsPerSecond, double latencyMillis) {
+        return (int) Math.max(1, Math.ceil(callsPerSecond * latencyMillis
+                / 1000.0 * CONCURRENCY_HEADROOM));
+    }
+
+    private static int percentile(int[] sorted, double percentile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(percentile * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+    }
+
+    /**
+     * Estimates the latency of a page of the given size with a least squares
+     * fit of latency = fixed cost + cost per byte over the sample pages.
+     */
+    static double estimateLatency(Sample sample, double pageBytes) {
+        final int n = sample.pageBytes.size();
+        if (n == 0) {
+            return 0;
+        }
+        double meanBytes = 0;
+        double meanLatency = 0;
+        for (int i = 0; i < n; i++) {
+            meanBytes += sample.pageBytes.get(i);
+            meanLatency += sample.pageLatencyMillis.get(i);
+        }
+        meanBytes /= n;
+        meanLatency /= n;
+        double covariance = 0;
+        double variance = 0;
+        for (int i = 0; i < n; i++) {
+            double dx = sample.pageBytes.get(i) - meanBytes;
+            covariance += dx * (sample.pageLatencyMillis.get(i) - meanLatency);
+            variance += dx * dx;
+        }
+        // bigger pages never get faster; without spread just use the mean
+        double perByte = variance == 0 ? 0 : Math.max(0, covariance / variance);
+        double fixed = meanLatency - perByte * meanBytes;
+        if (fixed < 0) {
+            perByte = meanBytes == 0 ? 0 : meanLatency / meanBytes;
+            fixed = 0;
+        }
+        return fixed + perByte * pageBytes;
+    }
+}
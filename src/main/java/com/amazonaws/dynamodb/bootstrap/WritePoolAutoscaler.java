@@ -0,0 +1,124 @@
+/*
+ * Copyright 2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.amazonaws.dynamodb.bootstrap;
+
+import java.util.concurrent.ThreadPoolExecutor;
+
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+
+/**
+ * Sizes the write thread pool from the batchWriteItem calls it makes instead
+ * of a fixed guess. Run periodically, it takes the average latency and the
+ * capacity consumed per call since the last run and, by Little's law, sets the
+ * pool to the number of concurrent calls the write rate limit needs: calls per
+ * second (rate / capacity per call) times seconds per call, with some
+ * headroom, kept within [minThreads, maxThreads].
+ */
+public class WritePoolAutoscaler implements Runnable {
+
+    /**
+     * Logger for the WritePoolAutoscaler.
+     */
+    private static final Logger LOGGER = LogManager
+            .getLogger(WritePoolAutoscaler.class);
+
+    /**
+     * Extra writers on top of what Little's law asks for, to absorb latency
+     * variation.
+     */
+    private static final double CONCURRENCY_HEADROOM = 1.25;
+
+    private final ThreadPoolExecutor pool;
+    private final RateLimitAdjustable writer;
+    private final OperationStats stats;
+    private final int minThreads;
+    private final int maxThreads;
+    private OperationStats.Snapshot last;
+
+    /**
+     * @param pool
+     *            the write thread pool to resize.
+     * @param writer
+     *            the consumer whose rate limit the pool has to keep up with.
+     * @param stats
+     *            the stats of the consumer's batchWriteItem calls.
+     */
+    public WritePoolAutoscaler(ThreadPoolExecutor pool,
+            RateLimitAdjustable writer, OperationStats stats, int minThreads,
+            int maxThreads) {
+        this.pool = pool;
+        this.writer = writer;
+        this.stats = stats;
+        this.minThreads = Math.max(1, minThreads);
+        this.maxThreads = Math.max(this.minThreads, maxThreads);
+        this.last = stats.snapshot();
+    }
+
+    @Override
+    public void run() {
+        try {
+            adjust();
+        } catch (RuntimeException e) {
+            // keep the periodic task scheduled
+            LOGGER.warn("Could not resize the write thread pool", e);
+        }
+    }
+
+    /**
+     * Looks at the calls made since the previous adjustment and resizes the
+     * pool if a different number of writers is needed.
+     */
+    synchronized void adjust() {
+        final OperationStats.Snapshot now = stats.snapshot();
+        final OperationStats.Snapshot window = now.since(last);
+        last = now;
+        if (window.getCalls() == 0) {
+            return;
+        }
+
+        final double latencyMillis = window.getAverageLatencyMillis();
+        final double capacityPerCall = window.getConsumedCapacity()
+                / window.getCalls();
+        final double rate = writer.getRateLimit();
+        final int current = pool.getMaximumPoolSize();
+        final int needed = requiredThreads(rate, capacityPerCall,
+                latencyMillis, minThreads, maxThreads);
+        if (needed == current) {
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug("Keeping " + current + " write threads: "
+                        + latencyMillis + " ms per call, " + capacityPerCall
+                        + " units per call at " + rate + " units/s");
+            }
+            return;
+        }
+
+        // the core size may never exceed the maximum size
+        if (needed > current) {
+            pool.setMaximumPoolSize(needed);
+            pool.setCorePoolSize(needed);
+        } else {
+            pool.setCorePoolSize(needed);
+            pool.setMaximumPoolSize(needed);
+        }
+        LOGGER.info("Changed write threads from " + current + " to " + needed
+                + ": " + latencyMillis + " ms per call, " + capacityPerCall
+                + " units per call at " + rate + " units/s");
+    }
+
+    /**
+     * Returns the concurrent calls needed to write rate units per second with
+     * calls of capacityPerCall units taking latencyMillis each.
+     */
+    static int requiredThreads(double rate, double capacityPerCall,
+            double latencyMillis, int minThreads, int maxThreads) {
+        // calls that report no capacity still take a unit of the rate
+        final double callsPerSecond = rate / Math.max(1.0, capacityPerCall);
+        final double needed = Math.ceil(callsPerSecond * latencyMillis
+                / 1000.0 * CONCURRENCY_HEADROOM);
+        return (int) Math.max(minThreads, Math.min(maxThreads, needed));
+    }
+}
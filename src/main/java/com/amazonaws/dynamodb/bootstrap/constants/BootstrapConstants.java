@@ -96,8 +96,139 @@ public class BootstrapConstants {
      */
     public static final int SCAN_LIMIT = 1000;
 
+    /**
+     * Largest scan Limit a planned or adaptive scan will use.
+     */
+    public static final int MAX_SCAN_LIMIT = 10000;
+
+    /**
+     * Most data a single scan call returns, in bytes.
+     */
+    public static final int MAX_SCAN_PAGE_BYTES = 1024 * 1024;
+
+    /**
+     * Number of bytes of an item covered by one write capacity unit.
+     */
+    public static final int WRITE_ITEM_SIZE = 1024;
+
+    /**
+     * Default number of pages scanned to plan a transfer.
+     */
+    public static final int DEFAULT_PLANNER_SAMPLE_PAGES = 8;
+
+    /**
+     * Default number of bytes of released direct buffers kept for reuse by
+     * compact item pages.
+     */
+    public static final long DEFAULT_COMPACT_POOL_BYTES = 256L * 1024 * 1024;
+
+    /**
+     * Default page size an adaptive scan Limit aims for, leaving room below
+     * the page size cap.
+     */
+    public static final int DEFAULT_TARGET_PAGE_BYTES = 512 * 1024;
+
+    /**
+     * Default scan call time an adaptive scan Limit aims for.
+     */
+    public static final double DEFAULT_TARGET_PAGE_LATENCY_MILLIS = 500.0;
+
+    /**
+     * Seconds between resizes of an autoscaled write thread pool.
+     */
+    public static final long WRITE_POOL_ADJUST_INTERVAL_SECONDS = 10;
+
+    /**
+     * Default size of each spill segment file.
+     */
+    public static final int DEFAULT_SPILL_SEGMENT_BYTES = 64 * 1024 * 1024;
+
+    /**
+     * Default number of partition key buckets interleaved writes are spread
+     * over.
+     */
+    public static final int DEFAULT_INTERLEAVE_BUCKETS = 1024;
+
+    /**
+     * Default number of scanned items interleaved writes may hold in buckets.
+     */
+    public static final int DEFAULT_INTERLEAVE_BUFFER_ITEMS = 20000;
+
+    /**
+     * Default number of write batches submitted but not yet completed; enough
+     * to keep any sensible number of write threads busy.
+     */
+    public static final int DEFAULT_MAX_IN_FLIGHT_BATCHES = 1024;
+
+    /**
+     * Default number of bucket files a partitioned export splits items into.
+     */
+    public static final int DEFAULT_EXPORT_BUCKETS = 64;
+
+    /**
+     * Uncompressed size of the blocks of compressed export files; large
+     * enough that the header of each block costs nothing, small enough that
+     * every bucket can hold one in memory.
+     */
+    public static final int COMPRESSION_BLOCK_SIZE = 256 * 1024;
+
+    /**
+     * Number of segments a sampled export divides the table into, of which it
+     * scans a random subset; many small segments make the sample closer to
+     * uniform and its estimates tighter.
+     */
+    public static final int SAMPLE_TOTAL_SEGMENTS = 10000;
+
     /**
      * Max connection size limit
      */
     public static final int MAX_CONN_SIZE = 5000;
+
+    /**
+     * Minimum number of segments to scan an on-demand table with.
+     */
+    public static final int MIN_ON_DEMAND_SEGMENTS = 10;
+
+    /**
+     * Default rate in capacity units per second that on-demand reads and writes
+     * start at before ramping up.
+     */
+    public static final double DEFAULT_ON_DEMAND_INITIAL_RATE = 100.0;
+
+    /**
+     * Default highest rate in capacity units per second for on-demand reads and
+     * writes. This is the default per table throughput quota of on-demand
+     * tables.
+     */
+    public static final double DEFAULT_ON_DEMAND_MAX_RATE = 40000.0;
+
+    /**
+     * Seconds between two adjustments of on-demand rates.
+     */
+    public static final long ON_DEMAND_ADJUST_INTERVAL_SECONDS = 10;
+
+    /**
+     * Seconds between two adjustments of the rates to a deadline.
+     */
+    public static final long DEADLINE_ADJUST_INTERVAL_SECONDS = 15;
+
+    /**
+     * Milliseconds between two looks into the daemon's spool directory.
+     */
+    public static final long DAEMON_SPOOL_POLL_MILLIS = 1000;
+
+    /**
+     * Milliseconds a daemon command connection may stay idle.
+     */
+    public static final int DAEMON_CLIENT_TIMEOUT_MILLIS = 30000;
+
+    /**
+     * Number of finished jobs whose status the daemon keeps.
+     */
+    public static final int DAEMON_JOB_HISTORY = 1000;
+
+    /**
+     * Milliseconds the daemon reuses a table description for later jobs.
+     */
+    public static final long DAEMON_DESCRIPTION_CACHE_MILLIS = 5 * 60 * 1000;
 }
@@ -0,0 +1,62 @@
+/*
+ * Copyright 2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.amazonaws.dynamodb.bootstrap;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import com.amazonaws.dynamodb.bootstrap.constants.BootstrapConstants;
+
+/**
+ * Unit Tests for AdaptiveScanLimit
+ *
+ */
+public class AdaptiveScanLimitTest {
+
+    private static final int TARGET_BYTES = 512 * 1024;
+    private static final double TARGET_MILLIS = 500.0;
+
+    /**
+     * Test that tiny fast items grow the Limit, at most doubling per page, up
+     * to the largest Limit.
+     */
+    @Test
+    public void testSmallItemsGrowLimit() {
+        AdaptiveScanLimit limit = new AdaptiveScanLimit(1000, TARGET_BYTES,
+                TARGET_MILLIS);
+        assertEquals(2000, limit.update(1000, 1000 * 10, 20.0));
+        assertEquals(4000, limit.update(2000, 2000 * 10, 40.0));
+        for (int i = 0; i < 10; i++) {
+            limit.update(limit.getLimit(), limit.getLimit() * 10L, 20.0);
+        }
+        assertEquals(BootstrapConstants.MAX_SCAN_LIMIT, limit.getLimit());
+    }
+
+    /**
+     * Test that large items shrink the Limit to fit the target page size.
+     */
+    @Test
+    public void testLargeItemsShrinkLimit() {
+        AdaptiveScanLimit limit = new AdaptiveScanLimit(1000, TARGET_BYTES,
+                TARGET_MILLIS);
+        // 1000 items of 4 KB
+        assertEquals(TARGET_BYTES / 4096, limit.update(1000, 1000 * 4096, 100.0));
+    }
+
+    /**
+     * Test that slow calls shrink the Limit to fit the target latency.
+     */
+    @Test
+    public void testSlowCallsShrinkLimit() {
+        AdaptiveScanLimit limit = new AdaptiveScanLimit(1000, TARGET_BYTES,
+                TARGET_MILLIS);
+        // 1 ms per item
+        assertEquals(500, limit.update(1000, 1000 * 10, 1000.0));
+        // empty pages change nothing
+        assertEquals(500, limit.update(0, 0, 5.0));
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.amazonaws.dynamodb.bootstrap;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.GlobalSecondaryIndexDescription;
+import com.amazonaws.services.dynamodbv2.model.KeySchemaElement;
+import com.amazonaws.services.dynamodbv2.model.KeyType;
+import com.amazonaws.services.dynamodbv2.model.Projection;
+import com.amazonaws.services.dynamodbv2.model.ProjectionType;
+import com.amazonaws.services.dynamodbv2.model.PutRequest;
+import com.amazonaws.services.dynamodbv2.model.TableDescription;
+import com.amazonaws.services.dynamodbv2.model.WriteRequest;
+import com.google.common.util.concurrent.RateLimiter;
+
+/**
+ * Unit Tests for CapacityEstimator, FractionalPermits and the number sizes of
+ * ItemSizeCalculator
+ *
+ */
+public class CapacityEstimatorTest {
+
+    /**
+     * Test that numbers take a byte per two significant digits plus one.
+     */
+    @Test
+    public void testNumberSize() {
+        assertEquals(1, ItemSizeCalculator.calculateNumberSizeInBytes("0"));
+        assertEquals(2, ItemSizeCalculator.calculateNumberSizeInBytes("7"));
+        assertEquals(2, ItemSizeCalculator.calculateNumberSizeInBytes("10"));
+        assertEquals(2, ItemSizeCalculator.calculateNumberSizeInBytes("1000000"));
+        assertEquals(3, ItemSizeCalculator.calculateNumberSizeInBytes("123"));
+        assertEquals(4, ItemSizeCalculator.calculateNumberSizeInBytes("-123"));
+        assertEquals(2, ItemSizeCalculator.calculateNumberSizeInBytes("0.5"));
+        assertEquals(3, ItemSizeCalculator.calculateNumberSizeInBytes("1.5"));
+        assertEquals(2, ItemSizeCalculator.calculateNumberSizeInBytes("12.00"));
+        assertEquals(2, ItemSizeCalculator.calculateNumberSizeInBytes("1.5E+3"));
+        assertEquals(3, ItemSizeCalculator.calculateNumberSizeInBytes("1.5E+2"));
+        assertEquals(21, ItemSizeCalculator
+                .calculateNumberSizeInBytes("-1234567890123456789012345678901234567.8"));
+
+        Map<String, AttributeValue> item = new HashMap<String, AttributeValue>();
+        item.put("n", new AttributeValue().withN("42"));
+        assertEquals(3, ItemSizeCalculator.calculateItemSizeInBytes(item));
+    }
+
+    /**
+     * Test that scan pages are rounded up to 4 KB as a whole.
+     */
+    @Test
+    public void testScanReadUnits() {
+        assertEquals(0.0, CapacityEstimator.scanReadUnits(0, true), 0.0);
+        assertEquals(1.0, CapacityEstimator.scanReadUnits(1, true), 0.0);
+        assertEquals(0.5, CapacityEstimator.scanReadUnits(4096, false), 0.0);
+        assertEquals(1.0, CapacityEstimator.scanReadUnits(4097, false), 0.0);
+        assertEquals(256.0,
+                CapacityEstimator.scanReadUnits(1024 * 1024, true), 0.0);
+    }
+
+    private static Map<String, AttributeValue> item(int payloadBytes,
+            boolean withIndexKey) {
+        Map<String, AttributeValue> item = new HashMap<String, AttributeValue>();
+        item.put("id", new AttributeValue().withS("abc"));
+        char[] payload = new char[payloadBytes];
+        Arrays.fill(payload, 'x');
+        item.put("payload", new AttributeValue().withS(new String(payload)));
+        if (withIndexKey) {
+            item.put("gsi", new AttributeValue().withS("g"));
+        }
+        return item;
+    }
+
+    /**
+     * Test that every item is rounded up to 1 KB on its own, and that indexes
+     * the item is in add what they project.
+     */
+    @Test
+    public void testWriteUnits() {
+        CapacityEstimator plain = new CapacityEstimator();
+        assertEquals(1.0, plain.writeUnits(item(10, false)), 0.0);
+        assertEquals(2.0, plain.writeUnits(item(1024, false)), 0.0);
+        assertEquals(3.0, plain.writeUnits(Arrays.asList(
+                new WriteRequest(new PutRequest(item(10, false))),
+                new WriteRequest(new PutRequest(item(1024, false))))), 0.0);
+
+        TableDescription table = new TableDescription()
+                .withKeySchema(new KeySchemaElement("id", KeyType.HASH))
+                .withGlobalSecondaryIndexes(
+                        new GlobalSecondaryIndexDescription().withKeySchema(
+                                new KeySchemaElement("gsi", KeyType.HASH))
+                                .withProjection(new Projection()
+                                        .withProjectionType(ProjectionType.ALL)),
+                        new GlobalSecondaryIndexDescription().withKeySchema(
+                                new KeySchemaElement("gsi", KeyType.HASH))
+                                .withProjection(new Projection()
+                                        .withProjectionType(ProjectionType.KEYS_ONLY)));
+        CapacityEstimator indexed = new CapacityEstimator(table);
+        assertEquals(2, indexed.getIndexCount());
+        // not in the sparse indexes
+        assertEquals(2.0, indexed.writeUnits(item(1024, false)), 0.0);
+        // 2 units in the table and the ALL index, 1 in the KEYS_ONLY index
+        assertEquals(5.0, indexed.writeUnits(item(1024, true)), 0.0);
+    }
+
+    /**
+     * Test that fractions of permits add up instead of being dropped.
+     */
+    @Test
+    public void testFractionalPermits() {
+        FractionalPermits permits = new FractionalPermits(
+                RateLimiter.create(1000));
+        for (int i = 0; i < 5; i++) {
+            permits.acquire(0.5);
+        }
+        assertEquals(0.5, permits.getOwed(), 1e-9);
+        permits.acquire(2.75);
+        assertEquals(0.25, permits.getOwed(), 1e-9);
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.amazonaws.dynamodb.bootstrap;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/**
+ * Unit Tests for CapacityScheduler
+ *
+ */
+public class CapacitySchedulerTest {
+
+    private static final double DELTA = 0.0001;
+
+    /**
+     * Test that a budget is split by weight when no job reaches its cap.
+     */
+    @Test
+    public void testAllocateByWeight() {
+        double[] allocation = CapacityScheduler.allocate(300.0, new double[] {
+                1.0, 2.0 }, new double[] { 1000.0, 1000.0 });
+
+        assertEquals(100.0, allocation[0], DELTA);
+        assertEquals(200.0, allocation[1], DELTA);
+    }
+
+    /**
+     * Test that capacity a capped job cannot use goes to the other jobs.
+     */
+    @Test
+    public void testAllocateRedistributesAboveCap() {
+        double[] allocation = CapacityScheduler.allocate(300.0, new double[] {
+                1.0, 1.0, 1.0 }, new double[] { 20.0, 1000.0, 1000.0 });
+
+        assertEquals(20.0, allocation[0], DELTA);
+        assertEquals(140.0, allocation[1], DELTA);
+        assertEquals(140.0, allocation[2], DELTA);
+    }
+
+    /**
+     * Test that an unlimited budget gives every job its own table's limit.
+     */
+    @Test
+    public void testAllocateUnlimitedBudget() {
+        double[] allocation = CapacityScheduler.allocate(
+                Double.POSITIVE_INFINITY, new double[] { 1.0, 5.0 },
+                new double[] { 10.0, 50.0 });
+
+        assertEquals(10.0, allocation[0], DELTA);
+        assertEquals(50.0, allocation[1], DELTA);
+    }
+
+    /**
+     * Test that a finished job's capacity is given to the remaining jobs.
+     */
+    @Test
+    public void testJobFinishedReallocates() {
+        CapacityScheduler scheduler = new CapacityScheduler(100.0, 100.0);
+        TransferJob first = new TransferJob("a", "b", 1, 1.0, 1.0, false);
+        TransferJob second = new TransferJob("c", "d", 1, 1.0, 1.0, false);
+        first.setTableLimits(0, 1000.0, 1000.0);
+        second.setTableLimits(0, 1000.0, 1000.0);
+
+        scheduler.jobStarted(first);
+        scheduler.jobStarted(second);
+        assertEquals(50.0, first.getReadRate(), DELTA);
+        assertEquals(50.0, second.getWriteRate(), DELTA);
+
+        scheduler.jobFinished(first);
+        assertEquals(100.0, second.getReadRate(), DELTA);
+        assertEquals(100.0, second.getWriteRate(), DELTA);
+    }
+}
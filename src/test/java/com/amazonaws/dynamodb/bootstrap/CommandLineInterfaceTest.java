@@ -0,0 +1,80 @@
+/*
+ * Copyright 2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.amazonaws.dynamodb.bootstrap;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.amazonaws.dynamodb.bootstrap.constants.BootstrapConstants;
+
+/**
+ * Unit Tests for the thread pools of CommandLineInterface
+ *
+ */
+public class CommandLineInterfaceTest {
+
+    /**
+     * Queues a task per segment and returns the number of threads running
+     * them once they have all started or the rest are queued.
+     */
+    private static int busyThreads(int readThreads, int numSegments)
+            throws InterruptedException {
+        ThreadPoolExecutor pool = (ThreadPoolExecutor) CommandLineInterface
+                .getSourceThreadPool(readThreads, numSegments);
+        final CountDownLatch started = new CountDownLatch(Math.min(
+                readThreads, numSegments));
+        final CountDownLatch release = new CountDownLatch(1);
+        try {
+            for (int i = 0; i < numSegments; i++) {
+                pool.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        started.countDown();
+                        try {
+                            release.await();
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                    }
+                });
+            }
+            assertTrue(started.await(10, TimeUnit.SECONDS));
+            return pool.getPoolSize();
+        } finally {
+            release.countDown();
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Test that the source pool runs as many segments at once as planned,
+     * above and below the default core pool size.
+     */
+    @Test
+    public void testSourceThreadPoolReachesReadThreads() throws Exception {
+        final int many = BootstrapConstants.DYNAMODB_CLIENT_EXECUTOR_CORE_POOL_SIZE + 4;
+        assertEquals(many, busyThreads(many, many * 3));
+        assertEquals(2, busyThreads(2, 16));
+        assertEquals(1, busyThreads(1, 4));
+    }
+
+    /**
+     * Test that the spill window covers the destination pool's threads and
+     * queue, and never drops below two pages.
+     */
+    @Test
+    public void testMaxInFlightPagesFillsDestinationPool() {
+        // 25 items per batch: 4 batches a page, 16 threads and 16 queued
+        assertEquals(8, CommandLineInterface.getMaxInFlightPages(16, 100));
+        assertEquals(3, CommandLineInterface.getMaxInFlightPages(5, 100));
+        assertEquals(2, CommandLineInterface.getMaxInFlightPages(1, 1000));
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.amazonaws.dynamodb.bootstrap;
+
+import static org.junit.Assert.*;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.BatchWriteItemRequest;
+import com.amazonaws.services.dynamodbv2.model.WriteRequest;
+
+/**
+ * Unit Tests for CompactItemPage and CompactItemCodec
+ *
+ */
+public class CompactItemPageTest {
+
+    private static final String TABLE_NAME = "tableName";
+
+    /**
+     * Test that every attribute type survives encoding, including non ASCII
+     * strings.
+     */
+    @Test
+    public void testCodecRoundTrip() {
+        Map<String, AttributeValue> item = DynamoDBJsonCodecTest.sampleItem();
+        item.put("unicode", new AttributeValue()
+                .withS("caf\u00e9 \u6771\u4eac \ud83d\ude00"));
+
+        ByteBuffer buffer = ByteBuffer.allocate(CompactItemCodec.encodedSize(item));
+        CompactItemCodec.encode(item, buffer);
+        assertFalse(buffer.hasRemaining());
+
+        buffer.flip();
+        assertEquals(item, CompactItemCodec.decode(buffer));
+    }
+
+    /**
+     * Test that a page turns back into batches of the original items and that
+     * its buffer goes back to the pool after the last release.
+     */
+    @Test
+    public void testPageBatchesAndRelease() {
+        List<Map<String, AttributeValue>> items = new ArrayList<Map<String, AttributeValue>>();
+        for (int i = 0; i < 30; i++) {
+            Map<String, AttributeValue> item = new HashMap<String, AttributeValue>();
+            item.put("id", new AttributeValue().withN(Integer.toString(i)));
+            items.add(item);
+        }
+        DirectBufferPool pool = new DirectBufferPool(1024 * 1024);
+        CompactItemPage page = CompactItemPage.encode(items, pool);
+        assertEquals(30, page.getItemCount());
+        page.retain(2);
+
+        BatchWriteItemRequest batch = page.toBatchWriteItemRequest(25, 30,
+                TABLE_NAME);
+        List<WriteRequest> writes = batch.getRequestItems().get(TABLE_NAME);
+        assertEquals(5, writes.size());
+        assertEquals(items.get(25), writes.get(0).getPutRequest().getItem());
+        assertEquals(items.subList(0, 25), page.getItems(0, 25));
+
+        page.release();
+        page.release();
+        assertEquals(0, pool.getPooledBytes());
+        page.release();
+        assertTrue(pool.getPooledBytes() > 0);
+
+        // the next page reuses the pooled buffer
+        CompactItemPage.encode(items, pool);
+        assertEquals(0, pool.getPooledBytes());
+    }
+
+    /**
+     * Test that a released page can no longer be read.
+     */
+    @Test(expected = IllegalStateException.class)
+    public void testReleasedPage() {
+        List<Map<String, AttributeValue>> items = new ArrayList<Map<String, AttributeValue>>();
+        items.add(DynamoDBJsonCodecTest.sampleItem());
+        CompactItemPage page = CompactItemPage.encode(items,
+                new DirectBufferPool(1024 * 1024));
+        page.release();
+        page.getItem(0);
+    }
+}
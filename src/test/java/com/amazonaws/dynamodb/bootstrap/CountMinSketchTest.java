@@ -0,0 +1,64 @@
+/*
+ * Copyright 2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.amazonaws.dynamodb.bootstrap;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+/**
+ * Unit Tests for CountMinSketch
+ *
+ */
+public class CountMinSketchTest {
+
+    private static final HashFunction HASH = Hashing.murmur3_128();
+
+    private static long hash(long value) {
+        return HASH.hashLong(value).asLong();
+    }
+
+    /**
+     * Test that estimates are never too low and too high by at most the
+     * error bound, for a hot value among many cold ones.
+     */
+    @Test
+    public void testEstimate() {
+        CountMinSketch sketch = new CountMinSketch(4, 1024);
+        for (int i = 0; i < 50000; i++) {
+            sketch.add(hash(i), 1);
+        }
+        sketch.add(hash(-1), 5000);
+        assertEquals(55000, sketch.getTotal());
+        final long hot = sketch.estimate(hash(-1));
+        assertTrue(hot >= 5000);
+        assertTrue(hot <= 5000 + sketch.getErrorBound());
+        for (int i = 0; i < 100; i++) {
+            final long cold = sketch.estimate(hash(i));
+            assertTrue(cold >= 1);
+            assertTrue(cold <= 1 + sketch.getErrorBound());
+        }
+    }
+
+    /**
+     * Test that merged sketches add up.
+     */
+    @Test
+    public void testMerge() {
+        CountMinSketch a = new CountMinSketch(4, 256);
+        CountMinSketch b = new CountMinSketch(4, 256);
+        a.add(hash(1), 10);
+        b.add(hash(1), 5);
+        b.add(hash(2), 3);
+        a.merge(b);
+        assertEquals(18, a.getTotal());
+        assertEquals(15, a.estimate(hash(1)));
+        assertEquals(3, a.estimate(hash(2)));
+    }
+}
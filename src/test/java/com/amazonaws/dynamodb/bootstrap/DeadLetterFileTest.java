@@ -0,0 +1,135 @@
+/*
+ * Copyright 2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.amazonaws.dynamodb.bootstrap;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Executors;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+
+/**
+ * Unit Tests for DeadLetterFile and the dead-lettering of DynamoDBConsumer
+ *
+ */
+public class DeadLetterFileTest {
+
+    private static final String TABLE = "destination";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static Map<String, AttributeValue> oversizeItem(int id) {
+        Map<String, AttributeValue> item = FakeDynamoDBTest.item(id);
+        StringBuilder payload = new StringBuilder();
+        while (payload.length() <= FakeDynamoDB.MAX_ITEM_BYTES) {
+            payload.append("0123456789abcdef");
+        }
+        item.put("payload", new AttributeValue().withS(payload.toString()));
+        return item;
+    }
+
+    /**
+     * Test that entries are read back as written, also after reopening the
+     * file to append.
+     */
+    @Test
+    public void testRoundTrip() throws Exception {
+        File file = folder.newFile("dead-letters");
+        DeadLetterFile deadLetters = new DeadLetterFile(file);
+        deadLetters.write(TABLE, FakeDynamoDBTest.item(1), "first", 1);
+        deadLetters.write(TABLE, FakeDynamoDBTest.item(2), "second", 11);
+        deadLetters.close();
+        deadLetters = new DeadLetterFile(file);
+        deadLetters.write("other", FakeDynamoDBTest.item(3), "third", 2);
+        deadLetters.close();
+        assertEquals(1, deadLetters.getCount());
+
+        List<DeadLetterFile.Entry> entries = DeadLetterFile.read(file);
+        assertEquals(3, entries.size());
+        assertEquals(TABLE, entries.get(0).getTableName());
+        assertEquals("first", entries.get(0).getReason());
+        assertEquals(FakeDynamoDBTest.item(1), entries.get(0).getItem());
+        assertEquals(11, entries.get(1).getAttempts());
+        assertEquals("other", entries.get(2).getTableName());
+        assertEquals(FakeDynamoDBTest.item(3), entries.get(2).getItem());
+    }
+
+    /**
+     * Test that oversize items go to the dead-letter file while the other
+     * items of their batches are written.
+     */
+    @Test
+    public void testPoisonItemsAreDeadLettered() throws Exception {
+        FakeDynamoDB destination = new FakeDynamoDB();
+        destination.createTable(TABLE, "id", null);
+        File file = folder.newFile("dead-letters");
+        DeadLetterFile deadLetters = new DeadLetterFile(file);
+        DynamoDBConsumer consumer = new DynamoDBConsumer(destination, TABLE,
+                1000000.0, Executors.newFixedThreadPool(4));
+        consumer.setDeadLetterFile(deadLetters);
+
+        List<Map<String, AttributeValue>> items = new ArrayList<Map<String, AttributeValue>>();
+        for (int i = 0; i < 100; i++) {
+            items.add(i % 40 == 7 ? oversizeItem(i) : FakeDynamoDBTest.item(i));
+        }
+        for (int from = 0; from < items.size(); from += 25) {
+            consumer.writeItems(items.subList(from, from + 25), null);
+        }
+        consumer.shutdown(true);
+        deadLetters.close();
+
+        assertEquals(97, destination.getItemCount(TABLE));
+        List<DeadLetterFile.Entry> entries = DeadLetterFile.read(file);
+        assertEquals(3, entries.size());
+        for (DeadLetterFile.Entry entry : entries) {
+            assertEquals(TABLE, entry.getTableName());
+            assertTrue(entry.getReason().startsWith("ValidationException"));
+            assertEquals(7,
+                    Integer.parseInt(entry.getItem().get("value").getN()) % 40);
+        }
+    }
+
+    /**
+     * Test that items left unprocessed on every attempt are given up on after
+     * the retry limit.
+     */
+    @Test
+    public void testUnprocessedItemsAreDeadLettered() throws Exception {
+        FakeDynamoDB destination = new FakeDynamoDB();
+        destination.createTable(TABLE, "id", null);
+        destination.setUnprocessedProbability(1.0);
+        File file = folder.newFile("dead-letters");
+        DeadLetterFile deadLetters = new DeadLetterFile(file);
+        DynamoDBConsumer consumer = new DynamoDBConsumer(destination, TABLE,
+                1000000.0, Executors.newSingleThreadExecutor());
+        consumer.setRetryPolicy(new RetryPolicy(3, 1, 4, new Random()));
+        consumer.setDeadLetterFile(deadLetters);
+
+        List<Map<String, AttributeValue>> items = new ArrayList<Map<String, AttributeValue>>();
+        for (int i = 0; i < 10; i++) {
+            items.add(FakeDynamoDBTest.item(i));
+        }
+        consumer.writeItems(items, null);
+        consumer.shutdown(true);
+        deadLetters.close();
+
+        assertEquals(0, destination.getItemCount(TABLE));
+        assertEquals(4, destination.getBatchWriteCalls());
+        List<DeadLetterFile.Entry> entries = DeadLetterFile.read(file);
+        assertEquals(10, entries.size());
+        assertEquals("Unprocessed after 4 attempts", entries.get(0).getReason());
+    }
+}
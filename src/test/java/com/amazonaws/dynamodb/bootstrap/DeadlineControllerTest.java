@@ -0,0 +1,203 @@
+/*
+ * Copyright 2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.amazonaws.dynamodb.bootstrap;
+
+import static org.junit.Assert.*;
+
+import java.util.Calendar;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * Unit Tests for DeadlineController
+ *
+ */
+public class DeadlineControllerTest {
+
+    private static final long NOW = 1000000000000L;
+
+    /**
+     * A reader or writer whose rate limit is only recorded.
+     */
+    private static class FixedRate implements RateLimitAdjustable {
+        private double rate;
+
+        FixedRate(double rate) {
+            this.rate = rate;
+        }
+
+        @Override
+        public double getRateLimit() {
+            return rate;
+        }
+
+        @Override
+        public void setRateLimit(double rateLimit) {
+            rate = rateLimit;
+        }
+    }
+
+    /**
+     * Test that the rates are the lowest that finish in time, first from the
+     * estimate and then from the measured capacity per item.
+     */
+    @Test
+    public void testSetsLowestRates() {
+        FixedRate reader = new FixedRate(25);
+        FixedRate writer = new FixedRate(25);
+        OperationStats reads = new OperationStats();
+        OperationStats writes = new OperationStats();
+        // 100000 items in 1000 seconds
+        DeadlineController controller = new DeadlineController(NOW + 1000000,
+                100000);
+        controller.addSide("read", reader, reads, 10000, 0.5);
+        controller.addSide("write", writer, writes, 10000, 1);
+
+        controller.adjust(NOW);
+        assertEquals(100 * 0.5 * 1.2, reader.getRateLimit(), 0.01);
+        assertEquals(100 * 1.2, writer.getRateLimit(), 0.01);
+        assertTrue(controller.isOnSchedule());
+
+        // half the items written in half the time, at 2 units each
+        writes.record(1000000, 100000, 50000, false);
+        controller.adjust(NOW + 500000);
+        assertEquals(100 * 2 * 1.2, writer.getRateLimit(), 0.01);
+    }
+
+    /**
+     * Test that a ceiling too low is reported as soon as it is seen and the
+     * rate is held at the ceiling.
+     */
+    @Test
+    public void testLateAtCeiling() {
+        FixedRate writer = new FixedRate(25);
+        OperationStats writes = new OperationStats();
+        DeadlineController controller = new DeadlineController(NOW + 1000000,
+                100000);
+        controller.addSide("write", writer, writes, 50, 1);
+
+        controller.adjust(NOW);
+        assertEquals(50, writer.getRateLimit(), 0.01);
+        assertFalse(controller.isOnSchedule());
+
+        // the deadline moved within reach as fewer items were left
+        writes.record(1000000, 90000, 90000, false);
+        controller.adjust(NOW + 500000);
+        assertTrue(controller.isOnSchedule());
+        assertEquals(10000 / 500.0 * 1.2, writer.getRateLimit(), 0.01);
+
+        // past the deadline everything runs at the ceiling
+        controller.adjust(NOW + 2000000);
+        assertFalse(controller.isOnSchedule());
+        assertEquals(50, writer.getRateLimit(), 0.01);
+    }
+
+    /**
+     * Test that a table reporting no items, as fresh tables do for hours,
+     * runs at the ceilings instead of the lowest rate.
+     */
+    @Test
+    public void testUnknownItemCount() {
+        FixedRate reader = new FixedRate(25);
+        FixedRate writer = new FixedRate(25);
+        DeadlineController controller = new DeadlineController(NOW + 1000000,
+                0);
+        controller.addSide("read", reader, new OperationStats(), 500, 0.5);
+        controller.addSide("write", writer, new OperationStats(), 1000, 1);
+
+        controller.adjust(NOW);
+        assertEquals(500, reader.getRateLimit(), 0.01);
+        assertEquals(1000, writer.getRateLimit(), 0.01);
+        assertFalse(controller.isOnSchedule());
+    }
+
+    /**
+     * Test that a side that has moved more items than estimated runs at its
+     * ceiling while the other side is still paced.
+     */
+    @Test
+    public void testItemCountExceeded() {
+        FixedRate reader = new FixedRate(25);
+        FixedRate writer = new FixedRate(25);
+        OperationStats reads = new OperationStats();
+        OperationStats writes = new OperationStats();
+        DeadlineController controller = new DeadlineController(NOW + 1000000,
+                100000);
+        controller.addSide("read", reader, reads, 500, 0.5);
+        controller.addSide("write", writer, writes, 1000, 1);
+
+        reads.record(1000000, 60000, 120000, false);
+        writes.record(1000000, 50000, 50000, false);
+        controller.adjust(NOW + 500000);
+        assertEquals(500, reader.getRateLimit(), 0.01);
+        assertEquals(100 * 1.2, writer.getRateLimit(), 0.01);
+        assertFalse(controller.isOnSchedule());
+
+        writes.record(1000000, 80000, 80000, false);
+        controller.adjust(NOW + 600000);
+        assertEquals(1000, writer.getRateLimit(), 0.01);
+    }
+
+    /**
+     * Test that the write pool is sized for the rate set.
+     */
+    @Test
+    public void testResizesWritePool() {
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(64, 64, 1,
+                TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>());
+        FixedRate writer = new FixedRate(25);
+        OperationStats writes = new OperationStats();
+        DeadlineController controller = new DeadlineController(NOW + 1000000,
+                1000000);
+        controller.addSide("write", writer, writes, 10000, 25);
+        controller.setWritePool(pool, writer, 1, 64);
+        try {
+            // a call of 25 units per item taking 100 ms
+            writes.record(TimeUnit.MILLISECONDS.toNanos(100), 25, 1, false);
+            controller.adjust(NOW);
+            assertEquals(WritePoolAutoscaler.requiredThreads(
+                    writer.getRateLimit(), 25, 100, 1, 64),
+                    pool.getMaximumPoolSize());
+            assertTrue(pool.getMaximumPoolSize() < 64);
+            assertEquals(pool.getMaximumPoolSize(), pool.getCorePoolSize());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Test both deadline formats.
+     */
+    @Test
+    public void testParseDeadline() {
+        Calendar now = Calendar.getInstance();
+        now.set(2015, Calendar.MARCH, 1, 22, 30, 0);
+        now.set(Calendar.MILLISECOND, 0);
+
+        Calendar expected = (Calendar) now.clone();
+        expected.set(2015, Calendar.MARCH, 2, 6, 0, 0);
+        assertEquals(expected.getTimeInMillis(), DeadlineController
+                .parseDeadline("06:00", now.getTimeInMillis()));
+
+        expected.set(2015, Calendar.MARCH, 1, 23, 0, 0);
+        assertEquals(expected.getTimeInMillis(), DeadlineController
+                .parseDeadline("23:00", now.getTimeInMillis()));
+
+        expected.set(2015, Calendar.MARCH, 3, 6, 15, 0);
+        assertEquals(expected.getTimeInMillis(), DeadlineController
+                .parseDeadline("2015-03-03T06:15", now.getTimeInMillis()));
+
+        try {
+            DeadlineController.parseDeadline("6 am", now.getTimeInMillis());
+            fail("Expected an invalid deadline");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.amazonaws.dynamodb.bootstrap;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.junit.Test;
+
+import com.amazonaws.dynamodb.bootstrap.constants.BootstrapConstants;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.ResourceNotFoundException;
+import com.amazonaws.services.dynamodbv2.model.ScanResult;
+
+/**
+ * Unit Tests for the window of batches in flight of DynamoDBConsumer
+ *
+ */
+public class DynamoDBConsumerWindowTest {
+
+    /**
+     * Test that no more batches than the window are ever in flight and that
+     * every completed batch is accounted for.
+     */
+    @Test
+    public void testInFlightWindow() {
+        FakeDynamoDB destination = new FakeDynamoDB();
+        destination.createTable("destination", "id", null);
+        destination.setWriteLatency(new FakeDynamoDB.Latency(2, 5));
+        DynamoDBConsumer consumer = new DynamoDBConsumer(destination,
+                "destination", 1000000.0, Executors.newFixedThreadPool(8));
+        consumer.setMaxInFlightBatches(4);
+
+        int mostInFlight = 0;
+        for (int batch = 0; batch < 40; batch++) {
+            List<Map<String, AttributeValue>> items = new ArrayList<Map<String, AttributeValue>>();
+            for (int i = 0; i < BootstrapConstants.MAX_BATCH_SIZE_WRITE_ITEM; i++) {
+                items.add(FakeDynamoDBTest.item(batch * 100 + i));
+            }
+            consumer.writeItems(items, null);
+            mostInFlight = Math.max(mostInFlight,
+                    consumer.getInFlightBatches());
+        }
+        consumer.shutdown(true);
+
+        assertTrue(mostInFlight <= 4);
+        assertEquals(40, consumer.getCompletedBatches());
+        assertEquals(0, consumer.getFailedBatches());
+        assertEquals(0, consumer.getInFlightBatches());
+        assertNull(consumer.getFailure());
+        assertEquals(40 * BootstrapConstants.MAX_BATCH_SIZE_WRITE_ITEM,
+                destination.getItemCount("destination"));
+    }
+
+    /**
+     * Test that a write that fails stops the transfer and is thrown by pipe.
+     */
+    @Test
+    public void testFailureSurfacesToPipe() throws Exception {
+        FakeDynamoDB source = FakeDynamoDBTest.sourceWithItems(1000);
+        // the destination table does not exist
+        DynamoDBConsumer consumer = new DynamoDBConsumer(new FakeDynamoDB(),
+                "destination", 1000000.0, Executors.newFixedThreadPool(4));
+        consumer.setMaxInFlightBatches(8);
+        DynamoDBBootstrapWorker worker = new DynamoDBBootstrapWorker(source,
+                1000000.0, "source", Executors.newFixedThreadPool(4), 0, 1, 4,
+                false);
+        worker.setScanLimit(50);
+        try {
+            worker.pipe(consumer);
+            fail("Expected the failed write");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof ResourceNotFoundException);
+        }
+        assertTrue(consumer.getFailedBatches() > 0);
+        // the scan stopped early
+        assertTrue(source.getScanCalls() < 1000 / 50);
+    }
+
+    /**
+     * Test that a compact page whose batches cannot all be submitted goes back
+     * to the pool rather than holding references for the batches never run.
+     */
+    @Test
+    public void testFailedSubmitReleasesCompactPage() {
+        List<Map<String, AttributeValue>> items = new ArrayList<Map<String, AttributeValue>>();
+        for (int i = 0; i < 3 * BootstrapConstants.MAX_BATCH_SIZE_WRITE_ITEM; i++) {
+            items.add(FakeDynamoDBTest.item(i));
+        }
+        DirectBufferPool pool = new DirectBufferPool(1024 * 1024);
+        CompactItemPage page = CompactItemPage.encode(items, pool);
+        ExecutorService writers = Executors.newFixedThreadPool(2);
+        // a shut down pool rejects every batch
+        writers.shutdown();
+        DynamoDBConsumer consumer = new DynamoDBConsumer(new FakeDynamoDB(),
+                "destination", 1000000.0, writers);
+        try {
+            consumer.writeResult(new SegmentedScanResult(new ScanResult(), 0,
+                    page));
+            fail("Expected the rejected batch");
+        } catch (RejectedExecutionException e) {
+            // expected
+        }
+        assertTrue(pool.getPooledBytes() > 0);
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright 2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.amazonaws.dynamodb.bootstrap;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.amazonaws.util.BinaryUtils;
+
+/**
+ * Unit Tests for DynamoDBExportProvider
+ *
+ */
+public class DynamoDBExportProviderTest {
+
+    private static final String DESTINATION = "destination";
+    private static final String PREFIX = "backups/AWSDynamoDB/01234567890123-abcdefgh/";
+    private static final int FILES = 3;
+    private static final int ITEMS_PER_FILE = 250;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Writes an export the way DynamoDB lays it out, with a bad checksum for
+     * the file given by corrupt, if any.
+     */
+    private File writeExport(int corrupt) throws Exception {
+        File directory = folder.newFolder("export");
+        File data = new File(directory, "data");
+        assertTrue(data.mkdir());
+        StringBuilder files = new StringBuilder();
+        for (int f = 0; f < FILES; f++) {
+            File file = new File(data, "file" + f + ".json.gz");
+            Writer out = new OutputStreamWriter(new GZIPOutputStream(
+                    new FileOutputStream(file)), "UTF-8");
+            for (int i = 0; i < ITEMS_PER_FILE; i++) {
+                out.write("{\"Item\":{\"id\":{\"S\":\"item-" + f + "-" + i
+                        + "\"},\"n\":{\"N\":\"" + i
+                        + "\"},\"b\":{\"B\":\"AAEC\"},\"m\":{\"M\":{\"l\":"
+                        + "{\"L\":[{\"BOOL\":true},{\"NULL\":true}]}}}}}\n");
+            }
+            out.close();
+            String md5 = BinaryUtils.toBase64(MessageDigest.getInstance("MD5")
+                    .digest(Files.readAllBytes(file.toPath())));
+            if (f == corrupt) {
+                md5 = BinaryUtils.toBase64(new byte[16]);
+            }
+            files.append("{\"itemCount\":" + ITEMS_PER_FILE
+                    + ",\"md5Checksum\":\"" + md5 + "\",\"etag\":\"x\","
+                    + "\"dataFileS3Key\":\"" + PREFIX + "data/" + file.getName()
+                    + "\"}\n");
+        }
+        write(new File(directory, DynamoDBExportProvider.FILES_FILE_NAME),
+                files.toString());
+        write(new File(directory, DynamoDBExportProvider.SUMMARY_FILE_NAME),
+                "{\"version\":\"2020-06-30\",\"exportArn\":\"arn\","
+                        + "\"itemCount\":" + FILES * ITEMS_PER_FILE + ","
+                        + "\"outputFormat\":\"DYNAMODB_JSON\","
+                        + "\"manifestFilesS3Key\":\"" + PREFIX
+                        + "manifest-files.json\"}");
+        return directory;
+    }
+
+    private static void write(File file, String text) throws IOException {
+        OutputStream out = new FileOutputStream(file);
+        try {
+            out.write(text.getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+    }
+
+    private static FakeDynamoDB destination() {
+        FakeDynamoDB destination = new FakeDynamoDB();
+        destination.createTable(DESTINATION, "id", null);
+        return destination;
+    }
+
+    /**
+     * Test that every item of every data file is written.
+     */
+    @Test
+    public void testImport() throws Exception {
+        DynamoDBExportProvider provider = new DynamoDBExportProvider(
+                writeExport(-1), Executors.newFixedThreadPool(2));
+        assertEquals(FILES, provider.getDataFiles().size());
+        assertEquals(FILES * ITEMS_PER_FILE, provider.getItemCount());
+        provider.setPageSize(100);
+        FakeDynamoDB destination = destination();
+        DynamoDBConsumer consumer = new DynamoDBConsumer(destination,
+                DESTINATION, 1000000.0, Executors.newFixedThreadPool(4));
+        consumer.setMaxInFlightBatches(8);
+        provider.pipe(consumer);
+        assertEquals(FILES * ITEMS_PER_FILE,
+                destination.getItemCount(DESTINATION));
+    }
+
+    /**
+     * Test that a data file that does not match its checksum fails the
+     * import.
+     */
+    @Test
+    public void testChecksumMismatch() throws Exception {
+        DynamoDBExportProvider provider = new DynamoDBExportProvider(
+                writeExport(1), Executors.newFixedThreadPool(2));
+        try {
+            provider.pipe(new DynamoDBConsumer(destination(), DESTINATION,
+                    1000000.0, Executors.newFixedThreadPool(4)));
+            fail("Expected a checksum mismatch");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IOException);
+            assertTrue(e.getCause().getMessage().contains("file1"));
+        }
+    }
+
+    /**
+     * Test that data file keys are found below the export directory.
+     */
+    @Test
+    public void testResolve() {
+        File directory = new File("export");
+        assertEquals(new File(directory, "data/a.json.gz"),
+                DynamoDBExportProvider.resolve(directory, PREFIX, PREFIX
+                        + "data/a.json.gz"));
+        assertEquals(new File(new File(directory, "data"), "a.json.gz"),
+                DynamoDBExportProvider.resolve(directory, null,
+                        "elsewhere/data/a.json.gz"));
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.amazonaws.dynamodb.bootstrap;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.amazonaws.dynamodb.bootstrap.constants.BootstrapConstants;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+
+/**
+ * Unit Tests for DynamoDBJsonCodec
+ *
+ */
+public class DynamoDBJsonCodecTest {
+
+    /**
+     * An item that uses every attribute value type.
+     */
+    public static Map<String, AttributeValue> sampleItem() {
+        Map<String, AttributeValue> nested = new HashMap<String, AttributeValue>();
+        nested.put("inner", new AttributeValue().withN("-1.5"));
+
+        Map<String, AttributeValue> item = new HashMap<String, AttributeValue>();
+        item.put("s", new AttributeValue("string \"quoted\" value"));
+        item.put("n", new AttributeValue().withN("12345678901234567890"));
+        item.put("b", new AttributeValue().withB(ByteBuffer.wrap(new byte[] {
+                0, 1, 2, (byte) 255 })));
+        item.put("ss", new AttributeValue().withSS("a", "b"));
+        item.put("ns", new AttributeValue().withNS("1", "2"));
+        item.put("bs", new AttributeValue().withBS(
+                ByteBuffer.wrap(new byte[] { 3 }),
+                ByteBuffer.wrap(new byte[] { 4, 5 })));
+        item.put("m", new AttributeValue().withM(nested));
+        item.put("l", new AttributeValue().withL(new AttributeValue("x"),
+                new AttributeValue().withBOOL(false)));
+        item.put("null", new AttributeValue().withNULL(true));
+        item.put("bool", new AttributeValue().withBOOL(true));
+        return item;
+    }
+
+    /**
+     * Test that items written by the codec are read back unchanged.
+     */
+    @Test
+    public void testRoundTrip() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        JsonGenerator generator = DynamoDBJsonCodec.createGenerator(out);
+        DynamoDBJsonCodec.writeItem(generator, sampleItem());
+        DynamoDBJsonCodec.writeItem(generator, sampleItem());
+        generator.close();
+
+        JsonParser parser = DynamoDBJsonCodec.createParser(new ByteArrayInputStream(
+                out.toByteArray()));
+        assertEquals(sampleItem(), DynamoDBJsonCodec.readItem(parser));
+        assertEquals(sampleItem(), DynamoDBJsonCodec.readItem(parser));
+        assertNull(DynamoDBJsonCodec.readItem(parser));
+        parser.close();
+    }
+
+    /**
+     * Test that standard DynamoDB JSON is parsed into AttributeValues.
+     */
+    @Test
+    public void testReadDynamoDBJson() throws IOException {
+        String json = "{\"id\":{\"S\":\"abc\"},\"count\":{\"N\":\"3\"},"
+                + "\"tags\":{\"L\":[{\"S\":\"t\"},{\"NULL\":true}]}}";
+        JsonParser parser = DynamoDBJsonCodec.createParser(new ByteArrayInputStream(
+                json.getBytes(BootstrapConstants.UTF8)));
+        Map<String, AttributeValue> item = DynamoDBJsonCodec.readItem(parser);
+
+        assertEquals("abc", item.get("id").getS());
+        assertEquals("3", item.get("count").getN());
+        assertEquals(Arrays.asList(new AttributeValue("t"),
+                new AttributeValue().withNULL(true)), item.get("tags").getL());
+    }
+}
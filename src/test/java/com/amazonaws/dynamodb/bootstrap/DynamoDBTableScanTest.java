@@ -61,7 +61,8 @@ public class DynamoDBTableScanTest {
         ParallelScanExecutor mockScanExecutor = createMock(ParallelScanExecutor.class);
         ScanSegmentWorker mockSegmentWorker = createMock(ScanSegmentWorker.class);
 
-        expectNew(ScanSegmentWorker.class, mockClient, mockRateLimiter, req)
+        expectNew(ScanSegmentWorker.class, mockClient, mockRateLimiter, req,
+                scanner.getStats())
                 .andReturn(mockSegmentWorker);
         expectNew(ParallelScanExecutor.class, mockExec, 1).andReturn(
                 mockScanExecutor);
@@ -75,7 +76,8 @@ public class DynamoDBTableScanTest {
                 mockScanExecutor);
         for (int i = 0; i < segments2; i++) {
             expectNew(ScanSegmentWorker.class, mockClient, mockRateLimiter,
-                    scanner.copyScanRequest(testReq).withSegment(i)).andReturn(
+                    scanner.copyScanRequest(testReq).withSegment(i),
+                    scanner.getStats()).andReturn(
                     mockSegmentWorker);
             mockScanExecutor.addWorker(mockSegmentWorker, i);
         }
@@ -0,0 +1,491 @@
+/*
+ * Copyright 2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.amazonaws.dynamodb.bootstrap;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.dynamodb.bootstrap.constants.BootstrapConstants;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDBClient;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.BatchWriteItemRequest;
+import com.amazonaws.services.dynamodbv2.model.BatchWriteItemResult;
+import com.amazonaws.services.dynamodbv2.model.ConsumedCapacity;
+import com.amazonaws.services.dynamodbv2.model.DescribeTableRequest;
+import com.amazonaws.services.dynamodbv2.model.DescribeTableResult;
+import com.amazonaws.services.dynamodbv2.model.KeySchemaElement;
+import com.amazonaws.services.dynamodbv2.model.KeyType;
+import com.amazonaws.services.dynamodbv2.model.ProvisionedThroughputDescription;
+import com.amazonaws.services.dynamodbv2.model.ProvisionedThroughputExceededException;
+import com.amazonaws.services.dynamodbv2.model.ResourceNotFoundException;
+import com.amazonaws.services.dynamodbv2.model.ReturnConsumedCapacity;
+import com.amazonaws.services.dynamodbv2.model.ScanRequest;
+import com.amazonaws.services.dynamodbv2.model.ScanResult;
+import com.amazonaws.services.dynamodbv2.model.TableDescription;
+import com.amazonaws.services.dynamodbv2.model.WriteRequest;
+
+/**
+ * An in-memory stand-in for DynamoDB that serves the calls the transfer makes
+ * (describeTable, scan and batchWriteItem), for tests and benchmarks that
+ * should not need real tables. Segmented scans, page size limits and
+ * consumed capacity behave like DynamoDB's; on top of that calls can be given
+ * log-normally distributed latencies, a share of scans and batch writes can be
+ * throttled, and a share of written items can come back as UnprocessedItems.
+ * Batches with an item over 400 KB are rejected with a ValidationException.
+ * Tables can also be given a capacity per second beyond which calls are
+ * throttled.
+ */
+public class FakeDynamoDB extends AmazonDynamoDBClient {
+
+    /**
+     * Number of internal partitions a table's items are spread over; the
+     * segments of a scan each cover a contiguous range of them.
+     */
+    private static final int PARTITIONS = 4096;
+
+    /**
+     * z-score of the 99th percentile of a normal distribution.
+     */
+    private static final double Z_P99 = 2.326;
+
+    /**
+     * Largest item DynamoDB accepts; a batch with a larger one is rejected.
+     */
+    static final int MAX_ITEM_BYTES = 400 * 1024;
+
+    private final Map<String, FakeTable> tables = new ConcurrentHashMap<String, FakeTable>();
+    private final AtomicLong scanCalls = new AtomicLong();
+    private final AtomicLong batchWriteCalls = new AtomicLong();
+    private final AtomicLong throttledCalls = new AtomicLong();
+    private volatile Latency scanLatency = Latency.NONE;
+    private volatile Latency writeLatency = Latency.NONE;
+    private volatile double scanThrottleProbability;
+    private volatile double writeThrottleProbability;
+    private volatile double unprocessedProbability;
+
+    /**
+     * A log-normal call latency, given by its median and 99th percentile.
+     */
+    public static class Latency {
+        public static final Latency NONE = new Latency(0, 0);
+
+        private final double mu;
+        private final double sigma;
+        private final boolean none;
+
+        public Latency(double medianMillis, double p99Millis) {
+            this.none = medianMillis <= 0;
+            this.mu = none ? 0 : Math.log(medianMillis);
+            this.sigma = none ? 0 : Math.max(0,
+                    Math.log(Math.max(p99Millis, medianMillis) / medianMillis)
+                            / Z_P99);
+        }
+
+        long sampleNanos(Random random) {
+            if (none) {
+                return 0;
+            }
+            double millis = Math.exp(mu + sigma * random.nextGaussian());
+            return (long) (millis * 1000000);
+        }
+    }
+
+    /**
+     * One table: its key attributes, its items by partition and key, and the
+     * capacity it has consumed in the current second.
+     */
+    private static class FakeTable {
+        private final String name;
+        private final String hashKey;
+        private final String rangeKey;
+        private final List<ConcurrentSkipListMap<String, Map<String, AttributeValue>>> partitions;
+        private final AtomicLong itemCount = new AtomicLong();
+        private final AtomicLong sizeBytes = new AtomicLong();
+        private volatile double readCapacity;
+        private volatile double writeCapacity;
+        private long windowSecond;
+        private double windowRead;
+        private double windowWrite;
+
+        FakeTable(String name, String hashKey, String rangeKey) {
+            this.name = name;
+            this.hashKey = hashKey;
+            this.rangeKey = rangeKey;
+            this.partitions = new ArrayList<ConcurrentSkipListMap<String, Map<String, AttributeValue>>>(
+                    PARTITIONS);
+            for (int i = 0; i < PARTITIONS; i++) {
+                partitions.add(new ConcurrentSkipListMap<String, Map<String, AttributeValue>>());
+            }
+        }
+
+        String keyOf(Map<String, AttributeValue> item) {
+            String key = valueKey(item.get(hashKey));
+            return rangeKey == null ? key : key + "\u0000"
+                    + valueKey(item.get(rangeKey));
+        }
+
+        Map<String, AttributeValue> keyAttributes(Map<String, AttributeValue> item) {
+            Map<String, AttributeValue> key = new HashMap<String, AttributeValue>();
+            key.put(hashKey, item.get(hashKey));
+            if (rangeKey != null) {
+                key.put(rangeKey, item.get(rangeKey));
+            }
+            return key;
+        }
+
+        static int partitionOf(String key) {
+            // spread the hash so that similar keys land far apart
+            int h = key.hashCode() * 0x9E3779B9;
+            return (h >>> 1) % PARTITIONS;
+        }
+
+        void put(Map<String, AttributeValue> item) {
+            String key = keyOf(item);
+            Map<String, AttributeValue> old = partitions.get(partitionOf(key))
+                    .put(key, item);
+            sizeBytes.addAndGet(ItemSizeCalculator.calculateItemSizeInBytes(item));
+            if (old == null) {
+                itemCount.incrementAndGet();
+            } else {
+                sizeBytes.addAndGet(-ItemSizeCalculator
+                        .calculateItemSizeInBytes(old));
+            }
+        }
+
+        /**
+         * Adds the capacity to the current second, or returns false if that
+         * would go over the table's capacity.
+         */
+        synchronized boolean consume(double read, double write) {
+            final long second = System.nanoTime() / 1000000000L;
+            if (second != windowSecond) {
+                windowSecond = second;
+                windowRead = 0;
+                windowWrite = 0;
+            }
+            if ((readCapacity > 0 && windowRead > 0 && windowRead + read > readCapacity)
+                    || (writeCapacity > 0 && windowWrite > 0 && windowWrite
+                            + write > writeCapacity)) {
+                return false;
+            }
+            windowRead += read;
+            windowWrite += write;
+            return true;
+        }
+    }
+
+    /**
+     * Creates an empty table keyed by hashKey and, if not null, rangeKey.
+     */
+    public void createTable(String tableName, String hashKey, String rangeKey) {
+        tables.put(tableName, new FakeTable(tableName, hashKey, rangeKey));
+    }
+
+    /**
+     * Adds or replaces an item directly, without latency or capacity.
+     */
+    public void addItem(String tableName, Map<String, AttributeValue> item) {
+        table(tableName).put(item);
+    }
+
+    /**
+     * Returns the number of items in the table.
+     */
+    public long getItemCount(String tableName) {
+        return table(tableName).itemCount.get();
+    }
+
+    /**
+     * Returns the item with the same key as the given one, or null.
+     */
+    public Map<String, AttributeValue> findItem(String tableName,
+            Map<String, AttributeValue> key) {
+        FakeTable table = table(tableName);
+        String keyString = table.keyOf(key);
+        return table.partitions.get(FakeTable.partitionOf(keyString)).get(
+                keyString);
+    }
+
+    /**
+     * Limits the table to the given capacity units per second; calls beyond
+     * them are throttled. Zero means no limit, like an on-demand table.
+     */
+    public void setCapacity(String tableName, double readCapacity,
+            double writeCapacity) {
+        FakeTable table = table(tableName);
+        table.readCapacity = readCapacity;
+        table.writeCapacity = writeCapacity;
+    }
+
+    public void setScanLatency(Latency scanLatency) {
+        this.scanLatency = scanLatency;
+    }
+
+    public void setWriteLatency(Latency writeLatency) {
+        this.writeLatency = writeLatency;
+    }
+
+    /**
+     * Sets the share of scan calls that fail with a throttling error.
+     */
+    public void setScanThrottleProbability(double probability) {
+        this.scanThrottleProbability = probability;
+    }
+
+    /**
+     * Sets the share of batchWriteItem calls that fail with a throttling
+     * error.
+     */
+    public void setWriteThrottleProbability(double probability) {
+        this.writeThrottleProbability = probability;
+    }
+
+    /**
+     * Sets the share of written items returned as UnprocessedItems.
+     */
+    public void setUnprocessedProbability(double probability) {
+        this.unprocessedProbability = probability;
+    }
+
+    public long getScanCalls() {
+        return scanCalls.get();
+    }
+
+    public long getBatchWriteCalls() {
+        return batchWriteCalls.get();
+    }
+
+    public long getThrottledCalls() {
+        return throttledCalls.get();
+    }
+
+    @Override
+    public DescribeTableResult describeTable(String tableName) {
+        return describeTable(new DescribeTableRequest().withTableName(tableName));
+    }
+
+    private static List<KeySchemaElement> keySchema(FakeTable table) {
+        List<KeySchemaElement> keys = new ArrayList<KeySchemaElement>();
+        keys.add(new KeySchemaElement(table.hashKey, KeyType.HASH));
+        if (table.rangeKey != null) {
+            keys.add(new KeySchemaElement(table.rangeKey, KeyType.RANGE));
+        }
+        return keys;
+    }
+
+    @Override
+    public DescribeTableResult describeTable(DescribeTableRequest request) {
+        FakeTable table = table(request.getTableName());
+        return new DescribeTableResult().withTable(new TableDescription()
+                .withTableName(table.name)
+                .withItemCount(table.itemCount.get())
+                .withTableSizeBytes(table.sizeBytes.get())
+                .withKeySchema(keySchema(table))
+                .withProvisionedThroughput(new ProvisionedThroughputDescription()
+                        .withReadCapacityUnits((long) table.readCapacity)
+                        .withWriteCapacityUnits((long) table.writeCapacity)));
+    }
+
+    @Override
+    public ScanResult scan(ScanRequest request) {
+        scanCalls.incrementAndGet();
+        final Random random = random();
+        FakeTable table = table(request.getTableName());
+        sleep(scanLatency.sampleNanos(random));
+        if (random.nextDouble() < scanThrottleProbability) {
+            throw throttle();
+        }
+
+        final int totalSegments = request.getTotalSegments() == null ? 1
+                : request.getTotalSegments();
+        final int segment = request.getSegment() == null ? 0 : request
+                .getSegment();
+        final int first = (int) ((long) segment * PARTITIONS / totalSegments);
+        final int end = (int) ((long) (segment + 1) * PARTITIONS / totalSegments);
+        final int limit = request.getLimit() == null ? Integer.MAX_VALUE
+                : request.getLimit();
+
+        int partition = first;
+        String after = null;
+        if (request.getExclusiveStartKey() != null) {
+            after = table.keyOf(request.getExclusiveStartKey());
+            partition = FakeTable.partitionOf(after);
+        }
+        List<Map<String, AttributeValue>> items = new ArrayList<Map<String, AttributeValue>>();
+        long bytes = 0;
+        Map<String, AttributeValue> lastItem = null;
+        boolean more = false;
+        for (; partition < end && !more; partition++) {
+            ConcurrentSkipListMap<String, Map<String, AttributeValue>> map = table.partitions
+                    .get(partition);
+            Map<String, Map<String, AttributeValue>> rest = after == null ? map
+                    : map.tailMap(after, false);
+            after = null;
+            for (Map<String, AttributeValue> item : rest.values()) {
+                if (items.size() >= limit
+                        || bytes >= BootstrapConstants.MAX_SCAN_PAGE_BYTES) {
+                    more = true;
+                    break;
+                }
+                items.add(item);
+                bytes += ItemSizeCalculator.calculateItemSizeInBytes(item);
+                lastItem = item;
+            }
+        }
+        // a page that ends exactly at the end of the segment still has a key
+        more = more || (items.size() >= limit && lastItem != null);
+
+        final int unitSize = BootstrapConstants.STRONGLY_CONSISTENT_READ_ITEM_SIZE;
+        double capacity = Math.max(1, Math.ceil(bytes / (double) unitSize));
+        if (!Boolean.TRUE.equals(request.getConsistentRead())) {
+            capacity /= 2;
+        }
+        if (!table.consume(capacity, 0)) {
+            throw throttle();
+        }
+
+        ScanResult result = new ScanResult().withItems(items)
+                .withCount(items.size()).withScannedCount(items.size());
+        if (more) {
+            result.setLastEvaluatedKey(table.keyAttributes(lastItem));
+        }
+        if (request.getReturnConsumedCapacity() != null
+                && !ReturnConsumedCapacity.NONE.toString().equals(
+                        request.getReturnConsumedCapacity())) {
+            result.setConsumedCapacity(new ConsumedCapacity().withTableName(
+                    table.name).withCapacityUnits(capacity));
+        }
+        return result;
+    }
+
+    @Override
+    public BatchWriteItemResult batchWriteItem(BatchWriteItemRequest request) {
+        batchWriteCalls.incrementAndGet();
+        final Random random = random();
+        sleep(writeLatency.sampleNanos(random));
+        for (List<WriteRequest> writes : request.getRequestItems().values()) {
+            for (WriteRequest write : writes) {
+                if (ItemSizeCalculator.calculateItemSizeInBytes(write
+                        .getPutRequest().getItem()) > MAX_ITEM_BYTES) {
+                    // one invalid item fails the whole batch
+                    AmazonServiceException e = new AmazonServiceException(
+                            "Item size has exceeded the maximum allowed size");
+                    e.setErrorCode("ValidationException");
+                    e.setErrorType(AmazonServiceException.ErrorType.Client);
+                    e.setStatusCode(400);
+                    throw e;
+                }
+            }
+        }
+        if (random.nextDouble() < writeThrottleProbability) {
+            throw throttle();
+        }
+
+        Map<String, List<WriteRequest>> unprocessed = new HashMap<String, List<WriteRequest>>();
+        List<ConsumedCapacity> capacities = new ArrayList<ConsumedCapacity>();
+        for (Map.Entry<String, List<WriteRequest>> entry : request
+                .getRequestItems().entrySet()) {
+            FakeTable table = table(entry.getKey());
+            List<WriteRequest> written = new ArrayList<WriteRequest>();
+            List<WriteRequest> skipped = new ArrayList<WriteRequest>();
+            double capacity = 0;
+            for (WriteRequest write : entry.getValue()) {
+                if (random.nextDouble() < unprocessedProbability) {
+                    skipped.add(write);
+                    continue;
+                }
+                capacity += Math.max(1, Math.ceil(ItemSizeCalculator
+                        .calculateItemSizeInBytes(write.getPutRequest()
+                                .getItem())
+                        / (double) BootstrapConstants.WRITE_ITEM_SIZE));
+                written.add(write);
+            }
+            if (!written.isEmpty() && !table.consume(0, capacity)) {
+                if (skipped.isEmpty()) {
+                    throw throttle();
+                }
+                // DynamoDB only throws when nothing could be written
+                skipped.addAll(written);
+                written.clear();
+                capacity = 0;
+            }
+            for (WriteRequest write : written) {
+                table.put(write.getPutRequest().getItem());
+            }
+            if (!skipped.isEmpty()) {
+                unprocessed.put(entry.getKey(), skipped);
+            }
+            capacities.add(new ConsumedCapacity().withTableName(table.name)
+                    .withCapacityUnits(capacity));
+        }
+        return new BatchWriteItemResult().withUnprocessedItems(unprocessed)
+                .withConsumedCapacity(capacities);
+    }
+
+    private FakeTable table(String tableName) {
+        FakeTable table = tables.get(tableName);
+        if (table == null) {
+            throw new ResourceNotFoundException("Requested resource not found: Table: "
+                    + tableName + " not found");
+        }
+        return table;
+    }
+
+    private ProvisionedThroughputExceededException throttle() {
+        throttledCalls.incrementAndGet();
+        ProvisionedThroughputExceededException e = new ProvisionedThroughputExceededException(
+                "The level of configured provisioned throughput for the table was exceeded");
+        e.setErrorCode("ProvisionedThroughputExceededException");
+        e.setStatusCode(400);
+        return e;
+    }
+
+    private static Random random() {
+        return ThreadLocalRandom.current();
+    }
+
+    private static void sleep(long nanos) {
+        if (nanos <= 0) {
+            return;
+        }
+        try {
+            TimeUnit.NANOSECONDS.sleep(nanos);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static String valueKey(AttributeValue value) {
+        if (value == null) {
+            return "";
+        }
+        if (value.getS() != null) {
+            return "S" + value.getS();
+        }
+        if (value.getN() != null) {
+            return "N" + value.getN();
+        }
+        if (value.getB() != null) {
+            StringBuilder hex = new StringBuilder("B");
+            ByteBuffer b = value.getB().duplicate();
+            while (b.hasRemaining()) {
+                hex.append(String.format("%02x", b.get()));
+            }
+            return hex.toString();
+        }
+        return value.toString();
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.amazonaws.dynamodb.bootstrap;
+
+import static org.junit.Assert.*;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.Test;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.ScanRequest;
+import com.amazonaws.services.dynamodbv2.model.ScanResult;
+
+/**
+ * Unit Tests for FakeDynamoDB, and end to end runs of a transfer against it
+ *
+ */
+public class FakeDynamoDBTest {
+
+    private static final String SOURCE = "source";
+    private static final String DESTINATION = "destination";
+
+    static Map<String, AttributeValue> item(int id) {
+        Map<String, AttributeValue> item = new HashMap<String, AttributeValue>();
+        item.put("id", new AttributeValue().withS("item-" + id));
+        item.put("value", new AttributeValue().withN(Integer.toString(id)));
+        item.put("payload", new AttributeValue()
+                .withS("0123456789012345678901234567890123456789"));
+        return item;
+    }
+
+    static FakeDynamoDB sourceWithItems(int count) {
+        FakeDynamoDB db = new FakeDynamoDB();
+        db.createTable(SOURCE, "id", null);
+        for (int i = 0; i < count; i++) {
+            db.addItem(SOURCE, item(i));
+        }
+        return db;
+    }
+
+    /**
+     * Test that the segments of a scan together return every item once.
+     */
+    @Test
+    public void testSegmentedScanCoversTable() {
+        FakeDynamoDB db = sourceWithItems(5000);
+        Set<String> seen = new HashSet<String>();
+        final int segments = 7;
+        for (int segment = 0; segment < segments; segment++) {
+            ScanRequest request = new ScanRequest().withTableName(SOURCE)
+                    .withTotalSegments(segments).withSegment(segment)
+                    .withLimit(100).withReturnConsumedCapacity("TOTAL");
+            ScanResult result;
+            do {
+                result = db.scan(request);
+                assertTrue(result.getCount() <= 100);
+                assertTrue(result.getConsumedCapacity().getCapacityUnits() > 0);
+                for (Map<String, AttributeValue> item : result.getItems()) {
+                    assertTrue(seen.add(item.get("id").getS()));
+                }
+                request.setExclusiveStartKey(result.getLastEvaluatedKey());
+            } while (result.getLastEvaluatedKey() != null);
+        }
+        assertEquals(5000, seen.size());
+    }
+
+    /**
+     * Test that a transfer copies every item despite throttled scans, slow
+     * calls and unprocessed items.
+     */
+    @Test
+    public void testPipeWithThrottlingAndUnprocessedItems() throws Exception {
+        final int items = 5000;
+        FakeDynamoDB source = sourceWithItems(items);
+        source.setScanLatency(new FakeDynamoDB.Latency(1, 5));
+        source.setScanThrottleProbability(0.2);
+        FakeDynamoDB destination = new FakeDynamoDB();
+        destination.createTable(DESTINATION, "id", null);
+        destination.setWriteLatency(new FakeDynamoDB.Latency(1, 5));
+        destination.setUnprocessedProbability(0.02);
+
+        ExecutorService readers = Executors.newFixedThreadPool(8);
+        ExecutorService writers = Executors.newFixedThreadPool(16);
+        DynamoDBBootstrapWorker worker = new DynamoDBBootstrapWorker(source,
+                1000000.0, SOURCE, readers, 0, 1, 8, false);
+        // enough scan calls that some are certain to be throttled
+        worker.setScanLimit(100);
+        DynamoDBConsumer consumer = new DynamoDBConsumer(destination,
+                DESTINATION, 1000000.0, writers);
+        worker.pipe(consumer);
+
+        assertEquals(items, destination.getItemCount(DESTINATION));
+        assertEquals(item(123), destination.findItem(DESTINATION, item(123)));
+        assertTrue(source.getThrottledCalls() > 0);
+    }
+}
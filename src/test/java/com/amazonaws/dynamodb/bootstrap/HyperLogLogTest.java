@@ -0,0 +1,63 @@
+/*
+ * Copyright 2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.amazonaws.dynamodb.bootstrap;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+/**
+ * Unit Tests for HyperLogLog
+ *
+ */
+public class HyperLogLogTest {
+
+    private static final HashFunction HASH = Hashing.murmur3_128();
+
+    private static long hash(long value) {
+        return HASH.hashLong(value).asLong();
+    }
+
+    /**
+     * Test the estimate of small and large counts, with repeats.
+     */
+    @Test
+    public void testEstimate() {
+        for (int distinct : new int[] { 10, 1000, 200000 }) {
+            HyperLogLog hll = new HyperLogLog(14);
+            for (int i = 0; i < distinct; i++) {
+                hll.add(hash(i));
+                // repeats do not count
+                hll.add(hash(i));
+            }
+            assertEquals("distinct=" + distinct, distinct, hll.estimate(),
+                    Math.max(1, distinct * 4 * hll.getRelativeError()));
+        }
+    }
+
+    /**
+     * Test that merged sketches count values seen by both once.
+     */
+    @Test
+    public void testMerge() {
+        HyperLogLog a = new HyperLogLog(12);
+        HyperLogLog b = new HyperLogLog(12);
+        for (int i = 0; i < 60000; i++) {
+            a.add(hash(i));
+            b.add(hash(i + 30000));
+        }
+        a.merge(b);
+        assertEquals(90000, a.estimate(), 90000 * 4 * a.getRelativeError());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMergeDifferentPrecision() {
+        new HyperLogLog(12).merge(new HyperLogLog(14));
+    }
+}
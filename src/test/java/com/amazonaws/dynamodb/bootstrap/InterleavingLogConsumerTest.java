@@ -0,0 +1,173 @@
+/*
+ * Copyright 2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.amazonaws.dynamodb.bootstrap;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.junit.Test;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.BatchWriteItemRequest;
+import com.amazonaws.services.dynamodbv2.model.BatchWriteItemResult;
+import com.amazonaws.services.dynamodbv2.model.ScanResult;
+import com.amazonaws.services.dynamodbv2.model.WriteRequest;
+
+/**
+ * Unit Tests for InterleavingLogConsumer
+ *
+ */
+public class InterleavingLogConsumerTest {
+
+    private static final String TABLE = "destination";
+    private static final int KEYS = 40;
+    private static final int ITEMS_PER_KEY = 100;
+
+    /**
+     * A destination that counts the partition keys in every batch and leaves
+     * the items of one hot key unprocessed the first time they are written.
+     */
+    private static class KeyCountingDynamoDB extends FakeDynamoDB {
+        private final List<Integer> keysPerBatch = new ArrayList<Integer>();
+        private final Set<String> hotWrites = Collections
+                .synchronizedSet(new HashSet<String>());
+
+        @Override
+        public BatchWriteItemResult batchWriteItem(BatchWriteItemRequest request) {
+            Set<String> keys = new HashSet<String>();
+            List<WriteRequest> hot = new ArrayList<WriteRequest>();
+            List<WriteRequest> rest = new ArrayList<WriteRequest>();
+            for (WriteRequest write : request.getRequestItems().get(TABLE)) {
+                String key = write.getPutRequest().getItem().get("pk").getS();
+                keys.add(key);
+                if ("key-0".equals(key)
+                        && hotWrites.add(write.getPutRequest().getItem()
+                                .get("sk").getN())) {
+                    hot.add(write);
+                } else {
+                    rest.add(write);
+                }
+            }
+            synchronized (keysPerBatch) {
+                keysPerBatch.add(keys.size());
+            }
+            request.getRequestItems().put(TABLE, rest);
+            BatchWriteItemResult result = rest.isEmpty() ? new BatchWriteItemResult()
+                    .withUnprocessedItems(new HashMap<String, List<WriteRequest>>())
+                    : super.batchWriteItem(request);
+            if (!hot.isEmpty()) {
+                Map<String, List<WriteRequest>> unprocessed = new HashMap<String, List<WriteRequest>>();
+                unprocessed.put(TABLE, hot);
+                result.setUnprocessedItems(unprocessed);
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Returns pages the way a scan returns them: all items of a partition key
+     * together.
+     */
+    private static List<SegmentedScanResult> clusteredPages() {
+        List<SegmentedScanResult> pages = new ArrayList<SegmentedScanResult>();
+        List<Map<String, AttributeValue>> items = new ArrayList<Map<String, AttributeValue>>();
+        for (int k = 0; k < KEYS; k++) {
+            for (int i = 0; i < ITEMS_PER_KEY; i++) {
+                Map<String, AttributeValue> item = new HashMap<String, AttributeValue>();
+                item.put("pk", new AttributeValue().withS("key-" + k));
+                item.put("sk", new AttributeValue().withN(Integer.toString(i)));
+                items.add(item);
+                if (items.size() == 500) {
+                    pages.add(new SegmentedScanResult(new ScanResult()
+                            .withItems(items), 0));
+                    items = new ArrayList<Map<String, AttributeValue>>();
+                }
+            }
+        }
+        return pages;
+    }
+
+    /**
+     * Test that batches mix many partition keys, that throttled keys are
+     * held back and that every item is written.
+     */
+    @Test
+    public void testInterleavesPartitionKeys() {
+        KeyCountingDynamoDB destination = new KeyCountingDynamoDB();
+        destination.createTable(TABLE, "pk", "sk");
+        DynamoDBConsumer consumer = new DynamoDBConsumer(destination, TABLE,
+                1000000.0, Executors.newFixedThreadPool(8));
+        InterleavingLogConsumer interleaving = new InterleavingLogConsumer(
+                consumer, "pk", 256, 2000);
+        for (SegmentedScanResult page : clusteredPages()) {
+            interleaving.writeResult(page);
+        }
+        interleaving.shutdown(true);
+
+        assertEquals(KEYS * ITEMS_PER_KEY, destination.getItemCount(TABLE));
+        assertTrue(interleaving.getThrottledItems() > 0);
+        // written in scan order, a batch would hold one or two keys
+        int total = 0;
+        for (int keys : destination.keysPerBatch) {
+            total += keys;
+        }
+        assertTrue(total / (double) destination.keysPerBatch.size() > 10);
+    }
+
+    /**
+     * Test that items with the same partition key share a bucket.
+     */
+    @Test
+    public void testBucketOf() {
+        InterleavingLogConsumer interleaving = new InterleavingLogConsumer(
+                new DynamoDBConsumer(new FakeDynamoDB(), TABLE, 1.0,
+                        Executors.newSingleThreadExecutor()), "pk", 16, 100);
+        try {
+            Map<String, AttributeValue> a = new HashMap<String, AttributeValue>();
+            a.put("pk", new AttributeValue().withS("same"));
+            a.put("sk", new AttributeValue().withN("1"));
+            Map<String, AttributeValue> b = new HashMap<String, AttributeValue>();
+            b.put("pk", new AttributeValue().withS("same"));
+            b.put("sk", new AttributeValue().withN("2"));
+            assertEquals(interleaving.bucketOf(a), interleaving.bucketOf(b));
+            assertTrue(interleaving.bucketOf(a) < 16);
+        } finally {
+            interleaving.shutdown(false);
+        }
+    }
+
+    /**
+     * Test that an error of the dispatch thread that the consumer does not
+     * know about, such as a rejected batch, is still reported.
+     */
+    @Test
+    public void testDispatchFailure() {
+        FakeDynamoDB destination = new FakeDynamoDB();
+        destination.createTable(TABLE, "pk", "sk");
+        ExecutorService writers = Executors.newSingleThreadExecutor();
+        writers.shutdown();
+        InterleavingLogConsumer interleaving = new InterleavingLogConsumer(
+                new DynamoDBConsumer(destination, TABLE, 1000000.0, writers),
+                "pk", 16, 100);
+        for (SegmentedScanResult page : clusteredPages()) {
+            interleaving.writeResult(page);
+        }
+        interleaving.shutdown(true);
+        assertTrue(String.valueOf(interleaving.getFailure()),
+                interleaving.getFailure() instanceof RejectedExecutionException);
+        assertEquals(0, destination.getItemCount(TABLE));
+    }
+}
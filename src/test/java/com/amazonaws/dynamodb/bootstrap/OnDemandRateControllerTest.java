@@ -0,0 +1,99 @@
+/*
+ * Copyright 2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.amazonaws.dynamodb.bootstrap;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/**
+ * Unit Tests for OnDemandRateController
+ *
+ */
+public class OnDemandRateControllerTest {
+
+    private static final double DELTA = 0.0001;
+
+    /**
+     * A rate limit holder standing in for a worker or consumer.
+     */
+    private static class Target implements RateLimitAdjustable {
+        private double rate;
+
+        Target(double rate) {
+            this.rate = rate;
+        }
+
+        @Override
+        public double getRateLimit() {
+            return rate;
+        }
+
+        @Override
+        public void setRateLimit(double rateLimit) {
+            this.rate = rateLimit;
+        }
+    }
+
+    /**
+     * Test that the rate ramps up while the limit is used without throttling,
+     * and stops at the maximum rate.
+     */
+    @Test
+    public void testRampsUpToMaxRate() {
+        OperationStats stats = new OperationStats();
+        Target target = new Target(100.0);
+        OnDemandRateController controller = new OnDemandRateController(
+                "read", target, stats, 200.0);
+
+        stats.record(1000000L, 1e9, 10, false);
+        controller.adjust();
+        assertEquals(150.0, target.getRateLimit(), DELTA);
+
+        stats.record(1000000L, 1e9, 10, false);
+        controller.adjust();
+        assertEquals(200.0, target.getRateLimit(), DELTA);
+
+        stats.record(1000000L, 1e9, 10, false);
+        controller.adjust();
+        assertEquals(200.0, target.getRateLimit(), DELTA);
+    }
+
+    /**
+     * Test that throttling cuts the rate back.
+     */
+    @Test
+    public void testBacksOffWhenThrottled() {
+        OperationStats stats = new OperationStats();
+        Target target = new Target(100.0);
+        OnDemandRateController controller = new OnDemandRateController(
+                "write", target, stats, 1000.0);
+
+        stats.record(1000000L, 1e9, 10, false);
+        stats.record(1000000L, 0, 0, true);
+        controller.adjust();
+        assertEquals(70.0, target.getRateLimit(), DELTA);
+    }
+
+    /**
+     * Test that the rate is not raised when latency has gone up.
+     */
+    @Test
+    public void testHoldsWhenLatencyRises() {
+        OperationStats stats = new OperationStats();
+        Target target = new Target(100.0);
+        OnDemandRateController controller = new OnDemandRateController(
+                "read", target, stats, 1000.0);
+
+        stats.record(1000000L, 1e9, 10, false);
+        controller.adjust();
+        assertEquals(150.0, target.getRateLimit(), DELTA);
+
+        stats.record(5000000L, 1e9, 10, false);
+        controller.adjust();
+        assertEquals(150.0, target.getRateLimit(), DELTA);
+    }
+}
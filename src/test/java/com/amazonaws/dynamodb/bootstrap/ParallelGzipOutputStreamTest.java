@@ -0,0 +1,174 @@
+/*
+ * Copyright 2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.amazonaws.dynamodb.bootstrap;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Unit Tests for ParallelGzipOutputStream
+ *
+ */
+public class ParallelGzipOutputStreamTest {
+
+    private static final int BLOCK_SIZE = 4096;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final ExecutorService exec = Executors.newFixedThreadPool(4);
+
+    @After
+    public void shutdown() {
+        exec.shutdownNow();
+    }
+
+    /**
+     * Returns text-like bytes that compress, but not to nothing.
+     */
+    private static byte[] data(int length) {
+        Random random = new Random(42);
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) {
+            data[i] = (byte) ('a' + random.nextInt(8));
+        }
+        return data;
+    }
+
+    private File write(byte[] data, int maxPendingBlocks) throws IOException {
+        File file = folder.newFile();
+        ParallelGzipOutputStream out = new ParallelGzipOutputStream(
+                new FileOutputStream(file), exec, BLOCK_SIZE, maxPendingBlocks);
+        // mix single bytes and writes that span blocks
+        int off = 0;
+        while (off < data.length) {
+            if (off % 3 == 0) {
+                out.write(data[off++]);
+            } else {
+                final int len = Math.min(data.length - off, off % 7919);
+                out.write(data, off, len);
+                off += len;
+            }
+        }
+        out.close();
+        return file;
+    }
+
+    private static byte[] gunzip(InputStream compressed) throws IOException {
+        InputStream in = new GZIPInputStream(compressed);
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                out.write(buffer, 0, n);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Test that the blocks read back as one gzip stream, in order.
+     */
+    @Test
+    public void testRoundTrip() throws IOException {
+        byte[] data = data(10 * BLOCK_SIZE + 123);
+        for (int maxPendingBlocks : Arrays.asList(1, 3, 100)) {
+            File file = write(data, maxPendingBlocks);
+            assertTrue(file.length() < data.length);
+            assertArrayEquals(data, gunzip(new FileInputStream(file)));
+        }
+    }
+
+    /**
+     * Test that the index finds every block and that each block decompresses
+     * on its own.
+     */
+    @Test
+    public void testIndex() throws IOException {
+        byte[] data = data(5 * BLOCK_SIZE + 1);
+        File file = write(data, 2);
+        List<ParallelGzipOutputStream.Block> index = ParallelGzipOutputStream
+                .readIndex(file);
+        assertEquals(6, index.size());
+        long offset = 0;
+        int uncompressed = 0;
+        for (ParallelGzipOutputStream.Block block : index) {
+            assertEquals(offset, block.getOffset());
+            byte[] member = ParallelGzipOutputStream.readBlock(file, block);
+            byte[] expected = Arrays.copyOfRange(data, uncompressed,
+                    uncompressed + (int) block.getUncompressedLength());
+            assertArrayEquals(expected,
+                    gunzip(new ByteArrayInputStream(member)));
+            offset += block.getLength();
+            uncompressed += block.getUncompressedLength();
+        }
+        assertEquals(file.length(), offset);
+        assertEquals(data.length, uncompressed);
+        assertEquals(1, index.get(5).getUncompressedLength());
+    }
+
+    /**
+     * Test that a stream nothing was written to is a valid, empty gzip file,
+     * and that flushing ends a block.
+     */
+    @Test
+    public void testEmptyAndFlush() throws IOException {
+        File empty = write(new byte[0], 1);
+        assertEquals(0, gunzip(new FileInputStream(empty)).length);
+        assertEquals(1, ParallelGzipOutputStream.readIndex(empty).size());
+
+        File file = folder.newFile();
+        ParallelGzipOutputStream out = new ParallelGzipOutputStream(
+                new FileOutputStream(file), exec, BLOCK_SIZE, 4);
+        out.write(data(10));
+        out.flush();
+        out.write(data(10));
+        out.close();
+        assertEquals(2, out.getBlockCount());
+        assertEquals(2, ParallelGzipOutputStream.readIndex(file).size());
+        try {
+            out.write(1);
+            fail("Expected a closed stream");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    /**
+     * Test that a gzip file from another tool is not mistaken for an indexed
+     * one.
+     */
+    @Test(expected = IOException.class)
+    public void testIndexOfPlainGzip() throws IOException {
+        File file = folder.newFile();
+        GZIPOutputStream out = new GZIPOutputStream(new FileOutputStream(file));
+        out.write(data(100));
+        out.close();
+        ParallelGzipOutputStream.readIndex(file);
+    }
+}
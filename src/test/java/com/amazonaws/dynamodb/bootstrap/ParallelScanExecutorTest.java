@@ -0,0 +1,153 @@
+/*
+ * Copyright 2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.amazonaws.dynamodb.bootstrap;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDBClient;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.ScanRequest;
+import com.amazonaws.services.dynamodbv2.model.ScanResult;
+import com.google.common.util.concurrent.RateLimiter;
+
+/**
+ * Unit Tests for ParallelScanExecutor
+ *
+ */
+public class ParallelScanExecutorTest {
+
+    private static final int SEGMENTS = 8;
+    private static final int PAGES_PER_SEGMENT = 5;
+
+    private final ExecutorService readers = Executors.newFixedThreadPool(4);
+
+    /**
+     * A client whose every segment has PAGES_PER_SEGMENT pages of one item.
+     */
+    private static class PagedClient extends AmazonDynamoDBClient {
+        @Override
+        public ScanResult scan(ScanRequest request) {
+            int page = request.getExclusiveStartKey() == null ? 0 : Integer
+                    .parseInt(request.getExclusiveStartKey().get("page").getN()) + 1;
+            Map<String, AttributeValue> item = new HashMap<String, AttributeValue>();
+            item.put("segment", new AttributeValue().withN(Integer
+                    .toString(request.getSegment())));
+            ScanResult result = new ScanResult().withItems(
+                    Collections.singletonList(item)).withCount(1)
+                    .withScannedCount(1);
+            if (page + 1 < PAGES_PER_SEGMENT) {
+                result.addLastEvaluatedKeyEntry("page", new AttributeValue()
+                        .withN(Integer.toString(page)));
+            }
+            return result;
+        }
+    }
+
+    private void addWorkers(ParallelScanExecutor executor) {
+        AmazonDynamoDBClient client = new PagedClient();
+        RateLimiter rateLimiter = RateLimiter.create(1000000.0);
+        for (int segment = 0; segment < SEGMENTS; segment++) {
+            ScanRequest request = new ScanRequest().withTableName("table")
+                    .withTotalSegments(SEGMENTS).withSegment(segment)
+                    .withConsistentRead(false);
+            executor.addWorker(new ScanSegmentWorker(client, rateLimiter,
+                    request, new OperationStats()), segment);
+        }
+    }
+
+    @After
+    public void tearDown() {
+        readers.shutdownNow();
+    }
+
+    /**
+     * Test that several dispatcher threads can take pages at once and that
+     * every page is taken exactly once.
+     */
+    @Test
+    public void testSeveralDispatchers() throws Exception {
+        final ParallelScanExecutor executor = new ParallelScanExecutor(readers,
+                SEGMENTS);
+        addWorkers(executor);
+
+        ExecutorService dispatchers = Executors.newFixedThreadPool(3);
+        List<Future<Integer>> counts = new ArrayList<Future<Integer>>();
+        for (int i = 0; i < 3; i++) {
+            counts.add(dispatchers.submit(new Callable<Integer>() {
+                @Override
+                public Integer call() throws Exception {
+                    int pages = 0;
+                    while (!executor.finished()) {
+                        if (executor.grab(10, TimeUnit.MILLISECONDS) != null) {
+                            pages++;
+                        }
+                    }
+                    return pages;
+                }
+            }));
+        }
+        int total = 0;
+        for (Future<Integer> count : counts) {
+            total += count.get();
+        }
+        dispatchers.shutdown();
+        assertEquals(SEGMENTS * PAGES_PER_SEGMENT, total);
+    }
+
+    /**
+     * Test that reader threads hand every page to the consumer themselves.
+     */
+    @Test
+    public void testReaderDispatch() throws Exception {
+        final List<SegmentedScanResult> results = Collections
+                .synchronizedList(new ArrayList<SegmentedScanResult>());
+        ParallelScanExecutor executor = new ParallelScanExecutor(readers,
+                SEGMENTS);
+        executor.dispatchTo(new AbstractLogConsumer() {
+            @Override
+            public Future<Void> writeResult(SegmentedScanResult result) {
+                results.add(result);
+                return null;
+            }
+        });
+        addWorkers(executor);
+
+        executor.awaitFinished();
+        assertTrue(executor.finished());
+        assertEquals(SEGMENTS * PAGES_PER_SEGMENT, results.size());
+    }
+
+    /**
+     * Test that the scan is finished once the segments of this section are,
+     * even though the table has more segments.
+     */
+    @Test
+    public void testFinishedWithSection() throws Exception {
+        ParallelScanExecutor executor = new ParallelScanExecutor(readers,
+                SEGMENTS * 2);
+        addWorkers(executor);
+        int pages = 0;
+        while (!executor.finished()) {
+            executor.grab();
+            pages++;
+        }
+        assertEquals(SEGMENTS * PAGES_PER_SEGMENT, pages);
+    }
+}
@@ -0,0 +1,222 @@
+/*
+ * Copyright 2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.amazonaws.dynamodb.bootstrap;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.fasterxml.jackson.core.JsonParser;
+
+/**
+ * Unit Tests for PartitionedExportConsumer, ExportManifest and
+ * BucketImportProvider
+ *
+ */
+public class PartitionedExportTest {
+
+    private static final String SOURCE = "source";
+    private static final String DESTINATION = "destination";
+    private static final int KEYS = 50;
+    private static final int ITEMS_PER_KEY = 20;
+    private static final int BUCKETS = 8;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static FakeDynamoDB sourceWithKeys() {
+        FakeDynamoDB source = new FakeDynamoDB();
+        source.createTable(SOURCE, "pk", "sk");
+        for (int k = 0; k < KEYS; k++) {
+            for (int i = 0; i < ITEMS_PER_KEY; i++) {
+                Map<String, AttributeValue> item = new HashMap<String, AttributeValue>();
+                item.put("pk", new AttributeValue().withS("key-" + k));
+                item.put("sk", new AttributeValue().withN(Integer.toString(i)));
+                source.addItem(SOURCE, item);
+            }
+        }
+        return source;
+    }
+
+    private File export(FakeDynamoDB source) throws Exception {
+        File directory = new File(folder.getRoot(), "export");
+        PartitionedExportConsumer consumer = new PartitionedExportConsumer(
+                directory, SOURCE, "pk", BUCKETS,
+                Executors.newFixedThreadPool(4));
+        DynamoDBBootstrapWorker worker = new DynamoDBBootstrapWorker(source,
+                1000000.0, SOURCE, Executors.newFixedThreadPool(4), 0, 1, 4,
+                false);
+        worker.setScanLimit(64);
+        worker.pipe(consumer);
+        return directory;
+    }
+
+    /**
+     * Test that every item is exported once, all items of a partition key
+     * share a bucket and the manifest describes the bucket files.
+     */
+    @Test
+    public void testExport() throws Exception {
+        File directory = export(sourceWithKeys());
+        ExportManifest manifest = ExportManifest.read(directory);
+        assertEquals(SOURCE, manifest.getTableName());
+        assertEquals("pk", manifest.getPartitionKey());
+        assertEquals(BUCKETS, manifest.getBuckets().size());
+        assertEquals(KEYS * ITEMS_PER_KEY, manifest.getTotalItems());
+
+        Set<String> seenKeys = new HashSet<String>();
+        for (ExportManifest.Bucket bucket : manifest.getBuckets()) {
+            File file = new File(directory, bucket.getFileName());
+            assertEquals(bucket.getBytes(), file.length());
+            Set<String> keys = new HashSet<String>();
+            long items = 0;
+            InputStream in = new FileInputStream(file);
+            try {
+                JsonParser parser = DynamoDBJsonCodec.createParser(in);
+                Map<String, AttributeValue> item;
+                while ((item = DynamoDBJsonCodec.readItem(parser)) != null) {
+                    items++;
+                    assertEquals(bucket.getIndex(), ExportManifest.bucketOf(
+                            item.get("pk"), BUCKETS));
+                    keys.add(item.get("pk").getS());
+                }
+            } finally {
+                in.close();
+            }
+            assertEquals(bucket.getItems(), items);
+            for (String key : keys) {
+                assertTrue(seenKeys.add(key));
+            }
+        }
+        assertEquals(KEYS, seenKeys.size());
+    }
+
+    /**
+     * Test that importing the buckets in two parts writes every item.
+     */
+    @Test
+    public void testImportBucketsSeparately() throws Exception {
+        File directory = export(sourceWithKeys());
+        FakeDynamoDB destination = new FakeDynamoDB();
+        destination.createTable(DESTINATION, "pk", "sk");
+        for (String buckets : Arrays.asList("0-3", "4,5-7")) {
+            BucketImportProvider provider = new BucketImportProvider(
+                    directory, BucketImportProvider.parseBuckets(buckets),
+                    Executors.newFixedThreadPool(4));
+            provider.setPageSize(50);
+            DynamoDBConsumer consumer = new DynamoDBConsumer(destination,
+                    DESTINATION, 1000000.0, Executors.newFixedThreadPool(4));
+            consumer.setMaxInFlightBatches(16);
+            provider.pipe(consumer);
+        }
+        assertEquals(KEYS * ITEMS_PER_KEY, destination.getItemCount(DESTINATION));
+    }
+
+    /**
+     * Test that a gzip compressed export holds every item and imports like an
+     * uncompressed one.
+     */
+    @Test
+    public void testCompressedExport() throws Exception {
+        File directory = new File(folder.getRoot(), "compressed");
+        ExecutorService compression = Executors.newFixedThreadPool(2);
+        try {
+            PartitionedExportConsumer consumer = new PartitionedExportConsumer(
+                    directory, SOURCE, "pk", BUCKETS,
+                    Executors.newFixedThreadPool(4), compression, 2);
+            DynamoDBBootstrapWorker worker = new DynamoDBBootstrapWorker(
+                    sourceWithKeys(), 1000000.0, SOURCE,
+                    Executors.newFixedThreadPool(4), 0, 1, 4, false);
+            worker.setScanLimit(64);
+            worker.pipe(consumer);
+        } finally {
+            compression.shutdownNow();
+        }
+        ExportManifest manifest = ExportManifest.read(directory);
+        assertTrue(manifest.isCompressed());
+        assertEquals(KEYS * ITEMS_PER_KEY, manifest.getTotalItems());
+        for (ExportManifest.Bucket bucket : manifest.getBuckets()) {
+            assertTrue(bucket.getFileName().endsWith(".gz"));
+            File file = new File(directory, bucket.getFileName());
+            assertEquals(bucket.getBytes(), file.length());
+            assertFalse(ParallelGzipOutputStream.readIndex(file).isEmpty());
+        }
+
+        FakeDynamoDB destination = new FakeDynamoDB();
+        destination.createTable(DESTINATION, "pk", "sk");
+        new BucketImportProvider(directory, null,
+                Executors.newFixedThreadPool(4)).pipe(new DynamoDBConsumer(
+                destination, DESTINATION, 1000000.0,
+                Executors.newFixedThreadPool(4)));
+        assertEquals(KEYS * ITEMS_PER_KEY, destination.getItemCount(DESTINATION));
+    }
+
+    /**
+     * Test that an export that was stopped has no manifest and cannot be
+     * imported, and that a directory with an export is not overwritten.
+     */
+    @Test
+    public void testUnfinishedExport() throws Exception {
+        File directory = folder.newFolder("unfinished");
+        PartitionedExportConsumer consumer = new PartitionedExportConsumer(
+                directory, SOURCE, "pk", BUCKETS,
+                Executors.newSingleThreadExecutor());
+        consumer.shutdown(false);
+        assertFalse(new File(directory, ExportManifest.FILE_NAME).exists());
+        try {
+            new BucketImportProvider(directory, null,
+                    Executors.newSingleThreadExecutor());
+            fail("Expected a missing manifest");
+        } catch (IOException e) {
+            // expected
+        }
+
+        File finished = export(sourceWithKeys());
+        try {
+            new PartitionedExportConsumer(finished, SOURCE, "pk", BUCKETS,
+                    Executors.newSingleThreadExecutor());
+            fail("Expected an existing export");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    /**
+     * Test bucket lists and that bucket numbers do not depend on the value's
+     * object.
+     */
+    @Test
+    public void testBuckets() {
+        assertEquals(Arrays.asList(0, 1, 2, 5, 9, 10),
+                BucketImportProvider.parseBuckets("0-2, 5,9-10"));
+        try {
+            BucketImportProvider.parseBuckets("1-x");
+            fail("Expected an invalid range");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        assertEquals(ExportManifest.bucketOf(new AttributeValue("a"), 1024),
+                ExportManifest.bucketOf(new AttributeValue().withS("a"), 1024));
+        assertFalse(ExportManifest.bucketOf(new AttributeValue().withS("1"),
+                1 << 30) == ExportManifest.bucketOf(
+                new AttributeValue().withN("1"), 1 << 30));
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright 2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.amazonaws.dynamodb.bootstrap;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Measures end to end transfer throughput against FakeDynamoDB, without real
+ * tables or capacity. Not run as part of the tests; run it with
+ *
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=com.amazonaws.dynamodb.bootstrap.PipeBenchmark \
+ *     -Dexec.args="items segments readThreads writeThreads latencyMillis"
+ * </pre>
+ *
+ * All arguments are optional and default to 1000000 items, 32 segments, 32
+ * readers, 64 writers and no call latency.
+ */
+public class PipeBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        final int items = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        final int segments = args.length > 1 ? Integer.parseInt(args[1]) : 32;
+        final int readThreads = args.length > 2 ? Integer.parseInt(args[2]) : 32;
+        final int writeThreads = args.length > 3 ? Integer.parseInt(args[3]) : 64;
+        final double latencyMillis = args.length > 4 ? Double
+                .parseDouble(args[4]) : 0;
+
+        System.out.println("Loading " + items + " items...");
+        FakeDynamoDB source = FakeDynamoDBTest.sourceWithItems(items);
+        FakeDynamoDB destination = new FakeDynamoDB();
+        destination.createTable("destination", "id", null);
+        FakeDynamoDB.Latency latency = new FakeDynamoDB.Latency(latencyMillis,
+                latencyMillis * 3);
+        source.setScanLatency(latency);
+        destination.setWriteLatency(latency);
+
+        ExecutorService readers = Executors.newFixedThreadPool(readThreads);
+        ExecutorService writers = Executors.newFixedThreadPool(writeThreads);
+        DynamoDBBootstrapWorker worker = new DynamoDBBootstrapWorker(source,
+                Double.MAX_VALUE, "source", readers, 0, 1, segments, false);
+        DynamoDBConsumer consumer = new DynamoDBConsumer(destination,
+                "destination", Double.MAX_VALUE, writers);
+
+        final long start = System.nanoTime();
+        worker.pipe(consumer);
+        final double seconds = (System.nanoTime() - start) / 1e9;
+
+        System.out.println(String.format(
+                "Copied %d items in %.2f s: %.0f items/s, %d scans, %d batch writes",
+                destination.getItemCount("destination"), seconds, items
+                        / seconds, source.getScanCalls(), destination
+                        .getBatchWriteCalls()));
+    }
+}
@@ -0,0 +1,263 @@
+/*
+ * Copyright 2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.amazonaws.dynamodb.bootstrap;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDBClient;
+import com.amazonaws.services.dynamodbv2.model.ProvisionedThroughputExceededException;
+import com.amazonaws.services.dynamodbv2.model.ScanRequest;
+import com.amazonaws.services.dynamodbv2.model.ScanResult;
+import com.amazonaws.services.dynamodbv2.model.TableDescription;
+
+/**
+ * Unit Tests for RecordingDynamoDBClient, TrafficRecorder and
+ * ReplayDynamoDBClient
+ *
+ */
+public class ReplayDynamoDBClientTest {
+
+    private static final String SOURCE = "source";
+    private static final String DESTINATION = "destination";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Returns a source table whose scans are throttled at random.
+     */
+    private static FakeDynamoDB throttledSource(int items) {
+        FakeDynamoDB source = FakeDynamoDBTest.sourceWithItems(items);
+        source.setScanThrottleProbability(0.2);
+        return source;
+    }
+
+    /**
+     * Records a transfer from the source to a fake table with unprocessed
+     * items.
+     */
+    private List<TrafficRecorder.Call> recordTransfer(File trace,
+            FakeDynamoDB source) throws Exception {
+        final long items = source.getItemCount(SOURCE);
+        FakeDynamoDB destination = new FakeDynamoDB();
+        destination.createTable(DESTINATION, "id", null);
+        destination.setUnprocessedProbability(0.05);
+
+        TrafficRecorder recorder = new TrafficRecorder(trace);
+        try {
+            runTransfer(new RecordingDynamoDBClient(source, recorder,
+                    TrafficRecorder.ROLE_SOURCE), new RecordingDynamoDBClient(
+                    destination, recorder, TrafficRecorder.ROLE_DESTINATION));
+        } finally {
+            recorder.close();
+        }
+        assertEquals(items, destination.getItemCount(DESTINATION));
+        return TrafficRecorder.read(trace);
+    }
+
+    private static void runTransfer(AmazonDynamoDBClient source,
+            AmazonDynamoDBClient destination)
+            throws Exception {
+        runTransfer(source, SOURCE, destination, DESTINATION);
+    }
+
+    private static void runTransfer(AmazonDynamoDBClient source,
+            String sourceTable, AmazonDynamoDBClient destination,
+            String destinationTable) throws Exception {
+        ExecutorService readers = Executors.newFixedThreadPool(4);
+        ExecutorService writers = Executors.newFixedThreadPool(8);
+        source.describeTable(sourceTable);
+        DynamoDBBootstrapWorker worker = new DynamoDBBootstrapWorker(source,
+                1000000.0, sourceTable, readers, 0, 1, 4, false);
+        worker.setScanLimit(50);
+        DynamoDBConsumer consumer = new DynamoDBConsumer(destination,
+                destinationTable, 1000000.0, writers);
+        worker.pipe(consumer);
+    }
+
+    /**
+     * Test that every call of a transfer ends up in the trace.
+     */
+    @Test
+    public void testRecord() throws Exception {
+        FakeDynamoDB source = throttledSource(1000);
+        List<TrafficRecorder.Call> calls = recordTransfer(
+                folder.newFile("trace"), source);
+        long scannedItems = 0;
+        long writtenItems = 0;
+        long unprocessed = 0;
+        int throttled = 0;
+        int describes = 0;
+        for (TrafficRecorder.Call call : calls) {
+            switch (call.getOperation()) {
+            case TrafficRecorder.SCAN:
+                assertEquals(TrafficRecorder.ROLE_SOURCE, call.getRole());
+                scannedItems += call.getItems();
+                if (call.isError()) {
+                    assertEquals("ProvisionedThroughputExceededException",
+                            call.getErrorCode());
+                    throttled++;
+                } else {
+                    assertTrue(call.getConsumedCapacity() > 0);
+                    assertEquals(call.getItems() > 0,
+                            call.getPayloadBytes() > 0);
+                }
+                break;
+            case TrafficRecorder.BATCH_WRITE:
+                assertEquals(TrafficRecorder.ROLE_DESTINATION, call.getRole());
+                assertEquals(DESTINATION, call.getTableName());
+                writtenItems += call.getItems();
+                unprocessed += call.getUnprocessed();
+                break;
+            case TrafficRecorder.DESCRIBE_TABLE:
+                assertEquals(SOURCE, call.getTableName());
+                assertEquals("id", call.getKeyAttribute());
+                assertEquals(1000, call.getItems());
+                describes++;
+                break;
+            default:
+                fail("Unknown operation " + call.getOperation());
+            }
+        }
+        assertEquals(1000, scannedItems);
+        assertEquals(1000 + unprocessed, writtenItems);
+        assertEquals(source.getThrottledCalls(), throttled);
+        assertEquals(1, describes);
+    }
+
+    /**
+     * Test that replaying a trace through the transfer answers every call from
+     * the trace, with its throttling.
+     */
+    @Test
+    public void testReplay() throws Exception {
+        List<TrafficRecorder.Call> calls = recordTransfer(
+                folder.newFile("trace"), throttledSource(1000));
+        int scans = 0;
+        for (TrafficRecorder.Call call : calls) {
+            if (call.getOperation() == TrafficRecorder.SCAN) {
+                scans++;
+            }
+        }
+
+        ReplayDynamoDBClient replay = new ReplayDynamoDBClient(calls,
+                TrafficRecorder.ROLE_SOURCE, 10.0);
+        ReplayDynamoDBClient destination = new ReplayDynamoDBClient(calls,
+                TrafficRecorder.ROLE_DESTINATION, 10.0);
+        assertEquals("id", replay.describeTable(SOURCE).getTable()
+                .getKeySchema().get(0).getAttributeName());
+        assertEquals(1000L, (long) replay.describeTable(SOURCE).getTable()
+                .getItemCount());
+        runTransfer(replay, destination);
+        assertTrue(replay.getReplayedCalls() >= scans);
+        assertTrue(destination.getReplayedCalls() > 0);
+
+        // every recorded scan, throttled or not, was asked for again
+        final long unmatched = replay.getUnmatchedCalls();
+        for (int segment = 0; segment < 4; segment++) {
+            replay.scan(new ScanRequest().withTableName(SOURCE)
+                    .withTotalSegments(4).withSegment(segment));
+        }
+        assertEquals(unmatched + 4, replay.getUnmatchedCalls());
+    }
+
+    /**
+     * Test that a recorded throttle is thrown again.
+     */
+    @Test
+    public void testReplayThrottle() throws Exception {
+        File trace = folder.newFile("trace");
+        TrafficRecorder recorder = new TrafficRecorder(trace);
+        recorder.record(new TrafficRecorder.Call(TrafficRecorder.SCAN,
+                TrafficRecorder.ROLE_SOURCE, SOURCE, 0, 0, 1000, 0, 0, 0, 0, false, null,
+                "ProvisionedThroughputExceededException", 400));
+        recorder.record(new TrafficRecorder.Call(TrafficRecorder.SCAN,
+                TrafficRecorder.ROLE_SOURCE, SOURCE, 0, 1000, 1000, 3, 300, 0.5, 0, false, null, null, 0));
+        recorder.close();
+
+        ReplayDynamoDBClient replay = new ReplayDynamoDBClient(
+                TrafficRecorder.read(trace), TrafficRecorder.ROLE_SOURCE, 1.0);
+        ScanRequest request = new ScanRequest().withTableName(SOURCE)
+                .withTotalSegments(2).withSegment(0);
+        try {
+            replay.scan(request);
+            fail("Expected the recorded throttle");
+        } catch (ProvisionedThroughputExceededException e) {
+            assertEquals(400, e.getStatusCode());
+        }
+        ScanResult result = replay.scan(request);
+        assertEquals(3, result.getItems().size());
+        assertNull(result.getLastEvaluatedKey());
+        assertEquals(0.5, result.getConsumedCapacity().getCapacityUnits(),
+                0.0);
+        int bytes = ItemSizeCalculator.calculateScanResultSizeInBytes(result);
+        assertTrue(bytes >= 300 && bytes < 310);
+        assertEquals(0, replay.getUnmatchedCalls());
+        assertEquals(0, replay.scan(request).getItems().size());
+        assertEquals(1, replay.getUnmatchedCalls());
+    }
+
+    /**
+     * Test that a copy between tables of the same name, e.g. in two regions,
+     * replays each side from its own calls.
+     */
+    @Test
+    public void testReplaySameTableName() throws Exception {
+        FakeDynamoDB source = new FakeDynamoDB();
+        source.createTable(SOURCE, "id", null);
+        source.setCapacity(SOURCE, 500, 100);
+        for (int i = 0; i < 1000; i++) {
+            source.addItem(SOURCE, FakeDynamoDBTest.item(i));
+        }
+        FakeDynamoDB destination = new FakeDynamoDB();
+        destination.createTable(SOURCE, "id", null);
+        destination.setCapacity(SOURCE, 50, 2000);
+
+        File trace = folder.newFile("trace");
+        TrafficRecorder recorder = new TrafficRecorder(trace);
+        try {
+            AmazonDynamoDBClient recordingDestination = new RecordingDynamoDBClient(
+                    destination, recorder, TrafficRecorder.ROLE_DESTINATION);
+            runTransfer(new RecordingDynamoDBClient(source, recorder,
+                    TrafficRecorder.ROLE_SOURCE), SOURCE, recordingDestination,
+                    SOURCE);
+            // described after the copy, so the later description wins if
+            // the sides are mixed up
+            recordingDestination.describeTable(SOURCE);
+        } finally {
+            recorder.close();
+        }
+        List<TrafficRecorder.Call> calls = TrafficRecorder.read(trace);
+
+        ReplayDynamoDBClient sourceReplay = new ReplayDynamoDBClient(calls,
+                TrafficRecorder.ROLE_SOURCE, 100.0);
+        ReplayDynamoDBClient destinationReplay = new ReplayDynamoDBClient(
+                calls, TrafficRecorder.ROLE_DESTINATION, 100.0);
+        TableDescription sourceTable = sourceReplay.describeTable(SOURCE)
+                .getTable();
+        assertEquals(1000L, (long) sourceTable.getItemCount());
+        assertEquals(500L, (long) sourceTable.getProvisionedThroughput()
+                .getReadCapacityUnits());
+        TableDescription destinationTable = destinationReplay.describeTable(
+                SOURCE).getTable();
+        assertEquals(2000L, (long) destinationTable.getProvisionedThroughput()
+                .getWriteCapacityUnits());
+
+        runTransfer(sourceReplay, SOURCE, destinationReplay, SOURCE);
+        assertEquals(0, sourceReplay.getUnmatchedCalls());
+        assertEquals(0, destinationReplay.getUnmatchedCalls());
+        assertTrue(destinationReplay.getReplayedCalls() > 0);
+    }
+}
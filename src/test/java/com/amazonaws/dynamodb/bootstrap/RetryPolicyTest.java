@@ -0,0 +1,97 @@
+/*
+ * Copyright 2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.amazonaws.dynamodb.bootstrap;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.services.dynamodbv2.model.ProvisionedThroughputExceededException;
+
+/**
+ * Unit Tests for RetryPolicy
+ *
+ */
+public class RetryPolicyTest {
+
+    private static AmazonServiceException serviceError(String code,
+            int status, AmazonServiceException.ErrorType type) {
+        AmazonServiceException e = new AmazonServiceException(code);
+        e.setErrorCode(code);
+        e.setStatusCode(status);
+        e.setErrorType(type);
+        return e;
+    }
+
+    /**
+     * Test that throttling, server and connection errors are retried and
+     * errors in the request are not.
+     */
+    @Test
+    public void testRetryable() {
+        assertTrue(RetryPolicy
+                .isRetryable(new ProvisionedThroughputExceededException("")));
+        assertTrue(RetryPolicy.isRetryable(serviceError("ThrottlingException",
+                400, AmazonServiceException.ErrorType.Client)));
+        assertTrue(RetryPolicy.isRetryable(serviceError(
+                "InternalServerError", 500,
+                AmazonServiceException.ErrorType.Service)));
+        assertTrue(RetryPolicy.isRetryable(new AmazonClientException(
+                "Unable to execute HTTP request: Read timed out")));
+        assertFalse(RetryPolicy.isRetryable(serviceError(
+                "ValidationException", 400,
+                AmazonServiceException.ErrorType.Client)));
+        assertFalse(RetryPolicy.isRetryable(serviceError(
+                "ResourceNotFoundException", 400,
+                AmazonServiceException.ErrorType.Client)));
+        assertFalse(RetryPolicy.isRetryable(new IllegalStateException()));
+    }
+
+    /**
+     * Test that retries stop after the limit.
+     */
+    @Test
+    public void testLimit() {
+        RetryPolicy policy = new RetryPolicy(2);
+        RuntimeException throttle = new ProvisionedThroughputExceededException(
+                "");
+        assertTrue(policy.shouldRetry(throttle, 0));
+        assertTrue(policy.shouldRetry(throttle, 1));
+        assertFalse(policy.shouldRetry(throttle, 2));
+        assertFalse(new RetryPolicy(0).canRetry(0));
+    }
+
+    /**
+     * Test that the backoff doubles up to the cap, jittered between half and
+     * all of it.
+     */
+    @Test
+    public void testBackoff() {
+        RetryPolicy policy = new RetryPolicy(100, 100, 1000, new Random(7));
+        long longest = 0;
+        for (int retries = 0; retries < 100; retries++) {
+            final long backoff = Math.min(1000, 100L << Math.min(retries, 30));
+            final long millis = policy.backoffMillis(retries);
+            assertTrue(millis >= backoff / 2 && millis <= backoff);
+            longest = Math.max(longest, millis);
+        }
+        assertTrue(longest > 500);
+
+        // jitter spreads the retries of threads throttled together
+        long min = Long.MAX_VALUE;
+        long max = 0;
+        for (int i = 0; i < 100; i++) {
+            final long millis = policy.backoffMillis(5);
+            min = Math.min(min, millis);
+            max = Math.max(max, millis);
+        }
+        assertTrue(max - min > 100);
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.amazonaws.dynamodb.bootstrap;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.ScanResult;
+
+/**
+ * Unit Tests for RingBuffer and the ring buffer mode of BlockingQueueConsumer
+ *
+ */
+public class RingBufferTest {
+
+    /**
+     * Test that elements come out in order and drainTo takes what is there.
+     */
+    @Test
+    public void testPutPollAndDrain() throws Exception {
+        RingBuffer<Integer> ring = new RingBuffer<Integer>(5, 1000);
+        assertNull(ring.poll());
+        for (int i = 0; i < 8; i++) {
+            ring.put(i, 10);
+        }
+        assertEquals(8, ring.size());
+        assertEquals(80, ring.getUsedBytes());
+        assertEquals(Integer.valueOf(0), ring.poll());
+
+        List<Integer> drained = new ArrayList<Integer>();
+        assertEquals(5, ring.drainTo(drained, 5));
+        assertEquals(5, drained.get(4).intValue());
+        assertEquals(2, ring.drainTo(drained, 10));
+        assertEquals(0, ring.size());
+        assertEquals(0, ring.getUsedBytes());
+    }
+
+    /**
+     * Test that every element reaches exactly one of several consumers while
+     * the producer is held back by the byte capacity.
+     */
+    @Test
+    public void testManyConsumers() throws Exception {
+        final RingBuffer<Integer> ring = new RingBuffer<Integer>(16, 50);
+        final int elements = 100000;
+        final int consumers = 4;
+        ExecutorService pool = Executors.newFixedThreadPool(consumers);
+        List<Future<Long>> sums = new ArrayList<Future<Long>>();
+        for (int c = 0; c < consumers; c++) {
+            sums.add(pool.submit(new Callable<Long>() {
+                @Override
+                public Long call() throws Exception {
+                    long sum = 0;
+                    while (true) {
+                        int element = ring.take();
+                        if (element < 0) {
+                            return sum;
+                        }
+                        assertTrue(ring.getUsedBytes() <= 50);
+                        sum += element;
+                    }
+                }
+            }));
+        }
+        for (int i = 1; i <= elements; i++) {
+            ring.put(i, 10);
+        }
+        for (int c = 0; c < consumers; c++) {
+            ring.put(-1, 0);
+        }
+        long total = 0;
+        for (Future<Long> sum : sums) {
+            total += sum.get();
+        }
+        pool.shutdown();
+        assertEquals((long) elements * (elements + 1) / 2, total);
+    }
+
+    /**
+     * Test that a consumer in ring buffer mode splits a page into slices and
+     * ends with the end of scan slice.
+     */
+    @Test
+    public void testConsumerRingMode() throws Exception {
+        List<Map<String, AttributeValue>> items = new ArrayList<Map<String, AttributeValue>>();
+        for (int i = 0; i < 100; i++) {
+            Map<String, AttributeValue> item = new HashMap<String, AttributeValue>();
+            item.put("id", new AttributeValue().withN(Integer.toString(i)));
+            items.add(item);
+        }
+        BlockingQueueConsumer consumer = new BlockingQueueConsumer(100000, 64);
+        assertNull(consumer.getQueue());
+        RingBuffer<DynamoDBItemSlice> ring = consumer.getRingBuffer();
+
+        consumer.writeResult(new SegmentedScanResult(new ScanResult()
+                .withItems(items), 0));
+        consumer.shutdown(true);
+
+        List<DynamoDBItemSlice> slices = new ArrayList<DynamoDBItemSlice>();
+        ring.drainTo(slices, Integer.MAX_VALUE);
+        assertEquals(2, slices.size());
+        assertEquals(items, slices.get(0).getEntries());
+
+        DynamoDBItemSlice poisonPill = slices.get(1);
+        assertNull(poisonPill.getEntries());
+        assertEquals(-1, poisonPill.getSize());
+    }
+}
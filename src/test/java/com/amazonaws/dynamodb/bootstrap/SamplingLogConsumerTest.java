@@ -0,0 +1,166 @@
+/*
+ * Copyright 2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.amazonaws.dynamodb.bootstrap;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.ScanResult;
+
+/**
+ * Unit Tests for SamplingLogConsumer
+ *
+ */
+public class SamplingLogConsumerTest {
+
+    /**
+     * Collects the pages written to it.
+     */
+    private static class CollectingConsumer extends AbstractLogConsumer {
+        private final List<Map<String, AttributeValue>> items = Collections
+                .synchronizedList(new ArrayList<Map<String, AttributeValue>>());
+        private final Set<Integer> segments = Collections
+                .synchronizedSet(new HashSet<Integer>());
+
+        @Override
+        public Future<Void> writeResult(SegmentedScanResult result) {
+            items.addAll(result.getScanResult().getItems());
+            segments.add(result.getSegment());
+            return null;
+        }
+
+        @Override
+        public void shutdown(boolean awaitTermination) {
+        }
+    }
+
+    private static SegmentedScanResult page(int segment, int items) {
+        List<Map<String, AttributeValue>> page = new ArrayList<Map<String, AttributeValue>>();
+        for (int i = 0; i < items; i++) {
+            Map<String, AttributeValue> item = new HashMap<String, AttributeValue>();
+            item.put("id", new AttributeValue().withS(segment + "-" + i));
+            page.add(item);
+        }
+        return new SegmentedScanResult(new ScanResult().withItems(page),
+                segment);
+    }
+
+    /**
+     * Test that the chosen segments are distinct, in order and repeatable.
+     */
+    @Test
+    public void testSampleSegments() {
+        int[] sample = SamplingLogConsumer.sampleSegments(1000, 50,
+                new Random(7));
+        assertEquals(50, sample.length);
+        for (int i = 1; i < sample.length; i++) {
+            assertTrue(sample[i - 1] < sample[i]);
+        }
+        assertTrue(sample[0] >= 0 && sample[49] < 1000);
+        assertArrayEquals(sample, SamplingLogConsumer.sampleSegments(1000, 50,
+                new Random(7)));
+        assertEquals(1, SamplingLogConsumer.sampleSegments(10, 0,
+                new Random()).length);
+        assertEquals(10, SamplingLogConsumer.sampleSegments(10, 20,
+                new Random()).length);
+    }
+
+    /**
+     * Test the estimates on known segment counts.
+     */
+    @Test
+    public void testEstimate() {
+        CollectingConsumer collector = new CollectingConsumer();
+        SamplingLogConsumer sampling = new SamplingLogConsumer(collector, 100,
+                new int[] { 3, 40, 77, 90 }, 1.0, 1);
+        sampling.writeResult(page(3, 8));
+        sampling.writeResult(page(40, 10));
+        sampling.writeResult(page(40, 2));
+        sampling.writeResult(page(77, 12));
+        sampling.writeResult(page(90, 8));
+        assertEquals(40, sampling.getScannedItems());
+        assertEquals(40, sampling.getKeptItems());
+        assertEquals(40, collector.items.size());
+        // mean 10 per segment, sample variance 16/3
+        assertEquals(1000.0, sampling.estimateItems().getTotal(), 1e-9);
+        assertEquals(100 * Math.sqrt(0.96 * 16 / 3.0 / 4), sampling
+                .estimateItems().getStandardError(), 1e-9);
+        assertEquals(0.04, sampling.getSampleFraction(), 1e-12);
+    }
+
+    /**
+     * Test a sampled scan of a table: only the chosen segments are read,
+     * about the item rate of their items are kept, and the estimated item
+     * count is close to the real one.
+     */
+    @Test
+    public void testSampledScan() throws Exception {
+        final int totalSegments = 200;
+        final int items = 20000;
+        FakeDynamoDB source = FakeDynamoDBTest.sourceWithItems(items);
+        int[] segments = SamplingLogConsumer.sampleSegments(totalSegments, 40,
+                new Random(3));
+        DynamoDBBootstrapWorker worker = new DynamoDBBootstrapWorker(source,
+                1000000.0, "source", Executors.newFixedThreadPool(4), 0, 1,
+                totalSegments, false);
+        worker.setSegmentSample(segments);
+        CollectingConsumer collector = new CollectingConsumer();
+        SamplingLogConsumer sampling = new SamplingLogConsumer(collector,
+                totalSegments, segments, 0.5, 11);
+        worker.pipe(sampling);
+
+        Set<Integer> expected = new HashSet<Integer>();
+        for (int segment : segments) {
+            expected.add(segment);
+        }
+        assertEquals(expected, collector.segments);
+        final long scanned = sampling.getScannedItems();
+        assertTrue(scanned > 0 && scanned < items / 2);
+        assertEquals(collector.items.size(), sampling.getKeptItems());
+        assertEquals(0.5, sampling.getKeptItems() / (double) scanned, 0.05);
+        SamplingLogConsumer.Estimate estimate = sampling.estimateItems();
+        assertEquals(items, estimate.getTotal(),
+                4 * estimate.getStandardError() + 1);
+        assertTrue(sampling.estimateBytes().getTotal() > 0);
+        assertTrue(sampling.report().contains("40 of 200 segments"));
+    }
+
+    /**
+     * Test that the same seed keeps the same items.
+     */
+    @Test
+    public void testRepeatable() {
+        List<Set<String>> kept = new ArrayList<Set<String>>();
+        for (int run = 0; run < 2; run++) {
+            CollectingConsumer collector = new CollectingConsumer();
+            SamplingLogConsumer sampling = new SamplingLogConsumer(collector,
+                    10, new int[] { 1, 2 }, 0.3, 99);
+            for (int segment : Arrays.asList(1, 2, 1)) {
+                sampling.writeResult(page(segment, 100));
+            }
+            Set<String> ids = new HashSet<String>();
+            for (Map<String, AttributeValue> item : collector.items) {
+                ids.add(item.get("id").getS());
+            }
+            kept.add(ids);
+        }
+        assertEquals(kept.get(0), kept.get(1));
+    }
+}
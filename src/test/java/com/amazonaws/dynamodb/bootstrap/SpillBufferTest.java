@@ -0,0 +1,132 @@
+/*
+ * Copyright 2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.amazonaws.dynamodb.bootstrap;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.ScanResult;
+
+/**
+ * Unit Tests for SpillBuffer and SpillingLogConsumer
+ *
+ */
+public class SpillBufferTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static List<Map<String, AttributeValue>> page(int first, int count) {
+        List<Map<String, AttributeValue>> items = new ArrayList<Map<String, AttributeValue>>();
+        for (int i = first; i < first + count; i++) {
+            Map<String, AttributeValue> item = new HashMap<String, AttributeValue>();
+            item.put("id", new AttributeValue().withN(Integer.toString(i)));
+            item.put("data", new AttributeValue().withS("some data to pad the item"));
+            items.add(item);
+        }
+        return items;
+    }
+
+    /**
+     * Test that pages come back in order across several segment files and
+     * that drained segment files are deleted.
+     */
+    @Test
+    public void testAppendAndPoll() throws Exception {
+        File directory = folder.newFolder("spill");
+        SpillBuffer spill = new SpillBuffer(directory, 1024);
+        for (int i = 0; i < 10; i++) {
+            spill.append(page(i * 20, 20), i);
+        }
+        assertEquals(10, spill.getSpilledPages());
+        assertTrue(directory.list().length > 1);
+
+        for (int i = 0; i < 10; i++) {
+            SegmentedScanResult result = spill.poll();
+            assertEquals(i, result.getSegment());
+            assertEquals(page(i * 20, 20), result.getScanResult().getItems());
+        }
+        assertNull(spill.poll());
+        assertTrue(spill.isEmpty());
+        assertEquals(0, spill.getSpilledBytes());
+        assertEquals(1, directory.list().length);
+
+        spill.close();
+        assertEquals(0, directory.list().length);
+    }
+
+    /**
+     * Test that pages are spilled while the consumer is behind, that they are
+     * never handed to it on the scan thread, and that all reach it by the time
+     * the consumer is shut down.
+     */
+    @Test
+    public void testSpillingConsumerDeliversEveryPage() throws Exception {
+        final ExecutorService writers = Executors.newSingleThreadExecutor();
+        final List<Integer> written = new ArrayList<Integer>();
+        final Thread scan = Thread.currentThread();
+        final AtomicBoolean forwardedOnScan = new AtomicBoolean();
+        final FutureTask<Void> gate = new FutureTask<Void>(new Runnable() {
+            @Override
+            public void run() {
+            }
+        }, null);
+        AbstractLogConsumer slow = new AbstractLogConsumer() {
+            @Override
+            public Future<Void> writeResult(final SegmentedScanResult result) {
+                if (Thread.currentThread() == scan) {
+                    forwardedOnScan.set(true);
+                }
+                return writers.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        gate.get();
+                        synchronized (written) {
+                            written.add(result.getSegment());
+                        }
+                        return null;
+                    }
+                });
+            }
+        };
+        slow.threadPool = writers;
+
+        SpillingLogConsumer consumer = new SpillingLogConsumer(slow,
+                new SpillBuffer(folder.newFolder("spill"), 4096), 2);
+        for (int i = 0; i < 20; i++) {
+            consumer.writeResult(new SegmentedScanResult(new ScanResult()
+                    .withItems(page(i, 1)), i));
+        }
+        // the writers are blocked, so all but two pages were spilled
+        assertEquals(18, consumer.getSpillBuffer().getSpilledPages());
+
+        gate.run();
+        consumer.shutdown(true);
+        assertTrue(writers.awaitTermination(0, TimeUnit.SECONDS));
+        assertFalse(forwardedOnScan.get());
+        assertEquals(20, written.size());
+        for (int i = 0; i < 20; i++) {
+            assertTrue(written.contains(i));
+        }
+    }
+}
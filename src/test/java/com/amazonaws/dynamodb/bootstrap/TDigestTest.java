@@ -0,0 +1,85 @@
+/*
+ * Copyright 2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.amazonaws.dynamodb.bootstrap;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Unit Tests for TDigest
+ *
+ */
+public class TDigestTest {
+
+    /**
+     * Test the quantiles of skewed values against the exact ones.
+     */
+    @Test
+    public void testQuantiles() {
+        Random random = new Random(42);
+        TDigest digest = new TDigest(100);
+        double[] values = new double[100000];
+        for (int i = 0; i < values.length; i++) {
+            // item sizes are roughly log-normal
+            values[i] = Math.exp(6 + random.nextGaussian());
+            digest.add(values[i]);
+        }
+        Arrays.sort(values);
+        for (double q : new double[] { 0.01, 0.5, 0.9, 0.99, 0.999 }) {
+            final double exact = values[(int) (q * values.length)];
+            assertEquals("q=" + q, exact, digest.quantile(q), exact * 0.03);
+        }
+        assertEquals(values[0], digest.getMin(), 0);
+        assertEquals(values[values.length - 1], digest.getMax(), 0);
+        assertEquals(values[0], digest.quantile(0), 0);
+        assertEquals(values[values.length - 1], digest.quantile(1), 0);
+        assertEquals(values.length, digest.getCount(), 0);
+        assertTrue(digest.getCentroidCount() <= 2 * 100 + 10);
+    }
+
+    /**
+     * Test that digests of parts merge into one close to the digest of the
+     * whole.
+     */
+    @Test
+    public void testMerge() {
+        TDigest whole = new TDigest(100);
+        TDigest[] parts = new TDigest[8];
+        for (int i = 0; i < parts.length; i++) {
+            parts[i] = new TDigest(100);
+        }
+        for (int i = 0; i < 80000; i++) {
+            whole.add(i);
+            parts[i % parts.length].add(i);
+        }
+        TDigest merged = new TDigest(100);
+        for (TDigest part : parts) {
+            merged.merge(part);
+        }
+        assertEquals(whole.getCount(), merged.getCount(), 0);
+        assertEquals(0, merged.getMin(), 0);
+        assertEquals(79999, merged.getMax(), 0);
+        for (double q : new double[] { 0.1, 0.5, 0.9, 0.99 }) {
+            assertEquals(q * 80000, merged.quantile(q), 80000 * 0.01);
+        }
+    }
+
+    /**
+     * Test a digest of nothing and of one value.
+     */
+    @Test
+    public void testSmall() {
+        TDigest digest = new TDigest(100);
+        assertTrue(Double.isNaN(digest.quantile(0.5)));
+        digest.add(7);
+        assertEquals(7, digest.quantile(0.5), 0);
+        assertEquals(7, digest.getMean(), 0);
+    }
+}
@@ -0,0 +1,178 @@
+/*
+ * Copyright 2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.amazonaws.dynamodb.bootstrap;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.ScanResult;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+/**
+ * Unit Tests for TableProfile and ProfilingLogConsumer
+ *
+ */
+public class TableProfileTest {
+
+    /**
+     * Returns item i: a hot key every fourth item, a number attribute on
+     * every item and an attribute that is a string or a number on half.
+     */
+    private static Map<String, AttributeValue> item(int i) {
+        Map<String, AttributeValue> item = new HashMap<String, AttributeValue>();
+        item.put("id", new AttributeValue(i % 4 == 0 ? "hot" : "key" + i));
+        item.put("n", new AttributeValue().withN(Integer.toString(i)));
+        if (i % 2 == 0) {
+            item.put("mixed", i % 4 == 0 ? new AttributeValue("x")
+                    : new AttributeValue().withN("1"));
+        }
+        return item;
+    }
+
+    /**
+     * Scans pages of 100 items in 16 segments over 4 shards and checks the
+     * merged profile.
+     */
+    @Test
+    public void testProfile() throws Exception {
+        ProfilingLogConsumer profiler = new ProfilingLogConsumer("table",
+                "id", 4);
+        for (int page = 0; page < 400; page++) {
+            List<Map<String, AttributeValue>> items = new ArrayList<Map<String, AttributeValue>>();
+            for (int i = 0; i < 100; i++) {
+                items.add(item(page * 100 + i));
+            }
+            profiler.writeResult(new SegmentedScanResult(new ScanResult()
+                    .withItems(items), page % 16));
+        }
+        TableProfile profile = profiler.getProfile();
+        assertEquals(40000, profile.getItems());
+
+        TableProfile.AttributeStats n = profile.getAttribute("n");
+        assertEquals(40000, n.getItems());
+        assertEquals(40000, n.getItems("N"));
+        TableProfile.AttributeStats mixed = profile.getAttribute("mixed");
+        assertEquals(20000, mixed.getItems());
+        assertEquals(10000, mixed.getItems("S"));
+        assertEquals(10000, mixed.getItems("N"));
+        assertNull(profile.getAttribute("missing"));
+
+        // 30000 distinct keys and the hot one
+        assertEquals(30001, profile.estimateDistinctKeys(), 30001 * 0.04);
+        List<TableProfile.HotKey> hot = profile.getHotKeys();
+        assertEquals(TableProfile.HOT_KEYS, hot.size());
+        assertEquals("hot", hot.get(0).getKey());
+        assertTrue(hot.get(0).getItems() >= 10000);
+        assertTrue(hot.get(1).getItems() < 10000);
+
+        assertEquals(profile.getBytes() / (double) profile.getItems(),
+                profile.getItemSizes().getMean(), 0.001);
+        assertEquals(profile.getItemSizes().getMax(), profile.getItemSizes()
+                .quantile(1), 0);
+    }
+
+    /**
+     * Test profiling a table with reader dispatch, as the CLI does: pages
+     * are counted on the scan threads that read them and the merged profile
+     * has every item once.
+     */
+    @Test
+    public void testProfileWithReaderThreads() throws Exception {
+        FakeDynamoDB db = FakeDynamoDBTest.sourceWithItems(5000);
+        final Set<String> threads = Collections
+                .synchronizedSet(new HashSet<String>());
+        ProfilingLogConsumer profiler = new ProfilingLogConsumer("source",
+                "id", 4) {
+            @Override
+            public Future<Void> writeResult(SegmentedScanResult result) {
+                threads.add(Thread.currentThread().getName());
+                return super.writeResult(result);
+            }
+        };
+        ExecutorService readers = Executors.newFixedThreadPool(4);
+        DynamoDBBootstrapWorker worker = new DynamoDBBootstrapWorker(db,
+                1000000.0, "source", readers, 0, 1, 8, false);
+        worker.setScanLimit(100);
+        worker.setReaderDispatch(true);
+        worker.pipe(profiler);
+
+        TableProfile profile = profiler.getProfile();
+        assertEquals(5000, profile.getItems());
+        assertEquals(5000, profile.getAttribute("id").getItems());
+        assertEquals(5000, profile.estimateDistinctKeys(), 5000 * 0.04);
+        assertTrue(threads.toString(), threads.size() > 1);
+    }
+
+    /**
+     * Test that attribute names beyond the limit are only counted.
+     */
+    @Test
+    public void testAttributeLimit() {
+        TableProfile profile = new TableProfile("table", "id");
+        Map<String, AttributeValue> item = new HashMap<String, AttributeValue>();
+        for (int i = 0; i < TableProfile.MAX_ATTRIBUTES + 10; i++) {
+            item.put("a" + i, new AttributeValue("v"));
+        }
+        profile.add(item);
+        assertEquals(10, profile.getUnprofiledAttributes());
+        // an item without the partition key has no key to count
+        assertEquals(0, profile.estimateDistinctKeys());
+        assertTrue(profile.getHotKeys().isEmpty());
+    }
+
+    /**
+     * Test that the report holds the sections planners look for.
+     */
+    @Test
+    public void testReport() throws Exception {
+        TableProfile profile = new TableProfile("table", "id");
+        for (int i = 0; i < 1000; i++) {
+            profile.add(item(i));
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        profile.write(out);
+        JsonParser parser = new JsonFactory().createParser(out.toByteArray());
+        Map<String, String> fields = new HashMap<String, String>();
+        String path = "";
+        JsonToken token;
+        while ((token = parser.nextToken()) != null) {
+            if (token == JsonToken.FIELD_NAME
+                    && parser.getParsingContext().getParent().inRoot()) {
+                path = parser.getCurrentName();
+            } else if (token.isScalarValue()
+                    && parser.getCurrentName() != null
+                    && !fields.containsKey(path + "." + parser.getCurrentName())) {
+                fields.put(path + "." + parser.getCurrentName(),
+                        parser.getText());
+            }
+        }
+        assertEquals("table", fields.get("table.table"));
+        assertEquals("1000", fields.get("items.items"));
+        assertNotNull(fields.get("itemSize.p50"));
+        assertNotNull(fields.get("itemSize.p999"));
+        // attributes on every item come first, by name
+        assertEquals("id", fields.get("attributes.name"));
+        assertEquals("id", fields.get("partitionKey.name"));
+        assertEquals("hot", fields.get("partitionKey.key"));
+        assertEquals("250", fields.get("partitionKey.items"));
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.amazonaws.dynamodb.bootstrap;
+
+import static org.junit.Assert.*;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.Attribute;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.Test;
+
+/**
+ * Unit Tests for TransferControl and PauseGate
+ *
+ */
+public class TransferControlTest {
+
+    private static final String SOURCE = "source";
+    private static final String DESTINATION = "destination";
+
+    /**
+     * Test that a paused transfer scans nothing until it is resumed, and then
+     * finishes.
+     */
+    @Test
+    public void testPauseAndResume() throws Exception {
+        FakeDynamoDB source = FakeDynamoDBTest.sourceWithItems(500);
+        FakeDynamoDB destination = new FakeDynamoDB();
+        destination.createTable(DESTINATION, "id", null);
+        ExecutorService readers = Executors.newFixedThreadPool(4);
+        ThreadPoolExecutor writers = new ThreadPoolExecutor(2, 2, 0,
+                TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>());
+        final DynamoDBBootstrapWorker worker = new DynamoDBBootstrapWorker(
+                source, 1000000.0, SOURCE, readers, 0, 1, 4, false);
+        worker.setScanLimit(50);
+        final DynamoDBConsumer consumer = new DynamoDBConsumer(destination,
+                DESTINATION, 1000000.0, writers);
+        TransferControl control = new TransferControl(worker, consumer,
+                writers);
+
+        control.pause();
+        assertTrue(control.isPaused());
+        Thread transfer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    worker.pipe(consumer);
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        });
+        transfer.start();
+        Thread.sleep(200);
+        assertEquals(0, control.getItemsRead());
+        assertTrue(control.getStatus().startsWith("paused"));
+
+        control.resume();
+        transfer.join(10000);
+        assertFalse(transfer.isAlive());
+        assertEquals(500, control.getItemsRead());
+        assertEquals(500, control.getItemsWritten());
+        assertEquals(500, destination.getItemCount(DESTINATION));
+        assertTrue(control.getStatus().startsWith("running"));
+    }
+
+    /**
+     * Test that rates and write threads can be changed through the platform
+     * MBean server.
+     */
+    @Test
+    public void testTuneOverJmx() throws Exception {
+        ThreadPoolExecutor writers = new ThreadPoolExecutor(4, 4, 0,
+                TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>());
+        DynamoDBBootstrapWorker worker = new DynamoDBBootstrapWorker(
+                new FakeDynamoDB(), 100.0, SOURCE,
+                Executors.newSingleThreadExecutor(), 0, 1, 1, false);
+        DynamoDBConsumer consumer = new DynamoDBConsumer(new FakeDynamoDB(),
+                DESTINATION, 200.0, writers);
+        TransferControl control = new TransferControl(worker, consumer,
+                writers);
+
+        ObjectName name = control.register();
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            assertEquals(100.0,
+                    (Double) server.getAttribute(name, "ReadRateLimit"), 0.0);
+            server.setAttribute(name, new Attribute("ReadRateLimit", 50.0));
+            server.setAttribute(name, new Attribute("WriteRateLimit", 400.0));
+            server.setAttribute(name, new Attribute("WriteThreads", 8));
+            server.invoke(name, "pause", null, null);
+            assertEquals(Boolean.TRUE, server.getAttribute(name, "Paused"));
+        } finally {
+            TransferControl.unregister(name);
+        }
+        assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(
+                name));
+        assertEquals(50.0, worker.getRateLimit(), 0.0);
+        assertEquals(400.0, consumer.getRateLimit(), 0.0);
+        assertEquals(8, writers.getCorePoolSize());
+        assertEquals(8, writers.getMaximumPoolSize());
+
+        control.setWriteThreads(2);
+        assertEquals(2, writers.getCorePoolSize());
+        assertEquals(2, writers.getMaximumPoolSize());
+        try {
+            control.setReadRateLimit(0);
+            fail("Expected a rejected rate");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        consumer.shutdown(false);
+    }
+}
@@ -0,0 +1,188 @@
+/*
+ * Copyright 2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.amazonaws.dynamodb.bootstrap;
+
+import static org.junit.Assert.*;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.amazonaws.dynamodb.bootstrap.constants.BootstrapConstants;
+import com.amazonaws.services.dynamodbv2.model.DescribeTableRequest;
+import com.amazonaws.services.dynamodbv2.model.DescribeTableResult;
+
+/**
+ * Unit Tests for TransferDaemon
+ *
+ */
+public class TransferDaemonTest {
+
+    private static final int ITEMS = 500;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final AtomicInteger describeCalls = new AtomicInteger();
+    private FakeDynamoDB source;
+    private FakeDynamoDB destination;
+    private ExecutorService sourceExec;
+    private ExecutorService destinationExec;
+    private TransferDaemon daemon;
+
+    @Before
+    public void setUp() {
+        source = new FakeDynamoDB() {
+            @Override
+            public DescribeTableResult describeTable(
+                    DescribeTableRequest request) {
+                describeCalls.incrementAndGet();
+                return super.describeTable(request);
+            }
+        };
+        source.createTable("source", "id", null);
+        source.setCapacity("source", 100000, 100000);
+        for (int i = 0; i < ITEMS; i++) {
+            source.addItem("source", FakeDynamoDBTest.item(i));
+        }
+        destination = new FakeDynamoDB();
+        for (String table : new String[] { "first", "second" }) {
+            destination.createTable(table, "id", null);
+            destination.setCapacity(table, 100000, 100000);
+        }
+        sourceExec = Executors.newFixedThreadPool(8);
+        destinationExec = Executors.newFixedThreadPool(8);
+        MultiTableTransfer transfer = new MultiTableTransfer(source,
+                destination, sourceExec, destinationExec,
+                new CapacityScheduler(Double.POSITIVE_INFINITY,
+                        Double.POSITIVE_INFINITY), 1);
+        transfer.setDescriptionCacheMillis(BootstrapConstants.DAEMON_DESCRIPTION_CACHE_MILLIS);
+        daemon = new TransferDaemon(transfer, 1.0, 1.0, false);
+    }
+
+    @After
+    public void tearDown() throws InterruptedException {
+        daemon.stop();
+        sourceExec.shutdownNow();
+        destinationExec.shutdownNow();
+    }
+
+    private static void write(File file, String content) throws IOException {
+        Writer writer = new OutputStreamWriter(new FileOutputStream(file),
+                BootstrapConstants.UTF8);
+        try {
+            writer.write(content);
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * Test that spooled files are run, marked and reuse the table
+     * descriptions of earlier jobs.
+     */
+    @Test
+    public void testSpoolDirectory() throws Exception {
+        final File spool = folder.newFolder("spool");
+        daemon.setSpoolDirectory(spool);
+        write(new File(spool, "1.job"), "source,first\n");
+        write(new File(spool, "2.job"),
+                "# two jobs\nsource,second,2\nsource,missing\n");
+        write(new File(spool, "3.job"), "not a job\n");
+        write(new File(spool, "ignored.txt"), "source,first\n");
+        daemon.pollSpool();
+        assertTrue(new File(spool, "1.job.running").exists());
+        assertTrue(new File(spool, "3.job.failed").exists());
+        assertEquals(3, daemon.getStatuses().size());
+
+        daemon.stop();
+        assertTrue(new File(spool, "1.job.done").exists());
+        assertTrue(new File(spool, "2.job.failed").exists());
+        assertTrue(new File(spool, "ignored.txt").exists());
+        assertEquals(ITEMS, destination.getItemCount("first"));
+        assertEquals(ITEMS, destination.getItemCount("second"));
+
+        List<TransferDaemon.JobStatus> statuses = daemon.getStatuses();
+        assertEquals(TransferDaemon.State.DONE, statuses.get(0).getState());
+        assertEquals(ITEMS, statuses.get(0).getJob().getItemsWritten());
+        assertEquals(TransferDaemon.State.DONE, statuses.get(1).getState());
+        assertEquals(TransferDaemon.State.FAILED, statuses.get(2).getState());
+        // the source table was described once for three jobs
+        assertEquals(1, describeCalls.get());
+
+        // the failed file holds the error and can be spooled again as is
+        List<TransferJob> again = TransferJob.parseJobFile(new File(spool,
+                "2.job.failed"), 1.0, 1.0, false);
+        assertEquals(2, again.size());
+    }
+
+    /**
+     * Test the commands of the socket.
+     */
+    @Test
+    public void testSocket() throws Exception {
+        daemon.setPort(0);
+        daemon.start();
+        Socket socket = new Socket(InetAddress.getLoopbackAddress(),
+                daemon.getPort());
+        try {
+            BufferedReader in = new BufferedReader(new InputStreamReader(
+                    socket.getInputStream(), BootstrapConstants.UTF8));
+            Writer out = new OutputStreamWriter(socket.getOutputStream(),
+                    BootstrapConstants.UTF8);
+            out.write("SUBMIT source,first\n");
+            out.flush();
+            assertEquals("OK 1", in.readLine());
+            out.write("SUBMIT source\nSUBMIT source,first,x\nBOGUS\n");
+            out.flush();
+            assertTrue(in.readLine().startsWith("ERROR"));
+            assertTrue(in.readLine().startsWith("ERROR"));
+            assertTrue(in.readLine().startsWith("ERROR"));
+
+            out.write("STATUS 1\n");
+            out.flush();
+            final String status = in.readLine();
+            assertTrue(status, status.startsWith("1 "));
+            assertTrue(status, status.contains("source -> first"));
+            assertEquals("END", in.readLine());
+
+            out.write("SHUTDOWN\n");
+            out.flush();
+            assertEquals("OK", in.readLine());
+        } finally {
+            socket.close();
+        }
+        daemon.awaitStop();
+        assertEquals(ITEMS, destination.getItemCount("first"));
+
+        List<String> lines = new ArrayList<String>();
+        for (String line : daemon.handle("STATUS").split("\n")) {
+            lines.add(line);
+        }
+        assertEquals(2, lines.size());
+        assertTrue(lines.get(0), lines.get(0).startsWith(
+                "1 DONE source -> first items=" + ITEMS));
+        assertEquals("END", lines.get(1));
+        assertTrue(daemon.handle("SUBMIT source,second").startsWith("ERROR"));
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright 2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.amazonaws.dynamodb.bootstrap;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import com.amazonaws.dynamodb.bootstrap.constants.BootstrapConstants;
+
+/**
+ * Unit Tests for TransferPlanner
+ *
+ */
+public class TransferPlannerTest {
+
+    private static final double DELTA = 0.0001;
+
+    /**
+     * Builds a sample of pages of 1000 items of 100 bytes, taking 20 ms each.
+     */
+    private static TransferPlanner.Sample smallItemSample() {
+        TransferPlanner.Sample sample = new TransferPlanner.Sample();
+        for (int page = 0; page < 4; page++) {
+            for (int i = 0; i < 1000; i++) {
+                sample.addItemSize(100);
+            }
+            sample.addPage(100000, 20.0);
+        }
+        return sample;
+    }
+
+    /**
+     * Test that small items get a bigger scan limit so pages fill up to the
+     * page size cap.
+     */
+    @Test
+    public void testScanLimitFillsPages() {
+        TransferPlan plan = TransferPlanner.plan(smallItemSample(),
+                (long) BootstrapConstants.GIGABYTE, 1000.0, 1000.0, false);
+
+        assertEquals(BootstrapConstants.MAX_SCAN_LIMIT, plan.getScanLimit());
+        assertEquals(100.0, plan.getAverageItemSizeBytes(), DELTA);
+        assertEquals(100, plan.getMedianItemSizeBytes());
+    }
+
+    /**
+     * Test that a sample without items, e.g. of an empty table, keeps the
+     * default scan limit instead of the largest one.
+     */
+    @Test
+    public void testEmptySample() {
+        TransferPlanner.Sample sample = new TransferPlanner.Sample();
+        sample.addPage(0, 5.0);
+        TransferPlan plan = TransferPlanner.plan(sample, 0, 1000.0, 1000.0,
+                false);
+
+        assertEquals(BootstrapConstants.SCAN_LIMIT, plan.getScanLimit());
+        assertEquals(1, plan.getNumSegments());
+    }
+
+    /**
+     * Test that a table that reports no size although the sample found
+     * items, as a recently loaded table does, is not planned as a single
+     * segment.
+     */
+    @Test
+    public void testUnknownTableSize() {
+        TransferPlan plan = TransferPlanner.plan(smallItemSample(), 0,
+                1000.0, 1000.0, false);
+
+        assertEquals(BootstrapConstants.MIN_ON_DEMAND_SEGMENTS,
+                plan.getNumSegments());
+        assertTrue(plan.getReadThreads() >= 1);
+        assertEquals(-1, plan.getExpectedDurationSeconds());
+        assertTrue(plan.toString().contains("expected duration: unknown"));
+    }
+
+    /**
+     * Test that concurrency grows with the target rate and that the expected
+     * duration follows from the slower of reads and writes.
+     */
+    @Test
+    public void testConcurrencyFollowsTargetRate() {
+        long tableSize = 10L * 1024 * 1024 * 1024;
+        TransferPlan slow = TransferPlanner.plan(smallItemSample(), tableSize,
+                100.0, 100.0, false);
+        TransferPlan fast = TransferPlanner.plan(smallItemSample(), tableSize,
+                1000000.0, 1000000.0, false);
+
+        assertTrue(fast.getReadThreads() > slow.getReadThreads());
+        assertTrue(fast.getWriteThreads() > slow.getWriteThreads());
+        assertTrue(fast.getNumSegments() >= fast.getReadThreads());
+        // 100 WCU of 100 byte items is 10000 bytes per second
+        assertEquals(10000.0, slow.getBytesPerSecond(), DELTA);
+        assertEquals((long) Math.ceil(tableSize / 10000.0),
+                slow.getExpectedDurationSeconds());
+    }
+
+    /**
+     * Test that page latency is fit as a fixed cost plus a cost per byte.
+     */
+    @Test
+    public void testEstimateLatency() {
+        TransferPlanner.Sample sample = new TransferPlanner.Sample();
+        sample.addPage(1000, 11.0);
+        sample.addPage(2000, 12.0);
+        sample.addPage(3000, 13.0);
+
+        assertEquals(10.0, TransferPlanner.estimateLatency(sample, 0), DELTA);
+        assertEquals(20.0, TransferPlanner.estimateLatency(sample, 10000),
+                DELTA);
+    }
+}
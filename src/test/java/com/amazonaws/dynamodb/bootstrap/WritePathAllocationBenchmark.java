@@ -0,0 +1,109 @@
+/*
+ * Copyright 2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.amazonaws.dynamodb.bootstrap;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.amazonaws.dynamodb.bootstrap.constants.BootstrapConstants;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDBClient;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.BatchWriteItemRequest;
+import com.amazonaws.services.dynamodbv2.model.BatchWriteItemResult;
+import com.amazonaws.services.dynamodbv2.model.ConsumedCapacity;
+import com.amazonaws.services.dynamodbv2.model.ScanResult;
+import com.amazonaws.services.dynamodbv2.model.WriteRequest;
+import com.google.common.util.concurrent.MoreExecutors;
+
+/**
+ * Measures the bytes the write path allocates per written item: splitting
+ * scanned pages into batches, the write workers and their bookkeeping. The
+ * batches are written on the calling thread to a client that answers at
+ * once, so neither the items themselves, the SDK's marshalling nor the
+ * results are counted. Not run as part of the tests; run it with
+ *
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=com.amazonaws.dynamodb.bootstrap.WritePathAllocationBenchmark \
+ *     -Dexec.args="pages itemsPerPage"
+ * </pre>
+ *
+ * Both arguments are optional and default to 2000 pages of 1000 items.
+ * Needs a HotSpot JVM, which can report the bytes a thread allocated.
+ */
+public class WritePathAllocationBenchmark {
+
+    /**
+     * A destination that writes nothing and reports one unit per item, with
+     * results built up front so that it allocates nothing itself.
+     */
+    private static class NullDynamoDB extends AmazonDynamoDBClient {
+        private final BatchWriteItemResult[] results = new BatchWriteItemResult[BootstrapConstants.MAX_BATCH_SIZE_WRITE_ITEM + 1];
+
+        NullDynamoDB() {
+            final Map<String, List<WriteRequest>> noneUnprocessed = Collections
+                    .emptyMap();
+            for (int items = 0; items < results.length; items++) {
+                results[items] = new BatchWriteItemResult()
+                        .withUnprocessedItems(noneUnprocessed)
+                        .withConsumedCapacity(
+                                new ConsumedCapacity().withTableName(
+                                        "destination").withCapacityUnits(
+                                        (double) items));
+            }
+        }
+
+        @Override
+        public BatchWriteItemResult batchWriteItem(BatchWriteItemRequest request) {
+            return results[request.getRequestItems().get("destination").size()];
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        final int pages = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        final int itemsPerPage = args.length > 1 ? Integer.parseInt(args[1])
+                : 1000;
+
+        List<Map<String, AttributeValue>> items = new ArrayList<Map<String, AttributeValue>>();
+        for (int i = 0; i < itemsPerPage; i++) {
+            Map<String, AttributeValue> item = new HashMap<String, AttributeValue>();
+            item.put("id", new AttributeValue().withS("item-" + i));
+            items.add(item);
+        }
+        final ScanResult page = new ScanResult().withItems(items);
+        DynamoDBConsumer consumer = new DynamoDBConsumer(new NullDynamoDB(),
+                "destination", Double.MAX_VALUE,
+                MoreExecutors.sameThreadExecutor());
+
+        // warm up so that the measured run is compiled code
+        writePages(consumer, page, Math.max(1, pages / 4));
+        final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory
+                .getThreadMXBean();
+        final long thread = Thread.currentThread().getId();
+        final long before = threads.getThreadAllocatedBytes(thread);
+        final long start = System.nanoTime();
+        writePages(consumer, page, pages);
+        final double seconds = (System.nanoTime() - start) / 1e9;
+        final long allocated = threads.getThreadAllocatedBytes(thread) - before;
+        consumer.shutdown(true);
+
+        final long written = (long) pages * itemsPerPage;
+        System.out.println(String.format(
+                "Wrote %d items in %.2f s: %.1f bytes allocated per item",
+                written, seconds, allocated / (double) written));
+    }
+
+    private static void writePages(DynamoDBConsumer consumer, ScanResult page,
+            int pages) {
+        for (int i = 0; i < pages; i++) {
+            consumer.writeResult(new SegmentedScanResult(page, 0));
+        }
+    }
+}
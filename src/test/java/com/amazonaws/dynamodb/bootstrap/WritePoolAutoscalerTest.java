@@ -0,0 +1,86 @@
+/*
+ * Copyright 2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.amazonaws.dynamodb.bootstrap;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * Unit Tests for WritePoolAutoscaler
+ *
+ */
+public class WritePoolAutoscalerTest {
+
+    /**
+     * A writer with a fixed rate limit.
+     */
+    private static class FixedRate implements RateLimitAdjustable {
+        private double rate;
+
+        FixedRate(double rate) {
+            this.rate = rate;
+        }
+
+        @Override
+        public double getRateLimit() {
+            return rate;
+        }
+
+        @Override
+        public void setRateLimit(double rateLimit) {
+            rate = rateLimit;
+        }
+    }
+
+    /**
+     * Test Little's law: 1000 units/s in calls of 25 units is 40 calls per
+     * second, which at 50 ms each keeps 2 calls in flight, plus headroom.
+     */
+    @Test
+    public void testRequiredThreads() {
+        assertEquals(3,
+                WritePoolAutoscaler.requiredThreads(1000, 25, 50, 1, 100));
+        assertEquals(100,
+                WritePoolAutoscaler.requiredThreads(100000, 25, 50, 1, 100));
+        assertEquals(4, WritePoolAutoscaler.requiredThreads(1, 25, 50, 4, 100));
+    }
+
+    /**
+     * Test that the pool grows and shrinks with the measured latency.
+     */
+    @Test
+    public void testResizesPool() {
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(1, 1, 1,
+                TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>());
+        OperationStats stats = new OperationStats();
+        WritePoolAutoscaler autoscaler = new WritePoolAutoscaler(pool,
+                new FixedRate(10000), stats, 1, 64);
+        try {
+            // 400 calls per second of 100 ms each
+            stats.record(TimeUnit.MILLISECONDS.toNanos(100), 25, 25, false);
+            autoscaler.adjust();
+            assertEquals(50, pool.getMaximumPoolSize());
+            assertEquals(50, pool.getCorePoolSize());
+
+            // then 10 ms each
+            stats.record(TimeUnit.MILLISECONDS.toNanos(10), 25, 25, false);
+            autoscaler.adjust();
+            assertEquals(5, pool.getMaximumPoolSize());
+            assertEquals(5, pool.getCorePoolSize());
+
+            // no calls, no change
+            autoscaler.adjust();
+            assertEquals(5, pool.getMaximumPoolSize());
+        } finally {
+            pool.shutdown();
+        }
+    }
+}